@@ -16,12 +16,9 @@
 package com.android.tools.adtui.model;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 
 public class DefaultDataSeries<E> implements DataSeries<E> {
@@ -29,7 +26,7 @@ public class DefaultDataSeries<E> implements DataSeries<E> {
 
   @NotNull
   private List<SeriesData<E>> getDataSubList(final int fromIndex, final int toIndex) {
-    return IntStream.range(fromIndex, toIndex).mapToObj(index -> mSeriesList.get(index)).collect(Collectors.toList());
+    return new ArrayList<>(mSeriesList.subList(fromIndex, toIndex));
   }
 
   @Override
@@ -71,7 +68,7 @@ public class DefaultDataSeries<E> implements DataSeries<E> {
   }
 
   public int getNearestXIndex(long x) {
-    int index = Collections.binarySearch(mSeriesList.stream().map(data -> data.x).collect(Collectors.toList()), x);
+    int index = binarySearchX(x);
 
     if (index < 0) {
       // No exact match, returns position to the left of the insertion point.
@@ -84,4 +81,27 @@ public class DefaultDataSeries<E> implements DataSeries<E> {
 
     return Math.max(0, Math.min(index, size() - 1));
   }
+
+  /**
+   * Same contract as {@link java.util.Collections#binarySearch(List, Object)} but searches the x values in place, so no list of boxed
+   * keys needs to be built for every query.
+   */
+  private int binarySearchX(long x) {
+    int low = 0;
+    int high = mSeriesList.size() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long midX = mSeriesList.get(mid).x;
+      if (midX < x) {
+        low = mid + 1;
+      }
+      else if (midX > x) {
+        high = mid - 1;
+      }
+      else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
 }
@@ -52,10 +52,16 @@ public class LineChartModel extends AspectModel<LineChartModel.Aspect> implement
         continue;
       }
 
-      for (SeriesData<Long> series : seriesList) {
-        double value = series.value;
-        if (yMax < value) {
-          yMax = value;
+      if (seriesList instanceof LongDataSeries.View) {
+        // Columnar series can be scanned without allocating a SeriesData and unboxing per element.
+        yMax = ((LongDataSeries.View)seriesList).getMaxY();
+      }
+      else {
+        for (SeriesData<Long> series : seriesList) {
+          double value = series.value;
+          if (yMax < value) {
+            yMax = value;
+          }
         }
       }
 
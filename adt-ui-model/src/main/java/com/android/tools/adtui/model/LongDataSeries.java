@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A {@link DataSeries} of long values that stores its x and y values in two growable primitive columns instead of a list of boxed
+ * {@link SeriesData} objects.
+ * <p>
+ * Data must be appended in non-decreasing x order. Since the columns are append-only, {@link #getDataForRange(Range)} can return a view
+ * over the backing arrays instead of copying: a view captures the arrays and the index bounds at the time of the query, and data appended
+ * afterwards (which may reallocate the columns) is never visible through it.
+ * <p>
+ * This class is not thread-safe; it is meant to be written and queried from the same thread.
+ */
+public class LongDataSeries implements DataSeries<Long> {
+  private static final int DEFAULT_CAPACITY = 64;
+
+  @NotNull private long[] myX;
+  @NotNull private long[] myY;
+  private int mySize;
+
+  public LongDataSeries() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public LongDataSeries(int initialCapacity) {
+    int capacity = Math.max(1, initialCapacity);
+    myX = new long[capacity];
+    myY = new long[capacity];
+  }
+
+  /**
+   * Appends a new data point. {@code x} must be greater than or equal to the x of the last data point added.
+   */
+  public void add(long x, long y) {
+    if (mySize > 0 && x < myX[mySize - 1]) {
+      throw new IllegalArgumentException("Data must be added in non-decreasing x order: " + x + " < " + myX[mySize - 1]);
+    }
+    if (mySize == myX.length) {
+      int newCapacity = mySize + (mySize >> 1) + 1;
+      myX = Arrays.copyOf(myX, newCapacity);
+      myY = Arrays.copyOf(myY, newCapacity);
+    }
+    myX[mySize] = x;
+    myY[mySize] = y;
+    mySize++;
+  }
+
+  public int size() {
+    return mySize;
+  }
+
+  public long getX(int index) {
+    checkIndex(index, mySize);
+    return myX[index];
+  }
+
+  public long getY(int index) {
+    checkIndex(index, mySize);
+    return myY[index];
+  }
+
+  public void clear() {
+    // Views handed out earlier still reference the old columns, so start over with fresh ones rather than overwriting them.
+    myX = new long[DEFAULT_CAPACITY];
+    myY = new long[DEFAULT_CAPACITY];
+    mySize = 0;
+  }
+
+  @NotNull
+  @Override
+  public View getDataForRange(@NotNull Range range) {
+    if (mySize == 0 || range.isEmpty()) {
+      return new View(myX, myY, 0, 0);
+    }
+    int fromIndex = getNearestXIndex((long)range.getMin());
+    int toIndex = getNearestXIndex((long)range.getMax()) + 1;
+    return new View(myX, myY, fromIndex, toIndex);
+  }
+
+  @NotNull
+  public View getAllData() {
+    return new View(myX, myY, 0, mySize);
+  }
+
+  /**
+   * Same semantics as {@link DefaultDataSeries#getNearestXIndex(long)}: returns the index of the data point at {@code x}, or the one
+   * immediately to its left if there is no exact match, clamped to the valid indices.
+   */
+  public int getNearestXIndex(long x) {
+    int index = Arrays.binarySearch(myX, 0, mySize, x);
+    if (index < 0) {
+      // No exact match, step to the position to the left of the insertion point.
+      index = -index - 2;
+    }
+    return Math.max(0, Math.min(index, mySize - 1));
+  }
+
+  private static void checkIndex(int index, int size) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+  }
+
+  /**
+   * An immutable, zero-copy window over the columns of a {@link LongDataSeries}. Callers that know they are dealing with a view can use
+   * {@link #getX(int)} and {@link #getY(int)} to read the values without allocating a {@link SeriesData} per element.
+   */
+  public static final class View extends AbstractList<SeriesData<Long>> implements RandomAccess {
+    @NotNull private final long[] myX;
+    @NotNull private final long[] myY;
+    private final int myFrom;
+    private final int mySize;
+
+    private View(@NotNull long[] x, @NotNull long[] y, int fromIndex, int toIndex) {
+      myX = x;
+      myY = y;
+      myFrom = fromIndex;
+      mySize = toIndex - fromIndex;
+    }
+
+    public long getX(int index) {
+      checkIndex(index, mySize);
+      return myX[myFrom + index];
+    }
+
+    public long getY(int index) {
+      checkIndex(index, mySize);
+      return myY[myFrom + index];
+    }
+
+    /**
+     * @return the largest y value in this view, or {@link Long#MIN_VALUE} if the view is empty.
+     */
+    public long getMaxY() {
+      long max = Long.MIN_VALUE;
+      for (int i = myFrom, end = myFrom + mySize; i < end; i++) {
+        if (myY[i] > max) {
+          max = myY[i];
+        }
+      }
+      return max;
+    }
+
+    @Override
+    public SeriesData<Long> get(int index) {
+      checkIndex(index, mySize);
+      return new SeriesData<>(myX[myFrom + index], myY[myFrom + index]);
+    }
+
+    @Override
+    public int size() {
+      return mySize;
+    }
+
+    @NotNull
+    @Override
+    public List<SeriesData<Long>> subList(int fromIndex, int toIndex) {
+      if (fromIndex < 0 || toIndex > mySize || fromIndex > toIndex) {
+        throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex + ", Size: " + mySize);
+      }
+      return fromIndex == toIndex ? Collections.emptyList() : new View(myX, myY, myFrom + fromIndex, myFrom + toIndex);
+    }
+  }
+}
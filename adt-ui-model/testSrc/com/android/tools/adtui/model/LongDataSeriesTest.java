@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.List;
+import org.junit.Test;
+
+public class LongDataSeriesTest {
+
+  @Test
+  public void testGetDataForRangeMatchesDefaultDataSeries() {
+    LongDataSeries longSeries = new LongDataSeries(4);
+    DefaultDataSeries<Long> defaultSeries = new DefaultDataSeries<>();
+    for (int i = 0; i < 100; i += 2) {
+      longSeries.add(i, (long)i * 10);
+      defaultSeries.add(i, (long)i * 10);
+    }
+
+    Range[] ranges = {new Range(0, 100), new Range(3, 7), new Range(-10, 5), new Range(95, 200), new Range(10, 10), new Range()};
+    for (Range range : ranges) {
+      assertThat(longSeries.getDataForRange(range)).containsExactlyElementsIn(defaultSeries.getDataForRange(range)).inOrder();
+    }
+  }
+
+  @Test
+  public void testViewIsNotAffectedByLaterAppends() {
+    LongDataSeries series = new LongDataSeries(1);
+    series.add(0, 1);
+    series.add(10, 2);
+    LongDataSeries.View view = series.getAllData();
+
+    // Appending forces the columns to grow, which should not be visible through the existing view.
+    for (int i = 11; i < 100; i++) {
+      series.add(i, i);
+    }
+    assertThat(view).hasSize(2);
+    assertThat(view.getX(1)).isEqualTo(10);
+    assertThat(view.getY(1)).isEqualTo(2);
+
+    series.clear();
+    series.add(0, 42);
+    assertThat(view.getY(0)).isEqualTo(1);
+  }
+
+  @Test
+  public void testViewPrimitiveAccessors() {
+    LongDataSeries series = new LongDataSeries();
+    series.add(0, 5);
+    series.add(1, 20);
+    series.add(2, 7);
+    series.add(3, 30);
+
+    LongDataSeries.View view = series.getDataForRange(new Range(1, 2));
+    assertThat(view).hasSize(2);
+    assertThat(view.getMaxY()).isEqualTo(20);
+
+    List<SeriesData<Long>> subList = view.subList(1, 2);
+    assertThat(subList).containsExactly(new SeriesData<>(2, 7L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testOutOfOrderAddThrows() {
+    LongDataSeries series = new LongDataSeries();
+    series.add(10, 0);
+    series.add(5, 0);
+  }
+}
@@ -358,6 +358,21 @@ public final class StudioFlags {
     "When running or debugging an Android process, output the logcat output of the process in the console window.",
     true);
 
+  public static final Flag<Boolean> LOGCAT_BINARY_FORMAT_ENABLED = Flag.create(
+    RUNDEBUG, "logcat.binary.format.enabled", "Read logcat in its binary format",
+    "On devices running Android N or later, read logcat with 'logcat -B' and decode its entries instead of parsing 'logcat -v long' text.",
+    true);
+
+  public static final Flag<Boolean> LOGCAT_ARCHIVE_ENABLED = Flag.create(
+    RUNDEBUG, "logcat.archive.enabled", "Archive logcat to disk",
+    "Write the logcat of each device to a compressed file, so the logcat view can search the lines the console no longer holds.",
+    false);
+
+  public static final Flag<Boolean> DEVICE_EXPLORER_BULK_TRANSFER_ENABLED = Flag.create(
+    RUNDEBUG, "device.explorer.bulk.transfer.enabled", "Download directories in bulk in the Device File Explorer",
+    "List a whole directory tree with a single command, and download its files over several sync connections at the same time.",
+    true);
+
   public static final Flag<Boolean> RUNDEBUG_ANDROID_BUILD_BUNDLE_ENABLED = Flag.create(
     RUNDEBUG, "android.bundle.build.enabled", "Enable the Build Bundle action",
     "If enabled, the \"Build Bundle(s)\" menu item is enabled. " +
@@ -16,21 +16,31 @@
 package com.android.tools.idea.transport;
 
 import com.android.annotations.concurrency.GuardedBy;
+import com.android.tools.datastore.BytesChunks;
 import com.android.tools.idea.protobuf.ByteString;
+import com.android.tools.idea.protobuf.UnsafeByteOperations;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.Transport;
 import com.android.tools.profiler.proto.TransportServiceGrpc;
 import com.intellij.openapi.Disposable;
+import com.intellij.openapi.diagnostic.Logger;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
 import io.grpc.inprocess.InProcessServerBuilder;
 import io.grpc.stub.StreamObserver;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.function.Function;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -54,14 +64,22 @@ import org.jetbrains.annotations.Nullable;
  *   TransportService.getInstance().unregisterStreamServer(stream.getStreamId())
  * </pre>
  * <p>
+ * Bytes that are costly to hold in memory, such as an imported file, can instead be read from a file when they are requested. The file
+ * of an id missing from the byte cache is asked of the byte files function, e.g. {@code server.setByteFiles(id -> getFile(id))}.
+ * <p>
  * Note - While the caller can call TransportService.getInstance().unregisterStreamServer() to manually stop the server, it can also be
  * auto-stopped along with the TransportService when the latter is disposed.
  */
 public class EventStreamServer implements Disposable {
+  @NotNull
+  private static Logger getLogger() {
+    return Logger.getInstance(EventStreamServer.class);
+  }
 
   @NotNull private final String myServerName;
   @NotNull private final BlockingDeque<Common.Event> myEventQueue = new LinkedBlockingDeque<Common.Event>();
   @NotNull private final Map<String, ByteString> myByteCache = new HashMap<>();
+  @Nullable private volatile Function<String, File> myByteFiles;
 
   @NotNull private final Object myServerLock = new Object();
   @GuardedBy("myServerLock") private Server myServer;
@@ -86,6 +104,79 @@ public class EventStreamServer implements Disposable {
     return myByteCache;
   }
 
+  /**
+   * Sets the function that returns the file holding the bytes of an id missing from the byte cache, or null if there are none. The file
+   * is read each time the bytes are requested, and only the requested chunk of it if they are requested in chunks, see
+   * {@link BytesChunks}.
+   */
+  public void setByteFiles(@Nullable Function<String, File> byteFiles) {
+    myByteFiles = byteFiles;
+  }
+
+  /**
+   * @return the bytes of the given id from the byte cache, or else from their file, or null if there are none.
+   */
+  @Nullable
+  public ByteString lookupBytes(@NotNull String id) {
+    ByteString bytes = myByteCache.get(id);
+    if (bytes != null) {
+      return bytes;
+    }
+    File file = getByteFile(id);
+    if (file == null) {
+      return null;
+    }
+    try (InputStream stream = Files.newInputStream(file.toPath())) {
+      return ByteString.readFrom(stream);
+    }
+    catch (IOException e) {
+      getLogger().warn(String.format("Cannot read from %s.", file.getPath()), e);
+      return null;
+    }
+  }
+
+  /**
+   * @return the given chunk of the bytes of the given id, which is empty past their end, or null if there are no such bytes. Bytes read
+   * from a file are read one chunk at a time.
+   */
+  @Nullable
+  public ByteString lookupBytesChunk(@NotNull String id, int chunkIndex) {
+    ByteString bytes = myByteCache.get(id);
+    if (bytes != null) {
+      return BytesChunks.getChunk(bytes, chunkIndex);
+    }
+    File file = getByteFile(id);
+    if (file == null) {
+      return null;
+    }
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long start = (long)chunkIndex * BytesChunks.CHUNK_SIZE;
+      if (start >= channel.size()) {
+        return ByteString.EMPTY;
+      }
+      ByteBuffer chunk = ByteBuffer.allocate((int)Math.min(BytesChunks.CHUNK_SIZE, channel.size() - start));
+      // A read may return fewer bytes than asked for.
+      while (chunk.hasRemaining()) {
+        if (channel.read(chunk, start + chunk.position()) < 0) {
+          break;
+        }
+      }
+      chunk.flip();
+      // The buffer is not used by anything else, so it can be wrapped without a copy.
+      return UnsafeByteOperations.unsafeWrap(chunk);
+    }
+    catch (IOException e) {
+      getLogger().warn(String.format("Cannot read from %s.", file.getPath()), e);
+      return null;
+    }
+  }
+
+  @Nullable
+  private File getByteFile(@NotNull String id) {
+    Function<String, File> byteFiles = myByteFiles;
+    return byteFiles == null ? null : byteFiles.apply(id);
+  }
+
   public void start() throws IOException {
     synchronized (myServerLock) {
       if (myServer != null) {
@@ -156,8 +247,20 @@ public class EventStreamServer implements Disposable {
 
     @Override
     public void getBytes(Transport.BytesRequest request, StreamObserver<Transport.BytesResponse> responseObserver) {
-      if (myByteCache.containsKey(request.getId())) {
-        responseObserver.onNext(Transport.BytesResponse.newBuilder().setContents(myByteCache.get(request.getId())).build());
+      int chunkIndex = BytesChunks.getChunkIndex(request);
+      if (chunkIndex >= 0) {
+        // The datastore does not keep the chunks it gets from this server, so the bytes stay in the byte cache.
+        ByteString chunk = lookupBytesChunk(BytesChunks.payloadRequest(request).getId(), chunkIndex);
+        responseObserver.onNext(chunk == null ? Transport.BytesResponse.getDefaultInstance()
+                                              : Transport.BytesResponse.newBuilder().setContents(chunk).build());
+        responseObserver.onCompleted();
+        return;
+      }
+
+      ByteString bytes = lookupBytes(request.getId());
+      if (bytes != null) {
+        responseObserver.onNext(Transport.BytesResponse.newBuilder().setContents(bytes).build());
+        // The datastore keeps the bytes once it got them.
         myByteCache.remove(request.getId());
       }
       else {
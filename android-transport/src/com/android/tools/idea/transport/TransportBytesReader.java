@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.transport;
+
+import com.android.tools.datastore.BytesChunks;
+import com.android.tools.idea.protobuf.ByteString;
+import com.android.tools.profiler.proto.Transport;
+import com.android.tools.profiler.proto.TransportServiceGrpc;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Reads large byte payloads, such as heap dumps and traces, from the datastore one chunk at a time instead of as a single response.
+ */
+public final class TransportBytesReader {
+  private TransportBytesReader() {
+  }
+
+  /**
+   * Writes the payload of the given request to the given stream, one chunk at a time.
+   *
+   * @return the number of bytes written, which is 0 if there is no payload.
+   */
+  public static long copyTo(@NotNull TransportServiceGrpc.TransportServiceBlockingStub client,
+                            @NotNull Transport.BytesRequest request,
+                            @NotNull OutputStream outputStream) throws IOException {
+    long size = 0;
+    for (int chunkIndex = 0; ; chunkIndex++) {
+      ByteString chunk = client.getBytes(BytesChunks.chunkRequest(request, chunkIndex)).getContents();
+      chunk.writeTo(outputStream);
+      size += chunk.size();
+      if (BytesChunks.isLastChunk(chunk)) {
+        return size;
+      }
+    }
+  }
+}
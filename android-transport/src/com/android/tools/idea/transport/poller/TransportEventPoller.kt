@@ -18,22 +18,35 @@ package com.android.tools.idea.transport.poller
 import com.android.tools.profiler.proto.Common
 import com.android.tools.profiler.proto.Transport
 import com.android.tools.profiler.proto.TransportServiceGrpc
+import io.grpc.Context
+import io.grpc.stub.StreamObserver
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.CopyOnWriteArrayList
 import java.util.concurrent.Executors
 import java.util.concurrent.ScheduledExecutorService
 import java.util.concurrent.ScheduledFuture
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
 import kotlin.math.max
 
 /**
  * Encapsulates most of the polling functionality that Transport Pipeline subscribers would need to implement
  * to listen for updates and Events coming in from the pipeline
+ *
+ * Pollers created by [createPoller] also subscribe to the events pushed by the datastore as they are inserted. While the subscription
+ * is active, a poll only queries the listeners that may have new events, i.e. the ones notified of a matching event since they were last
+ * polled and the ones whose request changed, instead of issuing an RPC for every listener on every tick. If the server does not support
+ * the subscription, or it ends, every listener is polled again.
  */
 class TransportEventPoller(private val transportClient: TransportServiceGrpc.TransportServiceBlockingStub,
                            private val sortOrder: Comparator<Common.Event>) {
   private val eventListeners: MutableList<TransportEventListener> = CopyOnWriteArrayList() // Used to preserve insertion order
   private val listenersToLastTimestamp = ConcurrentHashMap<TransportEventListener, Long>()
+  private val listenersToLastRequest = ConcurrentHashMap<TransportEventListener, Transport.GetEventGroupsRequest>()
+  private val dirtyListeners = ConcurrentHashMap.newKeySet<TransportEventListener>()
+  private val pollRequested = AtomicBoolean()
+  @Volatile private var isSubscribed = false
+  @Volatile private var subscriptionContext: Context.CancellableContext? = null
 
   /**
    * Adds a listener to the list to poll for and be notified of changes. Listeners are polled in insertion order.
@@ -48,9 +61,12 @@ class TransportEventPoller(private val transportClient: TransportServiceGrpc.Tra
   fun unregisterListener(listener: TransportEventListener) {
     eventListeners.remove(listener)
     listenersToLastTimestamp.remove(listener)
+    listenersToLastRequest.remove(listener)
+    dirtyListeners.remove(listener)
   }
 
   fun poll() {
+    pollRequested.set(false)
     // Copy the list so we can remove listeners within the loop in-place.
     val listeners = mutableListOf<TransportEventListener>().apply { addAll(eventListeners) }
     // Poll for each listener
@@ -68,6 +84,11 @@ class TransportEventPoller(private val transportClient: TransportServiceGrpc.Tra
       eventListener.groupId?.invoke()?.let { builder.groupId = it }
 
       val request = builder.build()
+      // The dirty flag is cleared before querying, so that an event inserted during the query gets the listener polled again.
+      if (isSubscribed && !dirtyListeners.remove(eventListener) && listenersToLastRequest[eventListener] == request) {
+        continue
+      }
+      listenersToLastRequest[eventListener] = request
       var removeListener = false
 
       // Order by timestamp
@@ -80,7 +101,11 @@ class TransportEventPoller(private val transportClient: TransportServiceGrpc.Tra
         filtered.forEach { event -> eventListener.executor.execute { removeListener = eventListener.callback(event) } }
         val maxTimeEvent = filtered.maxBy {it.timestamp}
         // Update last timestamp per listener
-        maxTimeEvent?.let { listenersToLastTimestamp[eventListener] = max(startTimestamp, it.timestamp + 1) }
+        maxTimeEvent?.let {
+          val lastTimestamp = max(startTimestamp, it.timestamp + 1)
+          listenersToLastTimestamp[eventListener] = lastTimestamp
+          listenersToLastRequest[eventListener] = request.toBuilder().setFromTimestamp(lastTimestamp).build()
+        }
       }
 
       if (removeListener) {
@@ -89,6 +114,62 @@ class TransportEventPoller(private val transportClient: TransportServiceGrpc.Tra
     }
   }
 
+  /**
+   * Subscribes to the events pushed by the datastore, calling [requestPoll] when listeners need to be polled. The subscription only
+   * becomes active once the server confirms it with its first event.
+   */
+  private fun subscribe(requestPoll: () -> Unit) {
+    val context = Context.current().withCancellation()
+    subscriptionContext = context
+    // Calls started while the context is attached are cancelled along with it.
+    val previous = context.attach()
+    try {
+      TransportServiceGrpc.newStub(transportClient.channel).getEvents(
+        Transport.GetEventsRequest.getDefaultInstance(),
+        object : StreamObserver<Common.Event> {
+          override fun onNext(event: Common.Event) {
+            if (!isSubscribed) {
+              // Events inserted between the last poll and the subscription were not pushed, so poll every listener once.
+              dirtyListeners.addAll(eventListeners)
+              isSubscribed = true
+            }
+            else {
+              eventListeners.filterTo(dirtyListeners) { matches(it, event) }
+            }
+            requestPoll()
+          }
+
+          override fun onError(t: Throwable) {
+            // Typically UNIMPLEMENTED, from servers that do not push events. Fall back to polling every listener.
+            isSubscribed = false
+          }
+
+          override fun onCompleted() {
+            isSubscribed = false
+          }
+        })
+    }
+    finally {
+      context.detach(previous)
+    }
+  }
+
+  private fun unsubscribe() {
+    isSubscribed = false
+    subscriptionContext?.cancel(null)
+    subscriptionContext = null
+  }
+
+  /**
+   * Returns whether the event may be returned to the listener. The stream is not checked since events do not carry their stream id.
+   */
+  private fun matches(listener: TransportEventListener, event: Common.Event): Boolean {
+    val request = listenersToLastRequest[listener] ?: return true
+    return request.kind == event.kind &&
+           (request.pid == 0 || request.pid == event.pid) &&
+           (request.groupId == 0L || request.groupId == event.groupId)
+  }
+
   companion object {
     private val myExecutorService: ScheduledExecutorService = Executors.newScheduledThreadPool(1)
     private val myScheduledFutures = mutableMapOf<TransportEventPoller, ScheduledFuture<*>>()
@@ -101,15 +182,22 @@ class TransportEventPoller(private val transportClient: TransportServiceGrpc.Tra
                      executorServiceForTest: ScheduledExecutorService? = null
     ): TransportEventPoller {
       val poller = TransportEventPoller(transportClient, sortOrder)
-      val scheduledFuture = (executorServiceForTest ?: myExecutorService).scheduleWithFixedDelay({ poller.poll() },
-                                                                                                 0, pollPeriodNs, TimeUnit.NANOSECONDS)
+      val executor = executorServiceForTest ?: myExecutorService
+      val scheduledFuture = executor.scheduleWithFixedDelay({ poller.poll() }, 0, pollPeriodNs, TimeUnit.NANOSECONDS)
       myScheduledFutures[poller] = scheduledFuture
+      // Pushed events are picked up right away instead of on the next tick. Requests made while a poll is pending are coalesced.
+      poller.subscribe {
+        if (!scheduledFuture.isCancelled && poller.pollRequested.compareAndSet(false, true)) {
+          executor.execute { if (!scheduledFuture.isCancelled) poller.poll() }
+        }
+      }
       return poller
     }
 
     @JvmStatic
     fun stopPoller(poller: TransportEventPoller) {
       myScheduledFutures.remove(poller)?.cancel(false)
+      poller.unsubscribe()
     }
 
   }
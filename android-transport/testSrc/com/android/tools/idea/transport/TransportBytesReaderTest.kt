@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.transport
+
+import com.android.tools.adtui.model.FakeTimer
+import com.android.tools.datastore.BytesChunks
+import com.android.tools.idea.protobuf.ByteString
+import com.android.tools.idea.transport.faketransport.FakeGrpcServer
+import com.android.tools.idea.transport.faketransport.FakeTransportService
+import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.Transport
+import com.google.common.truth.Truth.assertThat
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.ByteArrayOutputStream
+
+class TransportBytesReaderTest {
+  private val transportService = FakeTransportService(FakeTimer(), false)
+
+  @get:Rule
+  val grpcServer = FakeGrpcServer.createFakeGrpcServer("TransportBytesReaderTestChannel", transportService, transportService)!!
+
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  @Test
+  fun copiesPayloadsOfAnySize() {
+    val client = TransportClient(grpcServer.name).transportStub
+    val sizes = listOf(10, BytesChunks.CHUNK_SIZE, BytesChunks.CHUNK_SIZE * 5 / 2)
+    for (size in sizes) {
+      transportService.addFile("id$size", ByteString.copyFrom(ByteArray(size) { it.toByte() }))
+    }
+
+    for (size in sizes) {
+      val output = ByteArrayOutputStream()
+      val request = Transport.BytesRequest.newBuilder().setId("id$size").build()
+      assertThat(TransportBytesReader.copyTo(client, request, output)).isEqualTo(size.toLong())
+      assertThat(output.toByteArray()).isEqualTo(ByteArray(size) { it.toByte() })
+    }
+
+    val output = ByteArrayOutputStream()
+    assertThat(TransportBytesReader.copyTo(client, Transport.BytesRequest.newBuilder().setId("missing").build(), output)).isEqualTo(0)
+    assertThat(output.size()).isEqualTo(0)
+  }
+
+  @Test
+  fun copiesFileOfStreamServer() {
+    val client = TransportClient(grpcServer.name).transportStub
+    val size = BytesChunks.CHUNK_SIZE * 3 / 2
+    val file = temporaryFolder.newFile("payload").apply { writeBytes(ByteArray(size) { it.toByte() }) }
+    val streamServer = EventStreamServer("TransportBytesReaderTestStreamServer")
+    streamServer.setByteFiles { id -> if (id == "file") file else null }
+    val stream = transportService.registerStreamServer(Common.Stream.Type.FILE, streamServer)
+
+    assertThat(streamServer.lookupBytesChunk("file", 1)!!.size()).isEqualTo(size - BytesChunks.CHUNK_SIZE)
+    assertThat(streamServer.lookupBytesChunk("file", 2)).isEqualTo(ByteString.EMPTY)
+    assertThat(streamServer.lookupBytesChunk("missing", 0)).isNull()
+
+    val output = ByteArrayOutputStream()
+    val request = Transport.BytesRequest.newBuilder().setStreamId(stream.streamId).setId("file").build()
+    assertThat(TransportBytesReader.copyTo(client, request, output)).isEqualTo(size.toLong())
+    assertThat(output.toByteArray()).isEqualTo(ByteArray(size) { it.toByte() })
+  }
+}
@@ -20,8 +20,10 @@ import static com.google.common.truth.Truth.assertThat;
 import com.android.annotations.concurrency.GuardedBy;
 import com.android.sdklib.AndroidVersion;
 import com.android.tools.adtui.model.FakeTimer;
+import com.android.tools.datastore.BytesChunks;
 import com.android.tools.datastore.DataStoreService;
 import com.android.tools.idea.protobuf.ByteString;
+import com.android.tools.idea.transport.EventStreamServer;
 import com.android.tools.idea.transport.faketransport.commands.BeginSession;
 import com.android.tools.idea.transport.faketransport.commands.CommandHandler;
 import com.android.tools.idea.transport.faketransport.commands.EndSession;
@@ -80,6 +82,9 @@ public class FakeTransportService extends TransportServiceGrpc.TransportServiceI
   private final Map<String, ByteString> myCache;
   @GuardedBy("myStreamEvents")
   private final Map<Long, List<Common.Event>> myStreamEvents;
+  @GuardedBy("myStreamEvents")
+  private final Map<Long, EventStreamServer> myStreamServers;
+  private final AtomicInteger myNextStreamServerId = new AtomicInteger();
   private final Map<Command.CommandType, CommandHandler> myCommandHandlers;
   private final FakeTimer myTimer;
   private boolean myThrowErrorOnGetDevices;
@@ -98,6 +103,7 @@ public class FakeTransportService extends TransportServiceGrpc.TransportServiceI
     myProcesses = MultiMap.create();
     myCache = new HashMap<>();
     myStreamEvents = new HashMap<>();
+    myStreamServers = new HashMap<>();
     myCommandHandlers = new HashMap<>();
     myTimer = timer;
     if (connected) {
@@ -247,6 +253,19 @@ public class FakeTransportService extends TransportServiceGrpc.TransportServiceI
     myCache.put(id, contents);
   }
 
+  /**
+   * Mirrors {@link com.android.tools.idea.transport.TransportService#registerStreamServer}: the events offered to the server are added to
+   * the stream it is registered as when events are next queried, and the bytes of that stream are looked up from the server.
+   */
+  @NotNull
+  public Common.Stream registerStreamServer(@NotNull Common.Stream.Type streamType, @NotNull EventStreamServer streamServer) {
+    Common.Stream stream = Common.Stream.newBuilder().setStreamId(myNextStreamServerId.incrementAndGet()).setType(streamType).build();
+    synchronized (myStreamEvents) {
+      myStreamServers.put(stream.getStreamId(), streamServer);
+    }
+    return stream;
+  }
+
   @Override
   public void getVersion(Transport.VersionRequest request, StreamObserver<Transport.VersionResponse> responseObserver) {
     responseObserver.onNext(Transport.VersionResponse.newBuilder().setVersion(VERSION).build());
@@ -291,10 +310,27 @@ public class FakeTransportService extends TransportServiceGrpc.TransportServiceI
 
   @Override
   public void getBytes(Transport.BytesRequest request, StreamObserver<Transport.BytesResponse> responseObserver) {
+    int chunkIndex = BytesChunks.getChunkIndex(request);
+    if (chunkIndex >= 0) {
+      request = BytesChunks.payloadRequest(request);
+    }
     Transport.BytesResponse.Builder builder = Transport.BytesResponse.newBuilder();
     ByteString bytes = myCache.get(request.getId());
     if (bytes != null) {
-      builder.setContents(bytes);
+      builder.setContents(chunkIndex >= 0 ? BytesChunks.getChunk(bytes, chunkIndex) : bytes);
+    }
+    else {
+      EventStreamServer streamServer;
+      synchronized (myStreamEvents) {
+        streamServer = myStreamServers.get(request.getStreamId());
+      }
+      if (streamServer != null) {
+        // Like the datastore, chunks are read from the server one at a time.
+        bytes = chunkIndex >= 0 ? streamServer.lookupBytesChunk(request.getId(), chunkIndex) : streamServer.lookupBytes(request.getId());
+        if (bytes != null) {
+          builder.setContents(bytes);
+        }
+      }
     }
     responseObserver.onNext(builder.build());
     responseObserver.onCompleted();
@@ -365,6 +401,7 @@ public class FakeTransportService extends TransportServiceGrpc.TransportServiceI
     // runtime as possible.
     HashMap<Long, Transport.EventGroup.Builder> eventGroups = new HashMap<>();
     synchronized (myStreamEvents) {
+      myStreamServers.forEach((streamId, streamServer) -> streamServer.getEventDeque().drainTo(getListForStream(streamId)));
       for (long streamId : myStreamEvents.keySet()) {
         if (request.getStreamId() != EMPTY_REQUEST_VALUE && streamId != request.getStreamId()) {
           continue;
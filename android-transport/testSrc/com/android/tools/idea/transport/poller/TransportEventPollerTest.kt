@@ -22,13 +22,18 @@ import com.android.tools.idea.transport.faketransport.FakeGrpcServer
 import com.android.tools.idea.transport.faketransport.FakeTransportService
 import com.android.tools.pipeline.example.proto.Echo
 import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.Transport
 import com.google.common.truth.Truth.assertThat
 import com.google.common.util.concurrent.MoreExecutors
 import junit.framework.TestCase.fail
 import org.junit.Rule
+import io.grpc.stub.StreamObserver
 import org.junit.Test
 import java.util.ArrayList
+import java.util.Collections
+import java.util.concurrent.CopyOnWriteArrayList
 import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
 import java.util.concurrent.TimeUnit
 
 private const val TIMEOUT_MILLISECONDS: Long = 10000
@@ -41,6 +46,12 @@ class TransportEventPollerTest {
   @get:Rule
   val grpcServer = FakeGrpcServer.createFakeGrpcServer("TransportEventPollerTestChannel", transportService, transportService)!!
 
+  private val pushingTransportService = PushingTransportService(timer)
+
+  @get:Rule
+  val pushingGrpcServer = FakeGrpcServer.createFakeGrpcServer("TransportEventPollerTestPushingChannel", pushingTransportService,
+                                                              pushingTransportService)!!
+
   private fun generateEchoEvent(ts: Long) = Common.Event.newBuilder()
     .setTimestamp(ts)
     .setKind(Common.Event.Kind.ECHO)
@@ -435,4 +446,67 @@ class TransportEventPollerTest {
 
     assertThat(latch.await(TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS)).isEqualTo(true)
   }
+
+  /**
+   * Tests that when the server pushes new events, only the listeners that may receive them are polled
+   */
+  @Test
+  fun testPushedEventsOnlyPollMatchingListeners() {
+    val transportClient = TransportClient(pushingGrpcServer.name)
+    val executor = Executors.newSingleThreadScheduledExecutor()
+    // The poll period is long enough for all the polls but the first one to be triggered by pushed events.
+    val transportEventPoller = TransportEventPoller.createPoller(transportClient.transportStub, TimeUnit.HOURS.toNanos(1),
+                                                                  executorServiceForTest = executor)
+    try {
+      val firstEchoLatch = CountDownLatch(1)
+      val secondEchoLatch = CountDownLatch(2)
+      transportEventPoller.registerListener(TransportEventListener(
+        eventKind = Common.Event.Kind.ECHO,
+        callback = { firstEchoLatch.countDown(); secondEchoLatch.countDown(); false },
+        executor = MoreExecutors.directExecutor()))
+      transportEventPoller.registerListener(TransportEventListener(
+        eventKind = Common.Event.Kind.CPU_USAGE,
+        callback = { false },
+        executor = MoreExecutors.directExecutor()))
+
+      pushingTransportService.addEventToStream(1L, generateEchoEvent(1))
+      assertThat(firstEchoLatch.await(TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS)).isTrue()
+      // Wait for the pending polls to be done.
+      executor.submit {}.get(TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS)
+      pushingTransportService.requestedKinds.clear()
+
+      pushingTransportService.addEventToStream(1L, generateEchoEvent(2))
+      assertThat(secondEchoLatch.await(TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS)).isTrue()
+      executor.submit {}.get(TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS)
+      assertThat(pushingTransportService.requestedKinds).containsExactly(Common.Event.Kind.ECHO)
+    }
+    finally {
+      TransportEventPoller.stopPoller(transportEventPoller)
+      executor.shutdownNow()
+    }
+  }
+
+  /**
+   * Fake service that also pushes the events added to its streams, like the datastore does.
+   */
+  private class PushingTransportService(timer: FakeTimer) : FakeTransportService(timer, true) {
+    private val observers = CopyOnWriteArrayList<StreamObserver<Common.Event>>()
+    val requestedKinds: MutableList<Common.Event.Kind> = Collections.synchronizedList(ArrayList())
+
+    override fun getEvents(request: Transport.GetEventsRequest, responseObserver: StreamObserver<Common.Event>) {
+      responseObserver.onNext(Common.Event.getDefaultInstance())
+      observers.add(responseObserver)
+    }
+
+    override fun addEventToStream(streamId: Long, event: Common.Event) {
+      super.addEventToStream(streamId, event)
+      observers.forEach { it.onNext(event) }
+    }
+
+    override fun getEventGroups(request: Transport.GetEventGroupsRequest,
+                                responseObserver: StreamObserver<Transport.GetEventGroupsResponse>) {
+      requestedKinds.add(request.kind)
+      super.getEventGroups(request, responseObserver)
+    }
+  }
 }
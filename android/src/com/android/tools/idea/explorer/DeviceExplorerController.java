@@ -28,8 +28,10 @@ import com.android.tools.idea.explorer.fs.DeviceFileSystem;
 import com.android.tools.idea.explorer.fs.DeviceFileSystemService;
 import com.android.tools.idea.explorer.fs.DeviceFileSystemServiceListener;
 import com.android.tools.idea.explorer.fs.DeviceState;
+import com.android.tools.idea.explorer.fs.DirectoryTransferProgress;
 import com.android.tools.idea.explorer.fs.FileTransferProgress;
 import com.android.tools.idea.explorer.ui.TreeUtil;
+import com.android.tools.idea.flags.StudioFlags;
 import com.android.utils.FileUtils;
 import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.FutureCallback;
@@ -718,6 +720,17 @@ public class DeviceExplorerController {
 
     public ListenableFuture<Void> addDownloadOperationWork(@NotNull FileTransferOperationTracker tracker,
                                                            @NotNull DeviceFileEntryNode entryNode) {
+      boolean isDirectory = entryNode.getEntry().isDirectory() || entryNode.isSymbolicLinkToDirectory();
+      if (isDirectory && StudioFlags.DEVICE_EXPLORER_BULK_TRANSFER_ENABLED.get()) {
+        // Listing the whole tree here would list it a second time: the bulk download reports the work of the contents once it has listed
+        // them, and the node by node walk as it loads each directory.
+        FileTransferWorkEstimate estimate = new FileTransferWorkEstimate();
+        estimate.addDirectoryCount(1);
+        estimate.addWorkUnits(FileTransferWorkEstimator.getDirectoryWorkUnits());
+        tracker.addWorkEstimate(estimate);
+        return Futures.immediateFuture(null);
+      }
+
       FileTransferWorkEstimatorProgress progress = createFileTransferEstimatorProgress(tracker);
       ListenableFuture<FileTransferWorkEstimate> futureEstimate =
         myWorkEstimator.estimateDownloadWork(entryNode.getEntry(), entryNode.isSymbolicLinkToDirectory(), progress);
@@ -802,12 +815,65 @@ public class DeviceExplorerController {
       }
       tracker.getSummary().addDirectoryCount(1);
 
+      if (!StudioFlags.DEVICE_EXPLORER_BULK_TRANSFER_ENABLED.get()) {
+        return downloadDirectoryChildren(treeNode, localDirectoryPath, tracker);
+      }
+
+      // Try a bulk download first, and walk the tree node by node if the entry does not support it
+      DirectoryTransferProgress progress = createDirectoryTransferProgress(treeNode, tracker);
+      ListenableFuture<Boolean> futureBulkDownload = treeNode.getEntry().downloadDirectory(localDirectoryPath, progress);
+      logFuture(futureBulkDownload,
+                millis -> String.format(Locale.US, "Downloaded directory in %,d msec: %s", millis, treeNode.getEntry().getFullPath()));
+
+      SettableFuture<Void> futureResult = SettableFuture.create();
+      myEdtExecutor.addConsumer(futureBulkDownload, (downloaded, throwable) -> {
+        if (throwable != null) {
+          tracker.addProblem(throwable);
+          futureResult.set(null);
+        }
+        else if (downloaded) {
+          futureResult.set(null);
+        }
+        else {
+          futureResult.setFuture(downloadDirectoryChildren(treeNode, localDirectoryPath, tracker));
+        }
+      });
+      return futureResult;
+    }
+
+    /**
+     * Adds the work of the direct children of a directory downloaded node by node in bulk mode, where the work of the directories is not
+     * estimated ahead of the transfer. The work of the child directories is added the same way when they are downloaded.
+     */
+    private static void addChildrenWork(@NotNull FileTransferOperationTracker tracker, @NotNull List<DeviceFileEntryNode> childNodes) {
+      FileTransferWorkEstimate estimate = new FileTransferWorkEstimate();
+      for (DeviceFileEntryNode node : childNodes) {
+        if (node.getEntry().isDirectory()) {
+          estimate.addDirectoryCount(1);
+          estimate.addWorkUnits(FileTransferWorkEstimator.getDirectoryWorkUnits());
+        }
+        else {
+          estimate.addFileCount(1);
+          estimate.addWorkUnits(FileTransferWorkEstimator.getFileWorkUnits() +
+                                FileTransferWorkEstimator.getFileContentsWorkUnits(node.getEntry().getSize()));
+        }
+      }
+      tracker.addWorkEstimate(estimate);
+    }
+
+    @NotNull
+    private ListenableFuture<Void> downloadDirectoryChildren(@NotNull DeviceFileEntryNode treeNode,
+                                                             @NotNull Path localDirectoryPath,
+                                                             @NotNull FileTransferOperationTracker tracker) {
       SettableFuture<Void> futureResult = SettableFuture.create();
 
       ListenableFuture<Void> futureLoadChildren = loadNodeChildren(treeNode);
       myEdtExecutor.addCallback(futureLoadChildren, new FutureCallback<Void>() {
         @Override
         public void onSuccess(@Nullable Void result) {
+          if (StudioFlags.DEVICE_EXPLORER_BULK_TRANSFER_ENABLED.get()) {
+            addChildrenWork(tracker, treeNode.getChildEntryNodes());
+          }
           ListenableFuture<Void> futureDownloadChildren = executeFuturesInSequence(treeNode.getChildEntryNodes().iterator(), node -> {
             Path nodePath = localDirectoryPath.resolve(node.getEntry().getName());
             return downloadSingleNode(node, nodePath, tracker);
@@ -1422,6 +1488,65 @@ public class DeviceExplorerController {
       return result.get();
     }
 
+    /**
+     * Reports the progress of the bulk download of a directory the same way node by node downloads do: the directory of
+     * {@code treeNode} itself is already accounted for by the caller.
+     */
+    @NotNull
+    private DirectoryTransferProgress createDirectoryTransferProgress(@NotNull DeviceFileEntryNode treeNode,
+                                                                      @NotNull FileTransferOperationTracker tracker) {
+      String rootPath = treeNode.getEntry().getFullPath();
+      Map<String, Long> currentBytes = new HashMap<>();
+      return new DirectoryTransferProgress() {
+        @Override
+        public void descendantsListed(int fileCount, int directoryCount, long byteCount) {
+          FileTransferWorkEstimate estimate = new FileTransferWorkEstimate();
+          estimate.addFileCount(fileCount);
+          estimate.addDirectoryCount(directoryCount);
+          estimate.addWorkUnits(fileCount * FileTransferWorkEstimator.getFileWorkUnits() +
+                                directoryCount * FileTransferWorkEstimator.getDirectoryWorkUnits() +
+                                FileTransferWorkEstimator.getFileContentsWorkUnits(byteCount));
+          tracker.addWorkEstimate(estimate);
+          tracker.showProgress();
+        }
+
+        @Override
+        public void directoryTransferred(@NotNull String fullPath) {
+          if (!fullPath.equals(rootPath)) {
+            tracker.processDirectory();
+            tracker.getSummary().addDirectoryCount(1);
+          }
+        }
+
+        @Override
+        public void bytesTransferred(@NotNull String fullPath, long byteCount, long totalBytes) {
+          long fileBytes = currentBytes.merge(fullPath, byteCount, Long::sum);
+          tracker.processFileBytes(byteCount);
+          tracker.setDownloadFileText(fullPath, fileBytes, totalBytes);
+          tracker.getSummary().addByteCount(byteCount);
+        }
+
+        @Override
+        public void fileTransferred(@NotNull String fullPath) {
+          currentBytes.remove(fullPath);
+          tracker.processFile();
+          tracker.getSummary().addFileCount(1);
+        }
+
+        @Override
+        public void fileFailed(@NotNull String fullPath, @NotNull Throwable error) {
+          currentBytes.remove(fullPath);
+          tracker.processFile();
+          tracker.addProblem(new Exception(String.format("Error saving contents of device file %s", fullPath), error));
+        }
+
+        @Override
+        public boolean isCancelled() {
+          return tracker.isCancelled();
+        }
+      };
+    }
+
     @NotNull
     private ListenableFuture<Long> downloadFileEntry(@NotNull DeviceFileEntryNode treeNode,
                                                      @NotNull Path localPath,
@@ -71,7 +71,8 @@ public class FileTransferOperationTracker extends LongRunningOperationTracker {
       return;
     }
 
-    setProgress((double)myFinishedWorkUnits / (double)myTotalWorkUnits);
+    // Directories downloaded as an archive are not listed ahead of the transfer, so their contents are not part of the total
+    setProgress(Math.min(1.0, (double)myFinishedWorkUnits / (double)myTotalWorkUnits));
   }
 
   public void processDirectory() {
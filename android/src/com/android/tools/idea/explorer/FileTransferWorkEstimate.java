@@ -38,11 +38,11 @@ public class FileTransferWorkEstimate {
     return myWorkUnits;
   }
 
-  public void addFileCount(@SuppressWarnings("SameParameterValue") int count) {
+  public void addFileCount(int count) {
     myFileCount += count;
   }
 
-  public void addDirectoryCount(@SuppressWarnings("SameParameterValue") int count) {
+  public void addDirectoryCount(int count) {
     myDirectoryCount += count;
   }
 
@@ -54,6 +54,7 @@ public class AdbDeviceCapabilities {
   @Nullable private Boolean mySupportsCpCommand;
   @Nullable private Boolean myEscapingLs;
   @Nullable private Boolean mySupportsMkTempCommand;
+  @Nullable private Boolean mySupportsTarCommand;
 
   public AdbDeviceCapabilities(@NotNull IDevice device) {
     myDevice = device;
@@ -119,6 +120,16 @@ public class AdbDeviceCapabilities {
     return mySupportsCpCommand;
   }
 
+  public synchronized boolean supportsTarCommand()
+    throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException, IOException, SyncException {
+    assertNotDispatchThread();
+
+    if (mySupportsTarCommand == null) {
+      mySupportsTarCommand = supportsTarCommandWorker();
+    }
+    return mySupportsTarCommand;
+  }
+
   synchronized boolean hasEscapingLs()
     throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException, IOException {
     assertNotDispatchThread();
@@ -289,6 +300,37 @@ public class AdbDeviceCapabilities {
     }
   }
 
+  private boolean supportsTarCommandWorker()
+    throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException, IOException, SyncException {
+
+    String fileName = ".__temp_tar_test_file__.tmp";
+    try (ScopedRemoteFile file = new ScopedRemoteFile(AdbPathUtil.resolve(PROBE_FILES_TEMP_PATH, fileName))) {
+      // Create the remote file used for testing capability
+      file.create();
+
+      // Archive the file to the standard output, the way directories are archived when downloaded
+      String command = new AdbShellCommandBuilder()
+        .withText("tar -c -f - -C ")
+        .withEscapedPath(PROBE_FILES_TEMP_PATH)
+        .withText(" ")
+        .withEscapedPath(fileName)
+        .withText(" >/dev/null")
+        .build();
+      AdbShellCommandResult commandResult = AdbShellCommandsUtil.executeCommand(myDevice, command);
+      try {
+        commandResult.throwIfError();
+        return true;
+      }
+      catch (AdbShellCommandException e) {
+        LOGGER.info(String.format("Device \"%s\" does not seem to support the \"tar\" command: %s",
+                                  DeviceUtil.toDebugString(myDevice),
+                                  getCommandOutputExtract(commandResult)),
+                    e);
+        return false;
+      }
+    }
+  }
+
   private boolean hasEscapingLsWorker()
     throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException, IOException {
 
@@ -16,7 +16,9 @@
 package com.android.tools.idea.explorer.adbimpl;
 
 import com.android.tools.idea.explorer.fs.DeviceFileEntry;
+import com.android.tools.idea.explorer.fs.DirectoryTransferProgress;
 import com.android.tools.idea.explorer.fs.FileTransferProgress;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.jetbrains.annotations.NotNull;
 
@@ -241,6 +243,24 @@ public class AdbDeviceDataDirectoryEntry extends AdbDeviceForwardingFileEntry {
       return myDevice.getAdbFileTransfer().downloadFileViaTempLocation(getFullPath(), getSize(), localPath, progress, myPackageName);
     }
 
+    @NotNull
+    @Override
+    public ListenableFuture<Boolean> downloadDirectory(@NotNull Path localPath, @NotNull DirectoryTransferProgress progress) {
+      // Note: For the same reason as "downloadFile", we archive the whole directory to a temp. location with "tar",
+      // then pull and extract that single archive.
+      ListenableFuture<Boolean> futureSupportsTar =
+        myDevice.getTaskExecutor().executeAsync(() -> myDevice.getCapabilities().supportsTarCommand());
+      return myDevice.getTaskExecutor().transformAsync(futureSupportsTar, supportsTar -> {
+        assert supportsTar != null;
+        if (!supportsTar) {
+          return Futures.immediateFuture(false);
+        }
+        ListenableFuture<Void> futureDownload =
+          myDevice.getAdbFileTransfer().downloadDirectoryViaArchive(getFullPath(), localPath, progress, myPackageName);
+        return myDevice.getTaskExecutor().transform(futureDownload, aVoid -> true);
+      });
+    }
+
     @NotNull
     @Override
     public ListenableFuture<Void> uploadFile(@NotNull Path localPath, @NotNull String fileName, @NotNull FileTransferProgress progress) {
@@ -20,6 +20,7 @@ import com.android.ddmlib.ShellCommandUnresponsiveException;
 import com.android.ddmlib.SyncException;
 import com.android.ddmlib.TimeoutException;
 import com.android.tools.idea.explorer.fs.DeviceFileEntry;
+import com.android.tools.idea.explorer.fs.DirectoryTransferProgress;
 import com.android.tools.idea.explorer.fs.FileTransferProgress;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -27,6 +28,7 @@ import java.io.IOException;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -108,6 +110,29 @@ public class AdbDeviceDirectFileEntry extends AdbDeviceFileEntry {
     });
   }
 
+  @NotNull
+  @Override
+  public ListenableFuture<Boolean> downloadDirectory(@NotNull Path localPath,
+                                                     @NotNull DirectoryTransferProgress progress) {
+    // Note: If the device is *not* root, but supports "su 0", files may only be readable via a temp. directory,
+    //       which "downloadFile" falls back to one file at a time, so we let the caller do that.
+    ListenableFuture<Boolean> futureSupported = myDevice.getTaskExecutor().executeAsync(() -> !isDeviceSuAndNotRoot());
+    return myDevice.getTaskExecutor().transformAsync(futureSupported, supported -> {
+      assert supported != null;
+      if (!supported) {
+        return Futures.immediateFuture(false);
+      }
+
+      ListenableFuture<Map<String, List<AdbFileListingEntry>>> futureDescendants =
+        myDevice.getAdbFileListing().getDescendantsRunAs(myEntry, myRunAs);
+      ListenableFuture<Void> futureDownload = myDevice.getTaskExecutor().transformAsync(futureDescendants, descendants -> {
+        assert descendants != null;
+        return myDevice.getAdbFileTransfer().downloadDirectory(getFullPath(), descendants, localPath, progress);
+      });
+      return myDevice.getTaskExecutor().transform(futureDownload, aVoid -> true);
+    });
+  }
+
   @NotNull
   @Override
   public ListenableFuture<Void> uploadFile(@NotNull Path localPath,
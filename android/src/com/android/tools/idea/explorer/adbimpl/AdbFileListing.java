@@ -27,7 +27,10 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Executor;
 import java.util.regex.MatchResult;
@@ -41,6 +44,7 @@ import static com.android.ddmlib.FileListingService.LS_L_PATTERN;
 public class AdbFileListing {
   @NotNull public static final Logger LOGGER = Logger.getInstance(AdbFileListing.class);
   @NotNull private static final Pattern BACKSLASH = Pattern.compile("\\", Pattern.LITERAL);
+  @NotNull private static final Pattern REPEATED_SEPARATORS = Pattern.compile("/{2,}");
 
   @NotNull private final IDevice myDevice;
   @NotNull private AdbDeviceCapabilities myDeviceCapabilities;
@@ -86,6 +90,52 @@ public class AdbFileListing {
     });
   }
 
+  /**
+   * Lists the entries under a directory, at any depth, with a single "ls -l -R" command instead of one "ls -l" per directory. The result
+   * maps the full path of each directory of the tree, including {@code parentEntry}, to its children. Symbolic links are not followed.
+   */
+  @NotNull
+  public ListenableFuture<Map<String, List<AdbFileListingEntry>>> getDescendantsRunAs(@NotNull AdbFileListingEntry parentEntry,
+                                                                                      @Nullable String runAs) {
+    return myExecutor.executeAsync(() -> {
+      String command = getCommand(runAs, "ls -l -R ").withDirectoryEscapedPath(parentEntry.getFullPath()).build(); //$NON-NLS-1$
+
+      AdbShellCommandResult commandResult = AdbShellCommandsUtil.executeCommand(myDevice, command);
+      boolean escaping = myDeviceCapabilities.hasEscapingLs();
+
+      // The listing of each directory starts with a "path:" line, and lines before the first one list the parent entry
+      Map<String, List<AdbFileListingEntry>> descendants = new LinkedHashMap<>();
+      AdbFileListingEntry directory = parentEntry;
+      List<AdbFileListingEntry> children = descendants.computeIfAbsent(directory.getFullPath(), path -> new ArrayList<>());
+      for (String line : commandResult.getOutput()) {
+        if (line.endsWith(":") && !LS_L_PATTERN.matcher(line).matches()) {
+          String path = line.substring(0, line.length() - 1);
+          if (escaping) {
+            path = BACKSLASH.matcher(path).replaceAll("");
+          }
+          // Some "ls" implementations join the path of the argument, which ends with "/", and child names with another "/"
+          path = REPEATED_SEPARATORS.matcher(path).replaceAll(AdbPathUtil.FILE_SEPARATOR);
+          if (path.length() > 1 && path.endsWith(AdbPathUtil.FILE_SEPARATOR)) {
+            path = path.substring(0, path.length() - 1);
+          }
+          directory = new AdbFileListingEntryBuilder().setPath(path).setKind(AdbFileListingEntry.EntryKind.DIRECTORY).build();
+          children = descendants.computeIfAbsent(path, key -> new ArrayList<>());
+          continue;
+        }
+
+        AdbFileListingEntry entry = processLsOutputLine(line, escaping, directory);
+        if (entry != null) {
+          children.add(entry);
+        }
+      }
+
+      if (descendants.values().stream().allMatch(List::isEmpty) && commandResult.isError()) {
+        commandResult.throwIfError();
+      }
+      return descendants;
+    });
+  }
+
   /**
    * Determine if a symlink entry points to a directory. This is a best effort process,
    * as the target of the symlink might not be accessible, in which case the future value
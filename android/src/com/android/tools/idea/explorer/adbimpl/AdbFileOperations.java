@@ -237,6 +237,23 @@ public class AdbFileOperations {
     });
   }
 
+  /**
+   * Writes a tar archive of the contents of a directory to an existing file, which must be writable by the {@code runAs} user.
+   */
+  @NotNull
+  public ListenableFuture<Void> archiveDirectoryRunAs(@NotNull String directory, @NotNull String archivePath, @Nullable String runAs) {
+    return myExecutor.executeAsync(() -> {
+      String command = getCommand(runAs, "tar -c -f - -C ") //$NON-NLS-1$
+        .withEscapedPath(directory)
+        .withText(" . >") //$NON-NLS-1$
+        .withEscapedPath(archivePath)
+        .build();
+      AdbShellCommandResult commandResult = AdbShellCommandsUtil.executeCommand(myDevice, command);
+      commandResult.throwIfError();
+      return null;
+    });
+  }
+
   @NotNull
   public ListenableFuture<String> createTempFile(@NotNull String tempPath) {
     return createTempFileRunAs(tempPath, null);
@@ -17,18 +17,29 @@ package com.android.tools.idea.explorer.adbimpl;
 
 import static com.android.tools.idea.explorer.adbimpl.AdbPathUtil.DEVICE_TEMP_DIRECTORY;
 
+import com.android.ddmlib.AdbCommandRejectedException;
 import com.android.ddmlib.IDevice;
 import com.android.ddmlib.SyncException;
 import com.android.ddmlib.SyncService;
+import com.android.ddmlib.TimeoutException;
 import com.android.tools.idea.concurrency.FutureCallbackExecutor;
+import com.android.tools.idea.explorer.fs.DirectoryTransferProgress;
 import com.android.tools.idea.explorer.fs.FileTransferProgress;
 import com.android.tools.idea.explorer.fs.ThrottledProgress;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.intellij.openapi.diagnostic.Logger;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -36,6 +47,11 @@ import org.jetbrains.annotations.Nullable;
 public class AdbFileTransfer {
   @NotNull private static Logger LOGGER = Logger.getInstance(AdbFileTransfer.class);
 
+  /**
+   * The number of sync connections used at the same time to download the files of a directory
+   */
+  private static final int DIRECTORY_TRANSFER_CONNECTION_COUNT = 4;
+
   @NotNull private final IDevice myDevice;
   @NotNull private final AdbFileOperations myFileOperations;
   @NotNull private final FutureCallbackExecutor myProgressExecutor;
@@ -93,6 +109,95 @@ public class AdbFileTransfer {
   }
 
 
+  /**
+   * Downloads the directory tree at {@code remotePath}, as listed by {@link AdbFileListing#getDescendantsRunAs}, to {@code localPath}.
+   * Instead of opening a sync connection per file, {@link #DIRECTORY_TRANSFER_CONNECTION_COUNT} connections are opened and each of
+   * them pulls files one after the other, until all files are downloaded. Symbolic links are skipped.
+   */
+  @NotNull
+  public ListenableFuture<Void> downloadDirectory(@NotNull String remotePath,
+                                                  @NotNull Map<String, List<AdbFileListingEntry>> descendants,
+                                                  @NotNull Path localPath,
+                                                  @NotNull DirectoryTransferProgress progress) {
+    ListenableFuture<Queue<FileDownload>> futureFiles = myTaskExecutor.executeAsync(() -> {
+      DescendantCounts counts = new DescendantCounts();
+      counts.add(remotePath, descendants);
+      myProgressExecutor.execute(() -> progress.descendantsListed(counts.myFileCount, counts.myDirectoryCount, counts.myByteCount));
+
+      Queue<FileDownload> files = new ConcurrentLinkedQueue<>();
+      createLocalDirectories(remotePath, descendants, localPath, files, progress);
+      return files;
+    });
+
+    ListenableFuture<List<Void>> futureDownloads = myTaskExecutor.transformAsync(futureFiles, files -> {
+      assert files != null;
+      long startTime = System.nanoTime();
+      int fileCount = files.size();
+      List<ListenableFuture<Void>> workers = new ArrayList<>();
+      for (int i = 0; i < Math.min(DIRECTORY_TRANSFER_CONNECTION_COUNT, fileCount); i++) {
+        workers.add(myTaskExecutor.executeAsync(() -> downloadFilesWorker(files, progress)));
+      }
+      ListenableFuture<List<Void>> futureWorkers = Futures.allAsList(workers);
+      myTaskExecutor.addListener(futureWorkers, () -> {
+        long endTime = System.nanoTime();
+        LOGGER.info(String.format(Locale.US, "Pull of %,d files took %,d ms to execute: \"%s\" -> \"%s\"",
+                                  fileCount, (endTime - startTime) / 1_000_000, remotePath, localPath));
+      });
+      return futureWorkers;
+    });
+
+    return myTaskExecutor.transformAsync(futureDownloads, results -> {
+      if (progress.isCancelled()) {
+        return Futures.immediateCancelledFuture();
+      }
+      return Futures.immediateFuture(null);
+    });
+  }
+
+  /**
+   * Downloads the directory tree at {@code remotePath}, only readable by the {@code runAs} user, to {@code localPath}: the directory is
+   * archived with "tar" to a temporary file of the device, which is pulled and extracted locally, instead of copying and pulling each
+   * file through a temporary file. Symbolic links are skipped.
+   */
+  @NotNull
+  public ListenableFuture<Void> downloadDirectoryViaArchive(@NotNull String remotePath,
+                                                            @NotNull Path localPath,
+                                                            @NotNull DirectoryTransferProgress progress,
+                                                            @Nullable String runAs) {
+    ListenableFuture<String> futureTempFile = myFileOperations.createTempFile(DEVICE_TEMP_DIRECTORY);
+    return myTaskExecutor.transformAsync(futureTempFile, tempFile -> {
+      assert tempFile != null;
+
+      // Archive the remote directory to the temporary remote location
+      ListenableFuture<Void> futureArchive = myFileOperations.archiveDirectoryRunAs(remotePath, tempFile, runAs);
+      ListenableFuture<Void> futureExtract = myTaskExecutor.transformAsync(futureArchive, aVoid -> {
+        Path localArchive = Files.createTempFile("device-explorer", ".tar");
+
+        // Download the archive to a local temporary file, then extract it
+        ListenableFuture<Void> futureDownload = downloadFile(tempFile, -1, localArchive, new ArchiveProgress(remotePath, progress));
+        ListenableFuture<Void> futureExtracted = myTaskExecutor.transform(futureDownload, aVoid2 -> {
+          extractArchive(localArchive, remotePath, localPath, progress);
+          return null;
+        });
+
+        // Ensure the local archive is deleted in all cases
+        return myTaskExecutor.finallySync(futureExtracted, () -> {
+          try {
+            Files.deleteIfExists(localArchive);
+          }
+          catch (IOException e) {
+            LOGGER.warn(String.format("Error deleting temporary file \"%s\"", localArchive), e);
+          }
+        });
+      });
+
+      // Ensure temporary remote file is deleted in all cases (after download success *or* error)
+      return myTaskExecutor.finallyAsync(futureExtract,
+                                         () -> myFileOperations.deleteFile(tempFile));
+    });
+  }
+
+
   @NotNull
   public ListenableFuture<Void> uploadFile(@NotNull Path localPath,
                                            @NotNull String remotePath,
@@ -194,15 +299,158 @@ public class AdbFileTransfer {
     });
   }
 
+  private void createLocalDirectories(@NotNull String remotePath,
+                                      @NotNull Map<String, List<AdbFileListingEntry>> descendants,
+                                      @NotNull Path localPath,
+                                      @NotNull Queue<FileDownload> files,
+                                      @NotNull DirectoryTransferProgress progress) throws IOException {
+    Files.createDirectories(localPath);
+    myProgressExecutor.execute(() -> progress.directoryTransferred(remotePath));
+
+    for (AdbFileListingEntry entry : descendants.getOrDefault(remotePath, Collections.emptyList())) {
+      Path entryLocalPath = localPath.resolve(entry.getName());
+      if (entry.isDirectory()) {
+        createLocalDirectories(entry.getFullPath(), descendants, entryLocalPath, files, progress);
+      }
+      else if (entry.isFile()) {
+        files.add(new FileDownload(entry, entryLocalPath));
+      }
+    }
+  }
+
+  /**
+   * Pulls files from the shared {@code files} queue over a single sync connection, until the queue is empty. A file that cannot be
+   * pulled is reported to {@code progress}, and the connection is re-opened before pulling the next file, as the sync protocol may
+   * be left in an unknown state.
+   */
+  @Nullable
+  private Void downloadFilesWorker(@NotNull Queue<FileDownload> files, @NotNull DirectoryTransferProgress progress)
+    throws IOException, TimeoutException, AdbCommandRejectedException {
+    SyncService syncService = openSyncService();
+    try {
+      FileDownload file;
+      while (!progress.isCancelled() && (file = files.poll()) != null) {
+        String remotePath = file.myEntry.getFullPath();
+        try {
+          syncService.pullFile(remotePath,
+                               file.myLocalPath.toString(),
+                               new DirectoryFileProgressMonitor(myProgressExecutor, progress, remotePath, file.myEntry.getSize()));
+          myProgressExecutor.execute(() -> progress.fileTransferred(remotePath));
+        }
+        catch (SyncException syncError) {
+          if (syncError.wasCanceled()) {
+            break;
+          }
+          LOGGER.info(String.format("Error pulling file from \"%s\" to \"%s\"", remotePath, file.myLocalPath), syncError);
+          myProgressExecutor.execute(() -> progress.fileFailed(remotePath, syncError));
+          syncService.close();
+          syncService = openSyncService();
+        }
+      }
+      return null;
+    }
+    finally {
+      syncService.close();
+    }
+  }
+
+  private void extractArchive(@NotNull Path archive,
+                              @NotNull String remotePath,
+                              @NotNull Path localPath,
+                              @NotNull DirectoryTransferProgress progress) throws IOException {
+    Files.createDirectories(localPath);
+    myProgressExecutor.execute(() -> progress.directoryTransferred(remotePath));
+
+    try (InputStream input = Files.newInputStream(archive)) {
+      new TarExtractor(input, localPath).extract(new TarExtractor.Listener() {
+        @Override
+        public void directoryExtracted(@NotNull String relativePath) {
+          String fullPath = AdbPathUtil.resolve(remotePath, relativePath);
+          myProgressExecutor.execute(() -> progress.directoryTransferred(fullPath));
+        }
+
+        @Override
+        public void fileExtracted(@NotNull String relativePath, long size) {
+          String fullPath = AdbPathUtil.resolve(remotePath, relativePath);
+          myProgressExecutor.execute(() -> progress.fileTransferred(fullPath));
+        }
+      });
+    }
+  }
+
   @NotNull
   private ListenableFuture<SyncService> getSyncService() {
-    return myTaskExecutor.executeAsync(() -> {
-      SyncService sync = myDevice.getSyncService();
-      if (sync == null) {
-        throw new IOException("Unable to open synchronization service to device");
+    return myTaskExecutor.executeAsync(this::openSyncService);
+  }
+
+  @NotNull
+  private SyncService openSyncService() throws IOException, TimeoutException, AdbCommandRejectedException {
+    SyncService sync = myDevice.getSyncService();
+    if (sync == null) {
+      throw new IOException("Unable to open synchronization service to device");
+    }
+    return sync;
+  }
+
+  /**
+   * The number of files and directories below a directory, and the size of the files, as they are downloaded by
+   * {@link #createLocalDirectories}.
+   */
+  private static class DescendantCounts {
+    private int myFileCount;
+    private int myDirectoryCount;
+    private long myByteCount;
+
+    private void add(@NotNull String remotePath, @NotNull Map<String, List<AdbFileListingEntry>> descendants) {
+      for (AdbFileListingEntry entry : descendants.getOrDefault(remotePath, Collections.emptyList())) {
+        if (entry.isDirectory()) {
+          myDirectoryCount++;
+          add(entry.getFullPath(), descendants);
+        }
+        else if (entry.isFile()) {
+          myFileCount++;
+          myByteCount += Math.max(entry.getSize(), 0);
+        }
       }
-      return sync;
-    });
+    }
+  }
+
+  private static class FileDownload {
+    @NotNull private final AdbFileListingEntry myEntry;
+    @NotNull private final Path myLocalPath;
+
+    FileDownload(@NotNull AdbFileListingEntry entry, @NotNull Path localPath) {
+      myEntry = entry;
+      myLocalPath = localPath;
+    }
+  }
+
+  /**
+   * Forwards the progress of the download of the archive of a directory to a {@link DirectoryTransferProgress}, as the transfer of
+   * the bytes of the directory itself.
+   */
+  private static class ArchiveProgress implements FileTransferProgress {
+    @NotNull private final String myRemotePath;
+    @NotNull private final DirectoryTransferProgress myProgress;
+    private long myCurrentBytes;
+
+    ArchiveProgress(@NotNull String remotePath, @NotNull DirectoryTransferProgress progress) {
+      myRemotePath = remotePath;
+      myProgress = progress;
+    }
+
+    @Override
+    public void progress(long currentBytes, long totalBytes) {
+      if (currentBytes > myCurrentBytes) {
+        myProgress.bytesTransferred(myRemotePath, currentBytes - myCurrentBytes, totalBytes);
+        myCurrentBytes = currentBytes;
+      }
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return myProgress.isCancelled();
+    }
   }
 
   /**
@@ -261,4 +509,65 @@ public class AdbFileTransfer {
       }
     }
   }
+
+  /**
+   * Forward callbacks from a {@link SyncService.ISyncProgressMonitor} of one of the files of a directory transfer to a
+   * {@link DirectoryTransferProgress}, as byte count increments, using the provided {@link Executor}.
+   */
+  private static class DirectoryFileProgressMonitor implements SyncService.ISyncProgressMonitor {
+    private static final int PROGRESS_REPORT_INTERVAL_MILLIS = 50;
+    @NotNull private final Executor myCallbackExecutor;
+    @NotNull private final DirectoryTransferProgress myProgress;
+    @NotNull private final String myRemotePath;
+    @NotNull private final ThrottledProgress myThrottledProgress;
+    private final long myTotalBytes;
+    private long myPendingBytes;
+
+    public DirectoryFileProgressMonitor(@NotNull Executor callbackExecutor,
+                                        @NotNull DirectoryTransferProgress progress,
+                                        @NotNull String remotePath,
+                                        long totalBytes) {
+      myCallbackExecutor = callbackExecutor;
+      myProgress = progress;
+      myRemotePath = remotePath;
+      myTotalBytes = totalBytes;
+      myThrottledProgress = new ThrottledProgress(PROGRESS_REPORT_INTERVAL_MILLIS);
+    }
+
+    @Override
+    public void start(int totalWork) {
+    }
+
+    @Override
+    public void stop() {
+      reportPendingBytes();
+    }
+
+    @Override
+    public boolean isCanceled() {
+      return myProgress.isCancelled();
+    }
+
+    @Override
+    public void startSubTask(String name) {
+      assert false : "A single file sync should not have multiple tasks";
+    }
+
+    @Override
+    public void advance(int work) {
+      myPendingBytes += work;
+      if (myThrottledProgress.check()) {
+        reportPendingBytes();
+      }
+    }
+
+    private void reportPendingBytes() {
+      if (myPendingBytes > 0) {
+        // Capture value for lambda (since lambda may be executed after some delay)
+        final long byteCount = myPendingBytes;
+        myCallbackExecutor.execute(() -> myProgress.bytesTransferred(myRemotePath, byteCount, myTotalBytes));
+        myPendingBytes = 0;
+      }
+    }
+  }
 }
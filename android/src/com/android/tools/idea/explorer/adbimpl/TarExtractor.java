@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.explorer.adbimpl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Extracts the directories and regular files of a tar archive written by the "tar" command of a device (toybox or busybox), i.e.
+ * ustar entries with GNU long names or pax extended headers for long paths. Other entries, such as symbolic links, are skipped.
+ */
+final class TarExtractor {
+  private static final int BLOCK_SIZE = 512;
+
+  private static final int NAME_OFFSET = 0;
+  private static final int NAME_LENGTH = 100;
+  private static final int SIZE_OFFSET = 124;
+  private static final int SIZE_LENGTH = 12;
+  private static final int TYPE_OFFSET = 156;
+  private static final int MAGIC_OFFSET = 257;
+  private static final int PREFIX_OFFSET = 345;
+  private static final int PREFIX_LENGTH = 155;
+
+  private static final byte TYPE_FILE = '0';
+  private static final byte TYPE_OLD_FILE = 0;
+  private static final byte TYPE_CONTIGUOUS_FILE = '7';
+  private static final byte TYPE_DIRECTORY = '5';
+  private static final byte TYPE_GNU_LONG_NAME = 'L';
+  private static final byte TYPE_PAX_HEADER = 'x';
+
+  interface Listener {
+    void directoryExtracted(@NotNull String relativePath);
+
+    void fileExtracted(@NotNull String relativePath, long size);
+  }
+
+  @NotNull private final InputStream myInput;
+  @NotNull private final Path myDirectory;
+  @NotNull private final byte[] myBuffer = new byte[64 * BLOCK_SIZE];
+
+  TarExtractor(@NotNull InputStream input, @NotNull Path directory) {
+    myInput = input;
+    myDirectory = directory.toAbsolutePath().normalize();
+  }
+
+  /**
+   * Extracts all the entries of the archive into the directory, which must exist. Entries that would be extracted outside of the
+   * directory make the extraction fail.
+   */
+  void extract(@NotNull Listener listener) throws IOException {
+    byte[] header = new byte[BLOCK_SIZE];
+    String longName = null;
+    while (readHeader(header)) {
+      long size = parseSize(header);
+      byte type = header[TYPE_OFFSET];
+
+      if (type == TYPE_GNU_LONG_NAME) {
+        longName = parseString(readData(size), 0, (int)size);
+        continue;
+      }
+      if (type == TYPE_PAX_HEADER) {
+        String path = parsePaxPath(readData(size));
+        if (path != null) {
+          longName = path;
+        }
+        continue;
+      }
+
+      String name = longName != null ? longName : parseName(header);
+      longName = null;
+      String relativePath = normalizeName(name);
+      if (type == TYPE_DIRECTORY) {
+        if (!relativePath.isEmpty()) {
+          Files.createDirectories(resolve(relativePath));
+          listener.directoryExtracted(relativePath);
+        }
+        skip(size);
+      }
+      else if ((type == TYPE_FILE || type == TYPE_OLD_FILE || type == TYPE_CONTIGUOUS_FILE) && !relativePath.isEmpty()) {
+        Path path = resolve(relativePath);
+        Files.createDirectories(path.getParent());
+        try (OutputStream output = Files.newOutputStream(path)) {
+          copy(output, size);
+        }
+        listener.fileExtracted(relativePath, size);
+      }
+      else {
+        skip(size);
+      }
+    }
+  }
+
+  private boolean readHeader(@NotNull byte[] header) throws IOException {
+    int count = readFully(header, 0, BLOCK_SIZE);
+    if (count == 0) {
+      return false;
+    }
+    if (count < BLOCK_SIZE) {
+      throw new EOFException("Truncated tar header");
+    }
+    for (byte b : header) {
+      if (b != 0) {
+        return true;
+      }
+    }
+    // The archive ends with zero blocks
+    return false;
+  }
+
+  @NotNull
+  private Path resolve(@NotNull String relativePath) throws IOException {
+    Path path = myDirectory.resolve(relativePath).normalize();
+    if (!path.startsWith(myDirectory) || path.equals(myDirectory)) {
+      throw new IOException(String.format("Archive entry \"%s\" is outside of the destination directory", relativePath));
+    }
+    return path;
+  }
+
+  @NotNull
+  private byte[] readData(long size) throws IOException {
+    if (size > Integer.MAX_VALUE - BLOCK_SIZE) {
+      throw new IOException("Tar header entry is too large");
+    }
+    byte[] data = new byte[(int)size];
+    if (readFully(data, 0, data.length) < data.length) {
+      throw new EOFException("Truncated tar header entry");
+    }
+    skipPadding(size);
+    return data;
+  }
+
+  private void copy(@NotNull OutputStream output, long size) throws IOException {
+    long remaining = size;
+    while (remaining > 0) {
+      int count = myInput.read(myBuffer, 0, (int)Math.min(remaining, myBuffer.length));
+      if (count < 0) {
+        throw new EOFException("Truncated tar entry");
+      }
+      output.write(myBuffer, 0, count);
+      remaining -= count;
+    }
+    skipPadding(size);
+  }
+
+  private void skip(long size) throws IOException {
+    copy(OutputStream.nullOutputStream(), size);
+  }
+
+  private void skipPadding(long size) throws IOException {
+    int padding = (int)((BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE);
+    if (readFully(myBuffer, 0, padding) < padding) {
+      throw new EOFException("Truncated tar entry");
+    }
+  }
+
+  private int readFully(@NotNull byte[] buffer, int offset, int length) throws IOException {
+    int total = 0;
+    while (total < length) {
+      int count = myInput.read(buffer, offset + total, length - total);
+      if (count < 0) {
+        break;
+      }
+      total += count;
+    }
+    return total;
+  }
+
+  @NotNull
+  private static String parseName(@NotNull byte[] header) {
+    String name = parseString(header, NAME_OFFSET, NAME_LENGTH);
+    // Only POSIX headers ("ustar\0") have a prefix, GNU headers ("ustar ") store other fields there
+    if (parseString(header, MAGIC_OFFSET, 6).equals("ustar") && header[MAGIC_OFFSET + 5] == 0) {
+      String prefix = parseString(header, PREFIX_OFFSET, PREFIX_LENGTH);
+      if (!prefix.isEmpty()) {
+        return prefix + "/" + name;
+      }
+    }
+    return name;
+  }
+
+  /**
+   * Returns the path relative to the archive root, without "./" and trailing "/", or an empty string for the root itself.
+   */
+  @NotNull
+  private static String normalizeName(@NotNull String name) {
+    String result = name;
+    while (result.startsWith("./")) {
+      result = result.substring(2);
+    }
+    while (result.startsWith("/")) {
+      result = result.substring(1);
+    }
+    while (result.endsWith("/")) {
+      result = result.substring(0, result.length() - 1);
+    }
+    return result.equals(".") ? "" : result;
+  }
+
+  private static long parseSize(@NotNull byte[] header) throws IOException {
+    // GNU base-256 encoding for files larger than 8GB
+    if ((header[SIZE_OFFSET] & 0x80) != 0) {
+      long size = 0;
+      for (int i = 1; i < SIZE_LENGTH; i++) {
+        size = (size << 8) | (header[SIZE_OFFSET + i] & 0xff);
+      }
+      return size;
+    }
+    String text = parseString(header, SIZE_OFFSET, SIZE_LENGTH).trim();
+    try {
+      return text.isEmpty() ? 0 : Long.parseLong(text, 8);
+    }
+    catch (NumberFormatException e) {
+      throw new IOException(String.format("Invalid tar entry size \"%s\"", text), e);
+    }
+  }
+
+  /**
+   * Returns the "path" record of a pax extended header, made of "length key=value\n" records.
+   */
+  @Nullable
+  private static String parsePaxPath(@NotNull byte[] data) {
+    String path = null;
+    int offset = 0;
+    while (offset < data.length) {
+      int space = offset;
+      while (space < data.length && data[space] != ' ') {
+        space++;
+      }
+      int length;
+      try {
+        length = Integer.parseInt(new String(data, offset, space - offset, StandardCharsets.US_ASCII));
+      }
+      catch (NumberFormatException e) {
+        break;
+      }
+      if (length <= 0 || offset + length > data.length) {
+        break;
+      }
+      String record = new String(data, space + 1, offset + length - space - 2, StandardCharsets.UTF_8);
+      if (record.startsWith("path=")) {
+        path = record.substring("path=".length());
+      }
+      offset += length;
+    }
+    return path;
+  }
+
+  @NotNull
+  private static String parseString(@NotNull byte[] bytes, int offset, int length) {
+    int end = offset;
+    while (end < offset + length && bytes[end] != 0) {
+      end++;
+    }
+    return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+  }
+}
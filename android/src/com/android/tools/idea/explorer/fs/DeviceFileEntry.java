@@ -15,6 +15,7 @@
  */
 package com.android.tools.idea.explorer.fs;
 
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -93,6 +94,19 @@ public interface DeviceFileEntry {
   ListenableFuture<Void> downloadFile(@NotNull Path localPath,
                                       @NotNull FileTransferProgress progress);
 
+  /**
+   * Downloads this directory and everything it contains to a local directory in bulk: the whole tree is listed at once and several files
+   * are transferred at the same time. The future completes with {@code false}, without downloading anything, if the entry does not
+   * support bulk transfers, in which case callers walk the tree with {@link #getEntries()} and {@link #downloadFile}.
+   *
+   * <p>Symbolic links in the tree are skipped. Files that fail to download are reported to {@code progress} and do not fail the future.
+   */
+  @NotNull
+  default ListenableFuture<Boolean> downloadDirectory(@NotNull Path localPath,
+                                                      @NotNull DirectoryTransferProgress progress) {
+    return Futures.immediateFuture(false);
+  }
+
   /**
    * Uploads the contents of a local file to a remote {@link DeviceFileEntry} directory.
    */
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.explorer.fs;
+
+import com.android.annotations.concurrency.UiThread;
+import com.android.annotations.concurrency.WorkerThread;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Progress of the transfer of a whole directory, see {@link DeviceFileEntry#downloadDirectory}. Several files of the directory may be
+ * transferred at the same time, so progress is reported per file, with the full path of the file on the device.
+ */
+public interface DirectoryTransferProgress {
+  /**
+   * Reports the files and directories below the directory, once they are listed and before they are transferred. Not called when the
+   * contents of the directory are not known ahead of the transfer.
+   */
+  @UiThread
+  void descendantsListed(int fileCount, int directoryCount, long byteCount);
+
+  /**
+   * Reports that a directory was created locally.
+   */
+  @UiThread
+  void directoryTransferred(@NotNull String fullPath);
+
+  /**
+   * Reports that {@code byteCount} more bytes of a file were transferred, out of {@code totalBytes}, or <code>-1</code> if unknown.
+   */
+  @UiThread
+  void bytesTransferred(@NotNull String fullPath, long byteCount, long totalBytes);
+
+  /**
+   * Reports that all the bytes of a file were transferred.
+   */
+  @UiThread
+  void fileTransferred(@NotNull String fullPath);
+
+  /**
+   * Reports that a file could not be transferred. The transfer goes on with the other files.
+   */
+  @UiThread
+  void fileFailed(@NotNull String fullPath, @NotNull Throwable error);
+
+  /**
+   * Queries if the transfer should be cancelled.
+   *
+   * @see FileTransferProgress#isCancelled()
+   */
+  @WorkerThread
+  boolean isCancelled();
+}
@@ -23,6 +23,7 @@ import com.android.tools.idea.ddms.actions.ScreenshotAction;
 import com.android.tools.idea.ddms.actions.TerminateVMAction;
 import com.android.tools.idea.logcat.AndroidLogcatView.MyConfigureLogcatHeaderAction;
 import com.android.tools.idea.logcat.AndroidLogcatView.MyRestartAction;
+import com.android.tools.idea.logcat.AndroidLogcatView.MyShowArchiveAction;
 import com.intellij.diagnostic.logging.LogConsoleBase;
 import com.intellij.diagnostic.logging.LogFormatter;
 import com.intellij.execution.impl.ConsoleViewImpl;
@@ -50,6 +51,7 @@ public final class AndroidLogConsole extends LogConsoleBase {
       c.addCustomConsoleAction(new Separator());
       c.addCustomConsoleAction(new MyRestartAction(view));
       c.addCustomConsoleAction(new MyConfigureLogcatHeaderAction(view));
+      c.addCustomConsoleAction(new MyShowArchiveAction(view));
 
       DeviceContext context = view.getDeviceContext();
 
@@ -29,6 +29,7 @@ import org.jetbrains.android.util.AndroidOutputReceiver;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.List;
 import java.util.regex.Pattern;
 
 /**
@@ -37,7 +38,8 @@ import java.util.regex.Pattern;
  * logcat console.
  *
  * <p>This class expects the logcat format to be 'logcat -v long' (which prints out a header and then
- * 1+ lines of log text below, for each log message).
+ * 1+ lines of log text below, for each log message), or, when created for binary output, 'logcat -B', whose
+ * entries are decoded by {@link BinaryLogcatDecoder} without going through text headers.
  */
 public final class AndroidLogcatReceiver extends AndroidOutputReceiver implements Disposable {
   /**
@@ -57,6 +59,7 @@ public final class AndroidLogcatReceiver extends AndroidOutputReceiver implement
   private final IDevice myDevice;
   private final StackTraceExpander myStackTraceExpander;
   private final LogcatListener myLogcatListener;
+  @Nullable private final BinaryLogcatDecoder myBinaryDecoder;
 
   /**
    * We don't always want to add a newline when we get one, as we can't tell if it came from the
@@ -70,11 +73,55 @@ public final class AndroidLogcatReceiver extends AndroidOutputReceiver implement
   private volatile boolean myCanceled;
 
   AndroidLogcatReceiver(@NotNull IDevice device, @NotNull LogcatListener listener) {
+    this(device, listener, false);
+  }
+
+  AndroidLogcatReceiver(@NotNull IDevice device, @NotNull LogcatListener listener, boolean binary) {
     myLongEpochParser = new LogCatLongEpochMessageParser();
     myLongParser = new LogCatMessageParser();
     myDevice = device;
     myStackTraceExpander = new StackTraceExpander(STACK_TRACE_LINE_PREFIX, STACK_TRACE_CAUSE_LINE_PREFIX);
     myLogcatListener = listener;
+    myBinaryDecoder = binary ? new BinaryLogcatDecoder(device) : null;
+  }
+
+  @Override
+  public void addOutput(byte[] data, int offset, int length) {
+    if (myBinaryDecoder == null) {
+      super.addOutput(data, offset, length);
+    }
+    else if (!isCancelled()) {
+      myBinaryDecoder.decode(data, offset, length, this::processEntry);
+    }
+  }
+
+  /**
+   * Processes a decoded binary entry the way {@link #processNewLine(String)} processes a header and the lines below it: leading and
+   * trailing newlines are dropped and every other line of the message is notified with the header.
+   */
+  private void processEntry(@NotNull LogCatHeader header, @NotNull String message) {
+    myStackTraceExpander.reset();
+    myActiveHeader = header;
+    myLineIndex = 0;
+    myDelayedNewlineCount = 0;
+
+    if (message.indexOf('\r') != -1) {
+      message = CARRIAGE_RETURN.matcher(message).replaceAll("");
+    }
+    List<String> lines = StringUtil.split(message, "\n", true, false);
+    int start = 0;
+    int end = lines.size();
+    while (start < end && lines.get(start).isEmpty()) {
+      start++;
+    }
+    while (end > start && lines.get(end - 1).isEmpty()) {
+      end--;
+    }
+    for (int i = start; i < end; i++) {
+      for (String processedLine : myStackTraceExpander.process(lines.get(i))) {
+        notifyLine(header, processedLine);
+      }
+    }
   }
 
   @Override
@@ -19,7 +19,9 @@ import com.android.ddmlib.*;
 import com.android.ddmlib.Log.LogLevel;
 import com.android.ddmlib.logcat.LogCatHeader;
 import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.sdklib.AndroidVersion;
 import com.android.tools.idea.IdeInfo;
+import com.android.tools.idea.flags.StudioFlags;
 import com.android.tools.idea.run.LoggingReceiver;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
@@ -28,6 +30,7 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.intellij.execution.impl.ConsoleBuffer;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
@@ -41,6 +44,9 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
@@ -48,11 +54,16 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 /**
  * {@link AndroidLogcatService} is the class that manages logs in all connected devices and emulators.
  * Other classes can call {@link AndroidLogcatService#addListener(IDevice, LogcatListener)} to listen for logs of specific device/emulator.
  * Listeners invoked in a pooled thread and this class is thread safe.
+ *
+ * <p>Logs go through two stages per device: a thread reads and parses the output of logcat, decoding its binary format when the device
+ * supports it, and a {@link LogcatDispatcher} delivers the lines to the backlog and the listeners in batches on a shared pool. The queue
+ * between the two is bounded, so a device flooding logcat or a slow listener drops lines instead of holding up other devices.
  */
 @ThreadSafe
 public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceChangeListener, Disposable {
@@ -60,26 +71,6 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     return Logger.getInstance(AndroidLogcatService.class);
   }
 
-  private static class LogcatBuffer {
-    private int myBufferSize;
-    private final LinkedList<LogCatMessage> myMessages = new LinkedList<>();
-
-    public void addMessage(@NotNull LogCatMessage message) {
-      myMessages.add(message);
-      myBufferSize += message.getMessage().length();
-      if (ConsoleBuffer.useCycleBuffer()) {
-        while (myBufferSize > ConsoleBuffer.getCycleBufferSize()) {
-          myBufferSize -= myMessages.removeFirst().getMessage().length();
-        }
-      }
-    }
-
-    @NotNull
-    public List<LogCatMessage> getMessages() {
-      return myMessages;
-    }
-  }
-
   private static class ListenerConnector implements LogcatListener {
     @GuardedBy("myListenerLock")
     @Nullable private LogcatListener myListener; // Initially not null, set to null when disconnected.
@@ -100,6 +91,12 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
       dispatchMessage(message);
     }
 
+    @Override
+    public void onLogLinesReceived(@NotNull List<LogCatMessage> lines) {
+      processBacklog(); // Make sure that the backlog is processed before the new messages.
+      dispatchMessages(lines);
+    }
+
     @Override
     public void onCleared() {
       synchronized (myBacklogLock) {
@@ -128,9 +125,9 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     }
 
     void processBacklog() {
-      LogCatMessage message;
-      while ((message = getMessageFromBacklog()) != null) {
-        dispatchMessage(message);
+      List<LogCatMessage> messages;
+      while (!(messages = getMessagesFromBacklog()).isEmpty()) {
+        dispatchMessages(messages);
       }
     }
 
@@ -142,17 +139,31 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
       }
     }
 
-    @Nullable
-    private LogCatMessage getMessageFromBacklog() {
+    private void dispatchMessages(@NotNull List<LogCatMessage> messages) {
+      synchronized (myListenerLock) {
+        if (myListener != null) {
+          myListener.onLogLinesReceived(messages);
+        }
+      }
+    }
+
+    /**
+     * Takes at most a batch of messages from the backlog, so a listener being removed doesn't wait for the whole backlog to be replayed.
+     */
+    @NotNull
+    private List<LogCatMessage> getMessagesFromBacklog() {
       synchronized (myBacklogLock) {
         if (myBacklog == null) {
-          return null;
+          return Collections.emptyList();
+        }
+        List<LogCatMessage> messages = new ArrayList<>(Math.min(myBacklog.size(), DISPATCH_BATCH_SIZE));
+        while (!myBacklog.isEmpty() && messages.size() < DISPATCH_BATCH_SIZE) {
+          messages.add(myBacklog.remove());
         }
-        LogCatMessage message = myBacklog.remove();
         if (myBacklog.isEmpty()) {
           myBacklog = null;
         }
-        return message;
+        return messages;
       }
     }
   }
@@ -161,10 +172,30 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     default void onLogLineReceived(@NotNull LogCatMessage line) {
     }
 
+    /**
+     * Receives lines that were delivered together, in order. Override this to do per batch work, like updating the UI, once per batch
+     * instead of once per line.
+     */
+    default void onLogLinesReceived(@NotNull List<LogCatMessage> lines) {
+      lines.forEach(this::onLogLineReceived);
+    }
+
     default void onCleared() {
     }
   }
 
+  /**
+   * The number of lines a device can have waiting for delivery before lines are dropped
+   */
+  private static final int DISPATCH_QUEUE_CAPACITY = 1 << 14;
+
+  private static final int DISPATCH_BATCH_SIZE = 1 << 10;
+
+  /**
+   * How long the thread reading logcat waits for room in a full queue before it starts dropping lines
+   */
+  private static final Duration MAX_DISPATCH_WAIT = Duration.ofMillis(100);
+
   private final Object myLock;
 
   // TODO Change these maps into a set of LogcatDevices that each maintain their receivers, buffers, executors, etc
@@ -175,6 +206,15 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
   @GuardedBy("myLock")
   private final Map<IDevice, LogcatBuffer> myLogBuffers;
 
+  @GuardedBy("myLock")
+  private final Map<IDevice, LogcatDispatcher> myDispatchers;
+
+  /**
+   * The archives outlive the receivers: they are kept until the device disconnects or its logs are cleared
+   */
+  @GuardedBy("myLock")
+  private final Map<IDevice, LogcatArchive> myArchives;
+
   /**
    * This is a list of commands to execute per device. We use a newSingleThreadExecutor
    * to model a single queue of tasks to run, but that is poorly reflected in the
@@ -186,6 +226,11 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
   @GuardedBy("myLock")
   private final Multimap<IDevice, ListenerConnector> myDeviceToListenerMultimap;
 
+  /**
+   * Runs the deliveries of the {@link LogcatDispatcher}s of all devices
+   */
+  private final ExecutorService myDispatchExecutor;
+
   @NotNull
   public static AndroidLogcatService getInstance() {
     return ApplicationManager.getApplication().getService(AndroidLogcatService.class);
@@ -196,8 +241,14 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     myLock = new Object();
     myLogReceivers = new HashMap<>();
     myLogBuffers = new HashMap<>();
+    myDispatchers = new HashMap<>();
+    myArchives = new HashMap<>();
     myExecutors = new HashMap<>();
     myDeviceToListenerMultimap = ArrayListMultimap.create();
+    myDispatchExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                                                         .setNameFormat("logcat-dispatcher-%d")
+                                                         .setDaemon(true)
+                                                         .build());
 
     AndroidDebugBridge.addDeviceChangeListener(this);
   }
@@ -210,45 +261,138 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
 
       connect(device);
 
-      AndroidLogcatReceiver receiver = newAndroidLogcatReceiver(device);
+      int maxTextLength = ConsoleBuffer.useCycleBuffer() ? ConsoleBuffer.getCycleBufferSize() : Integer.MAX_VALUE;
+      LogcatBuffer buffer = new LogcatBuffer(maxTextLength);
+      myLogBuffers.put(device, buffer);
+
+      LogcatArchive archive = myArchives.get(device);
+      if (archive != null) {
+        archive.resume();
+      }
+      else if (StudioFlags.LOGCAT_ARCHIVE_ENABLED.get()) {
+        archive = newLogcatArchive(device);
+        if (archive != null) {
+          myArchives.put(device, archive);
+        }
+      }
+
+      LogcatDispatcher dispatcher = newLogcatDispatcher(device, buffer);
+      myDispatchers.put(device, dispatcher);
+
+      LogcatListener listener = archive == null ? dispatcher : newArchivingListener(device, archive, dispatcher);
+      boolean binary = supportsBinaryFormat(device);
+      AndroidLogcatReceiver receiver = new AndroidLogcatReceiver(device, listener, binary);
       myLogReceivers.put(device, receiver);
-      myLogBuffers.put(device, new LogcatBuffer());
-      myExecutors.get(device).execute(() -> executeLogcat(device, receiver));
+      myExecutors.get(device).execute(() -> executeLogcat(device, receiver, binary));
     }
   }
 
   @NotNull
-  private AndroidLogcatReceiver newAndroidLogcatReceiver(@NotNull IDevice device) {
-    return new AndroidLogcatReceiver(device, new LogcatListener() {
+  private LogcatDispatcher newLogcatDispatcher(@NotNull IDevice device, @NotNull LogcatBuffer buffer) {
+    LogcatDispatcher.Sink sink = (lines, droppedCount) -> {
+      List<LogCatMessage> batch = lines;
+      if (droppedCount != 0) {
+        getLog().info(String.format("Dropped %d logcat lines of %s", droppedCount, device.getName()));
+
+        batch = new ArrayList<>(lines.size() + 1);
+        String message = droppedCount + " lines were dropped because they came in faster than they could be shown";
+        batch.add(new LogCatMessage(newServiceHeader(LogLevel.WARN), message));
+        batch.addAll(lines);
+      }
+
+      Iterable<ListenerConnector> connectors;
+      synchronized (myLock) {
+        connectors = ImmutableList.copyOf(myDeviceToListenerMultimap.get(device));
+        batch.forEach(buffer::addMessage);
+      }
+
+      List<LogCatMessage> messages = Collections.unmodifiableList(batch);
+      connectors.forEach(connector -> connector.onLogLinesReceived(messages));
+    };
+
+    return new LogcatDispatcher(myDispatchExecutor, sink, DISPATCH_QUEUE_CAPACITY, DISPATCH_BATCH_SIZE, MAX_DISPATCH_WAIT.toMillis());
+  }
+
+  /**
+   * Archives the lines on the thread reading logcat, before they are queued for delivery, so the archive has the lines the dispatcher
+   * drops
+   */
+  @NotNull
+  private LogcatListener newArchivingListener(@NotNull IDevice device, @NotNull LogcatArchive archive, @NotNull LogcatListener dispatcher) {
+    return new LogcatListener() {
       @Override
       public void onLogLineReceived(@NotNull LogCatMessage line) {
-        Iterable<ListenerConnector> connectors;
-        synchronized (myLock) {
-          connectors = ImmutableList.copyOf(myDeviceToListenerMultimap.get(device));
-          LogcatBuffer buffer = myLogBuffers.get(device);
-
-          if (buffer != null) {
-            buffer.addMessage(line);
-          }
+        try {
+          archive.addMessages(Collections.singletonList(line));
         }
-
-        connectors.forEach(connector -> connector.onLogLineReceived(line));
+        catch (IOException exception) {
+          getLog().warn("Could not archive the logcat lines of " + device.getName(), exception);
+          removeArchive(device, archive);
+        }
+        dispatcher.onLogLineReceived(line);
       }
-    });
+    };
   }
 
-  private static void executeLogcat(@NotNull IShellEnabledDevice device, @NotNull AndroidLogcatReceiver receiver) {
+  @Nullable
+  private static LogcatArchive newLogcatArchive(@NotNull IDevice device) {
     try {
-      execute(device, supportsEpochFormatModifier(device) ? "logcat -v long -v epoch" : "logcat -v long", receiver, Duration.ZERO);
+      Path directory = Files.createDirectories(Paths.get(PathManager.getSystemPath(), "logcat"));
+      return new LogcatArchive(Files.createTempFile(directory, "logcat-", ".archive"));
+    }
+    catch (IOException exception) {
+      getLog().warn("Could not create the logcat archive of " + device.getName(), exception);
+      return null;
+    }
+  }
+
+  private void removeArchive(@NotNull IDevice device, @NotNull LogcatArchive archive) {
+    synchronized (myLock) {
+      myArchives.remove(device, archive);
+    }
+    closeArchive(archive);
+  }
+
+  private static void closeArchive(@NotNull LogcatArchive archive) {
+    try {
+      archive.close();
+    }
+    catch (IOException exception) {
+      getLog().warn(exception);
+    }
+  }
+
+  private static void executeLogcat(@NotNull IShellEnabledDevice device, @NotNull AndroidLogcatReceiver receiver, boolean binary) {
+    try {
+      String command;
+      if (binary) {
+        command = "logcat -B";
+      }
+      else {
+        command = supportsEpochFormatModifier(device) ? "logcat -v long -v epoch" : "logcat -v long";
+      }
+      execute(device, command, receiver, Duration.ZERO);
     }
     catch (Throwable throwable) {
       getLog().warn(throwable);
-
-      String app = IdeInfo.getInstance().isAndroidStudio() ? "com.android.studio" : "com.jetbrains.idea";
-      receiver.notifyLine(new LogCatHeader(LogLevel.ERROR, 0, 0, app, "AndroidLogcatService", Instant.now()), throwable.toString());
+      receiver.notifyLine(newServiceHeader(LogLevel.ERROR), throwable.toString());
     }
   }
 
+  @NotNull
+  private static LogCatHeader newServiceHeader(@NotNull LogLevel level) {
+    String app = IdeInfo.getInstance().isAndroidStudio() ? "com.android.studio" : "com.jetbrains.idea";
+    return new LogCatHeader(level, 0, 0, app, "AndroidLogcatService", Instant.now());
+  }
+
+  /**
+   * Older devices run shell commands in a pseudo terminal that turns the \n bytes of the binary entries into \r\n
+   */
+  private static boolean supportsBinaryFormat(@NotNull IDevice device) {
+    AndroidVersion version = device.getVersion();
+    return version != null && version.isGreaterOrEqualThan(AndroidVersion.VersionCodes.N) && StudioFlags.LOGCAT_BINARY_FORMAT_ENABLED.get();
+  }
+
   private static boolean supportsEpochFormatModifier(@NotNull IShellEnabledDevice device)
       throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException, IOException {
     LogcatHelpReceiver receiver = new LogcatHelpReceiver();
@@ -293,6 +437,11 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     synchronized (myLock) {
       stopReceiving(device);
       myExecutors.remove(device);
+
+      LogcatArchive archive = myArchives.remove(device);
+      if (archive != null) {
+        closeArchive(archive);
+      }
     }
   }
 
@@ -302,6 +451,8 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
         myLogReceivers.get(device).cancel();
         myLogReceivers.remove(device);
         myLogBuffers.remove(device);
+        // The lines it has not delivered yet are still delivered, unless the device logs are cleared
+        myDispatchers.remove(device);
       }
     }
   }
@@ -323,9 +474,19 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
         return;
       }
 
+      LogcatDispatcher dispatcher = myDispatchers.get(device);
       stopReceiving(device);
 
+      LogcatArchive archive = myArchives.remove(device);
+      if (archive != null) {
+        closeArchive(archive);
+      }
+
       executor.execute(() -> {
+        if (dispatcher != null) {
+          dispatcher.discard();
+        }
+
         try {
           execute(device, "logcat -c", new LoggingReceiver(getLog()), Duration.ofSeconds(5));
         }
@@ -354,6 +515,29 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     connectors.forEach(ListenerConnector::onCleared);
   }
 
+  /**
+   * Reads the lines of the device archived since logcat started on it, without loading them all in memory. Only the lines from time
+   * {@code from} on, or all of them if it is null, and accepted by {@code filter}, or all of them if it is null, are read. They are passed
+   * to {@code consumer} in batches, oldest first, until there are no more or it returns false.
+   *
+   * @return false if the device has no archive, because {@link StudioFlags#LOGCAT_ARCHIVE_ENABLED} is off or logcat never started on it
+   */
+  public boolean readArchive(@NotNull IDevice device,
+                             @Nullable Instant from,
+                             @Nullable DefaultAndroidLogcatFilter filter,
+                             @NotNull Predicate<List<LogCatMessage>> consumer) throws IOException {
+    LogcatArchive archive;
+    synchronized (myLock) {
+      archive = myArchives.get(device);
+    }
+
+    if (archive == null) {
+      return false;
+    }
+    archive.read(from, filter, consumer);
+    return true;
+  }
+
   /**
    * Add a listener which receives each line, unfiltered, that comes from the specified device. If {@code addOldLogs} is true,
    * this will also notify the listener of every log message received so far.
@@ -364,9 +548,25 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
    * to a UI thread. For example, don't directly invoke a runnable on the UI thread per line, but consider batching many log lines first.
    */
   public void addListener(@NotNull IDevice device, @NotNull LogcatListener listener, boolean addOldLogs) {
+    addListener(device, listener, addOldLogs, null);
+  }
+
+  /**
+   * Like {@link #addListener(IDevice, LogcatListener, boolean)} with {@code addOldLogs} set, but only the log messages received so far
+   * that are accepted by {@code backlogFilter} are sent to the listener. New messages are all sent, unfiltered.
+   * This is much cheaper than letting the listener skip old messages when it only cares about a few of them.
+   */
+  public void addListener(@NotNull IDevice device, @NotNull LogcatListener listener, @NotNull DefaultAndroidLogcatFilter backlogFilter) {
+    addListener(device, listener, true, backlogFilter);
+  }
+
+  private void addListener(@NotNull IDevice device,
+                           @NotNull LogcatListener listener,
+                           boolean addOldLogs,
+                           @Nullable DefaultAndroidLogcatFilter backlogFilter) {
     synchronized (myLock) {
       List<LogCatMessage> oldMessages =
-          addOldLogs && myLogBuffers.containsKey(device) ? myLogBuffers.get(device).getMessages() : ImmutableList.of();
+          addOldLogs && myLogBuffers.containsKey(device) ? myLogBuffers.get(device).getMessages(backlogFilter) : ImmutableList.of();
 
       ListenerConnector listenerConnector = new ListenerConnector(listener, oldMessages);
       myDeviceToListenerMultimap.put(device, listenerConnector);
@@ -443,6 +643,9 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
       for (AndroidLogcatReceiver receiver : myLogReceivers.values()) {
         receiver.cancel();
       }
+
+      myArchives.values().forEach(AndroidLogcatService::closeArchive);
+      myArchives.clear();
     }
   }
 
@@ -456,15 +659,29 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     Disposer.dispose(this);
 
     synchronized (myLock) {
-      myExecutors.values().forEach(executor -> {
-        try {
-          executor.shutdownNow();
-          executor.awaitTermination(5_000, TimeUnit.MILLISECONDS);
-        }
-        catch (InterruptedException e) {
-          getLog().info("Error shutting down executor", e);
-        }
-      });
+      myExecutors.values().forEach(AndroidLogcatService::shutdownAndAwaitTermination);
+    }
+    shutdownAndAwaitTermination(myDispatchExecutor);
+  }
+
+  private static void shutdownAndAwaitTermination(@NotNull ExecutorService executor) {
+    try {
+      executor.shutdownNow();
+      executor.awaitTermination(5_000, TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException e) {
+      getLog().info("Error shutting down executor", e);
+    }
+  }
+
+  /**
+   * Returns the number of lines of the device that were dropped since logcat last started on it.
+   */
+  @TestOnly
+  long getDroppedLineCount(@NotNull IDevice device) {
+    synchronized (myLock) {
+      LogcatDispatcher dispatcher = myDispatchers.get(device);
+      return dispatcher == null ? 0 : dispatcher.getDroppedCount();
     }
   }
 
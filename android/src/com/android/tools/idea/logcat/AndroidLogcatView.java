@@ -6,6 +6,7 @@ import com.android.ddmlib.Client;
 import com.android.ddmlib.ClientData;
 import com.android.ddmlib.IDevice;
 import com.android.tools.idea.ddms.DeviceContext;
+import com.android.tools.idea.flags.StudioFlags;
 import com.intellij.execution.ui.ConsoleView;
 import com.intellij.icons.AllIcons;
 import com.intellij.openapi.Disposable;
@@ -13,11 +14,15 @@ import com.intellij.openapi.actionSystem.ActionManager;
 import com.intellij.openapi.actionSystem.ActionToolbar;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.ComboBox;
+import com.intellij.openapi.ui.InputValidator;
+import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.text.StringUtil;
@@ -34,7 +39,12 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.IntStream;
@@ -63,6 +73,7 @@ public class AndroidLogcatView {
   private final AndroidLogFilterModel myLogFilterModel;
 
   private volatile IDevice myDevice;
+  @Nullable private volatile ProgressIndicator myArchiveIndicator;
   private DefaultComboBoxModel<AndroidLogcatFilter> myFilterComboBoxModel;
   private ActionToolbar myToolbar;
   private JPanel myPanel;
@@ -294,6 +305,7 @@ public class AndroidLogcatView {
   private void updateLogConsole() {
     IDevice device = getSelectedDevice();
     if (myDevice != device) {
+      cancelArchiveRead();
       AndroidLogcatService androidLogcatService = AndroidLogcatService.getInstance();
       if (myDevice != null) {
         androidLogcatService.removeListener(myDevice, myLogcatReceiver);
@@ -310,6 +322,64 @@ public class AndroidLogcatView {
     }
   }
 
+  /**
+   * Replaces the lines of the console with the archived lines of the device from time {@code from} on, or all of them if it is null,
+   * read in the background. If the selected filter is a {@link DefaultAndroidLogcatFilter}, only the lines it accepts are read. The live
+   * lines are shown again when logcat restarts or another device is selected.
+   */
+  private void showArchivedLines(@Nullable Instant from) {
+    IDevice device = myDevice;
+    if (device == null) {
+      return;
+    }
+    Object selectedFilter = myFilterComboBoxModel.getSelectedItem();
+    DefaultAndroidLogcatFilter filter =
+      selectedFilter instanceof DefaultAndroidLogcatFilter ? (DefaultAndroidLogcatFilter)selectedFilter : null;
+
+    cancelArchiveRead();
+    AndroidLogcatService androidLogcatService = AndroidLogcatService.getInstance();
+    androidLogcatService.removeListener(device, myLogcatReceiver);
+    if (myLogConsole.getConsole() != null) {
+      myLogConsole.clear();
+    }
+    myLogFilterModel.processingStarted();
+
+    ProgressManager.getInstance().run(new Task.Backgroundable(myProject, AndroidBundle.message("android.logcat.archive.task.title"), true) {
+      @Override
+      public void run(@NotNull ProgressIndicator indicator) {
+        myArchiveIndicator = indicator;
+        try {
+          boolean archived = androidLogcatService.readArchive(device, from, filter, lines -> {
+            if (indicator.isCanceled()) {
+              return false;
+            }
+            myLogcatReceiver.onLogLinesReceived(lines);
+            return true;
+          });
+
+          if (!archived) {
+            ApplicationManager.getApplication().invokeLater(
+              () -> Messages.showInfoMessage(myProject, AndroidBundle.message("android.logcat.archive.unavailable"),
+                                             AndroidBundle.message("android.logcat.archive.dialog.title")));
+          }
+        }
+        catch (IOException exception) {
+          Logger.getInstance(AndroidLogcatView.class).warn(exception);
+          ApplicationManager.getApplication().invokeLater(
+            () -> Messages.showErrorDialog(myProject, exception.toString(), AndroidBundle.message("android.logcat.error.dialog.title")));
+        }
+      }
+    });
+  }
+
+  private void cancelArchiveRead() {
+    ProgressIndicator indicator = myArchiveIndicator;
+    if (indicator != null) {
+      indicator.cancel();
+      myArchiveIndicator = null;
+    }
+  }
+
   @Nullable
   IDevice getSelectedDevice() {
     if (myDeviceContext != null) {
@@ -407,6 +477,55 @@ public class AndroidLogcatView {
     }
   }
 
+  static final class MyShowArchiveAction extends AnAction {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final AndroidLogcatView myView;
+
+    MyShowArchiveAction(@NotNull AndroidLogcatView view) {
+      super(AndroidBundle.message("android.logcat.archive.action.text"), AndroidBundle.message("android.logcat.archive.action.description"),
+            AllIcons.Actions.Find);
+
+      myView = view;
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+      e.getPresentation().setVisible(StudioFlags.LOGCAT_ARCHIVE_ENABLED.get());
+      e.getPresentation().setEnabled(myView.myDevice != null);
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+      String from = Messages.showInputDialog(myView.myProject, AndroidBundle.message("android.logcat.archive.dialog.message"),
+                                             AndroidBundle.message("android.logcat.archive.dialog.title"), null, "", new InputValidator() {
+          @Override
+          public boolean checkInput(String inputString) {
+            return inputString.trim().isEmpty() || parse(inputString) != null;
+          }
+
+          @Override
+          public boolean canClose(String inputString) {
+            return checkInput(inputString);
+          }
+        });
+
+      if (from != null) {
+        myView.showArchivedLines(from.trim().isEmpty() ? null : parse(from));
+      }
+    }
+
+    @Nullable
+    private static Instant parse(@NotNull String time) {
+      try {
+        return LocalDateTime.parse(time.trim(), FORMATTER).atZone(ZoneId.systemDefault()).toInstant();
+      }
+      catch (DateTimeParseException exception) {
+        return null;
+      }
+    }
+  }
+
   static final class MyConfigureLogcatHeaderAction extends AnAction {
     private final AndroidLogcatView myView;
 
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Decodes the entries that 'logcat -B' writes, straight from the bytes handed to
+ * {@link com.android.ddmlib.IShellOutputReceiver#addOutput(byte[], int, int)}.
+ *
+ * <p>Each entry is a little endian logger_entry header (v1 to v4, told apart by its hdr_size field) followed by a payload made of a
+ * priority byte, a NUL terminated tag and the message. Entries that fit in one chunk are decoded in place. The bytes of an entry split
+ * across chunks are copied into a buffer that is reused for every entry. Tags are interned in a small cache keyed by their bytes, so the
+ * message is the only string allocated for most entries.
+ *
+ * <p>This class is not thread safe.
+ */
+final class BinaryLogcatDecoder {
+  interface EntryConsumer {
+    void onEntry(@NotNull LogCatHeader header, @NotNull String message);
+  }
+
+  private static final int LENGTH_PREFIX_SIZE = 4;
+  private static final int V1_HEADER_SIZE = 20;
+  // v4 headers are 28 bytes, leave room for fields added by later versions
+  private static final int MAX_HEADER_SIZE = 64;
+  private static final int MAX_PAYLOAD_SIZE = 0xFFFF;
+
+  private static final int TAG_CACHE_SIZE = 256;
+
+  private static final LogLevel[] LOG_LEVELS_BY_PRIORITY = new LogLevel[8];
+
+  static {
+    for (LogLevel level : LogLevel.values()) {
+      LOG_LEVELS_BY_PRIORITY[level.getPriority()] = level;
+    }
+  }
+
+  @NotNull private final IDevice myDevice;
+
+  // The bytes of an entry that is split across chunks.
+  @NotNull private final byte[] myPartialEntry = new byte[MAX_HEADER_SIZE + MAX_PAYLOAD_SIZE];
+  private int myPartialEntrySize;
+
+  @NotNull private final byte[][] myTagCacheKeys = new byte[TAG_CACHE_SIZE][];
+  @NotNull private final String[] myTagCacheValues = new String[TAG_CACHE_SIZE];
+
+  BinaryLogcatDecoder(@NotNull IDevice device) {
+    myDevice = device;
+  }
+
+  /**
+   * Decodes the complete entries in {@code data}, together with the bytes left over from the previous call, and keeps the bytes of a
+   * trailing incomplete entry for the next call.
+   *
+   * @throws IllegalStateException if the bytes are not logger entries
+   */
+  void decode(@NotNull byte[] data, int offset, int length, @NotNull EntryConsumer consumer) {
+    int end = offset + length;
+    while (offset < end) {
+      if (myPartialEntrySize == 0 && end - offset >= LENGTH_PREFIX_SIZE) {
+        int entrySize = getEntrySize(data, offset);
+        if (end - offset >= entrySize) {
+          decodeEntry(data, offset, consumer);
+          offset += entrySize;
+          continue;
+        }
+      }
+
+      int targetSize = myPartialEntrySize < LENGTH_PREFIX_SIZE ? LENGTH_PREFIX_SIZE : getEntrySize(myPartialEntry, 0);
+      int count = Math.min(targetSize - myPartialEntrySize, end - offset);
+      System.arraycopy(data, offset, myPartialEntry, myPartialEntrySize, count);
+      myPartialEntrySize += count;
+      offset += count;
+
+      if (myPartialEntrySize >= LENGTH_PREFIX_SIZE && myPartialEntrySize == getEntrySize(myPartialEntry, 0)) {
+        myPartialEntrySize = 0;
+        decodeEntry(myPartialEntry, 0, consumer);
+      }
+    }
+  }
+
+  private static int getEntrySize(@NotNull byte[] bytes, int offset) {
+    return getHeaderSize(bytes, offset) + readUnsignedShort(bytes, offset);
+  }
+
+  private static int getHeaderSize(@NotNull byte[] bytes, int offset) {
+    int headerSize = readUnsignedShort(bytes, offset + 2);
+
+    // The field is padding in v1 entries
+    if (headerSize == 0) {
+      return V1_HEADER_SIZE;
+    }
+    if (headerSize < V1_HEADER_SIZE || headerSize > MAX_HEADER_SIZE) {
+      throw new IllegalStateException("Not a binary logcat entry: header size " + headerSize);
+    }
+    return headerSize;
+  }
+
+  private void decodeEntry(@NotNull byte[] bytes, int offset, @NotNull EntryConsumer consumer) {
+    int payloadSize = readUnsignedShort(bytes, offset);
+    if (payloadSize == 0) {
+      return;
+    }
+    int pid = readInt(bytes, offset + 4);
+    int tid = readInt(bytes, offset + 8);
+    long seconds = readInt(bytes, offset + 12) & 0xFFFFFFFFL;
+    int nanos = readInt(bytes, offset + 16);
+
+    int payload = offset + getHeaderSize(bytes, offset);
+    int payloadEnd = payload + payloadSize;
+    int tagStart = payload + 1;
+    int tagEnd = indexOfNul(bytes, tagStart, payloadEnd);
+    int messageStart = Math.min(tagEnd + 1, payloadEnd);
+    int messageEnd = payloadEnd;
+    while (messageEnd > messageStart && bytes[messageEnd - 1] == 0) {
+      messageEnd--;
+    }
+
+    String appName = myDevice.getClientName(pid);
+    LogCatHeader header = new LogCatHeader(getLogLevel(bytes[payload]),
+                                           pid,
+                                           tid,
+                                           appName == null ? "?" : appName,
+                                           getTag(bytes, tagStart, tagEnd),
+                                           Instant.ofEpochSecond(seconds, nanos));
+
+    consumer.onEntry(header, new String(bytes, messageStart, messageEnd - messageStart, StandardCharsets.UTF_8));
+  }
+
+  @NotNull
+  private static LogLevel getLogLevel(int priority) {
+    // Priorities outside of verbose to assert are unknown, default or silent, which are never written by a log call
+    if (priority < LogLevel.VERBOSE.getPriority()) {
+      return LogLevel.VERBOSE;
+    }
+    if (priority > LogLevel.ASSERT.getPriority()) {
+      return LogLevel.ASSERT;
+    }
+    return LOG_LEVELS_BY_PRIORITY[priority];
+  }
+
+  @NotNull
+  private String getTag(@NotNull byte[] bytes, int start, int end) {
+    int hash = 1;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + bytes[i];
+    }
+    int slot = (hash ^ (hash >>> 16)) & (TAG_CACHE_SIZE - 1);
+
+    byte[] key = myTagCacheKeys[slot];
+    if (key != null && equals(key, bytes, start, end)) {
+      return myTagCacheValues[slot];
+    }
+
+    String tag = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    myTagCacheKeys[slot] = Arrays.copyOfRange(bytes, start, end);
+    myTagCacheValues[slot] = tag;
+    return tag;
+  }
+
+  private static boolean equals(@NotNull byte[] key, @NotNull byte[] bytes, int start, int end) {
+    if (key.length != end - start) {
+      return false;
+    }
+    for (int i = 0; i < key.length; i++) {
+      if (key[i] != bytes[start + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int indexOfNul(@NotNull byte[] bytes, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (bytes[i] == 0) {
+        return i;
+      }
+    }
+    return end;
+  }
+
+  private static int readUnsignedShort(@NotNull byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8;
+  }
+
+  private static int readInt(@NotNull byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8 | (bytes[offset + 2] & 0xFF) << 16 | (bytes[offset + 3] & 0xFF) << 24;
+  }
+}
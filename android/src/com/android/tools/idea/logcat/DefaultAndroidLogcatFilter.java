@@ -99,28 +99,35 @@ public final class DefaultAndroidLogcatFilter implements AndroidLogcatFilter {
 
   @Override
   public boolean isApplicable(@NotNull String message, @NotNull String tag, @NotNull String pkg, int pid, @NotNull Log.LogLevel logLevel) {
-    if (myLogLevel != null && (logLevel.getPriority() < myLogLevel.getPriority())) {
-      return false;
-    }
+    return isApplicableLogLevel(logLevel) &&
+           isApplicableMessage(message) &&
+           isApplicableTag(tag) &&
+           isApplicablePackage(pkg) &&
+           isApplicablePid(pid);
+  }
 
-    if (myMessagePattern != null && !myMessagePattern.matcher(message).find()) {
-      return false;
-    }
+  // The checks below are split so that LogcatBuffer can apply them one column at a time, and only check the messages of the lines
+  // whose header was accepted.
 
-    if (myTagPattern != null && !myTagPattern.matcher(tag).find()) {
-      return false;
-    }
+  boolean isApplicableLogLevel(@NotNull Log.LogLevel logLevel) {
+    return myLogLevel == null || logLevel.getPriority() >= myLogLevel.getPriority();
+  }
 
-    if (myPkgNamePattern != null && !myPkgNamePattern.matcher(pkg).find()) {
-      return false;
-    }
+  boolean isApplicableMessage(@NotNull CharSequence message) {
+    return myMessagePattern == null || myMessagePattern.matcher(message).find();
+  }
 
-    // TODO: If we're always checking against an int pid anyway, why let myPid be a string?
-    if ((myPid != null && !myPid.isEmpty()) && !myPid.equals(Integer.toString(pid))) {
-      return false;
-    }
+  boolean isApplicableTag(@NotNull String tag) {
+    return myTagPattern == null || myTagPattern.matcher(tag).find();
+  }
 
-    return true;
+  boolean isApplicablePackage(@NotNull String pkg) {
+    return myPkgNamePattern == null || myPkgNamePattern.matcher(pkg).find();
+  }
+
+  boolean isApplicablePid(int pid) {
+    // TODO: If we're always checking against an int pid anyway, why let myPid be a string?
+    return myPid == null || myPid.isEmpty() || myPid.equals(Integer.toString(pid));
   }
 
   @Override
@@ -19,6 +19,8 @@ import com.android.ddmlib.logcat.LogCatHeader;
 import com.android.ddmlib.logcat.LogCatMessage;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.List;
+
 abstract class FormattedLogcatReceiver implements AndroidLogcatService.LogcatListener {
   private final AndroidLogcatFormatter myFormatter;
   private LogCatHeader myActiveHeader;
@@ -29,6 +31,17 @@ abstract class FormattedLogcatReceiver implements AndroidLogcatService.LogcatLis
 
   @Override
   public final void onLogLineReceived(@NotNull LogCatMessage line) {
+    formatLogLine(line);
+    onFormattedLogLinesReceived();
+  }
+
+  @Override
+  public final void onLogLinesReceived(@NotNull List<LogCatMessage> lines) {
+    lines.forEach(this::formatLogLine);
+    onFormattedLogLinesReceived();
+  }
+
+  private void formatLogLine(@NotNull LogCatMessage line) {
     LogCatHeader header = line.getHeader();
 
     // We want the if branch whenever logcat prints a header, even if it has the same value as the previous one. Check the reference values
@@ -44,4 +57,10 @@ abstract class FormattedLogcatReceiver implements AndroidLogcatService.LogcatLis
   }
 
   abstract void receiveFormattedLogLine(@NotNull String line);
+
+  /**
+   * Called after the lines received together went through {@link #receiveFormattedLogLine(String)}
+   */
+  void onFormattedLogLinesReceived() {
+  }
 }
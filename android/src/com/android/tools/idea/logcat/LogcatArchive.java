@@ -0,0 +1,464 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The logcat lines of a device, spilled to a file so they can still be read after the {@link LogcatBuffer} evicted them.
+ *
+ * <p>Lines are written in blocks of about {@link #BLOCK_SIZE} bytes, each compressed on its own. The index of the blocks is kept in
+ * memory: the offset of each block in the file, the range of its timestamps and the log levels, tags and packages of its lines. Seeking to
+ * a time skips the blocks that end before it, and a filter skips the blocks without any level, tag or package it accepts, so a read only
+ * decompresses the blocks that may hold lines it returns, one block at a time. Tags and packages are interned and written as ids.
+ *
+ * <p>The file is deleted when the archive is closed. Lines are added by one thread at a time and can be read from any thread.
+ */
+@ThreadSafe
+final class LogcatArchive implements Closeable {
+  private static final int BLOCK_SIZE = 1 << 16;
+  private static final LogLevel[] LOG_LEVELS = LogLevel.values();
+
+  // Line flags
+  private static final int HEADER = 1;
+  private static final int CONTINUATION = 2;
+  private static final int INSTANT = 4;
+
+  private static final byte UNKNOWN = 0;
+  private static final byte ACCEPTED = 1;
+  private static final byte REJECTED = 2;
+
+  private static final class Block {
+    private final long myOffset;
+    private final int myCompressedSize;
+    private final int mySize;
+    private final long myMinTime;
+    private final long myMaxTime;
+    private final int myLogLevels;
+    @NotNull private final BitSet myTagIds;
+    @NotNull private final BitSet myPackageIds;
+
+    private Block(long offset, int compressedSize, int size, long minTime, long maxTime, int logLevels, @NotNull BitSet tagIds,
+                  @NotNull BitSet packageIds) {
+      myOffset = offset;
+      myCompressedSize = compressedSize;
+      mySize = size;
+      myMinTime = minTime;
+      myMaxTime = maxTime;
+      myLogLevels = logLevels;
+      myTagIds = tagIds;
+      myPackageIds = packageIds;
+    }
+  }
+
+  @NotNull private final FileChannel myChannel;
+  @NotNull private final Deflater myDeflater = new Deflater(Deflater.BEST_SPEED);
+
+  @GuardedBy("this")
+  @NotNull private final List<Block> myBlocks = new ArrayList<>();
+
+  @GuardedBy("this")
+  @NotNull private final List<String> myStrings = new ArrayList<>();
+
+  @GuardedBy("this")
+  @NotNull private final Map<String, Integer> myStringIds = new HashMap<>();
+
+  @GuardedBy("this")
+  private long myFileSize;
+
+  @GuardedBy("this")
+  private boolean myClosed;
+
+  // The lines not written to the file yet, which make up the next block
+  @GuardedBy("this")
+  @NotNull private final ByteArrayOutputStream myPendingBytes = new ByteArrayOutputStream(BLOCK_SIZE + (BLOCK_SIZE >> 2));
+  @NotNull private final DataOutputStream myPendingOutput = new DataOutputStream(myPendingBytes);
+  @GuardedBy("this")
+  private long myPendingMinTime = Long.MAX_VALUE;
+  @GuardedBy("this")
+  private long myPendingMaxTime = Long.MIN_VALUE;
+  @GuardedBy("this")
+  private int myPendingLogLevels;
+  @GuardedBy("this")
+  @NotNull private BitSet myPendingTagIds = new BitSet();
+  @GuardedBy("this")
+  @NotNull private BitSet myPendingPackageIds = new BitSet();
+
+  @GuardedBy("this")
+  @Nullable private LogCatHeader myLastHeader;
+  @GuardedBy("this")
+  private long myLastTime;
+
+  // The timestamp of the latest line with an Instant, and the one up to which lines are skipped after logcat restarted
+  @GuardedBy("this")
+  @Nullable private Instant myLastInstant;
+  @GuardedBy("this")
+  @Nullable private Instant myResumeInstant;
+
+  LogcatArchive(@NotNull Path path) throws IOException {
+    myChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                                 StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+  }
+
+  /**
+   * Appends lines to the archive. Lines with a {@link LogCatTimestamp} instead of an {@link Instant} are indexed by the time they are
+   * added at, as their timestamps have no year.
+   */
+  synchronized void addMessages(@NotNull List<LogCatMessage> messages) throws IOException {
+    if (myClosed) {
+      return;
+    }
+    for (LogCatMessage message : messages) {
+      Instant instant = message.getHeader().getTimestampInstant();
+      if (instant != null) {
+        if (myResumeInstant != null && !instant.isAfter(myResumeInstant)) {
+          continue;
+        }
+        myResumeInstant = null;
+        if (myLastInstant == null || instant.isAfter(myLastInstant)) {
+          myLastInstant = instant;
+        }
+      }
+      addMessage(message);
+      if (myPendingBytes.size() >= BLOCK_SIZE) {
+        writePendingBlock();
+      }
+    }
+  }
+
+  /**
+   * Called when logcat restarts on the device, which first replays the lines still in the buffers of the device. The lines with an
+   * {@link Instant} up to the latest one archived so far are skipped, until a newer one comes in.
+   */
+  synchronized void resume() {
+    myResumeInstant = myLastInstant;
+  }
+
+  @GuardedBy("this")
+  private void addMessage(@NotNull LogCatMessage message) throws IOException {
+    LogCatHeader header = message.getHeader();
+    boolean blockStart = myPendingBytes.size() == 0;
+    boolean continuation = header == myLastHeader;
+
+    if (!continuation || blockStart) {
+      Instant instant = header.getTimestampInstant();
+      int tagId = intern(header.getTag());
+      int packageId = intern(header.getAppName());
+
+      myPendingOutput.writeByte(HEADER | (continuation ? CONTINUATION : 0) | (instant != null ? INSTANT : 0));
+      myPendingOutput.writeByte(header.getLogLevel().ordinal());
+      myPendingOutput.writeInt(header.getPid());
+      myPendingOutput.writeInt(header.getTid());
+      myPendingOutput.writeInt(tagId);
+      myPendingOutput.writeInt(packageId);
+      if (instant != null) {
+        myPendingOutput.writeLong(instant.getEpochSecond());
+        myPendingOutput.writeInt(instant.getNano());
+        myLastTime = instant.toEpochMilli();
+      }
+      else {
+        if (!continuation) {
+          myLastTime = System.currentTimeMillis();
+        }
+        @SuppressWarnings("deprecation")
+        LogCatTimestamp timestamp = header.getTimestamp();
+        myPendingOutput.writeLong(myLastTime);
+        myPendingOutput.writeUTF(String.valueOf(timestamp));
+      }
+
+      myPendingMinTime = Math.min(myPendingMinTime, myLastTime);
+      myPendingMaxTime = Math.max(myPendingMaxTime, myLastTime);
+      myPendingLogLevels |= 1 << header.getLogLevel().ordinal();
+      myPendingTagIds.set(tagId);
+      myPendingPackageIds.set(packageId);
+      myLastHeader = header;
+    }
+    else {
+      myPendingOutput.writeByte(0);
+    }
+
+    byte[] text = message.getMessage().getBytes(StandardCharsets.UTF_8);
+    myPendingOutput.writeInt(text.length);
+    myPendingOutput.write(text);
+  }
+
+  @GuardedBy("this")
+  private void writePendingBlock() throws IOException {
+    byte[] bytes = myPendingBytes.toByteArray();
+    myDeflater.reset();
+    myDeflater.setInput(bytes);
+    myDeflater.finish();
+
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+    byte[] chunk = new byte[1 << 14];
+    while (!myDeflater.finished()) {
+      compressed.write(chunk, 0, myDeflater.deflate(chunk));
+    }
+
+    ByteBuffer buffer = ByteBuffer.wrap(compressed.toByteArray());
+    long offset = myFileSize;
+    while (buffer.hasRemaining()) {
+      myFileSize += myChannel.write(buffer, myFileSize);
+    }
+
+    myBlocks.add(new Block(offset, (int)(myFileSize - offset), bytes.length, myPendingMinTime, myPendingMaxTime, myPendingLogLevels,
+                           myPendingTagIds, myPendingPackageIds));
+    myPendingBytes.reset();
+    myPendingMinTime = Long.MAX_VALUE;
+    myPendingMaxTime = Long.MIN_VALUE;
+    myPendingLogLevels = 0;
+    myPendingTagIds = new BitSet();
+    myPendingPackageIds = new BitSet();
+  }
+
+  /**
+   * Passes the lines from time {@code from} on, or all of them if it is null, that are accepted by {@code filter}, or all of them if it is
+   * null, to {@code consumer}, oldest first. Lines are passed in batches of at most a block, until there are no more or the consumer
+   * returns false.
+   */
+  void read(@Nullable Instant from, @Nullable DefaultAndroidLogcatFilter filter, @NotNull Predicate<List<LogCatMessage>> consumer)
+    throws IOException {
+    long fromTime = from == null ? Long.MIN_VALUE : from.toEpochMilli();
+
+    List<Block> blocks;
+    List<String> strings;
+    byte[] pendingBytes;
+    synchronized (this) {
+      blocks = new ArrayList<>(myBlocks);
+      strings = new ArrayList<>(myStrings);
+      pendingBytes = myPendingBytes.toByteArray();
+    }
+
+    // Tag and package checks are cached per interned string.
+    byte[] tagResults = new byte[strings.size()];
+    byte[] packageResults = new byte[strings.size()];
+    LogCatHeader[] previousHeader = new LogCatHeader[1];
+
+    Inflater inflater = new Inflater();
+    try {
+      for (Block block : blocks) {
+        if (block.myMaxTime < fromTime ||
+            (filter != null && !isApplicable(block, filter, strings, tagResults, packageResults))) {
+          // The lines that follow don't continue the messages of this block
+          previousHeader[0] = null;
+          continue;
+        }
+        byte[] bytes = readBlock(block, inflater);
+        List<LogCatMessage> messages = decode(bytes, fromTime, filter, strings, tagResults, packageResults, previousHeader);
+        if (!messages.isEmpty() && !consumer.test(messages)) {
+          return;
+        }
+      }
+
+      List<LogCatMessage> messages = decode(pendingBytes, fromTime, filter, strings, tagResults, packageResults, previousHeader);
+      if (!messages.isEmpty()) {
+        consumer.test(messages);
+      }
+    }
+    finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Returns the number of bytes of the archive file.
+   */
+  synchronized long getFileSize() {
+    return myFileSize;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (myClosed) {
+      return;
+    }
+    myClosed = true;
+    myDeflater.end();
+    myChannel.close();
+  }
+
+  private static boolean isApplicable(@NotNull Block block,
+                                      @NotNull DefaultAndroidLogcatFilter filter,
+                                      @NotNull List<String> strings,
+                                      @NotNull byte[] tagResults,
+                                      @NotNull byte[] packageResults) {
+    boolean levelApplicable = false;
+    for (LogLevel level : LOG_LEVELS) {
+      if ((block.myLogLevels & 1 << level.ordinal()) != 0 && filter.isApplicableLogLevel(level)) {
+        levelApplicable = true;
+        break;
+      }
+    }
+    return levelApplicable &&
+           isAnyApplicable(block.myTagIds, tagResults, strings, filter::isApplicableTag) &&
+           isAnyApplicable(block.myPackageIds, packageResults, strings, filter::isApplicablePackage);
+  }
+
+  private static boolean isAnyApplicable(@NotNull BitSet ids,
+                                         @NotNull byte[] results,
+                                         @NotNull List<String> strings,
+                                         @NotNull Predicate<String> check) {
+    for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+      if (isApplicable(results, id, strings, check)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isApplicable(@NotNull byte[] results,
+                                      int stringId,
+                                      @NotNull List<String> strings,
+                                      @NotNull Predicate<String> check) {
+    if (results[stringId] == UNKNOWN) {
+      results[stringId] = check.test(strings.get(stringId)) ? ACCEPTED : REJECTED;
+    }
+    return results[stringId] == ACCEPTED;
+  }
+
+  @NotNull
+  private byte[] readBlock(@NotNull Block block, @NotNull Inflater inflater) throws IOException {
+    ByteBuffer compressed = ByteBuffer.allocate(block.myCompressedSize);
+    while (compressed.hasRemaining()) {
+      if (myChannel.read(compressed, block.myOffset + compressed.position()) < 0) {
+        throw new EOFException();
+      }
+    }
+
+    byte[] bytes = new byte[block.mySize];
+    inflater.reset();
+    inflater.setInput(compressed.array());
+    try {
+      int size = 0;
+      while (size < bytes.length && !inflater.finished()) {
+        size += inflater.inflate(bytes, size, bytes.length - size);
+      }
+    }
+    catch (DataFormatException exception) {
+      throw new IOException(exception);
+    }
+    return bytes;
+  }
+
+  /**
+   * @param previousHeader the header of the last line decoded, so lines continuing its message share it
+   */
+  @NotNull
+  private static List<LogCatMessage> decode(@NotNull byte[] bytes,
+                                            long fromTime,
+                                            @Nullable DefaultAndroidLogcatFilter filter,
+                                            @NotNull List<String> strings,
+                                            @NotNull byte[] tagResults,
+                                            @NotNull byte[] packageResults,
+                                            @NotNull LogCatHeader[] previousHeader) throws IOException {
+    List<LogCatMessage> messages = new ArrayList<>();
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+
+    LogCatHeader header = previousHeader[0];
+    long time = Long.MIN_VALUE;
+    boolean accepted = true;
+    while (input.available() > 0) {
+      int flags = input.readUnsignedByte();
+      if ((flags & HEADER) != 0) {
+        LogLevel level = LOG_LEVELS[input.readUnsignedByte()];
+        int pid = input.readInt();
+        int tid = input.readInt();
+        int tagId = input.readInt();
+        int packageId = input.readInt();
+
+        if ((flags & INSTANT) != 0) {
+          Instant instant = Instant.ofEpochSecond(input.readLong(), input.readInt());
+          time = instant.toEpochMilli();
+          if ((flags & CONTINUATION) == 0 || header == null) {
+            header = new LogCatHeader(level, pid, tid, strings.get(packageId), strings.get(tagId), instant);
+          }
+        }
+        else {
+          time = input.readLong();
+          String timestamp = input.readUTF();
+          if ((flags & CONTINUATION) == 0 || header == null) {
+            @SuppressWarnings("deprecation")
+            LogCatHeader textHeader =
+              new LogCatHeader(level, pid, tid, strings.get(packageId), strings.get(tagId), LogCatTimestamp.fromString(timestamp));
+            header = textHeader;
+          }
+        }
+
+        accepted = time >= fromTime &&
+                   (filter == null ||
+                    (filter.isApplicableLogLevel(level) &&
+                     filter.isApplicablePid(pid) &&
+                     isApplicable(tagResults, tagId, strings, filter::isApplicableTag) &&
+                     isApplicable(packageResults, packageId, strings, filter::isApplicablePackage)));
+      }
+
+      int length = input.readInt();
+      if (!accepted) {
+        input.skipBytes(length);
+        continue;
+      }
+      String text = new String(bytes, bytes.length - input.available(), length, StandardCharsets.UTF_8);
+      input.skipBytes(length);
+      if (filter == null || filter.isApplicableMessage(text)) {
+        assert header != null;
+        messages.add(new LogCatMessage(header, text));
+      }
+    }
+    previousHeader[0] = header;
+    return messages;
+  }
+
+  @GuardedBy("this")
+  private int intern(@NotNull String string) {
+    Integer id = myStringIds.get(string);
+    if (id == null) {
+      id = myStrings.size();
+      myStrings.add(string);
+      myStringIds.put(string, id);
+    }
+    return id;
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import java.lang.reflect.Array;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The backlog of logcat lines of a device, kept in a ring buffer that holds at most a given number of message characters, evicting the
+ * oldest lines first.
+ *
+ * Lines are stored in columns instead of as {@link LogCatMessage}s: the text of all lines shares a single char array, and the log level,
+ * pid, tag and package of each line are kept in primitive arrays, with tags and packages interned, so the backlog can be filtered without
+ * going through the headers, and message patterns are only run on the lines that pass the other checks. Lines of multi-line messages
+ * share their header, which is kept once per line as a reference.
+ *
+ * This class is not thread safe.
+ */
+final class LogcatBuffer {
+  private static final int INITIAL_LINE_CAPACITY = 1 << 10;
+  private static final int INITIAL_TEXT_CAPACITY = 1 << 16;
+  private static final LogLevel[] LOG_LEVELS = LogLevel.values();
+
+  private static final byte UNKNOWN = 0;
+  private static final byte ACCEPTED = 1;
+  private static final byte REJECTED = 2;
+
+  private final int myMaxTextLength;
+
+  // Line columns, used as a circular buffer starting at myFirstLine.
+  @NotNull private LogCatHeader[] myHeaders = new LogCatHeader[INITIAL_LINE_CAPACITY];
+  @NotNull private byte[] myLogLevels = new byte[INITIAL_LINE_CAPACITY];
+  @NotNull private int[] myPids = new int[INITIAL_LINE_CAPACITY];
+  @NotNull private int[] myTagIds = new int[INITIAL_LINE_CAPACITY];
+  @NotNull private int[] myPackageIds = new int[INITIAL_LINE_CAPACITY];
+  @NotNull private int[] myTextLengths = new int[INITIAL_LINE_CAPACITY];
+  private int myFirstLine;
+  private int myLineCount;
+
+  // The text of the lines, one after the other, used as a circular buffer starting at myFirstChar.
+  @NotNull private char[] myText = new char[INITIAL_TEXT_CAPACITY];
+  private int myFirstChar;
+  private int myTextLength;
+
+  // Tags and package names. They are not evicted with the lines, as there are only so many of them on a device.
+  @NotNull private final List<String> myStrings = new ArrayList<>();
+  @NotNull private final Map<String, Integer> myStringIds = new HashMap<>();
+
+  /**
+   * @param maxTextLength the number of message characters to keep, or {@link Integer#MAX_VALUE} to keep every line.
+   */
+  LogcatBuffer(int maxTextLength) {
+    myMaxTextLength = maxTextLength;
+  }
+
+  void addMessage(@NotNull LogCatMessage message) {
+    String text = message.getMessage();
+    int length = text.length();
+    if (length > myMaxTextLength) {
+      // The line wouldn't fit even on its own, and would evict everything else anyway.
+      clear();
+      return;
+    }
+    while (myTextLength + length > myMaxTextLength) {
+      removeFirstLine();
+    }
+    if (myLineCount == myHeaders.length) {
+      growLines();
+    }
+    if (myTextLength + length > myText.length) {
+      growText(myTextLength + length);
+    }
+
+    LogCatHeader header = message.getHeader();
+    int line = wrap(myFirstLine + myLineCount, myHeaders.length);
+    myHeaders[line] = header;
+    myLogLevels[line] = (byte)header.getLogLevel().ordinal();
+    myPids[line] = header.getPid();
+    myTagIds[line] = intern(header.getTag());
+    myPackageIds[line] = intern(header.getAppName());
+    myTextLengths[line] = length;
+    myLineCount++;
+
+    int start = wrap(myFirstChar + myTextLength, myText.length);
+    int headLength = Math.min(length, myText.length - start);
+    text.getChars(0, headLength, myText, start);
+    text.getChars(headLength, length, myText, 0);
+    myTextLength += length;
+  }
+
+  int getLineCount() {
+    return myLineCount;
+  }
+
+  @NotNull
+  List<LogCatMessage> getMessages() {
+    return getMessages(null);
+  }
+
+  /**
+   * @return the lines accepted by the given filter, oldest first, or all of them if the filter is null.
+   */
+  @NotNull
+  List<LogCatMessage> getMessages(@Nullable DefaultAndroidLogcatFilter filter) {
+    List<LogCatMessage> messages = new ArrayList<>(filter == null ? myLineCount : 16);
+    // Tag and package checks are cached per interned string.
+    byte[] tagResults = new byte[myStrings.size()];
+    byte[] packageResults = new byte[myStrings.size()];
+    Predicate<String> tagCheck = filter == null ? null : filter::isApplicableTag;
+    Predicate<String> packageCheck = filter == null ? null : filter::isApplicablePackage;
+    int start = myFirstChar;
+    for (int i = 0; i < myLineCount; i++) {
+      int line = wrap(myFirstLine + i, myHeaders.length);
+      int length = myTextLengths[line];
+      if (filter == null ||
+          (filter.isApplicableLogLevel(LOG_LEVELS[myLogLevels[line]]) &&
+           filter.isApplicablePid(myPids[line]) &&
+           isApplicable(tagResults, myTagIds[line], tagCheck) &&
+           isApplicable(packageResults, myPackageIds[line], packageCheck))) {
+        CharSequence text = getText(start, length);
+        if (filter == null || filter.isApplicableMessage(text)) {
+          messages.add(new LogCatMessage(myHeaders[line], text.toString()));
+        }
+      }
+      start = wrap(start + length, myText.length);
+    }
+    return messages;
+  }
+
+  void clear() {
+    myHeaders = new LogCatHeader[INITIAL_LINE_CAPACITY];
+    myLogLevels = new byte[INITIAL_LINE_CAPACITY];
+    myPids = new int[INITIAL_LINE_CAPACITY];
+    myTagIds = new int[INITIAL_LINE_CAPACITY];
+    myPackageIds = new int[INITIAL_LINE_CAPACITY];
+    myTextLengths = new int[INITIAL_LINE_CAPACITY];
+    myFirstLine = 0;
+    myLineCount = 0;
+    myText = new char[INITIAL_TEXT_CAPACITY];
+    myFirstChar = 0;
+    myTextLength = 0;
+  }
+
+  private boolean isApplicable(@NotNull byte[] results, int stringId, @NotNull Predicate<String> check) {
+    if (results[stringId] == UNKNOWN) {
+      results[stringId] = check.test(myStrings.get(stringId)) ? ACCEPTED : REJECTED;
+    }
+    return results[stringId] == ACCEPTED;
+  }
+
+  @NotNull
+  private CharSequence getText(int start, int length) {
+    if (start + length <= myText.length) {
+      // Patterns can run on the buffer directly, a string is only made for the lines that are accepted.
+      return CharBuffer.wrap(myText, start, length);
+    }
+    int headLength = myText.length - start;
+    return new StringBuilder(length).append(myText, start, headLength).append(myText, 0, length - headLength);
+  }
+
+  private void removeFirstLine() {
+    int length = myTextLengths[myFirstLine];
+    myFirstChar = wrap(myFirstChar + length, myText.length);
+    myTextLength -= length;
+    myHeaders[myFirstLine] = null;
+    myFirstLine = wrap(myFirstLine + 1, myHeaders.length);
+    myLineCount--;
+  }
+
+  private int intern(@NotNull String string) {
+    Integer id = myStringIds.get(string);
+    if (id == null) {
+      id = myStrings.size();
+      myStrings.add(string);
+      myStringIds.put(string, id);
+    }
+    return id;
+  }
+
+  private void growLines() {
+    int capacity = myHeaders.length * 2;
+    myHeaders = (LogCatHeader[])unwrap(myHeaders, myFirstLine, myLineCount, new LogCatHeader[capacity]);
+    myLogLevels = (byte[])unwrap(myLogLevels, myFirstLine, myLineCount, new byte[capacity]);
+    myPids = (int[])unwrap(myPids, myFirstLine, myLineCount, new int[capacity]);
+    myTagIds = (int[])unwrap(myTagIds, myFirstLine, myLineCount, new int[capacity]);
+    myPackageIds = (int[])unwrap(myPackageIds, myFirstLine, myLineCount, new int[capacity]);
+    myTextLengths = (int[])unwrap(myTextLengths, myFirstLine, myLineCount, new int[capacity]);
+    myFirstLine = 0;
+  }
+
+  private void growText(int minCapacity) {
+    long capacity = Math.max((long)myText.length * 2, minCapacity);
+    myText = (char[])unwrap(myText, myFirstChar, myTextLength, new char[(int)Math.min(capacity, myMaxTextLength)]);
+    myFirstChar = 0;
+  }
+
+  /**
+   * Copies the {@code count} elements of the circular buffer {@code from} starting at {@code first} to the start of {@code to}.
+   */
+  @NotNull
+  private static Object unwrap(@NotNull Object from, int first, int count, @NotNull Object to) {
+    int headCount = Math.min(count, Array.getLength(from) - first);
+    System.arraycopy(from, first, to, 0, headCount);
+    System.arraycopy(from, 0, to, headCount, count - headCount);
+    return to;
+  }
+
+  private static int wrap(int index, int capacity) {
+    return index >= capacity ? index - capacity : index;
+  }
+}
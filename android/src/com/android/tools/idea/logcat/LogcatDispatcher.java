@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.tools.idea.logcat.AndroidLogcatService.LogcatListener;
+import net.jcip.annotations.ThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The delivery stage of a device's logcat: the thread reading from adb hands each line to {@link #onLogLineReceived(LogCatMessage)},
+ * which queues it, and the lines are delivered to a {@link Sink} in batches on a shared executor.
+ *
+ * <p>The queue is bounded. When it is full, the reading thread waits for a bounded time and then drops lines, counting them, until the
+ * sink catches up, so a device flooding logcat or a slow listener can neither stall the reading thread indefinitely nor grow the heap.
+ * At most one batch of a dispatcher is delivered at a time and a batch holds at most a given number of lines, after which the delivery is
+ * resubmitted to the executor, so dispatchers sharing the executor take turns.
+ */
+@ThreadSafe
+final class LogcatDispatcher implements LogcatListener {
+  interface Sink {
+    /**
+     * @param lines        the lines of the batch, in the order they were received. Empty if the batch only reports dropped lines.
+     * @param droppedCount the number of lines dropped since the previous batch because the queue was full
+     */
+    void onLogLinesReceived(@NotNull List<LogCatMessage> lines, int droppedCount);
+  }
+
+  @NotNull private final Executor myExecutor;
+  @NotNull private final Sink mySink;
+  @NotNull private final BlockingQueue<LogCatMessage> myQueue;
+  private final int myBatchSize;
+  private final long myMaxWaitMillis;
+
+  @NotNull private final AtomicBoolean myDrainScheduled = new AtomicBoolean();
+  @NotNull private final AtomicInteger myDroppedCount = new AtomicInteger();
+  @NotNull private final AtomicLong myTotalDroppedCount = new AtomicLong();
+  private volatile boolean myDropping;
+  private volatile boolean myDiscarded;
+
+  // Held while a batch is delivered to the sink
+  @NotNull private final Object myDeliveryLock = new Object();
+
+  LogcatDispatcher(@NotNull Executor executor, @NotNull Sink sink, int capacity, int batchSize, long maxWaitMillis) {
+    myExecutor = executor;
+    mySink = sink;
+    myQueue = new ArrayBlockingQueue<>(capacity);
+    myBatchSize = batchSize;
+    myMaxWaitMillis = maxWaitMillis;
+  }
+
+  /**
+   * Queues a line for delivery. If the queue is full, waits for room at most once per run of dropped lines: once a line was dropped, the
+   * following ones are dropped right away until one fits in the queue again.
+   */
+  @Override
+  public void onLogLineReceived(@NotNull LogCatMessage line) {
+    if (myDiscarded) {
+      return;
+    }
+
+    if (myQueue.offer(line) || offerAfterWait(line)) {
+      myDropping = false;
+    }
+    else {
+      myDropping = true;
+      myDroppedCount.incrementAndGet();
+      myTotalDroppedCount.incrementAndGet();
+    }
+    scheduleDrain();
+  }
+
+  private boolean offerAfterWait(@NotNull LogCatMessage line) {
+    if (myDropping) {
+      return false;
+    }
+    scheduleDrain();
+    try {
+      return myQueue.offer(line, myMaxWaitMillis, TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Returns the number of lines dropped since this dispatcher was created.
+   */
+  long getDroppedCount() {
+    return myTotalDroppedCount.get();
+  }
+
+  /**
+   * Drops the lines that were not delivered yet and ignores the ones received from now on. Waits for the batch being delivered, if any,
+   * so nothing reaches the sink once this returns. Must not be called while holding a lock the sink takes.
+   */
+  void discard() {
+    myDiscarded = true;
+    myQueue.clear();
+
+    synchronized (myDeliveryLock) {
+      myDroppedCount.set(0);
+    }
+  }
+
+  private void scheduleDrain() {
+    if ((!myQueue.isEmpty() || myDroppedCount.get() != 0) && myDrainScheduled.compareAndSet(false, true)) {
+      myExecutor.execute(this::drain);
+    }
+  }
+
+  private void drain() {
+    try {
+      synchronized (myDeliveryLock) {
+        List<LogCatMessage> batch = new ArrayList<>(Math.min(myQueue.size(), myBatchSize));
+        myQueue.drainTo(batch, myBatchSize);
+        int droppedCount = myDroppedCount.getAndSet(0);
+
+        if (!myDiscarded && (!batch.isEmpty() || droppedCount != 0)) {
+          mySink.onLogLinesReceived(batch, droppedCount);
+        }
+      }
+    }
+    finally {
+      myDrainScheduled.set(false);
+    }
+
+    // Lines that arrived during the delivery, or that did not fit in the batch
+    scheduleDrain();
+  }
+}
@@ -33,7 +33,10 @@ final class ViewListener extends FormattedLogcatReceiver {
   @Override
   void receiveFormattedLogLine(@NotNull String line) {
     myView.getLogConsole().addLogLine(line);
+  }
 
+  @Override
+  void onFormattedLogLinesReceived() {
     myAlarm.cancelAllRequests();
     myAlarm.addRequest(myView.getToolbar()::updateActionsImmediately, 50);
   }
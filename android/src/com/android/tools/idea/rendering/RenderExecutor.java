@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.intellij.openapi.diagnostic.Logger;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Runs layoutlib actions on the render thread.
+ * <p/>
+ * The actions submitted with the same affinity key (typically the {@link RenderTask#getAffinityKey()}) always run in the order they were
+ * submitted, since a later action, like the dispose of a render session, often depends on the earlier ones. Actions without a key have no
+ * such constraint.
+ * <p/>
+ * The queue has two priority lanes. The keys in the {@link Priority#HIGH} lane, used for the previews that are visible on the screen,
+ * always run before the ones in the {@link Priority#LOW} lane. A key is in the lane of the last action submitted for it, so when its
+ * priority changes, its pending actions move to the new lane together. Within a lane, actions are taken from their owners (typically the
+ * file being previewed) in turns, so that an editor with many previews does not hold up the others.
+ */
+public final class RenderExecutor {
+  private static final Logger LOG = Logger.getInstance(RenderExecutor.class);
+  private static final Object NO_OWNER = new Object();
+
+  public enum Priority {
+    HIGH,
+    LOW
+  }
+
+  @NotNull private final Thread myThread;
+  /** The pending actions of each affinity key. Guarded by this. */
+  private final Map<Object, KeyQueue> myKeyQueues = new HashMap<>();
+  /** The keys with pending actions in each lane, grouped by owner. Guarded by this. */
+  private final Map<Priority, LinkedHashMap<Object, ArrayDeque<KeyQueue>>> myLanes = new EnumMap<>(Priority.class);
+  /** Guarded by this. */
+  private int myQueuedCount;
+  private volatile boolean myShutdown;
+
+  private final AtomicLong myCompletedCount = new AtomicLong();
+  private final AtomicLong myTotalQueueWaitNs = new AtomicLong();
+  private final AtomicLong myMaxQueueWaitNs = new AtomicLong();
+  private final AtomicLong myTotalRunNs = new AtomicLong();
+  private final AtomicLong myMaxRunNs = new AtomicLong();
+
+  /**
+   * Creates an executor and starts its thread.
+   */
+  RenderExecutor(@NotNull String threadName) {
+    for (Priority priority : Priority.values()) {
+      myLanes.put(priority, new LinkedHashMap<>());
+    }
+    myThread = new Thread(null, this::run, threadName);
+    myThread.setDaemon(true);
+    myThread.start();
+  }
+
+  /**
+   * Queues the given action after the pending actions of the given affinity key.
+   *
+   * @param affinityKey the key whose actions must run in the order they were submitted, or null if the action can run in any order
+   * @param owner the object used to share the thread fairly between its users, or null
+   * @param priority the lane to queue the action in. The pending actions of the same key move to this lane too
+   * @throws RejectedExecutionException if the executor has been shut down
+   */
+  public void execute(@Nullable Object affinityKey, @Nullable Object owner, @NotNull Priority priority, @NotNull Runnable action) {
+    if (myShutdown) {
+      throw new RejectedExecutionException("The render executor has been shut down");
+    }
+    enqueue(affinityKey, new Job(owner == null ? NO_OWNER : owner, priority, action));
+  }
+
+  /**
+   * Same as {@link #execute} but returns a {@link Future} with the result of the given action.
+   */
+  @NotNull
+  public <T> Future<T> submit(@Nullable Object affinityKey, @Nullable Object owner, @NotNull Priority priority,
+                              @NotNull Callable<T> action) {
+    FutureTask<T> future = new FutureTask<>(action);
+    execute(affinityKey, owner, priority, future);
+    return future;
+  }
+
+  /**
+   * Same as {@link #execute} but returns a {@link CompletableFuture} with the result of the given action.
+   */
+  @NotNull
+  public <T> CompletableFuture<T> supplyAsync(@Nullable Object affinityKey, @Nullable Object owner, @NotNull Priority priority,
+                                              @NotNull Supplier<T> action) {
+    return CompletableFuture.supplyAsync(action, runnable -> execute(affinityKey, owner, priority, runnable));
+  }
+
+  /**
+   * Returns the render thread, or null if the executor has been shut down.
+   */
+  @Nullable
+  public Thread getThread() {
+    return myShutdown ? null : myThread;
+  }
+
+  /**
+   * Returns true if the calling thread is the render thread.
+   */
+  public boolean isRenderThread() {
+    return Thread.currentThread() == myThread;
+  }
+
+  /**
+   * Drops the queued actions and interrupts the running one. No new actions are accepted after this call.
+   */
+  public void shutdownNow() {
+    myShutdown = true;
+    synchronized (this) {
+      myKeyQueues.clear();
+      for (LinkedHashMap<Object, ArrayDeque<KeyQueue>> lane : myLanes.values()) {
+        lane.clear();
+      }
+      myQueuedCount = 0;
+      notifyAll();
+    }
+    myThread.interrupt();
+  }
+
+  /**
+   * Waits at most the given time for the render thread to finish after {@link #shutdownNow()}.
+   *
+   * @return true if the thread has finished
+   */
+  public boolean awaitTermination(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+    myThread.join(Math.max(1, unit.toMillis(timeout)));
+    return !myThread.isAlive();
+  }
+
+  /**
+   * Returns how long the actions run so far waited in the queue and how long they took to run.
+   */
+  @NotNull
+  public Stats getStats() {
+    int queuedCount;
+    synchronized (this) {
+      queuedCount = myQueuedCount;
+    }
+    return new Stats(queuedCount, myCompletedCount.get(),
+                     TimeUnit.NANOSECONDS.toMillis(myTotalQueueWaitNs.get()), TimeUnit.NANOSECONDS.toMillis(myMaxQueueWaitNs.get()),
+                     TimeUnit.NANOSECONDS.toMillis(myTotalRunNs.get()), TimeUnit.NANOSECONDS.toMillis(myMaxRunNs.get()));
+  }
+
+  private synchronized void enqueue(@Nullable Object affinityKey, @NotNull Job job) {
+    KeyQueue keyQueue = affinityKey == null ? null : myKeyQueues.get(affinityKey);
+    if (keyQueue == null) {
+      keyQueue = new KeyQueue(affinityKey, job.myOwner, job.myPriority);
+      if (affinityKey != null) {
+        myKeyQueues.put(affinityKey, keyQueue);
+      }
+      addToLane(keyQueue);
+    }
+    else if (keyQueue.myPriority != job.myPriority || keyQueue.myOwner != job.myOwner) {
+      // Move the whole key so that its pending actions still run before this one.
+      removeFromLane(keyQueue);
+      keyQueue.myPriority = job.myPriority;
+      keyQueue.myOwner = job.myOwner;
+      addToLane(keyQueue);
+    }
+    keyQueue.myJobs.add(job);
+    myQueuedCount++;
+    notifyAll();
+  }
+
+  private void addToLane(@NotNull KeyQueue keyQueue) {
+    myLanes.get(keyQueue.myPriority).computeIfAbsent(keyQueue.myOwner, owner -> new ArrayDeque<>()).add(keyQueue);
+  }
+
+  private void removeFromLane(@NotNull KeyQueue keyQueue) {
+    LinkedHashMap<Object, ArrayDeque<KeyQueue>> lane = myLanes.get(keyQueue.myPriority);
+    ArrayDeque<KeyQueue> keyQueues = lane.get(keyQueue.myOwner);
+    keyQueues.remove(keyQueue);
+    if (keyQueues.isEmpty()) {
+      lane.remove(keyQueue.myOwner);
+    }
+  }
+
+  /**
+   * Returns the next action to run, waiting for one if the queue is empty, or null if the executor has been shut down.
+   * The owner and the key of the returned action are moved to the back of their lane, to let the others go first.
+   */
+  @Nullable
+  private synchronized Job take() throws InterruptedException {
+    while (!myShutdown) {
+      for (LinkedHashMap<Object, ArrayDeque<KeyQueue>> lane : myLanes.values()) {
+        Iterator<Map.Entry<Object, ArrayDeque<KeyQueue>>> iterator = lane.entrySet().iterator();
+        if (iterator.hasNext()) {
+          Map.Entry<Object, ArrayDeque<KeyQueue>> entry = iterator.next();
+          ArrayDeque<KeyQueue> keyQueues = entry.getValue();
+          KeyQueue keyQueue = keyQueues.poll();
+          Job job = keyQueue.myJobs.poll();
+          if (!keyQueue.myJobs.isEmpty()) {
+            keyQueues.add(keyQueue);
+          }
+          else if (keyQueue.myKey != null) {
+            myKeyQueues.remove(keyQueue.myKey);
+          }
+          iterator.remove();
+          if (!keyQueues.isEmpty()) {
+            lane.put(entry.getKey(), keyQueues);
+          }
+          myQueuedCount--;
+          return job;
+        }
+      }
+      wait();
+    }
+    return null;
+  }
+
+  private void run() {
+    while (true) {
+      Job job;
+      try {
+        job = take();
+      }
+      catch (InterruptedException e) {
+        continue; // take() returns null if the executor has been shut down.
+      }
+      if (job == null) {
+        return;
+      }
+
+      long startNs = System.nanoTime();
+      try {
+        job.myAction.run();
+      }
+      catch (Throwable t) {
+        // Keep the thread alive since the thread local state of the inflated views would be lost otherwise.
+        LOG.warn("Render action failed", t);
+      }
+      recordCompletion(job, startNs, System.nanoTime());
+      // Clear the interrupt left by a cancelled action, like ThreadPoolExecutor does.
+      //noinspection ResultOfMethodCallIgnored
+      Thread.interrupted();
+    }
+  }
+
+  private void recordCompletion(@NotNull Job job, long startNs, long endNs) {
+    long queueWaitNs = startNs - job.myEnqueueTimeNs;
+    long runNs = endNs - startNs;
+    myCompletedCount.incrementAndGet();
+    myTotalQueueWaitNs.addAndGet(queueWaitNs);
+    myMaxQueueWaitNs.accumulateAndGet(queueWaitNs, Math::max);
+    myTotalRunNs.addAndGet(runNs);
+    myMaxRunNs.accumulateAndGet(runNs, Math::max);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(String.format("Render action (%s) waited %dms in the queue and ran for %dms", job.myPriority,
+                              TimeUnit.NANOSECONDS.toMillis(queueWaitNs), TimeUnit.NANOSECONDS.toMillis(runNs)));
+    }
+  }
+
+  /**
+   * Queue wait and run times of the actions run by a {@link RenderExecutor}.
+   */
+  public static final class Stats {
+    private final int myQueuedCount;
+    private final long myCompletedCount;
+    private final long myTotalQueueWaitMs;
+    private final long myMaxQueueWaitMs;
+    private final long myTotalRunMs;
+    private final long myMaxRunMs;
+
+    private Stats(int queuedCount, long completedCount, long totalQueueWaitMs, long maxQueueWaitMs, long totalRunMs, long maxRunMs) {
+      myQueuedCount = queuedCount;
+      myCompletedCount = completedCount;
+      myTotalQueueWaitMs = totalQueueWaitMs;
+      myMaxQueueWaitMs = maxQueueWaitMs;
+      myTotalRunMs = totalRunMs;
+      myMaxRunMs = maxRunMs;
+    }
+
+    /** Number of actions waiting to run. */
+    public int getQueuedCount() {
+      return myQueuedCount;
+    }
+
+    /** Number of actions that have finished running. */
+    public long getCompletedCount() {
+      return myCompletedCount;
+    }
+
+    public long getAverageQueueWaitMs() {
+      return myCompletedCount == 0 ? 0 : myTotalQueueWaitMs / myCompletedCount;
+    }
+
+    public long getMaxQueueWaitMs() {
+      return myMaxQueueWaitMs;
+    }
+
+    public long getAverageRunMs() {
+      return myCompletedCount == 0 ? 0 : myTotalRunMs / myCompletedCount;
+    }
+
+    public long getMaxRunMs() {
+      return myMaxRunMs;
+    }
+  }
+
+  private static final class Job {
+    @NotNull final Object myOwner;
+    @NotNull final Priority myPriority;
+    @NotNull final Runnable myAction;
+    final long myEnqueueTimeNs = System.nanoTime();
+
+    Job(@NotNull Object owner, @NotNull Priority priority, @NotNull Runnable action) {
+      myOwner = owner;
+      myPriority = priority;
+      myAction = action;
+    }
+  }
+
+  /**
+   * The pending actions of one affinity key, in the order they were submitted. The lane and owner are the ones of the last action
+   * submitted. Actions without a key get a queue of their own.
+   */
+  private static final class KeyQueue {
+    @Nullable final Object myKey;
+    @NotNull Object myOwner;
+    @NotNull Priority myPriority;
+    final ArrayDeque<Job> myJobs = new ArrayDeque<>();
+
+    KeyQueue(@Nullable Object key, @NotNull Object owner, @NotNull Priority priority) {
+      myKey = key;
+      myOwner = owner;
+      myPriority = priority;
+    }
+  }
+}
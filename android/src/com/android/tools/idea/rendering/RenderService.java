@@ -53,14 +53,10 @@ import com.intellij.util.IncorrectOperationException;
 import com.intellij.util.concurrency.AppExecutorUtil;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.android.maven.AndroidMavenUtil;
@@ -83,8 +79,7 @@ public class RenderService implements Disposable {
                                                                               : 6));
   @VisibleForTesting
   public static long ourRenderThreadTimeoutMs = DEFAULT_RENDER_THREAD_TIMEOUT_MS;
-  private static final AtomicReference<Thread> ourRenderingThread = new AtomicReference<>();
-  private static ExecutorService ourRenderingExecutor;
+  private static RenderExecutor ourRenderingExecutor;
   private static final AtomicInteger ourTimeoutExceptionCounter = new AtomicInteger(0);
 
   /**
@@ -103,16 +98,7 @@ public class RenderService implements Disposable {
   private final Project myProject;
 
   private static void innerInitializeRenderExecutor() {
-    ourRenderingExecutor = new ThreadPoolExecutor(1, 1,
-                             0, TimeUnit.MILLISECONDS,
-                             new LinkedBlockingQueue<>(),
-                             (Runnable r) -> {
-                               Thread renderingThread = new Thread(null, r, "Layoutlib Render Thread");
-                               renderingThread.setDaemon(true);
-                               ourRenderingThread.set(renderingThread);
-
-                               return renderingThread;
-                             });
+    ourRenderingExecutor = new RenderExecutor("Layoutlib Render Thread");
   }
 
   @TestOnly
@@ -124,10 +110,6 @@ public class RenderService implements Disposable {
 
   private static void shutdownRenderExecutor() {
     ourRenderingExecutor.shutdownNow();
-    Thread currentThread = ourRenderingThread.getAndSet(null);
-    if (currentThread != null) {
-      currentThread.interrupt();
-    }
   }
 
   /**
@@ -261,23 +243,27 @@ public class RenderService implements Disposable {
   }
 
   /**
-   * Runs a action that requires the rendering lock. Layoutlib is not thread safe so any rendering actions should be called using this
-   * method.
+   * Runs a action that requires the rendering lock on the render thread, after the pending actions of the given affinity key.
+   * See {@link #runRenderAction(Object, Callable)}.
    */
-  public static void runRenderAction(@NotNull final Runnable runnable) throws Exception {
-    runRenderAction(Executors.callable(runnable));
+  public static void runRenderAction(@NotNull Object affinityKey, @NotNull Runnable runnable) throws Exception {
+    runRenderAction(affinityKey, Executors.callable(runnable));
   }
 
   /**
-   * Runs a action that requires the rendering lock. Layoutlib is not thread safe so any rendering actions should be called using this
-   * method.
+   * Runs a action that requires the rendering lock on the render thread, after the pending actions of the given affinity key.
+   *
+   * @param affinityKey the object whose actions must run in the order they were submitted. Actions on the views of a {@link RenderTask}
+   *                    must use its {@link RenderTask#getAffinityKey()} so that they do not run before the task is inflated
+   * @see RenderExecutor
    */
-  public static <T> T runRenderAction(@NotNull Callable<T> callable) throws Exception {
+  public static <T> T runRenderAction(@NotNull Object affinityKey, @NotNull Callable<T> callable) throws Exception {
     try {
       // If the number of timeouts exceeds a certain threshold, stop waiting so the caller doesn't block. We try to submit a task that
       // clean-up the timeout counter instead. If it goes through, it means the queue is free.
       if (ourTimeoutExceptionCounter.get() > 3) {
-        ourRenderingExecutor.submit(() -> ourTimeoutExceptionCounter.set(0)).get(50, TimeUnit.MILLISECONDS);
+        ourRenderingExecutor.submit(affinityKey, null, RenderExecutor.Priority.HIGH, () -> ourTimeoutExceptionCounter.getAndSet(0))
+          .get(50, TimeUnit.MILLISECONDS);
       }
       long timeout = ourRenderThreadTimeoutMs;
       if (isFirstCall) {
@@ -286,7 +272,8 @@ public class RenderService implements Disposable {
         isFirstCall = false;
         timeout *= 2;
       }
-      T result = ourRenderingExecutor.submit(callable).get(timeout, TimeUnit.MILLISECONDS);
+      T result = ourRenderingExecutor.submit(affinityKey, null, RenderExecutor.Priority.HIGH, callable)
+        .get(timeout, TimeUnit.MILLISECONDS);
       // The executor seems to be taking tasks so reset the counter
       ourTimeoutExceptionCounter.set(0);
 
@@ -295,7 +282,7 @@ public class RenderService implements Disposable {
     catch (TimeoutException e) {
       ourTimeoutExceptionCounter.incrementAndGet();
 
-      Thread renderingThread = ourRenderingThread.get();
+      Thread renderingThread = ourRenderingExecutor.getThread();
       TimeoutException timeoutException = new TimeoutException("Preview timed out while rendering the layout.\n" +
                                                                "This typically happens when there is an infinite loop or unbounded recursion in one of the custom views.");
       if (renderingThread != null) {
@@ -307,24 +294,40 @@ public class RenderService implements Disposable {
   }
 
   /**
-   * Runs an action that requires the rendering lock. Layoutlib is not thread safe so any rendering actions should be called using this
-   * method.
-   * <p/>
-   * This method will run the passed action asynchronously and return a {@link CompletableFuture}
+   * Runs an action that requires the rendering lock asynchronously on the render thread, after the pending actions of the given
+   * affinity key.
+   *
+   * @param affinityKey the object whose actions must run in the order they were submitted. Actions on the views of a {@link RenderTask}
+   *                    must use its {@link RenderTask#getAffinityKey()} so that they do not run before the task is inflated
+   * @param owner the object, typically the previewed file, used to share the render thread fairly between editors, or null
+   * @param priority {@link RenderExecutor.Priority#HIGH} for the previews visible on the screen
+   * @see RenderExecutor
    */
   @NotNull
-  public static <T> CompletableFuture<T> runAsyncRenderAction(@NotNull Supplier<T> callable) {
-    return CompletableFuture.supplyAsync(callable, ourRenderingExecutor);
+  public static <T> CompletableFuture<T> runAsyncRenderAction(@NotNull Object affinityKey,
+                                                              @Nullable Object owner,
+                                                              @NotNull RenderExecutor.Priority priority,
+                                                              @NotNull Supplier<T> callable) {
+    return ourRenderingExecutor.supplyAsync(affinityKey, owner, priority, callable);
   }
 
   /**
-   * Runs an action that requires the rendering lock. Layoutlib is not thread safe so any rendering actions should be called using this
-   * method.
-   * <p/>
-   * This method will run the passed action asynchronously
+   * Runs an action that requires the rendering lock asynchronously on the render thread, after the pending actions of the given
+   * affinity key. See {@link #runAsyncRenderAction(Object, Object, RenderExecutor.Priority, Supplier)}.
+   */
+  public static void runAsyncRenderAction(@NotNull Object affinityKey,
+                                          @Nullable Object owner,
+                                          @NotNull RenderExecutor.Priority priority,
+                                          @NotNull Runnable runnable) {
+    ourRenderingExecutor.execute(affinityKey, owner, priority, runnable);
+  }
+
+  /**
+   * Returns the queue wait and run times of the render actions run so far.
    */
-  public static void runAsyncRenderAction(@NotNull Runnable runnable) {
-    ourRenderingExecutor.execute(runnable);
+  @NotNull
+  public static RenderExecutor.Stats getRenderExecutorStats() {
+    return ourRenderingExecutor.getStats();
   }
 
   /**
@@ -429,6 +432,7 @@ public class RenderService implements Disposable {
     private boolean useHighQualityShadows = StudioFlags.NELE_RENDER_HIGH_QUALITY_SHADOW.get();
     private SessionParams.RenderingMode myRenderingMode = null;
     private boolean useTransparentBackground = false;
+    @Nullable private Object myAffinityKey;
 
     private RenderTaskBuilder(@NotNull RenderService service,
                               @NotNull AndroidFacet facet,
@@ -542,6 +546,15 @@ public class RenderService implements Disposable {
       return this;
     }
 
+    /**
+     * @see RenderTask#setAffinityKey(Object)
+     */
+    @NotNull
+    public RenderTaskBuilder withAffinityKey(@NotNull Object affinityKey) {
+      myAffinityKey = affinityKey;
+      return this;
+    }
+
     /**
      * @see RenderTask#setTransparentBackground()
      */
@@ -629,6 +642,10 @@ public class RenderService implements Disposable {
             task.setRenderingMode(myRenderingMode);
           }
 
+          if (myAffinityKey != null) {
+            task.setAffinityKey(myAffinityKey);
+          }
+
           return task;
         } catch (IllegalStateException | IncorrectOperationException | AssertionError e) {
           // Ignore the exception if it was generated when the facet is being disposed (project is being closed)
@@ -159,6 +159,8 @@ public class RenderTask {
   private boolean myShowWithToolsAttributes = true;
   private AssetRepositoryImpl myAssetRepository;
   private long myTimeout;
+  @NotNull private volatile RenderExecutor.Priority myPriority = RenderExecutor.Priority.HIGH;
+  @NotNull private Object myAffinityKey = this;
   @NotNull private final Locale myLocale;
   @NotNull private final Object myCredential;
   private boolean myProvideCookiesForIncludedViews = false;
@@ -300,7 +302,7 @@ public class RenderTask {
       gapWorkerField.setAccessible(true);
 
       // Because we are clearing-up a ThreadLocal, the code must run on the Layoutlib Thread
-      RenderService.runAsyncRenderAction(() -> {
+      RenderService.runAsyncRenderAction(myAffinityKey, getRenderOwner(), myPriority, () -> {
         try {
           ThreadLocal<?> gapWorkerFieldValue = (ThreadLocal<?>)gapWorkerField.get(null);
           gapWorkerFieldValue.set(null);
@@ -321,7 +323,7 @@ public class RenderTask {
       Class<?> handlerDelegateClass = myLayoutlibCallback.findClass("android.os.Handler_Delegate");
       Field runnablesMapField = handlerDelegateClass.getDeclaredField("sRunnablesMap");
       runnablesMapField.setAccessible(true);
-      RenderService.runAsyncRenderAction(() -> {
+      RenderService.runAsyncRenderAction(myAffinityKey, getRenderOwner(), myPriority, () -> {
         try {
           WeakHashMap runnablesMap = (WeakHashMap)runnablesMapField.get(null);
           runnablesMap.clear();
@@ -351,7 +353,7 @@ public class RenderTask {
       viewGroupRootField.setAccessible(true);
 
       // Because we are clearing-up a ThreadLocal, the code must run on the Layoutlib Thread
-      RenderService.runAsyncRenderAction(() -> {
+      RenderService.runAsyncRenderAction(myAffinityKey, getRenderOwner(), myPriority, () -> {
         try {
           WeakHashMap emittable = (WeakHashMap)emittableRootField.get(null);
           emittable.clear();
@@ -396,7 +398,7 @@ public class RenderTask {
       myLayoutlibCallback.setLogger(IRenderLogger.NULL_LOGGER);
       if (myRenderSession != null) {
         try {
-          RenderService.runAsyncRenderAction(myRenderSession::dispose);
+          RenderService.runAsyncRenderAction(myAffinityKey, getRenderOwner(), myPriority, myRenderSession::dispose);
           myRenderSession = null;
         }
         catch (Exception ignored) {
@@ -469,6 +471,42 @@ public class RenderTask {
     return this;
   }
 
+  /**
+   * Sets the priority of the render actions queued from now on. Previews that are not visible on the screen should use
+   * {@link RenderExecutor.Priority#LOW} so that they do not delay the visible ones.
+   *
+   * @return this (such that chains of setters can be stringed together)
+   */
+  @SuppressWarnings("UnusedReturnValue")
+  @NotNull
+  public RenderTask setPriority(@NotNull RenderExecutor.Priority priority) {
+    myPriority = priority;
+    return this;
+  }
+
+  /**
+   * Sets the key that keeps the render actions of this task in the order they were queued. The code that later calls into the inflated
+   * views, which only knows about the model being previewed, passes the same key to {@link RenderService#runRenderAction(Object, Callable)}
+   * so that it runs after the pending actions of this task. Must be called before the task is inflated.
+   *
+   * @return this (such that chains of setters can be stringed together)
+   */
+  @SuppressWarnings("UnusedReturnValue")
+  @NotNull
+  public RenderTask setAffinityKey(@NotNull Object affinityKey) {
+    myAffinityKey = affinityKey;
+    return this;
+  }
+
+  /**
+   * Returns the key that keeps the render actions of this task in order. It is the task itself unless
+   * {@link #setAffinityKey(Object)} was called.
+   */
+  @NotNull
+  public Object getAffinityKey() {
+    return myAffinityKey;
+  }
+
   /**
    * Sets the transparent background to be used.
    *
@@ -763,10 +801,19 @@ public class RenderTask {
     return future;
   }
 
+  /**
+   * Returns the object the render thread is shared fairly between. All the previews of a file count as one.
+   */
+  @NotNull
+  private Object getRenderOwner() {
+    VirtualFile file = getContext().getConfiguration().getFile();
+    return file != null ? file : this;
+  }
+
   /**
    * Executes the passed {@link Callable} as an async render action and keeps track of it. If {@link #dispose()} is called, the call will
    * wait until all the async actions have finished running.
-   * See {@link RenderService#runAsyncRenderAction(Supplier)}.
+   * See {@link RenderService#runAsyncRenderAction(Object, Object, RenderExecutor.Priority, Supplier)}.
    */
   @VisibleForTesting
   @NotNull
@@ -776,7 +823,7 @@ public class RenderTask {
     }
 
     synchronized (myRunningFutures) {
-      CompletableFuture<V> newFuture = RenderService.runAsyncRenderAction(callable);
+      CompletableFuture<V> newFuture = RenderService.runAsyncRenderAction(myAffinityKey, getRenderOwner(), myPriority, callable);
       myRunningFutures.add(newFuture);
       newFuture
         .whenCompleteAsync((result, ex) -> {
@@ -904,7 +951,7 @@ public class RenderTask {
         }).whenComplete((result, ex) -> {
           // After render clean-up. Dispose the GapWorker cache and the Choreographer queued tasks.
           clearGapWorkerCache();
-          RenderService.runAsyncRenderAction(() -> {
+          RenderService.runAsyncRenderAction(myAffinityKey, getRenderOwner(), myPriority, () -> {
             android.view.Choreographer.releaseInstance();
           });
         });
@@ -1049,7 +1096,7 @@ public class RenderTask {
     params.setFlag(RenderParamsFlags.FLAG_KEY_RENDER_ALL_DRAWABLE_STATES, Boolean.TRUE);
 
     try {
-      Result result = RenderService.runRenderAction(() -> myLayoutLib.renderDrawable(params));
+      Result result = RenderService.runRenderAction(myAffinityKey, () -> myLayoutLib.renderDrawable(params));
 
       if (result != null && result.isSuccess()) {
         Object data = result.getData();
@@ -1102,7 +1149,7 @@ public class RenderTask {
   public CompletableFuture<Map<XmlTag, ViewInfo>> measureChildren(@NotNull XmlTag parent, @Nullable AttributeFilter filter) {
     ILayoutPullParser modelParser = LayoutPsiPullParser.create(filter, parent, myLogger);
     Map<XmlTag, ViewInfo> map = new HashMap<>();
-    return RenderService.runAsyncRenderAction(() -> measure(modelParser))
+    return RenderService.runAsyncRenderAction(myAffinityKey, getRenderOwner(), myPriority, () -> measure(modelParser))
         .thenComposeAsync(session -> {
           if (session != null) {
             try {
@@ -1123,7 +1170,7 @@ public class RenderTask {
               return CompletableFuture.completedFuture(map);
             }
             finally {
-              RenderService.runAsyncRenderAction(session::dispose);
+              RenderService.runAsyncRenderAction(myAffinityKey, getRenderOwner(), myPriority, session::dispose);
             }
           }
 
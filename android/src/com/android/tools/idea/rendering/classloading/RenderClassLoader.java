@@ -62,6 +62,13 @@ public abstract class RenderClassLoader extends ClassLoader {
   private static final Function<ClassVisitor, ClassVisitor> DEFAULT_TRANSFORMS = visitor ->
     new ViewMethodWrapperTransform(new VersionClassTransform(visitor, getCurrentClassVersion(), 0));
 
+  /**
+   * Identifies {@link #DEFAULT_TRANSFORMS} in the {@link TransformedClassCache}. It changes whenever the code of the transformations does.
+   */
+  private static final String DEFAULT_TRANSFORMS_ID =
+    TransformedClassCache.computeTransformId(ClassConverter.class, ViewMethodWrapperTransform.class, VersionClassTransform.class) + ":" +
+    getCurrentClassVersion();
+
   private final Object myJarClassLoaderLock = new Object();
   @GuardedBy("myJarClassLoaderLock")
   private Supplier<UrlClassLoader> myJarClassLoader = Suppliers.memoize(() -> createJarClassLoader(getExternalJars()));
@@ -109,7 +116,7 @@ public abstract class RenderClassLoader extends ClassLoader {
       if (!isValidClassFile(data)) {
         throw new ClassFormatError(name);
       }
-      byte[] rewritten = ClassConverter.rewriteClass(data, DEFAULT_TRANSFORMS);
+      byte[] rewritten = TransformedClassCache.getInstance().rewriteClass(data, DEFAULT_TRANSFORMS_ID, DEFAULT_TRANSFORMS);
       return defineClassAndPackage(name, rewritten, 0, rewritten.length);
     }
     catch (IOException | ClassNotFoundException e) {
@@ -142,7 +149,7 @@ public abstract class RenderClassLoader extends ClassLoader {
       throw new ClassFormatError(fqcn);
     }
 
-    byte[] rewritten = ClassConverter.rewriteClass(data, DEFAULT_TRANSFORMS);
+    byte[] rewritten = TransformedClassCache.getInstance().rewriteClass(data, DEFAULT_TRANSFORMS_ID, DEFAULT_TRANSFORMS);
     try {
       if (LOG.isDebugEnabled()) {
         LOG.debug(String.format("Defining class '%s' from disk file", anonymizeClassName(fqcn)));
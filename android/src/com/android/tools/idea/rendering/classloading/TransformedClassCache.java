@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering.classloading;
+
+import static com.android.tools.idea.rendering.classloading.ClassConverter.isValidClassFile;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Suppliers;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Pair;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.org.objectweb.asm.ClassVisitor;
+
+/**
+ * Cache of the classes rewritten by {@link ClassConverter#rewriteClass}, so that the classes that did not change since they were last
+ * loaded, like the ones of the libraries, do not go through ASM again when a new class loader is created for rendering.
+ * <p/>
+ * The entries are addressed by a hash of the original class bytes and of the id of the transformations. They are kept in memory, up to
+ * {@link #MAX_MEMORY_BYTES}, and in one file per entry under the IDE system directory, up to {@link #MAX_DISK_BYTES}. The files are written
+ * in the background. The modification time of a file is refreshed when its entry is read, so when the disk cache exceeds its limit the
+ * least recently used entries are deleted the next time the cache is created.
+ */
+final class TransformedClassCache {
+  private static final Logger LOG = Logger.getInstance(TransformedClassCache.class);
+  /** Increase when the layout of the cache entries or the way the keys are computed changes. */
+  private static final int FORMAT_VERSION = 1;
+  private static final String CACHE_DIRECTORY = "layoutlib-classes";
+  private static final String ENTRY_SUFFIX = ".class";
+  private static final long MAX_MEMORY_BYTES = 32 * 1024 * 1024;
+  private static final long MAX_DISK_BYTES = 256 * 1024 * 1024;
+  /** The modification time of an entry is only refreshed when it is older than this, to avoid a disk write for every class loaded. */
+  private static final long TOUCH_INTERVAL_MS = TimeUnit.HOURS.toMillis(1);
+
+  private static final Supplier<TransformedClassCache> ourInstance = Suppliers.memoize(
+    () -> new TransformedClassCache(Paths.get(PathManager.getSystemPath(), CACHE_DIRECTORY),
+                                    AppExecutorUtil.createBoundedApplicationPoolExecutor("TransformedClassCache", 1)));
+
+  @Nullable private final Path myDirectory;
+  @NotNull private final Executor myDiskExecutor;
+  @NotNull private final Cache<String, byte[]> myMemoryCache = CacheBuilder.newBuilder()
+    .maximumWeight(MAX_MEMORY_BYTES)
+    .weigher((String key, byte[] value) -> value.length)
+    .build();
+
+  /**
+   * Creates a cache storing its entries in the given directory, or only in memory if the directory is null. The disk operations that
+   * the callers of {@link #rewriteClass} do not wait for are run by the given executor.
+   */
+  @VisibleForTesting
+  TransformedClassCache(@Nullable Path directory, @NotNull Executor diskExecutor) {
+    myDirectory = directory;
+    myDiskExecutor = diskExecutor;
+    if (directory != null) {
+      diskExecutor.execute(() -> trim(directory, MAX_DISK_BYTES));
+    }
+  }
+
+  @NotNull
+  static TransformedClassCache getInstance() {
+    return ourInstance.get();
+  }
+
+  /**
+   * Returns an id for the transformations implemented by the given classes, to be passed to {@link #rewriteClass}. The id is a hash of
+   * the bytecode of those classes, so the entries written before any of them changed are not used anymore.
+   */
+  @NotNull
+  static String computeTransformId(@NotNull Class<?>... transformClasses) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (Class<?> transformClass : transformClasses) {
+      hasher.putString(transformClass.getName(), StandardCharsets.UTF_8);
+      try (InputStream stream = transformClass.getResourceAsStream(transformClass.getSimpleName() + ".class")) {
+        if (stream == null) {
+          throw new IOException("Missing class file for " + transformClass.getName());
+        }
+        hasher.putBytes(ByteStreams.toByteArray(stream));
+      }
+      catch (IOException e) {
+        // Without the bytecode there is no way to tell whether the entries on disk are up to date, so only use the ones of this session.
+        LOG.warn(e);
+        hasher.putString(UUID.randomUUID().toString(), StandardCharsets.UTF_8);
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Returns the given class rewritten with the given transformations, taking it from the cache when possible.
+   *
+   * @param classData the original class bytes
+   * @param transformId a string identifying the transformations. Different transformations, or different versions of them, must have
+   *                    different ids.
+   * @param transforms the transformations to apply if the class is not in the cache
+   */
+  @NotNull
+  byte[] rewriteClass(@NotNull byte[] classData, @NotNull String transformId, @NotNull Function<ClassVisitor, ClassVisitor> transforms) {
+    String key = computeKey(classData, transformId);
+    byte[] rewritten = myMemoryCache.getIfPresent(key);
+    if (rewritten != null) {
+      return rewritten;
+    }
+
+    rewritten = readEntry(key);
+    if (rewritten == null) {
+      rewritten = ClassConverter.rewriteClass(classData, transforms);
+      if (myDirectory != null) {
+        byte[] entry = rewritten;
+        myDiskExecutor.execute(() -> writeEntry(myDirectory, key, entry));
+      }
+    }
+    myMemoryCache.put(key, rewritten);
+    return rewritten;
+  }
+
+  @NotNull
+  private static String computeKey(@NotNull byte[] classData, @NotNull String transformId) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    hasher.putInt(FORMAT_VERSION);
+    hasher.putString(transformId, StandardCharsets.UTF_8);
+    hasher.putInt(classData.length);
+    hasher.putBytes(classData);
+    return hasher.hash().toString();
+  }
+
+  @NotNull
+  private static Path getEntryFile(@NotNull Path directory, @NotNull String key) {
+    // Two levels keep the number of files per directory reasonable.
+    return directory.resolve(key.substring(0, 2)).resolve(key + ENTRY_SUFFIX);
+  }
+
+  @Nullable
+  private byte[] readEntry(@NotNull String key) {
+    if (myDirectory == null) {
+      return null;
+    }
+    Path file = getEntryFile(myDirectory, key);
+    try {
+      byte[] data = Files.readAllBytes(file);
+      if (isValidClassFile(data)) {
+        myDiskExecutor.execute(() -> touchEntry(file));
+        return data;
+      }
+      LOG.warn("Deleting corrupted cache entry " + file);
+      Files.deleteIfExists(file);
+    }
+    catch (NoSuchFileException ignored) {
+    }
+    catch (IOException e) {
+      LOG.debug(e);
+    }
+    return null;
+  }
+
+  private static void writeEntry(@NotNull Path directory, @NotNull String key, @NotNull byte[] data) {
+    Path file = getEntryFile(directory, key);
+    if (Files.exists(file)) {
+      return;
+    }
+    try {
+      Files.createDirectories(file.getParent());
+      // Write to a temporary file first so that a partially written entry is never read.
+      Path tempFile = Files.createTempFile(file.getParent(), key, ".tmp");
+      try {
+        Files.write(tempFile, data);
+        Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+      }
+      finally {
+        Files.deleteIfExists(tempFile);
+      }
+    }
+    catch (FileAlreadyExistsException ignored) {
+    }
+    catch (IOException e) {
+      LOG.debug("Failed to write " + file, e);
+    }
+  }
+
+  /**
+   * Marks the given entry as used by refreshing its modification time, which {@link #trim} sorts the entries by. The access time is not
+   * used since it is not updated on many file systems.
+   */
+  private static void touchEntry(@NotNull Path file) {
+    try {
+      long nowMs = System.currentTimeMillis();
+      if (Files.getLastModifiedTime(file).toMillis() < nowMs - TOUCH_INTERVAL_MS) {
+        Files.setLastModifiedTime(file, FileTime.fromMillis(nowMs));
+      }
+    }
+    catch (IOException e) {
+      LOG.debug("Failed to touch " + file, e);
+    }
+  }
+
+  /**
+   * Deletes the least recently used entries in the given directory until they take less than 3/4 of {@code maxBytes}, if they take more
+   * than {@code maxBytes}. Leftover temporary files are deleted too.
+   */
+  @VisibleForTesting
+  static void trim(@NotNull Path directory, long maxBytes) {
+    if (!Files.isDirectory(directory)) {
+      return;
+    }
+
+    List<Pair<Path, BasicFileAttributes>> entries = new ArrayList<>();
+    long totalBytes = 0;
+    try (Stream<Path> files = Files.walk(directory, 2)) {
+      for (Path file : (Iterable<Path>)files::iterator) {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        if (!attributes.isRegularFile()) {
+          continue;
+        }
+        if (!file.getFileName().toString().endsWith(ENTRY_SUFFIX)) {
+          Files.deleteIfExists(file);
+          continue;
+        }
+        entries.add(Pair.create(file, attributes));
+        totalBytes += attributes.size();
+      }
+
+      if (totalBytes <= maxBytes) {
+        return;
+      }
+
+      entries.sort(Comparator.comparing(entry -> entry.getSecond().lastModifiedTime()));
+      long targetBytes = maxBytes / 4 * 3;
+      for (Pair<Path, BasicFileAttributes> entry : entries) {
+        if (totalBytes <= targetBytes) {
+          break;
+        }
+        Files.deleteIfExists(entry.getFirst());
+        totalBytes -= entry.getSecond().size();
+      }
+    }
+    catch (IOException | RuntimeException e) {
+      LOG.warn("Failed to trim " + directory, e);
+    }
+  }
+}
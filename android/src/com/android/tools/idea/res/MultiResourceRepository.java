@@ -55,6 +55,8 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Predicate;
 import javax.annotation.concurrent.GuardedBy;
 import org.jetbrains.annotations.NotNull;
@@ -72,20 +74,18 @@ import org.jetbrains.annotations.Nullable;
 public abstract class MultiResourceRepository extends LocalResourceRepository implements Disposable {
   private static final Logger LOG = Logger.getInstance(MultiResourceRepository.class);
 
-  @GuardedBy("ITEM_MAP_LOCK")
-  @NotNull private ImmutableList<LocalResourceRepository> myLocalResources = ImmutableList.of();
-  @GuardedBy("ITEM_MAP_LOCK")
-  @NotNull private ImmutableList<AarResourceRepository> myLibraryResources = ImmutableList.of();
+  private static final int RESOURCE_TYPE_COUNT = ResourceType.values().length;
+
+  // The immutable collections below are replaced under ITEM_MAP_LOCK, by setChildren, and read without it.
+  @NotNull private volatile ImmutableList<LocalResourceRepository> myLocalResources = ImmutableList.of();
+  @NotNull private volatile ImmutableList<AarResourceRepository> myLibraryResources = ImmutableList.of();
   /** A concatenation of {@link #myLocalResources} and {@link #myLibraryResources}. */
-  @GuardedBy("ITEM_MAP_LOCK")
-  @NotNull private ImmutableList<ResourceRepository> myChildren = ImmutableList.of();
+  @NotNull private volatile ImmutableList<ResourceRepository> myChildren = ImmutableList.of();
   /** Leaf resource repositories keyed by namespace. */
-  @GuardedBy("ITEM_MAP_LOCK")
-  @NotNull private ImmutableListMultimap<ResourceNamespace, SingleNamespaceResourceRepository> myLeafsByNamespace =
+  @NotNull private volatile ImmutableListMultimap<ResourceNamespace, SingleNamespaceResourceRepository> myLeafsByNamespace =
       ImmutableListMultimap.of();
   /** Contained single-namespace resource repositories keyed by namespace. */
-  @GuardedBy("ITEM_MAP_LOCK")
-  @NotNull private ImmutableListMultimap<ResourceNamespace, SingleNamespaceResourceRepository> myRepositoriesByNamespace =
+  @NotNull private volatile ImmutableListMultimap<ResourceNamespace, SingleNamespaceResourceRepository> myRepositoriesByNamespace =
       ImmutableListMultimap.of();
 
   @GuardedBy("ITEM_MAP_LOCK")
@@ -98,6 +98,14 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
   @GuardedBy("ITEM_MAP_LOCK")
   private final ResourceTable myCachedMaps = new ResourceTable();
 
+  /**
+   * Immutable copies of the merged maps of {@link #myCachedMaps}, indexed by resource type ordinal, that readers take without
+   * ITEM_MAP_LOCK. A copy is published when its merged map is brought up to date and dropped as soon as a child invalidates
+   * resources of its namespace and type, both under the lock, so other types keep their copies across edits.
+   */
+  private final Map<ResourceNamespace, AtomicReferenceArray<ImmutableListMultimap<String, ResourceItem>>> mySnapshots =
+      new ConcurrentHashMap<>();
+
   /** Names of resources from local leaf repositories. */
   @GuardedBy("ITEM_MAP_LOCK")
   private final Table<SingleNamespaceResourceRepository, ResourceType, Set<String>> myResourceNames =
@@ -149,6 +157,7 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
         myModificationCounts[i++] = child.getModificationCount();
       }
       myCachedMaps.clear();
+      mySnapshots.clear();
 
       invalidateParentCaches();
     }
@@ -185,22 +194,16 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
   }
 
   public ImmutableList<LocalResourceRepository> getLocalResources() {
-    synchronized (ITEM_MAP_LOCK) {
-      return myLocalResources;
-    }
+    return myLocalResources;
   }
 
   public ImmutableList<AarResourceRepository> getLibraryResources() {
-    synchronized (ITEM_MAP_LOCK) {
-      return myLibraryResources;
-    }
+    return myLibraryResources;
   }
 
   @NotNull
   public final List<ResourceRepository> getChildren() {
-    synchronized (ITEM_MAP_LOCK) {
-      return myChildren;
-    }
+    return myChildren;
   }
 
   /**
@@ -213,9 +216,7 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
    */
   @NotNull
   public final List<SingleNamespaceResourceRepository> getRepositoriesForNamespace(@NotNull ResourceNamespace namespace) {
-    synchronized (ITEM_MAP_LOCK) {
-      return myRepositoriesByNamespace.get(namespace);
-    }
+    return myRepositoriesByNamespace.get(namespace);
   }
 
   @Override
@@ -247,9 +248,7 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
   @Override
   @NotNull
   public Set<ResourceNamespace> getNamespaces() {
-    synchronized (ITEM_MAP_LOCK) {
-      return myRepositoriesByNamespace.keySet();
-    }
+    return myRepositoriesByNamespace.keySet();
   }
 
   @Override
@@ -275,6 +274,163 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
     return ResourceVisitor.VisitResult.CONTINUE;
   }
 
+  @Override
+  @NotNull
+  public ListMultimap<String, ResourceItem> getResources(@NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType) {
+    ImmutableListMultimap<String, ResourceItem> snapshot = getSnapshot(namespace, resourceType);
+    return snapshot == null ? super.getResources(namespace, resourceType) : snapshot;
+  }
+
+  @Override
+  @NotNull
+  public List<ResourceItem> getResources(@NotNull ResourceNamespace namespace,
+                                         @NotNull ResourceType resourceType,
+                                         @NotNull String resourceName) {
+    ImmutableListMultimap<String, ResourceItem> snapshot = getSnapshotIfMerged(namespace, resourceType);
+    if (snapshot != null) {
+      return snapshot.get(resourceName);
+    }
+    List<ResourceItem> items = mergeResources(namespace, resourceType, resourceName);
+    return items == null ? super.getResources(namespace, resourceType, resourceName) : items;
+  }
+
+  @Override
+  @NotNull
+  public List<ResourceItem> getResources(@NotNull ResourceNamespace namespace,
+                                         @NotNull ResourceType resourceType,
+                                         @NotNull Predicate<ResourceItem> filter) {
+    ImmutableListMultimap<String, ResourceItem> snapshot = getSnapshot(namespace, resourceType);
+    if (snapshot == null) {
+      return super.getResources(namespace, resourceType, filter);
+    }
+    List<ResourceItem> result = new ArrayList<>();
+    for (ResourceItem item : snapshot.values()) {
+      if (filter.test(item)) {
+        result.add(item);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  @NotNull
+  public Set<String> getResourceNames(@NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType) {
+    ImmutableListMultimap<String, ResourceItem> snapshot = getSnapshotIfMerged(namespace, resourceType);
+    if (snapshot != null) {
+      return snapshot.keySet();
+    }
+    synchronized (ITEM_MAP_LOCK) {
+      ImmutableList<SingleNamespaceResourceRepository> repositories = myLeafsByNamespace.get(namespace);
+      if (repositories.size() == 1) {
+        return super.getResourceNames(namespace, resourceType);
+      }
+      ImmutableSet.Builder<String> names = ImmutableSet.builder();
+      for (SingleNamespaceResourceRepository repository : repositories) {
+        names.addAll(getResourcesUnderLock(repository, namespace, resourceType).keySet());
+      }
+      return names.build();
+    }
+  }
+
+  @Override
+  public boolean hasResources(@NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType, @NotNull String resourceName) {
+    ImmutableListMultimap<String, ResourceItem> snapshot = getSnapshotIfMerged(namespace, resourceType);
+    if (snapshot != null) {
+      return snapshot.containsKey(resourceName);
+    }
+    synchronized (ITEM_MAP_LOCK) {
+      ImmutableList<SingleNamespaceResourceRepository> repositories = myLeafsByNamespace.get(namespace);
+      if (repositories.size() == 1) {
+        return super.hasResources(namespace, resourceType, resourceName);
+      }
+      for (SingleNamespaceResourceRepository repository : repositories) {
+        if (getResourcesUnderLock(repository, namespace, resourceType).containsKey(resourceName)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Returns the merged resources of the given namespace and type like {@link #getSnapshot}, but only if all their items were merged
+   * before. Otherwise returns null, so that a single name can be looked up without merging the whole type.
+   */
+  @Nullable
+  private ImmutableListMultimap<String, ResourceItem> getSnapshotIfMerged(@NotNull ResourceNamespace namespace,
+                                                                          @NotNull ResourceType type) {
+    ImmutableListMultimap<String, ResourceItem> snapshot = peekSnapshot(namespace, type);
+    if (snapshot != null) {
+      return snapshot;
+    }
+    synchronized (ITEM_MAP_LOCK) {
+      return myCachedMaps.get(namespace, type) != null ? getSnapshot(namespace, type) : null;
+    }
+  }
+
+  /**
+   * Returns the merged resources of the given namespace and type if they were copied since they last changed, without taking
+   * ITEM_MAP_LOCK.
+   */
+  @Nullable
+  private ImmutableListMultimap<String, ResourceItem> peekSnapshot(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
+    AtomicReferenceArray<ImmutableListMultimap<String, ResourceItem>> snapshots = mySnapshots.get(namespace);
+    return snapshots == null ? null : snapshots.get(type.ordinal());
+  }
+
+  /**
+   * Merges the items of a single resource name the same way {@link #getMap} merges all the items of a type. Lookups of one name don't
+   * have to merge, and so decode, the items of every other name, see {@link com.android.tools.idea.resources.base.LazyResourceMap}.
+   * Returns null for a namespace with a single leaf repository, whose own map is used instead.
+   */
+  @Nullable
+  private List<ResourceItem> mergeResources(@NotNull ResourceNamespace namespace, @NotNull ResourceType type, @NotNull String name) {
+    synchronized (ITEM_MAP_LOCK) {
+      ImmutableList<SingleNamespaceResourceRepository> repositories = myLeafsByNamespace.get(namespace);
+      if (repositories.size() == 1) {
+        return null;
+      }
+      ListMultimap<String, ResourceItem> map = type == ResourceType.STYLEABLE || type == ResourceType.ID ?
+                                               ArrayListMultimap.create() : new PerConfigResourceMap(myResourceComparator);
+      for (SingleNamespaceResourceRepository repository : repositories) {
+        List<ResourceItem> items = getResourcesUnderLock(repository, namespace, type).get(name);
+        if (items != null && !items.isEmpty()) {
+          map.putAll(name, items);
+        }
+      }
+      List<ResourceItem> items = map.get(name);
+      return items == null ? ImmutableList.of() : ImmutableList.copyOf(items);
+    }
+  }
+
+  /**
+   * Returns the merged resources of the given namespace and type as an immutable map, taken without ITEM_MAP_LOCK unless they changed
+   * since the last call. Returns null for a namespace with a single leaf repository: its map belongs to that repository, which may
+   * change it without invalidating this one, so callers read it under the lock as before.
+   */
+  @Nullable
+  private ImmutableListMultimap<String, ResourceItem> getSnapshot(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
+    ImmutableListMultimap<String, ResourceItem> snapshot = peekSnapshot(namespace, type);
+    if (snapshot != null) {
+      return snapshot;
+    }
+
+    AtomicReferenceArray<ImmutableListMultimap<String, ResourceItem>> snapshots;
+    synchronized (ITEM_MAP_LOCK) {
+      if (myLeafsByNamespace.get(namespace).size() == 1) {
+        return null;
+      }
+      snapshots = mySnapshots.computeIfAbsent(namespace, key -> new AtomicReferenceArray<>(RESOURCE_TYPE_COUNT));
+      snapshot = snapshots.get(type.ordinal());
+      if (snapshot == null) {
+        // Only the types invalidated since the last copy are merged again by getMap, see myUnreconciledResources.
+        snapshot = ImmutableListMultimap.copyOf(getMap(namespace, type));
+        snapshots.set(type.ordinal(), snapshot);
+      }
+      return snapshot;
+    }
+  }
+
   @GuardedBy("ITEM_MAP_LOCK")
   @Override
   @NotNull
@@ -413,6 +569,7 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
   @GuardedBy("ITEM_MAP_LOCK")
   public void invalidateCache() {
     myCachedMaps.clear();
+    mySnapshots.clear();
     myResourceNames.clear();
     myUnreconciledResources.clear();
     setModificationCount(ourModificationCounter.incrementAndGet());
@@ -433,6 +590,13 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
     // In such a case we don't need to do anything.
     ImmutableList<SingleNamespaceResourceRepository> leafs = myLeafsByNamespace.get(namespace);
     if (leafs != null && leafs.contains(repository)) {
+      AtomicReferenceArray<ImmutableListMultimap<String, ResourceItem>> snapshots = mySnapshots.get(namespace);
+      if (snapshots != null) {
+        for (ResourceType type : types) {
+          snapshots.set(type.ordinal(), null);
+        }
+      }
+
       // Update myUnreconciledResources only if myCachedMaps is used for this namespace.
       if (leafs.size() != 1) {
         for (ResourceType type : types) {
@@ -491,9 +655,7 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
   @Override
   @NotNull
   public Collection<SingleNamespaceResourceRepository> getLeafResourceRepositories() {
-    synchronized (ITEM_MAP_LOCK) {
-      return myLeafsByNamespace.values();
-    }
+    return myLeafsByNamespace.values();
   }
 
   private static class ResourcePriorityComparator implements Comparator<ResourceItem> {
@@ -29,6 +29,7 @@ import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.DumbModeTask;
 import com.intellij.openapi.project.Project;
@@ -37,11 +38,14 @@ import com.intellij.openapi.roots.ModuleRootListener;
 import com.intellij.openapi.vfs.VirtualFile;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.android.facet.ResourceFolderManager;
@@ -55,6 +59,8 @@ import org.jetbrains.annotations.Nullable;
  * needed.
  */
 public final class ResourceFolderRegistry implements Disposable {
+  private static final Logger LOG = Logger.getInstance(ResourceFolderRegistry.class);
+
   @NotNull private final Project myProject;
   @NotNull private final Cache<VirtualFile, ResourceFolderRepository> myNamespacedCache = buildCache();
   @NotNull private final Cache<VirtualFile, ResourceFolderRepository> myNonNamespacedCache = buildCache();
@@ -199,23 +205,29 @@ public final class ResourceFolderRegistry implements Disposable {
       assert !application.isWriteAccessAllowed();
 
       int numDone = 0;
+      long startTime = System.nanoTime();
 
       ExecutorService parallelExecutor = AndroidIoManager.getInstance().getBackgroundDiskIoExecutor();
-      List<Future<ResourceFolderRepository>> repositoryJobs = new ArrayList<>();
+      List<Future<FolderLoadTiming>> repositoryJobs = new ArrayList<>();
       for (Map.Entry<VirtualFile, AndroidFacet> entry : resDirectories.entrySet()) {
         AndroidFacet facet = entry.getValue();
         VirtualFile dir = entry.getKey();
         ResourceFolderRegistry registry = getInstance(myProject);
-        repositoryJobs.add(parallelExecutor.submit(() -> registry.get(facet, dir)));
+        repositoryJobs.add(parallelExecutor.submit(() -> {
+          long folderStartTime = System.nanoTime();
+          ResourceFolderRepository repository = registry.get(facet, dir);
+          return new FolderLoadTiming(dir, System.nanoTime() - folderStartTime, repository.hasFreshFileCache());
+        }));
       }
 
-      for (Future<ResourceFolderRepository> job : repositoryJobs) {
+      List<FolderLoadTiming> timings = new ArrayList<>(repositoryJobs.size());
+      for (Future<FolderLoadTiming> job : repositoryJobs) {
         if (indicator.isCanceled()) {
           break;
         }
         indicator.setFraction((double)numDone / resDirectories.size());
         try {
-          job.get();
+          timings.add(job.get());
         }
         catch (ExecutionException e) {
           // If we get an exception, that's okay -- we stop pre-populating the cache, which is just for performance.
@@ -225,6 +237,40 @@ public final class ResourceFolderRegistry implements Disposable {
         }
         ++numDone;
       }
+
+      logTimings(timings, System.nanoTime() - startTime);
+    }
+
+    private static void logTimings(@NotNull List<FolderLoadTiming> timings, long elapsedNanos) {
+      if (timings.isEmpty()) {
+        return;
+      }
+      timings.sort(Comparator.comparingLong((FolderLoadTiming timing) -> timing.nanos).reversed());
+      long fromCacheCount = timings.stream().filter(timing -> timing.fromCache).count();
+      LOG.info(String.format(Locale.US, "Loaded %d resource folders (%d from cache files) in %d ms, the slowest in %d ms: %s",
+                             timings.size(), fromCacheCount, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                             TimeUnit.NANOSECONDS.toMillis(timings.get(0).nanos), timings.get(0).dir.getPath()));
+      if (LOG.isDebugEnabled()) {
+        for (FolderLoadTiming timing : timings) {
+          LOG.debug(String.format(Locale.US, "%d ms%s: %s", TimeUnit.NANOSECONDS.toMillis(timing.nanos),
+                                  timing.fromCache ? " (from cache file)" : "", timing.dir.getPath()));
+        }
+      }
+    }
+  }
+
+  /**
+   * How long it took {@link PopulateCachesTask} to get the repository of a resource folder, either loaded or already in the registry.
+   */
+  private static final class FolderLoadTiming {
+    @NotNull final VirtualFile dir;
+    final long nanos;
+    final boolean fromCache;
+
+    FolderLoadTiming(@NotNull VirtualFile dir, long nanos, boolean fromCache) {
+      this.dir = dir;
+      this.nanos = nanos;
+      this.fromCache = fromCache;
     }
   }
 
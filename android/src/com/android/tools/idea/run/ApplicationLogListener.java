@@ -20,10 +20,13 @@ import com.android.ddmlib.logcat.LogCatMessage;
 import com.android.tools.idea.logcat.AndroidLogcatFormatter;
 import com.android.tools.idea.logcat.AndroidLogcatService;
 import com.android.tools.idea.logcat.AndroidLogcatUtils;
+import com.android.tools.idea.logcat.DefaultAndroidLogcatFilter;
 import com.intellij.openapi.util.Key;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.regex.Pattern;
+
 /**
  * A logcat listener base class used by the run and debug console windows
  */
@@ -37,6 +40,18 @@ public abstract class ApplicationLogListener implements AndroidLogcatService.Log
     myPid = pid;
   }
 
+  /**
+   * Returns a filter for {@link AndroidLogcatService#addListener(com.android.ddmlib.IDevice, AndroidLogcatService.LogcatListener,
+   * DefaultAndroidLogcatFilter)} that only replays the old messages of the application, which are the only ones this listener prints.
+   */
+  @NotNull
+  public DefaultAndroidLogcatFilter createBacklogFilter() {
+    return new DefaultAndroidLogcatFilter.Builder(myPackageName)
+      .setPackagePattern(Pattern.compile("^" + Pattern.quote(myPackageName) + "$"))
+      .setPid(myPid)
+      .build();
+  }
+
   @Override
   public void onLogLineReceived(@NotNull LogCatMessage line) {
     if (!myPackageName.equals(line.getHeader().getAppName()) || myPid != line.getHeader().getPid()) {
@@ -28,6 +28,7 @@ import org.junit.rules.ExpectedException;
 
 import java.awt.*;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
@@ -354,6 +355,50 @@ public class AdbFileListingTest {
     assertDirectoryLink(fileListing, rootEntries, "vendor", true);
   }
 
+  @Test
+  public void test_Nexus7Api23_GetDescendants() throws Exception {
+    // Prepare
+    TestShellCommands commands = new TestShellCommands();
+    TestDevices.addNexus7Api23Commands(commands);
+    commands.add("ls -l -R /data/local/tmp/" + COMMAND_ERROR_CHECK_SUFFIX,
+                 "/data/local/tmp/:\r\n" +
+                 "drwxrwxrwx shell    shell             2016-11-21 12:09 app\r\n" +
+                 "-rw-rw-rw- shell    shell          12 2016-11-21 12:09 file.txt\r\n" +
+                 "\r\n" +
+                 "/data/local/tmp//app:\r\n" +
+                 "drwxrwxrwx shell    shell             2016-11-21 12:09 lib\r\n" +
+                 "lrwxrwxrwx shell    shell             2016-11-21 12:09 sdcard -> /sdcard\r\n" +
+                 "\r\n" +
+                 "/data/local/tmp//app/lib:\r\n" +
+                 "-rw-rw-rw- shell    shell         345 2016-11-21 12:09 lib.so\r\n");
+    IDevice device = commands.createMockDevice();
+    Executor taskExecutor = PooledThreadExecutor.INSTANCE;
+    AdbFileListing fileListing = new AdbFileListing(device, new AdbDeviceCapabilities(device), taskExecutor);
+    AdbFileListingEntry directory = new AdbFileListingEntryBuilder().setPath("/data/local/tmp").setKind(EntryKind.DIRECTORY).build();
+
+    // Act
+    Map<String, List<AdbFileListingEntry>> descendants = waitForFuture(fileListing.getDescendantsRunAs(directory, null));
+
+    // Assert
+    assertThat(descendants).isNotNull();
+    assertThat(descendants.keySet()).containsExactly("/data/local/tmp", "/data/local/tmp/app", "/data/local/tmp/app/lib").inOrder();
+
+    assertEntry(descendants.get("/data/local/tmp"), "file.txt", entry -> {
+      assertThat(entry.isFile()).isTrue();
+      assertThat(entry.getSize()).isEqualTo(12);
+      assertThat(entry.getFullPath()).isEqualTo("/data/local/tmp/file.txt");
+    });
+    assertEntry(descendants.get("/data/local/tmp/app"), "sdcard", entry -> {
+      assertThat(entry.isSymbolicLink()).isTrue();
+      assertThat(entry.getFullPath()).isEqualTo("/data/local/tmp/app/sdcard");
+    });
+    assertEntry(descendants.get("/data/local/tmp/app/lib"), "lib.so", entry -> {
+      assertThat(entry.isFile()).isTrue();
+      assertThat(entry.getSize()).isEqualTo(345);
+      assertThat(entry.getFullPath()).isEqualTo("/data/local/tmp/app/lib/lib.so");
+    });
+  }
+
   private static void assertDirectoryLink(@NotNull AdbFileListing fileListing,
                                           @NotNull List<AdbFileListingEntry> entries,
                                           @NotNull String name,
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.explorer.adbimpl;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TarExtractorTest {
+  @Rule
+  public TemporaryFolder myFolder = new TemporaryFolder();
+
+  private Path myDirectory;
+  private final List<String> myExtracted = new ArrayList<>();
+
+  @Before
+  public void setUp() throws IOException {
+    myDirectory = myFolder.newFolder("extracted").toPath();
+  }
+
+  @Test
+  public void extractsDirectoriesAndFiles() throws IOException {
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    addEntry(archive, "./", '5', "");
+    addEntry(archive, "./files/", '5', "");
+    addEntry(archive, "./files/a.txt", '0', "contents of a");
+    addEntry(archive, "./files/link", '2', "");
+    addEntry(archive, "./b.txt", '0', "");
+    endArchive(archive);
+
+    extract(archive);
+
+    assertThat(myExtracted).containsExactly("D files", "F files/a.txt 13", "F b.txt 0").inOrder();
+    assertThat(readFile("files/a.txt")).isEqualTo("contents of a");
+    assertThat(readFile("b.txt")).isEmpty();
+    assertThat(Files.exists(myDirectory.resolve("files/link"))).isFalse();
+  }
+
+  @Test
+  public void extractsLongNames() throws IOException {
+    String longName = "directory/" + "x".repeat(150) + ".txt";
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    addEntry(archive, "././@LongLink", 'L', longName + "\0");
+    addEntry(archive, longName.substring(0, 99), '0', "long");
+    String paxName = "directory/" + "y".repeat(150) + ".txt";
+    String record = " path=" + paxName + "\n";
+    String size = String.valueOf(record.length() + 3);
+    addEntry(archive, "PaxHeader", 'x', size + record);
+    addEntry(archive, paxName.substring(0, 99), '0', "pax");
+    endArchive(archive);
+
+    extract(archive);
+
+    assertThat(readFile(longName)).isEqualTo("long");
+    assertThat(readFile(paxName)).isEqualTo("pax");
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsEntriesOutsideOfTheDirectory() throws IOException {
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    addEntry(archive, "../outside.txt", '0', "outside");
+    endArchive(archive);
+
+    extract(archive);
+  }
+
+  private void extract(@NotNull ByteArrayOutputStream archive) throws IOException {
+    new TarExtractor(new ByteArrayInputStream(archive.toByteArray()), myDirectory).extract(new TarExtractor.Listener() {
+      @Override
+      public void directoryExtracted(@NotNull String relativePath) {
+        myExtracted.add("D " + relativePath);
+      }
+
+      @Override
+      public void fileExtracted(@NotNull String relativePath, long size) {
+        myExtracted.add("F " + relativePath + " " + size);
+      }
+    });
+  }
+
+  @NotNull
+  private String readFile(@NotNull String relativePath) throws IOException {
+    return new String(Files.readAllBytes(myDirectory.resolve(relativePath)), StandardCharsets.UTF_8);
+  }
+
+  private static void addEntry(@NotNull ByteArrayOutputStream archive, @NotNull String name, char type, @NotNull String contents) {
+    byte[] data = contents.getBytes(StandardCharsets.UTF_8);
+    byte[] header = new byte[512];
+    putString(header, 0, name);
+    putString(header, 100, "0000644");
+    putString(header, 124, String.format("%011o", data.length));
+    header[156] = (byte)type;
+    putString(header, 257, "ustar");
+    putString(header, 263, "00");
+
+    // The checksum is computed with the checksum field set to spaces
+    putString(header, 148, "        ");
+    int checksum = 0;
+    for (byte b : header) {
+      checksum += b & 0xff;
+    }
+    putString(header, 148, String.format("%06o", checksum));
+    header[154] = 0;
+
+    archive.write(header, 0, header.length);
+    archive.write(data, 0, data.length);
+    archive.write(new byte[(512 - data.length % 512) % 512], 0, (512 - data.length % 512) % 512);
+  }
+
+  private static void endArchive(@NotNull ByteArrayOutputStream archive) {
+    archive.write(new byte[1024], 0, 1024);
+  }
+
+  private static void putString(@NotNull byte[] header, int offset, @NotNull String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    System.arraycopy(bytes, 0, header, offset, bytes.length);
+  }
+}
@@ -21,6 +21,8 @@ import org.easymock.EasyMock;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.time.Instant;
+
 import static com.google.common.truth.Truth.assertThat;
 
 public class AndroidLogcatReceiverTest {
@@ -212,4 +214,32 @@ public class AndroidLogcatReceiverTest {
 
     assertThat(myLogcatListener.toString()).isEqualTo(expected);
   }
+
+  @Test
+  public void addOutputDecodesBinaryEntries() {
+    AndroidLogcatReceiver receiver = new AndroidLogcatReceiver(createMockDevice(), myLogcatListener, true);
+    byte[][] entries = {
+      BinaryLogcatDecoderTest.createEntry(24, 2, 99, 99, Instant.ofEpochSecond(1516739696, 789_000_000), "UnknownClient",
+                                          "\n\nleading-trimmed"),
+      BinaryLogcatDecoderTest.createEntry(24, 2, 99, 99, Instant.ofEpochSecond(1516739696, 790_000_000), "UnknownClient",
+                                          "2: {\r\n\n}\n"),
+      BinaryLogcatDecoderTest.createEntry(28, 6, 11698, 11811, Instant.ofEpochSecond(1534643988, 771_000_000), "AndroidRuntime",
+                                          "FATAL EXCEPTION: Timer-0\n" +
+                                          "java.lang.RuntimeException: Bad response\n" +
+                                          "\tat java.util.Timer$TimerImpl.run(Timer.java:284)"),
+    };
+
+    for (byte[] entry : entries) {
+      receiver.addOutput(entry, 0, entry.length);
+    }
+
+    String expected = "2018-01-23 12:34:56.789 99-99/? V/UnknownClient: leading-trimmed\n" +
+                      "2018-01-23 12:34:56.790 99-99/? V/UnknownClient: 2: {\n" +
+                      "+ \n" +
+                      "+ }\n" +
+                      "2018-08-18 18:59:48.771 11698-11811/com.android.chattylogger E/AndroidRuntime: FATAL EXCEPTION: Timer-0\n" +
+                      "+ java.lang.RuntimeException: Bad response\n" +
+                      "+     at java.util.Timer$TimerImpl.run(Timer.java:284)\n";
+    assertThat(myLogcatListener.toString()).isEqualTo(expected);
+  }
 }
@@ -18,6 +18,7 @@ package com.android.tools.idea.logcat;
 import com.android.ddmlib.IDevice;
 import com.android.ddmlib.MultiLineReceiver;
 import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.sdklib.AndroidVersion;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Disposer;
 import org.jetbrains.annotations.NotNull;
@@ -26,6 +27,12 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.stubbing.Answer;
 
+import java.io.ByteArrayOutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -41,12 +48,15 @@ public class AndroidLogcatServiceTest {
       "1534635551.439: W/DummyFirst(1493): First Line3",
       "1537486751.439: W/DummySecond(1493): Second Line1"};
 
-    private int myCurrentIndex = 0;
-    private boolean myCleared;
+    // Lines are delivered on a pooled thread, after the receiver got them
+    private final List<String> myLines = Collections.synchronizedList(new ArrayList<>());
+    private volatile CountDownLatch myReceivedLatch = new CountDownLatch(EXPECTED_LOGS.length);
+    private volatile boolean myCleared;
 
     @Override
     public void onLogLineReceived(@NotNull LogCatMessage line) {
-      assertEquals(EXPECTED_LOGS[myCurrentIndex++], line.toString());
+      myLines.add(line.toString());
+      myReceivedLatch.countDown();
     }
 
     @Override
@@ -55,16 +65,18 @@ public class AndroidLogcatServiceTest {
     }
 
     public void reset() {
-      myCurrentIndex = 0;
+      myLines.clear();
+      myReceivedLatch = new CountDownLatch(EXPECTED_LOGS.length);
       myCleared = false;
     }
 
-    public void assertAllReceived() {
-      assertEquals(EXPECTED_LOGS.length, myCurrentIndex);
+    public void assertAllReceived() throws InterruptedException {
+      assertTrue(myReceivedLatch.await(10, TimeUnit.SECONDS));
+      assertEquals(Arrays.asList(EXPECTED_LOGS), myLines);
     }
 
     public void assertNothingReceived() {
-      assertEquals(0, myCurrentIndex);
+      assertEquals(Collections.emptyList(), myLines);
     }
 
     private void assertCleared() {
@@ -265,6 +277,88 @@ public class AndroidLogcatServiceTest {
     myLogcatListener.assertAllReceived();
   }
 
+  @Test
+  public void testBinaryFormat() throws Exception {
+    stubExecuteLogcatBinary(mockDevice);
+    when(mockDevice.getVersion()).thenReturn(new AndroidVersion(AndroidVersion.VersionCodes.N, null));
+    when(mockDevice.isOnline()).thenReturn(true);
+    myExecuteShellCommandLatch = new CountDownLatch(1);
+    myLogcatService.addListener(mockDevice, myLogcatListener, true);
+
+    myExecuteShellCommandLatch.await();
+    myLogcatListener.assertAllReceived();
+  }
+
+  private void stubExecuteLogcatBinary(@NotNull IDevice device) throws Exception {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    stream.write(BinaryLogcatDecoderTest.createEntry(
+      24, 5, 1493, 1595, Instant.ofEpochSecond(1534635551, 439_000_000), "DummyFirst", "First Line1\nFirst Line2\nFirst Line3\n"));
+    stream.write(BinaryLogcatDecoderTest.createEntry(
+      24, 5, 1493, 1595, Instant.ofEpochSecond(1537486751, 439_000_000), "DummySecond", "Second Line1"));
+    byte[] bytes = stream.toByteArray();
+
+    Answer answer = invocation -> {
+      AndroidLogcatReceiver receiver = invocation.getArgument(1);
+
+      // Entries are split across the chunks read from adb
+      receiver.addOutput(bytes, 0, 30);
+      receiver.addOutput(bytes, 30, bytes.length - 30);
+      receiver.cancel();
+
+      myExecuteShellCommandLatch.countDown();
+      return null;
+    };
+
+    doAnswer(answer).when(device).executeShellCommand(eq("logcat -B"), any(), eq(0L), eq(TimeUnit.MILLISECONDS));
+  }
+
+  /**
+   * A device logging faster than its listener keeps up drops lines, instead of holding up the lines of the other devices.
+   */
+  @Test
+  public void testFloodingDeviceDoesNotStallOtherDevices() throws Exception {
+    IDevice floodingDevice = mock(IDevice.class);
+    when(floodingDevice.isOnline()).thenReturn(true);
+    CountDownLatch floodDone = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      AndroidLogcatReceiver receiver = invocation.getArgument(1);
+      receiver.processNewLine("[ 1534635551.439 1493:1595 W/Flood     ]");
+      for (int i = 0; i < 100_000; i++) {
+        receiver.processNewLine("Flood line " + i);
+      }
+      receiver.cancel();
+      floodDone.countDown();
+      return null;
+    }).when(floodingDevice).executeShellCommand(eq("logcat -v long"), any(), eq(0L), eq(TimeUnit.MILLISECONDS));
+
+    CountDownLatch releaseListener = new CountDownLatch(1);
+    AndroidLogcatService.LogcatListener blockedListener = new AndroidLogcatService.LogcatListener() {
+      @Override
+      public void onLogLineReceived(@NotNull LogCatMessage line) {
+        try {
+          releaseListener.await();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+
+    try {
+      myLogcatService.addListener(floodingDevice, blockedListener);
+      assertTrue(floodDone.await(30, TimeUnit.SECONDS));
+
+      when(mockDevice.isOnline()).thenReturn(true);
+      myLogcatService.addListener(mockDevice, myLogcatListener);
+      myLogcatListener.assertAllReceived();
+
+      assertTrue(myLogcatService.getDroppedLineCount(floodingDevice) > 0);
+    }
+    finally {
+      releaseListener.countDown();
+    }
+  }
+
   @Test
   public void consoleGetsClearedWhenDeviceIsDisconnected() {
     myLogcatService.addListener(mockDevice, myLogcatListener);
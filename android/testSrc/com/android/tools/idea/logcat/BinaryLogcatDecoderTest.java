@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatMessage;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BinaryLogcatDecoderTest {
+  private final List<LogCatMessage> myMessages = new ArrayList<>();
+  private BinaryLogcatDecoder myDecoder;
+
+  /**
+   * Writes a logger_entry the way 'logcat -B' does. Header sizes 20 to 28 are v1 to v4 entries.
+   */
+  @NotNull
+  static byte[] createEntry(int headerSize, int priority, int pid, int tid, @NotNull Instant timestamp, @NotNull String tag,
+                            @NotNull String message) {
+    byte[] tagBytes = tag.getBytes(StandardCharsets.UTF_8);
+    byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
+    int payloadSize = 1 + tagBytes.length + 1 + messageBytes.length + 1;
+
+    ByteBuffer buffer = ByteBuffer.allocate(headerSize + payloadSize).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putShort((short)payloadSize);
+    buffer.putShort((short)(headerSize == 20 ? 0 : headerSize));
+    buffer.putInt(pid);
+    buffer.putInt(tid);
+    buffer.putInt((int)timestamp.getEpochSecond());
+    buffer.putInt(timestamp.getNano());
+    buffer.position(headerSize);
+    buffer.put((byte)priority);
+    buffer.put(tagBytes).put((byte)0);
+    buffer.put(messageBytes).put((byte)0);
+    return buffer.array();
+  }
+
+  @Before
+  public void setUp() {
+    IDevice device = mock(IDevice.class);
+    when(device.getClientName(1493)).thenReturn("dummy.client.name");
+    myDecoder = new BinaryLogcatDecoder(device);
+  }
+
+  @Test
+  public void decodesEntriesOfEveryHeaderVersion() {
+    for (int headerSize = 20; headerSize <= 28; headerSize += 4) {
+      decode(createEntry(headerSize, 5, 1493, 1595, Instant.ofEpochSecond(1534635551, 439_000_000), "DummyFirst", "Line1\nLine2"));
+    }
+
+    assertThat(myMessages).hasSize(3);
+    for (LogCatMessage message : myMessages) {
+      assertThat(message.getHeader().getLogLevel()).isEqualTo(LogLevel.WARN);
+      assertThat(message.getHeader().getPid()).isEqualTo(1493);
+      assertThat(message.getHeader().getTid()).isEqualTo(1595);
+      assertThat(message.getHeader().getAppName()).isEqualTo("dummy.client.name");
+      assertThat(message.getHeader().getTag()).isEqualTo("DummyFirst");
+      assertThat(message.getHeader().getTimestampInstant()).isEqualTo(Instant.ofEpochSecond(1534635551, 439_000_000));
+      assertThat(message.getMessage()).isEqualTo("Line1\nLine2");
+    }
+  }
+
+  @Test
+  public void decodesEntriesSplitAcrossChunks() {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    for (int i = 0; i < 100; i++) {
+      byte[] entry = createEntry(24, 4, i, i, Instant.ofEpochSecond(i), "Tag" + i % 3, "Message " + i);
+      stream.write(entry, 0, entry.length);
+    }
+    byte[] bytes = stream.toByteArray();
+
+    for (int chunkSize : new int[]{1, 3, 7, 64}) {
+      myMessages.clear();
+      for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+        myDecoder.decode(bytes, offset, Math.min(chunkSize, bytes.length - offset), (header, message) -> myMessages.add(
+          new LogCatMessage(header, message)));
+      }
+
+      assertThat(myMessages).hasSize(100);
+      for (int i = 0; i < 100; i++) {
+        assertThat(myMessages.get(i).getHeader().getPid()).isEqualTo(i);
+        assertThat(myMessages.get(i).getHeader().getTag()).isEqualTo("Tag" + i % 3);
+        assertThat(myMessages.get(i).getHeader().getAppName()).isEqualTo("?");
+        assertThat(myMessages.get(i).getMessage()).isEqualTo("Message " + i);
+      }
+    }
+  }
+
+  @Test
+  public void tagsAreInterned() {
+    decode(createEntry(24, 3, 1, 1, Instant.EPOCH, "SameTag", "first"));
+    decode(createEntry(24, 3, 1, 1, Instant.EPOCH, "SameTag", "second"));
+
+    assertThat(myMessages.get(1).getHeader().getTag()).isSameAs(myMessages.get(0).getHeader().getTag());
+  }
+
+  @Test
+  public void unknownPrioritiesAreClamped() {
+    decode(createEntry(24, 0, 1, 1, Instant.EPOCH, "Tag", "default"));
+    decode(createEntry(24, 8, 1, 1, Instant.EPOCH, "Tag", "silent"));
+
+    assertThat(myMessages.get(0).getHeader().getLogLevel()).isEqualTo(LogLevel.VERBOSE);
+    assertThat(myMessages.get(1).getHeader().getLogLevel()).isEqualTo(LogLevel.ASSERT);
+  }
+
+  @Test
+  public void textOutputIsRejected() {
+    byte[] bytes = "--------- beginning of main\n".getBytes(StandardCharsets.UTF_8);
+    try {
+      decode(bytes);
+      fail();
+    }
+    catch (IllegalStateException expected) {
+    }
+  }
+
+  private void decode(@NotNull byte[] bytes) {
+    myDecoder.decode(bytes, 0, bytes.length, (header, message) -> myMessages.add(new LogCatMessage(header, message)));
+  }
+}
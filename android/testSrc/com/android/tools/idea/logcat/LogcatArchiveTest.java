@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LogcatArchiveTest {
+  private static final int LINE_COUNT = 20_000;
+
+  @Rule
+  public TemporaryFolder myFolder = new TemporaryFolder();
+
+  private Path myPath;
+  private LogcatArchive myArchive;
+
+  @Before
+  public void setUp() throws IOException {
+    myPath = myFolder.newFile("logcat.archive").toPath();
+    myArchive = new LogcatArchive(myPath);
+
+    // Enough lines for several blocks, with the tag Early in the first half only
+    List<LogCatMessage> messages = new ArrayList<>();
+    for (int i = 0; i < LINE_COUNT; i++) {
+      LogLevel level = i % 10 == 0 ? LogLevel.ERROR : LogLevel.DEBUG;
+      String tag = i < LINE_COUNT / 2 ? "Early" : "Late";
+      LogCatHeader header = new LogCatHeader(level, i, i, "com.example.app", tag, Instant.ofEpochSecond(1_000 + i / 100));
+
+      messages.add(new LogCatMessage(header, "line " + i));
+      if (i % 7 == 0) {
+        messages.add(new LogCatMessage(header, "continuation " + i));
+      }
+    }
+    myArchive.addMessages(messages);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    myArchive.close();
+  }
+
+  @Test
+  public void linesAreCompressedToDisk() {
+    assertThat(myArchive.getFileSize()).isGreaterThan(0L);
+    assertThat(myArchive.getFileSize()).isLessThan(LINE_COUNT * 10L);
+  }
+
+  @Test
+  public void readReturnsEveryLineInOrder() throws IOException {
+    List<LogCatMessage> messages = read(null, null);
+
+    assertThat(messages).hasSize(LINE_COUNT + (LINE_COUNT + 6) / 7);
+    assertThat(messages.get(0).getMessage()).isEqualTo("line 0");
+    assertThat(messages.get(0).getHeader().getTag()).isEqualTo("Early");
+    assertThat(messages.get(0).getHeader().getTimestampInstant()).isEqualTo(Instant.ofEpochSecond(1_000));
+    assertThat(messages.get(messages.size() - 1).getMessage()).isEqualTo("line " + (LINE_COUNT - 1));
+  }
+
+  @Test
+  public void linesOfAMessageShareTheirHeader() throws IOException {
+    List<LogCatMessage> messages = read(null, null);
+
+    for (int i = 1; i < messages.size(); i++) {
+      if (messages.get(i).getMessage().startsWith("continuation")) {
+        assertThat(messages.get(i).getHeader()).isSameAs(messages.get(i - 1).getHeader());
+      }
+      else {
+        assertThat(messages.get(i).getHeader()).isNotSameAs(messages.get(i - 1).getHeader());
+      }
+    }
+  }
+
+  @Test
+  public void readSeeksToTime() throws IOException {
+    List<LogCatMessage> messages = read(Instant.ofEpochSecond(1_150), null);
+
+    assertThat(messages.get(0).getMessage()).isEqualTo("line 15000");
+    // Lines 15000 to 19999, and the continuations of the 715 multiples of 7 among them
+    assertThat(messages).hasSize(5_000 + 715);
+  }
+
+  @Test
+  public void readFiltersLines() throws IOException {
+    DefaultAndroidLogcatFilter filter = new DefaultAndroidLogcatFilter.Builder("filter")
+      .setLogLevel(LogLevel.ERROR)
+      .setTagPattern(Pattern.compile("Late"))
+      .setMessagePattern(Pattern.compile("line"))
+      .build();
+
+    List<LogCatMessage> messages = read(null, filter);
+
+    assertThat(messages).hasSize(LINE_COUNT / 2 / 10);
+    for (LogCatMessage message : messages) {
+      assertThat(message.getHeader().getTag()).isEqualTo("Late");
+      assertThat(message.getHeader().getLogLevel()).isEqualTo(LogLevel.ERROR);
+    }
+  }
+
+  @Test
+  public void readStopsWhenTheConsumerDoes() throws IOException {
+    List<List<LogCatMessage>> batches = new ArrayList<>();
+    myArchive.read(null, null, batch -> {
+      batches.add(batch);
+      return false;
+    });
+
+    assertThat(batches).hasSize(1);
+    assertThat(batches.get(0).size()).isLessThan(LINE_COUNT);
+  }
+
+  @Test
+  public void resumeSkipsReplayedLines() throws IOException {
+    myArchive.resume();
+    LogCatHeader replayed = new LogCatHeader(LogLevel.INFO, 1, 1, "com.example.app", "Late", Instant.ofEpochSecond(1_000 + 199));
+    LogCatHeader next = new LogCatHeader(LogLevel.INFO, 1, 1, "com.example.app", "Late", Instant.ofEpochSecond(1_000 + 200));
+    myArchive.addMessages(List.of(new LogCatMessage(replayed, "replayed"), new LogCatMessage(next, "next")));
+
+    List<LogCatMessage> messages = read(Instant.ofEpochSecond(1_000 + 199), null);
+
+    assertThat(messages.get(messages.size() - 1).getMessage()).isEqualTo("next");
+    assertThat(messages.stream().noneMatch(message -> message.getMessage().equals("replayed"))).isTrue();
+  }
+
+  @Test
+  public void timestampsWithoutYearsAreKept() throws IOException {
+    @SuppressWarnings("deprecation")
+    LogCatHeader header =
+      new LogCatHeader(LogLevel.INFO, 1, 1, "com.example.app", "Tag", LogCatTimestamp.fromString("08-18 16:39:11.760"));
+    myArchive.addMessages(List.of(new LogCatMessage(header, "text")));
+
+    List<LogCatMessage> messages = read(null, null);
+
+    @SuppressWarnings("deprecation")
+    LogCatTimestamp timestamp = messages.get(messages.size() - 1).getHeader().getTimestamp();
+    assertThat(String.valueOf(timestamp)).isEqualTo("08-18 16:39:11.760");
+  }
+
+  @Test
+  public void closeDeletesTheFile() throws IOException {
+    myArchive.close();
+
+    assertThat(Files.exists(myPath)).isFalse();
+  }
+
+  @NotNull
+  private List<LogCatMessage> read(@Nullable Instant from, @Nullable DefaultAndroidLogcatFilter filter) throws IOException {
+    List<LogCatMessage> messages = new ArrayList<>();
+    myArchive.read(from, filter, messages::addAll);
+    return messages;
+  }
+}
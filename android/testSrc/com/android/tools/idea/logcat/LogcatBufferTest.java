@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+public class LogcatBufferTest {
+  private static final LogCatHeader APP_HEADER =
+    new LogCatHeader(LogLevel.INFO, 1234, 1234, "com.example.app", "MainActivity", Instant.ofEpochMilli(1_000));
+  private static final LogCatHeader SYSTEM_HEADER =
+    new LogCatHeader(LogLevel.WARN, 1, 2, "system_process", "ActivityManager", Instant.ofEpochMilli(2_000));
+
+  @Test
+  public void messagesAreKeptInOrder() {
+    LogcatBuffer buffer = new LogcatBuffer(Integer.MAX_VALUE);
+    buffer.addMessage(new LogCatMessage(APP_HEADER, "first"));
+    buffer.addMessage(new LogCatMessage(SYSTEM_HEADER, "second"));
+    buffer.addMessage(new LogCatMessage(APP_HEADER, ""));
+
+    List<LogCatMessage> messages = buffer.getMessages();
+    assertThat(getTexts(messages)).containsExactly("first", "second", "").inOrder();
+    assertThat(messages.get(0).getHeader()).isSameAs(APP_HEADER);
+    assertThat(messages.get(1).getHeader()).isSameAs(SYSTEM_HEADER);
+  }
+
+  @Test
+  public void oldestMessagesAreEvicted() {
+    LogcatBuffer buffer = new LogcatBuffer(10);
+    buffer.addMessage(new LogCatMessage(APP_HEADER, "aaaa"));
+    buffer.addMessage(new LogCatMessage(APP_HEADER, "bbbb"));
+    buffer.addMessage(new LogCatMessage(APP_HEADER, "cccc"));
+    assertThat(getTexts(buffer.getMessages())).containsExactly("bbbb", "cccc").inOrder();
+
+    // A message that doesn't fit on its own evicts everything.
+    buffer.addMessage(new LogCatMessage(APP_HEADER, "ddddddddddd"));
+    assertThat(buffer.getMessages()).isEmpty();
+  }
+
+  @Test
+  public void bufferWrapsAroundAndGrows() {
+    int maxTextLength = 100_000;
+    LogcatBuffer buffer = new LogcatBuffer(maxTextLength);
+    List<String> expected = new ArrayList<>();
+    int expectedLength = 0;
+    for (int i = 0; i < 50_000; i++) {
+      String text = "message " + i;
+      buffer.addMessage(new LogCatMessage(APP_HEADER, text));
+      expected.add(text);
+      expectedLength += text.length();
+      while (expectedLength > maxTextLength) {
+        expectedLength -= expected.remove(0).length();
+      }
+    }
+    assertThat(buffer.getLineCount()).isEqualTo(expected.size());
+    assertThat(getTexts(buffer.getMessages())).containsExactlyElementsIn(expected).inOrder();
+  }
+
+  @Test
+  public void filterIsAppliedToTheBacklog() {
+    LogcatBuffer buffer = new LogcatBuffer(Integer.MAX_VALUE);
+    buffer.addMessage(new LogCatMessage(APP_HEADER, "app message"));
+    buffer.addMessage(new LogCatMessage(SYSTEM_HEADER, "system message"));
+    buffer.addMessage(new LogCatMessage(APP_HEADER, "other app message"));
+
+    assertThat(getTexts(buffer.getMessages(new DefaultAndroidLogcatFilter.Builder("level").setLogLevel(LogLevel.WARN).build())))
+      .containsExactly("system message");
+    assertThat(getTexts(buffer.getMessages(new DefaultAndroidLogcatFilter.Builder("pid").setPid(1234).build())))
+      .containsExactly("app message", "other app message").inOrder();
+    assertThat(getTexts(buffer.getMessages(new DefaultAndroidLogcatFilter.Builder("tag").setTagPattern(Pattern.compile("Main")).build())))
+      .containsExactly("app message", "other app message").inOrder();
+    assertThat(getTexts(buffer.getMessages(new DefaultAndroidLogcatFilter.Builder("package")
+                                             .setPackagePattern(Pattern.compile("^com\\.example"))
+                                             .setMessagePattern(Pattern.compile("^other"))
+                                             .build())))
+      .containsExactly("other app message");
+  }
+
+  @NotNull
+  private static List<String> getTexts(@NotNull List<LogCatMessage> messages) {
+    return messages.stream().map(LogCatMessage::getMessage).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.stream.Collectors;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+public class LogcatDispatcherTest {
+  private static final LogCatHeader HEADER = new LogCatHeader(LogLevel.INFO, 1, 1, "com.example.app", "Tag", Instant.EPOCH);
+
+  private final Queue<Runnable> myTasks = new ArrayDeque<>();
+  private final List<List<String>> myBatches = new ArrayList<>();
+  private final List<Integer> myDroppedCounts = new ArrayList<>();
+
+  @Test
+  public void linesAreDeliveredInOrderInBoundedBatches() {
+    LogcatDispatcher dispatcher = newDispatcher(100, 3);
+    for (int i = 0; i < 7; i++) {
+      dispatcher.onLogLineReceived(new LogCatMessage(HEADER, "line " + i));
+    }
+
+    // A single delivery is scheduled at a time, and it schedules the next one when lines are left.
+    assertThat(myTasks).hasSize(1);
+    runTasks();
+
+    assertThat(myBatches).containsExactly(
+      List.of("line 0", "line 1", "line 2"),
+      List.of("line 3", "line 4", "line 5"),
+      List.of("line 6")).inOrder();
+    assertThat(myDroppedCounts).containsExactly(0, 0, 0);
+  }
+
+  @Test
+  public void linesAreDroppedAndCountedWhenTheQueueIsFull() {
+    LogcatDispatcher dispatcher = newDispatcher(2, 10);
+    for (int i = 0; i < 5; i++) {
+      dispatcher.onLogLineReceived(new LogCatMessage(HEADER, "line " + i));
+    }
+    runTasks();
+
+    assertThat(myBatches).containsExactly(List.of("line 0", "line 1"));
+    assertThat(myDroppedCounts).containsExactly(3);
+    assertThat(dispatcher.getDroppedCount()).isEqualTo(3);
+
+    // Lines are queued again once there is room, and the drops are only reported once.
+    dispatcher.onLogLineReceived(new LogCatMessage(HEADER, "line 5"));
+    runTasks();
+
+    assertThat(myBatches.get(1)).containsExactly("line 5");
+    assertThat(myDroppedCounts.get(1)).isEqualTo(0);
+  }
+
+  @Test
+  public void discardDropsTheLinesNotDeliveredYet() {
+    LogcatDispatcher dispatcher = newDispatcher(100, 10);
+    dispatcher.onLogLineReceived(new LogCatMessage(HEADER, "line 0"));
+    dispatcher.discard();
+    dispatcher.onLogLineReceived(new LogCatMessage(HEADER, "line 1"));
+    runTasks();
+
+    assertThat(myBatches).isEmpty();
+  }
+
+  @NotNull
+  private LogcatDispatcher newDispatcher(int capacity, int batchSize) {
+    LogcatDispatcher.Sink sink = (lines, droppedCount) -> {
+      myBatches.add(lines.stream().map(LogCatMessage::getMessage).collect(Collectors.toList()));
+      myDroppedCounts.add(droppedCount);
+    };
+    return new LogcatDispatcher(myTasks::add, sink, capacity, batchSize, 0);
+  }
+
+  private void runTasks() {
+    Runnable task;
+    while ((task = myTasks.poll()) != null) {
+      task.run();
+    }
+  }
+}
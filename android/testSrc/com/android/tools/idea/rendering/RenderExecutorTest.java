@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.idea.rendering.RenderExecutor.Priority;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class RenderExecutorTest {
+  private RenderExecutor myExecutor;
+
+  @After
+  public void tearDown() throws InterruptedException {
+    if (myExecutor != null) {
+      myExecutor.shutdownNow();
+      assertThat(myExecutor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+    }
+  }
+
+  @Test
+  public void runsHighPriorityFirstAndAlternatesOwners() throws Exception {
+    myExecutor = new RenderExecutor("Test Render Thread");
+    CountDownLatch blocker = blockRenderThread();
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+    myExecutor.execute(null, "a", Priority.LOW, () -> order.add("a low"));
+    myExecutor.execute(null, "a", Priority.HIGH, () -> order.add("a1"));
+    myExecutor.execute(null, "a", Priority.HIGH, () -> order.add("a2"));
+    myExecutor.execute(null, "a", Priority.HIGH, () -> order.add("a3"));
+    myExecutor.execute(null, "b", Priority.HIGH, () -> order.add("b1"));
+    myExecutor.execute(null, "b", Priority.HIGH, () -> order.add("b2"));
+    assertThat(myExecutor.getStats().getQueuedCount()).isEqualTo(6);
+    blocker.countDown();
+    myExecutor.submit(null, "c", Priority.LOW, () -> null).get(5, TimeUnit.SECONDS);
+
+    assertThat(order).containsExactly("a1", "b1", "a2", "b2", "a3", "a low").inOrder();
+    RenderExecutor.Stats stats = myExecutor.getStats();
+    assertThat(stats.getQueuedCount()).isEqualTo(0);
+    // The last action is counted right after its future completes.
+    assertThat(stats.getCompletedCount()).isAtLeast(7);
+  }
+
+  @Test
+  public void keepsTheOrderOfAKeyWhenItsPriorityChanges() throws Exception {
+    myExecutor = new RenderExecutor("Test Render Thread");
+    CountDownLatch blocker = blockRenderThread();
+    Object key1 = new Object();
+    Object key2 = new Object();
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+    myExecutor.execute(key1, "a", Priority.LOW, () -> order.add("key1 render"));
+    myExecutor.execute(key2, "b", Priority.HIGH, () -> order.add("key2 render"));
+    myExecutor.execute(key1, "a", Priority.HIGH, () -> order.add("key1 dispose"));
+    myExecutor.execute(key2, "b", Priority.LOW, () -> order.add("key2 dispose"));
+    blocker.countDown();
+    myExecutor.submit(null, "c", Priority.LOW, () -> null).get(5, TimeUnit.SECONDS);
+
+    // key1 moved to the HIGH lane with its pending render, key2 moved to the LOW lane with its pending render.
+    assertThat(order).containsExactly("key1 render", "key1 dispose", "key2 render", "key2 dispose").inOrder();
+  }
+
+  @Test
+  public void survivesFailingActions() throws Exception {
+    myExecutor = new RenderExecutor("Test Render Thread");
+    Thread thread = myExecutor.getThread();
+
+    myExecutor.execute(null, null, Priority.HIGH, () -> {
+      throw new IllegalStateException("Expected");
+    });
+
+    assertThat(myExecutor.supplyAsync(null, null, Priority.HIGH, Thread::currentThread).get(5, TimeUnit.SECONDS)).isSameAs(thread);
+    assertThat(thread.getName()).isEqualTo("Test Render Thread");
+  }
+
+  /**
+   * Queues an action that keeps the render thread busy until the returned latch is counted down, so that the next actions are queued.
+   */
+  private CountDownLatch blockRenderThread() throws InterruptedException {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch blocker = new CountDownLatch(1);
+    myExecutor.execute(null, null, Priority.HIGH, () -> {
+      started.countDown();
+      try {
+        blocker.await();
+      }
+      catch (InterruptedException ignored) {
+      }
+    });
+    assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+    return blocker;
+  }
+}
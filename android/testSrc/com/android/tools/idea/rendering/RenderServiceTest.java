@@ -68,7 +68,7 @@ public class RenderServiceTest extends TestCase {
   public void testAsyncRenderAction() throws ExecutionException, InterruptedException {
     AtomicBoolean called = new AtomicBoolean(false);
     CountDownLatch countDownLatch = new CountDownLatch(1);
-    CompletableFuture<Void> future = RenderService.runAsyncRenderAction(() -> {
+    CompletableFuture<Void> future = RenderService.runAsyncRenderAction(this, null, RenderExecutor.Priority.HIGH, () -> {
       try {
         countDownLatch.await();
       }
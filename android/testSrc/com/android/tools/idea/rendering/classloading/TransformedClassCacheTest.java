@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering.classloading;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.org.objectweb.asm.ClassVisitor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TransformedClassCacheTest {
+  @Rule
+  public TemporaryFolder myFolder = new TemporaryFolder();
+
+  private final AtomicInteger myTransformCount = new AtomicInteger();
+  private final Function<ClassVisitor, ClassVisitor> myTransforms = visitor -> {
+    myTransformCount.incrementAndGet();
+    return visitor;
+  };
+  private Path myDirectory;
+  private byte[] myClassData;
+
+  @Before
+  public void setUp() throws IOException {
+    myDirectory = myFolder.newFolder("cache").toPath();
+    try (InputStream stream = getClass().getResourceAsStream(getClass().getSimpleName() + ".class")) {
+      myClassData = ByteStreams.toByteArray(stream);
+    }
+  }
+
+  @Test
+  public void rewritesOnlyOnce() {
+    TransformedClassCache cache = new TransformedClassCache(myDirectory, Runnable::run);
+
+    byte[] first = cache.rewriteClass(myClassData, "test", myTransforms);
+    byte[] second = cache.rewriteClass(myClassData, "test", myTransforms);
+
+    assertThat(myTransformCount.get()).isEqualTo(1);
+    assertThat(second).isSameAs(first);
+    assertThat(first).isEqualTo(ClassConverter.rewriteClass(myClassData, visitor -> visitor));
+  }
+
+  @Test
+  public void readsEntriesWrittenByPreviousCache() {
+    byte[] rewritten = new TransformedClassCache(myDirectory, Runnable::run).rewriteClass(myClassData, "test", myTransforms);
+
+    TransformedClassCache cache = new TransformedClassCache(myDirectory, Runnable::run);
+
+    assertThat(cache.rewriteClass(myClassData, "test", myTransforms)).isEqualTo(rewritten);
+    assertThat(myTransformCount.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void rewritesAgainForDifferentTransformations() {
+    TransformedClassCache cache = new TransformedClassCache(myDirectory, Runnable::run);
+
+    cache.rewriteClass(myClassData, "test", myTransforms);
+    cache.rewriteClass(myClassData, "test:v2", myTransforms);
+
+    assertThat(myTransformCount.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void ignoresCorruptedEntries() throws IOException {
+    new TransformedClassCache(myDirectory, Runnable::run).rewriteClass(myClassData, "test", myTransforms);
+    for (Path entry : listEntries()) {
+      Files.write(entry, new byte[] { 1, 2, 3 });
+    }
+
+    TransformedClassCache cache = new TransformedClassCache(myDirectory, Runnable::run);
+    byte[] rewritten = cache.rewriteClass(myClassData, "test", myTransforms);
+
+    assertThat(rewritten).isEqualTo(ClassConverter.rewriteClass(myClassData, visitor -> visitor));
+    assertThat(myTransformCount.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void readingEntryMarksItAsUsed() throws IOException {
+    new TransformedClassCache(myDirectory, Runnable::run).rewriteClass(myClassData, "test", myTransforms);
+    Path entry = listEntries().get(0);
+    Files.setLastModifiedTime(entry, FileTime.fromMillis(1000));
+
+    new TransformedClassCache(myDirectory, Runnable::run).rewriteClass(myClassData, "test", myTransforms);
+
+    assertThat(Files.getLastModifiedTime(entry).toMillis()).isGreaterThan(1000L);
+    assertThat(myTransformCount.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void transformIdDependsOnTransformClasses() {
+    String id = TransformedClassCache.computeTransformId(ClassConverter.class, VersionClassTransform.class);
+
+    assertThat(TransformedClassCache.computeTransformId(ClassConverter.class, VersionClassTransform.class)).isEqualTo(id);
+    assertThat(TransformedClassCache.computeTransformId(ClassConverter.class, ViewMethodWrapperTransform.class)).isNotEqualTo(id);
+  }
+
+  @Test
+  public void trimDeletesOldestEntries() throws IOException {
+    Path oldEntry = writeFile("aa/old.class", 100, 1000);
+    Path newEntry = writeFile("bb/new.class", 100, 2000);
+    Path tempFile = writeFile("bb/new.tmp", 10, 3000);
+
+    TransformedClassCache.trim(myDirectory, 1000);
+    assertThat(listEntries()).containsExactly(oldEntry, newEntry);
+
+    TransformedClassCache.trim(myDirectory, 150);
+    assertThat(listEntries()).containsExactly(newEntry);
+    assertThat(Files.exists(tempFile)).isFalse();
+  }
+
+  @NotNull
+  private Path writeFile(@NotNull String relativePath, int size, long lastModifiedMs) throws IOException {
+    Path file = myDirectory.resolve(relativePath);
+    Files.createDirectories(file.getParent());
+    Files.write(file, new byte[size]);
+    Files.setLastModifiedTime(file, FileTime.fromMillis(lastModifiedMs));
+    return file;
+  }
+
+  @NotNull
+  private List<Path> listEntries() throws IOException {
+    try (Stream<Path> files = Files.walk(myDirectory)) {
+      return files.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+  }
+}
@@ -26,6 +26,7 @@ import com.android.ide.common.resources.configuration.FolderConfiguration;
 import com.android.resources.ResourceType;
 import com.android.tools.lint.detector.api.Lint;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
 import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -358,6 +359,44 @@ public class ModuleResourceRepositoryTest extends AndroidTestCase {
     assertStringIs(resources, "title_layout_changes", "New Layout Changes");
   }
 
+  public void testMergedMapsOfUnchangedTypesAreReused() {
+    myFixture.copyFileToProject(LAYOUT, "res/layout/layout1.xml");
+    VirtualFile values1 = myFixture.copyFileToProject(VALUES_OVERLAY2, "res1/values/values.xml");
+    VirtualFile values2 = myFixture.copyFileToProject(VALUES, "res/values/values.xml");
+    VirtualFile res1 = values1.getParent().getParent();
+    VirtualFile res2 = values2.getParent().getParent();
+    ModuleResourceRepository resources = ModuleResourceRepository.createForTest(myFacet, ImmutableList.of(res1, res2), RES_AUTO, null);
+    PsiFile psiValues1 = PsiManager.getInstance(getProject()).findFile(values1);
+    assertNotNull(psiValues1);
+
+    // The first edit to psiValues1 causes a rescan, which invalidates all resource types.
+    PsiDocumentManager documentManager = PsiDocumentManager.getInstance(getProject());
+    Document document = documentManager.getDocument(psiValues1);
+    assertNotNull(document);
+    WriteCommandAction.runWriteCommandAction(null, () -> {
+      int offset = document.getText().indexOf("Very Different App Name");
+      document.insertString(offset, "Not ");
+      documentManager.commitDocument(document);
+    });
+    UIUtil.dispatchAllInvocationEvents();
+
+    ListMultimap<String, ResourceItem> strings = resources.getResources(RES_AUTO, ResourceType.STRING);
+    ListMultimap<String, ResourceItem> layouts = resources.getResources(RES_AUTO, ResourceType.LAYOUT);
+    assertSame(strings, resources.getResources(RES_AUTO, ResourceType.STRING));
+    assertSame(layouts, resources.getResources(RES_AUTO, ResourceType.LAYOUT));
+
+    // Renaming a string only invalidates the merged strings.
+    WriteCommandAction.runWriteCommandAction(null, () -> {
+      int offset = document.getText().indexOf("app_name");
+      document.replaceString(offset, offset + "app_name".length(), "renamed_app_name");
+      documentManager.commitDocument(document);
+    });
+    assertNotSame(strings, resources.getResources(RES_AUTO, ResourceType.STRING));
+    assertSame(layouts, resources.getResources(RES_AUTO, ResourceType.LAYOUT));
+    assertTrue(resources.hasResources(RES_AUTO, ResourceType.STRING, "renamed_app_name"));
+    assertThat(strings.containsKey("renamed_app_name")).isFalse();
+  }
+
   public void testHasResourcesOfType() {
     // Test hasResourcesOfType merging (which may be optimized to be lighter-weight than map merging).
     VirtualFile res1 = myFixture.copyFileToProject(LAYOUT, "res/layout/layout.xml").getParent().getParent();
@@ -18,6 +18,7 @@ package com.android.tools.idea.common.model;
 import android.view.View;
 import com.android.ide.common.rendering.api.ViewInfo;
 import com.android.tools.idea.rendering.parsers.AttributeSnapshot;
+import com.android.tools.idea.rendering.RenderExecutor;
 import com.android.tools.idea.rendering.RenderService;
 import com.android.tools.idea.uibuilder.handlers.constraint.ComponentModification;
 import com.android.tools.idea.uibuilder.model.LayoutParamsManager;
@@ -103,14 +104,14 @@ public class AttributesTransaction implements NlAttributesHolder {
   }
 
   /**
-   * Triggers a re-layout of the given {@link View}. This might happen asynchronously.
+   * Triggers a re-layout of the given {@link View}. This might happen asynchronously, on the render thread of the given model.
    */
-  private static void triggerViewRelayout(@NotNull View view) {
+  private static void triggerViewRelayout(@NotNull NlModel model, @NotNull View view) {
     try {
       // We run the re-layout as a render action to avoid a render happening at the same time as the re-layout since that
       // might cause problems.
       // TODO: Investigate a more lightweight solution for this.
-      RenderService.runAsyncRenderAction(() -> {
+      RenderService.runAsyncRenderAction(model, null, RenderExecutor.Priority.HIGH, () -> {
         view.setLayoutParams(view.getLayoutParams());
         view.forceLayout();
       });
@@ -206,7 +207,7 @@ public class AttributesTransaction implements NlAttributesHolder {
       applyAllPendingAttributesToView(viewInfo);
       if (hasPendingRelayout) {
         hasLayoutAttributeChanged = true;
-        triggerViewRelayout((View)viewInfo.getViewObject());
+        triggerViewRelayout(myModel, (View)viewInfo.getViewObject());
       }
     }
   }
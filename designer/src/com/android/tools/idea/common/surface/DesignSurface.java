@@ -834,6 +834,17 @@ public abstract class DesignSurface extends EditorDesignSurface implements Dispo
     return myScrollPane.getViewport().getViewPosition();
   }
 
+  /**
+   * Returns true if the surface is showing and any part of the given {@link SceneView} is scrolled into view.
+   */
+  public boolean isInVisibleArea(@NotNull SceneView sceneView) {
+    if (!isShowing()) {
+      return false;
+    }
+    Dimension size = sceneView.getSize();
+    return myScrollPane.getViewport().getViewRect().intersects(new Rectangle(sceneView.getX(), sceneView.getY(), size.width, size.height));
+  }
+
   /**
    * Set the scale factor used to multiply the content size.
    *
@@ -114,7 +114,7 @@ public final class MotionLayoutComponentHelper {
       Method accessor = instance.getClass().getMethod("getDesignTool");
       if (accessor != null) {
         try {
-          designInstance = RenderService.runRenderAction(() -> accessor.invoke(instance));
+          designInstance = RenderService.runRenderAction(component.getModel(), () -> accessor.invoke(instance));
         }
         catch (Exception e) {
           if (DEBUG) {
@@ -154,7 +154,7 @@ public final class MotionLayoutComponentHelper {
     if (myGetAnimationPathMethod != null) {
       try {
 
-        return (Integer)RenderService.runRenderAction(() -> {
+        return (Integer)RenderService.runRenderAction(myMotionLayoutComponent.getModel(), () -> {
           try {
             ViewInfo info = NlComponentHelperKt.getViewInfo(nlComponent);
             if (info == null) {
@@ -204,7 +204,7 @@ public final class MotionLayoutComponentHelper {
 
     if (myGetKeyframeAtLocationMethod != null) {
       try {
-        return RenderService.runRenderAction(() -> {
+        return RenderService.runRenderAction(myMotionLayoutComponent.getModel(), () -> {
           try {
             return myGetKeyframeAtLocationMethod.invoke(myDesignTool, view, x, y);
           }
@@ -260,7 +260,7 @@ public final class MotionLayoutComponentHelper {
     public T invoke(Object... parameters) {
       if (myMethod != null) {
         try {
-          return RenderService.runRenderAction(() -> {
+          return RenderService.runRenderAction(myMotionLayoutComponent.getModel(), () -> {
             try {
               T result = (T) myMethod.invoke(myDesignTool, parameters);
               return result;
@@ -301,7 +301,7 @@ public final class MotionLayoutComponentHelper {
 
     if (myGetPositionKeyframeMethod != null) {
       try {
-        return RenderService.runRenderAction(() -> {
+        return RenderService.runRenderAction(myMotionLayoutComponent.getModel(), () -> {
           try {
             return myGetPositionKeyframeMethod.invoke(myDesignTool, keyframe, view, x, y, attributes, values);
           }
@@ -342,7 +342,7 @@ public final class MotionLayoutComponentHelper {
 
     if (myGetKeyframeMethod != null) {
       try {
-        return RenderService.runRenderAction(() -> {
+        return RenderService.runRenderAction(myMotionLayoutComponent.getModel(), () -> {
           try {
             return myGetKeyframeMethod.invoke(myDesignTool, type, target, position);
           }
@@ -383,7 +383,7 @@ public final class MotionLayoutComponentHelper {
 
     if (mySetKeyframeMethod != null) {
       try {
-        RenderService.runRenderAction(() -> {
+        RenderService.runRenderAction(myMotionLayoutComponent.getModel(), () -> {
           try {
             mySetKeyframeMethod.invoke(myDesignTool, keyframe, tag, value);
           }
@@ -420,7 +420,7 @@ public final class MotionLayoutComponentHelper {
     }
     if (mySetAttributesMethod != null) {
       try {
-        RenderService.runRenderAction(() -> {
+        RenderService.runRenderAction(myMotionLayoutComponent.getModel(), () -> {
           try {
             mySetAttributesMethod.invoke(myDesignTool, dpiValue, constraintSetId, view, attributes);
           }
@@ -458,7 +458,7 @@ public final class MotionLayoutComponentHelper {
     final boolean[] didUpdate = {false};
     if (mySetKeyframePositionMethod != null) {
       try {
-        RenderService.runRenderAction(() -> {
+        RenderService.runRenderAction(myMotionLayoutComponent.getModel(), () -> {
           try {
             didUpdate[0] = (boolean)mySetKeyframePositionMethod.invoke(myDesignTool, view, Integer.valueOf(position),
                                                                        Integer.valueOf(type), Float.valueOf(x), Float.valueOf(y));
@@ -500,7 +500,7 @@ public final class MotionLayoutComponentHelper {
     }
     if (myCallSetTransitionPosition != null) {
       try {
-        RenderService.runRenderAction(() -> {
+        RenderService.runRenderAction(myMotionLayoutComponent.getModel(), () -> {
           try {
             myCallSetTransitionPosition.invoke(myDesignTool, Float.valueOf(position));
           }
@@ -557,7 +557,7 @@ public final class MotionLayoutComponentHelper {
     }
     if (myCallSetTransition != null) {
       try {
-        RenderService.runRenderAction(() -> {
+        RenderService.runRenderAction(myMotionLayoutComponent.getModel(), () -> {
           try {
             myCallSetTransition.invoke(myDesignTool, start, end);
           }
@@ -600,7 +600,7 @@ public final class MotionLayoutComponentHelper {
     }
     if (myCallSetState != null) {
       try {
-        RenderService.runRenderAction(() -> {
+        RenderService.runRenderAction(myMotionLayoutComponent.getModel(), () -> {
           try {
             myCallSetState.invoke(myDesignTool, state);
           }
@@ -644,7 +644,7 @@ public final class MotionLayoutComponentHelper {
     }
     if (myCallDisableAutoTransition != null) {
       try {
-        RenderService.runRenderAction(() -> {
+        RenderService.runRenderAction(myMotionLayoutComponent.getModel(), () -> {
           try {
             myCallDisableAutoTransition.invoke(myDesignTool, disable);
           }
@@ -683,7 +683,7 @@ public final class MotionLayoutComponentHelper {
     }
     if (myCallGetState != null) {
       try {
-        state = RenderService.runRenderAction(() -> {
+        state = RenderService.runRenderAction(myMotionLayoutComponent.getModel(), () -> {
           try {
             return (String)myCallGetState.invoke(myDesignTool);
           }
@@ -724,7 +724,7 @@ public final class MotionLayoutComponentHelper {
     }
     if (myCallGetStartState != null) {
       try {
-        state = RenderService.runRenderAction(() -> {
+        state = RenderService.runRenderAction(myMotionLayoutComponent.getModel(), () -> {
           try {
             return (String)myCallGetStartState.invoke(myDesignTool);
           }
@@ -765,7 +765,7 @@ public final class MotionLayoutComponentHelper {
     }
     if (myCallGetEndState != null) {
       try {
-        state = RenderService.runRenderAction(() -> {
+        state = RenderService.runRenderAction(myMotionLayoutComponent.getModel(), () -> {
           try {
             return (String)myCallGetEndState.invoke(myDesignTool);
           }
@@ -806,7 +806,7 @@ public final class MotionLayoutComponentHelper {
     }
     if (myCallGetProgress != null) {
       try {
-        progress = RenderService.runRenderAction(() -> {
+        progress = RenderService.runRenderAction(myMotionLayoutComponent.getModel(), () -> {
           try {
             return (Float)myCallGetProgress.invoke(myDesignTool);
           }
@@ -847,7 +847,7 @@ public final class MotionLayoutComponentHelper {
     }
     if (myCallIsInTransition != null) {
       try {
-        isInTransition = RenderService.runRenderAction(() -> {
+        isInTransition = RenderService.runRenderAction(myMotionLayoutComponent.getModel(), () -> {
           try {
             return (Boolean)myCallIsInTransition.invoke(myDesignTool);
           }
@@ -886,7 +886,7 @@ public final class MotionLayoutComponentHelper {
 
     if (myGetMaxTimeMethod != null) {
       try {
-        return RenderService.runRenderAction(() -> {
+        return RenderService.runRenderAction(myMotionLayoutComponent.getModel(), () -> {
           try {
             return (long)myGetMaxTimeMethod.invoke(myDesignTool);
           }
@@ -1034,7 +1034,7 @@ public final class MotionLayoutComponentHelper {
 
     if (myGetKeyFramePositionsMethod != null) {
       try {
-        return RenderService.runRenderAction(() -> {
+        return RenderService.runRenderAction(myMotionLayoutComponent.getModel(), () -> {
           try {
             return (Integer)myGetKeyFramePositionsMethod.invoke(myDesignTool, info.getViewObject(), type, pos);
           }
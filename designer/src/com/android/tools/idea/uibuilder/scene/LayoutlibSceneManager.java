@@ -21,6 +21,7 @@ import static com.android.resources.Density.DEFAULT_DENSITY;
 import static com.intellij.util.ui.update.Update.HIGH_PRIORITY;
 import static com.intellij.util.ui.update.Update.LOW_PRIORITY;
 
+import com.android.annotations.concurrency.UiThread;
 import com.android.ide.common.rendering.api.ResourceReference;
 import com.android.ide.common.rendering.api.ResourceValue;
 import com.android.ide.common.rendering.api.SessionParams;
@@ -48,6 +49,7 @@ import com.android.tools.idea.common.type.DesignerEditorFileType;
 import com.android.tools.idea.configurations.Configuration;
 import com.android.tools.idea.configurations.ConfigurationListener;
 import com.android.tools.idea.rendering.Locale;
+import com.android.tools.idea.rendering.RenderExecutor;
 import com.android.tools.idea.rendering.RenderLogger;
 import com.android.tools.idea.rendering.RenderResult;
 import com.android.tools.idea.rendering.RenderService;
@@ -167,6 +169,12 @@ public class LayoutlibSceneManager extends SceneManager {
    */
   private final AtomicBoolean myIsCurrentlyRendering = new AtomicBoolean(false);
 
+  /**
+   * Priority of the render actions of this model, as last computed on the EDT by {@link #updateRenderPriority()}. Renders and inflates run
+   * on pooled threads, which must not query the surface.
+   */
+  private volatile RenderExecutor.Priority myRenderPriority = RenderExecutor.Priority.HIGH;
+
   /**
    * If true, the renders using this LayoutlibSceneManager will use transparent backgrounds
    */
@@ -530,6 +538,13 @@ public class LayoutlibSceneManager extends SceneManager {
    */
   @NotNull
   private CompletableFuture<Void> requestRender(@Nullable LayoutEditorRenderResult.Trigger trigger) {
+    if (ApplicationManager.getApplication().isDispatchThread()) {
+      updateRenderPriority();
+    }
+    else {
+      ApplicationManager.getApplication().invokeLater(this::updateRenderPriority);
+    }
+
     CompletableFuture<Void> callback = new CompletableFuture<>();
     synchronized (myRenderFutures) {
       myRenderFutures.add(callback);
@@ -612,6 +627,7 @@ public class LayoutlibSceneManager extends SceneManager {
    */
   protected void requestModelUpdate() {
     ApplicationManager.getApplication().assertIsDispatchThread();
+    updateRenderPriority();
 
     synchronized (myProgressLock) {
       if (myCurrentIndicator == null) {
@@ -804,9 +820,10 @@ public class LayoutlibSceneManager extends SceneManager {
    * Synchronously inflates the model and updates the view hierarchy
    *
    * @param force forces the model to be re-inflated even if a previous version was already inflated
+   * @param priority the priority of the render actions of the inflate
    * @returns whether the model was inflated in this call or not
    */
-  private CompletableFuture<Boolean> inflate(boolean force) {
+  private CompletableFuture<Boolean> inflate(boolean force, @NotNull RenderExecutor.Priority priority) {
     long startInflateTimeMs = System.currentTimeMillis();
     Configuration configuration = getModel().getConfiguration();
 
@@ -838,12 +855,14 @@ public class LayoutlibSceneManager extends SceneManager {
     RenderLogger logger = renderService.createLogger(facet);
     RenderService.RenderTaskBuilder renderTaskBuilder = renderService.taskBuilder(facet, configuration)
       .withPsiFile(getModel().getFile())
-      .withLogger(logger);
+      .withLogger(logger)
+      .withAffinityKey(getModel());
     return setupRenderTaskBuilder(renderTaskBuilder).build()
       .thenCompose(newTask -> {
         if (newTask != null) {
           newTask.getLayoutlibCallback()
             .setAdaptiveIconMaskPath(getDesignSurface().getAdaptiveIconShape().getPathDescription());
+          newTask.setPriority(priority);
           return newTask.inflate().whenComplete((result, exception) -> {
             if (exception != null) {
               Logger.getInstance(LayoutlibSceneManager.class).warn(exception);
@@ -951,7 +970,7 @@ public class LayoutlibSceneManager extends SceneManager {
    * {@link ModelListener#modelDerivedDataChanged(NlModel)}.
    */
   protected CompletableFuture<Void> updateModel() {
-    return inflate(true)
+    return inflate(true, myRenderPriority)
       .whenCompleteAsync((result, exception) -> notifyListenersModelUpdateComplete(), AppExecutorUtil.getAppExecutorService())
       .thenApply(result -> null);
   }
@@ -1004,7 +1023,7 @@ public class LayoutlibSceneManager extends SceneManager {
       getModel().resetLastChange();
 
       long renderStartTimeMs = System.currentTimeMillis();
-      return renderImpl(trigger)
+      return renderImpl(trigger, myRenderPriority)
         .thenApply(result -> {
           if (result == null) {
             completeRender();
@@ -1069,8 +1088,9 @@ public class LayoutlibSceneManager extends SceneManager {
   }
 
   @NotNull
-  private CompletableFuture<RenderResult> renderImpl(@Nullable LayoutEditorRenderResult.Trigger trigger) {
-    return inflate(myForceInflate.getAndSet(false))
+  private CompletableFuture<RenderResult> renderImpl(@Nullable LayoutEditorRenderResult.Trigger trigger,
+                                                    @NotNull RenderExecutor.Priority priority) {
+    return inflate(myForceInflate.getAndSet(false), priority)
       .whenCompleteAsync((result, ex) -> {
         if (ex != null) {
           Logger.getInstance(LayoutlibSceneManager.class).warn(ex);
@@ -1088,6 +1108,7 @@ public class LayoutlibSceneManager extends SceneManager {
             return CompletableFuture.completedFuture(null);
           }
           long startRenderTimeMs = System.currentTimeMillis();
+          myRenderTask.setPriority(priority);
           if (elapsedFrameTimeMs != -1) {
             myRenderTask.setElapsedFrameTimeNanos(TimeUnit.MILLISECONDS.toNanos(elapsedFrameTimeMs));
           }
@@ -1105,6 +1126,18 @@ public class LayoutlibSceneManager extends SceneManager {
       });
   }
 
+  /**
+   * Updates the priority of the render actions of this model. Models scrolled out of view, or in a surface that is not showing, are
+   * rendered after the visible ones.
+   */
+  @UiThread
+  private void updateRenderPriority() {
+    if (Disposer.isDisposed(this)) {
+      return;
+    }
+    myRenderPriority = getDesignSurface().isInVisibleArea(getSceneView()) ? RenderExecutor.Priority.HIGH : RenderExecutor.Priority.LOW;
+  }
+
   public void setElapsedFrameTimeMs(long ms) {
     myElapsedFrameTimeMs = ms;
   }
@@ -65,6 +65,7 @@ class DiagnosticsLayer(val surface: DesignSurface) : Layer() {
     val freeMemPct = runtime.freeMemory().toDouble() / runtime.totalMemory() * 100
     val lastRenderMs = diagnostics.lastRenders().takeLast(1).firstOrNull() ?: -1
     val poolStats = RenderService.getInstance(surface.project).sharedImagePool.stats
+    val executorStats = RenderService.getRenderExecutorStats()
 
     val bucketStats = poolStats?.bucketStats?.joinToString("\n") {
       " (${it.minWidth}x${it.minHeight} s=${it.maxSize()}) " +
@@ -78,6 +79,12 @@ class DiagnosticsLayer(val surface: DesignSurface) : Layer() {
       | 90% Render    ${PCT_FORMAT.format(diagnostics.renderTime(90))}ms
       | Last render   ${PCT_FORMAT.format(lastRenderMs)}ms / ${diagnostics.lastRenderImageSize() / MB}MB
       |
+      |Render thread
+      | Queued        ${executorStats.queuedCount}
+      | Completed     ${executorStats.completedCount}
+      | Queue wait    avg ${executorStats.averageQueueWaitMs}ms / max ${executorStats.maxQueueWaitMs}ms
+      | Run time      avg ${executorStats.averageRunMs}ms / max ${executorStats.maxRunMs}ms
+      |
       |Image pool
       | Allocated     ${(poolStats?.totalBytesAllocated() ?: -1) / MB}MB
       | In use        ${(poolStats?.totalBytesInUse() ?: -1)  / MB}MB
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat
+
+import com.android.ddmlib.IDevice
+import com.android.ddmlib.IShellOutputReceiver
+import com.android.ddmlib.logcat.LogCatMessage
+import com.android.sdklib.AndroidVersion
+import com.android.tools.idea.benchmarks.measureTimeMs
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.lang.reflect.Proxy
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.util.Random
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Replays a logcat recording through [AndroidLogcatService] from fake devices, handing the bytes to the receiver in chunks the way adb
+ * does, and times until the listeners got every line, or until the lines they did not get were dropped. The recording is replayed in the
+ * binary format of 'logcat -B', for one device and for several devices at once, and in the 'logcat -v long -v epoch' text format, for
+ * comparison.
+ */
+class LogcatIngestionBenchmark {
+  companion object {
+    private const val ENTRY_COUNT = 200_000
+    private const val CHUNK_SIZE = 16 * 1024
+    private const val DEVICE_COUNT = 4
+    private const val SERVICE_TAG = "AndroidLogcatService"
+    private val TAGS = listOf("ActivityManager", "chatty", "OpenGLRenderer", "Choreographer", "NetworkController", "MainActivity")
+    private val PRIORITY_LETTERS = charArrayOf('V', 'V', 'V', 'D', 'I', 'W', 'E', 'F')
+  }
+
+  private class Entry(
+    val priority: Int,
+    val pid: Int,
+    val tid: Int,
+    val seconds: Long,
+    val nanos: Int,
+    val tag: String,
+    val message: String
+  )
+
+  private val benchmark = Benchmark.Builder("Logcat Ingestion Timings (Millis)")
+    .setDescription("Time for logcat lines to go from the adb stream of fake devices to AndroidLogcatService listeners.")
+    .setProject("Android Studio Logcat")
+    .build()
+
+  private val recording = createRecording()
+  private val binaryRecording = toBinary(recording)
+  private val textRecording = toText(recording)
+  private val lineCount = recording.sumBy { it.message.split('\n').size }
+
+  @Test
+  fun binarySingleDevice() {
+    recordMetric("Binary-SingleDevice", List(1) { fakeDevice("device-$it", AndroidVersion.VersionCodes.Q, binaryRecording) })
+  }
+
+  @Test
+  fun binaryMultipleDevices() {
+    recordMetric("Binary-MultipleDevices", List(DEVICE_COUNT) { fakeDevice("device-$it", AndroidVersion.VersionCodes.Q, binaryRecording) })
+  }
+
+  @Test
+  fun textSingleDevice() {
+    recordMetric("Text-SingleDevice", List(1) { fakeDevice("device-$it", null, textRecording) })
+  }
+
+  private fun recordMetric(name: String, devices: List<IDevice>) {
+    lateinit var service: AndroidLogcatService
+    lateinit var listeners: List<CountingListener>
+    var droppedLines = 0L
+
+    val samples = measureTimeMs(
+      warmupIterations = 3,
+      mainIterations = 5,
+      setUp = {
+        service = AndroidLogcatService()
+        listeners = devices.map { CountingListener() }
+      },
+      action = {
+        devices.zip(listeners).forEach { (device, listener) -> service.addListener(device, listener) }
+        val deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(2)
+        devices.zip(listeners).forEach { (device, listener) ->
+          while (listener.lineCount.get() + service.getDroppedLineCount(device) < lineCount) {
+            assertTrue(System.nanoTime() < deadline)
+            Thread.sleep(1)
+          }
+        }
+      },
+      tearDown = {
+        droppedLines = devices.map { service.getDroppedLineCount(it) }.sum()
+        service.shutdown()
+      }
+    )
+    println("$name: ${listeners.map { it.lineCount.get() }} lines received, $droppedLines dropped in the last run")
+
+    val metric = Metric(name)
+    metric.addSamples(benchmark, *samples.toTypedArray())
+    metric.commit()
+  }
+
+  private class CountingListener : AndroidLogcatService.LogcatListener {
+    val lineCount = AtomicInteger()
+
+    override fun onLogLineReceived(line: LogCatMessage) {
+      // Skip the notices of dropped lines
+      if (line.header.tag != SERVICE_TAG) {
+        lineCount.incrementAndGet()
+      }
+    }
+  }
+
+  /**
+   * A device that answers 'logcat --help' like a device supporting the epoch format modifier, and any other command with [output].
+   */
+  private fun fakeDevice(name: String, apiLevel: Int?, output: ByteArray): IDevice {
+    return Proxy.newProxyInstance(IDevice::class.java.classLoader, arrayOf(IDevice::class.java)) { proxy, method, args ->
+      when (method.name) {
+        "getName", "getSerialNumber", "toString" -> name
+        "isOnline" -> true
+        "getVersion" -> apiLevel?.let { AndroidVersion(it, null) }
+        "getClientName" -> "com.example.app${args[0] as Int % 10}"
+        "executeShellCommand" -> {
+          val receiver = args[1] as IShellOutputReceiver
+          replay(if (args[0] == "logcat --help") "epoch\n".toByteArray() else output, receiver)
+          null
+        }
+        "hashCode" -> System.identityHashCode(proxy)
+        "equals" -> proxy === args[0]
+        else -> throw UnsupportedOperationException(method.name)
+      }
+    } as IDevice
+  }
+
+  private fun replay(output: ByteArray, receiver: IShellOutputReceiver) {
+    var offset = 0
+    while (offset < output.size && !receiver.isCancelled) {
+      val length = minOf(CHUNK_SIZE, output.size - offset)
+      receiver.addOutput(output, offset, length)
+      offset += length
+    }
+    receiver.flush()
+  }
+
+  /**
+   * Mostly short lines from a few busy processes, with the odd multi-line message and stack trace.
+   */
+  private fun createRecording(): List<Entry> {
+    val random = Random(0)
+    val entries = ArrayList<Entry>(ENTRY_COUNT)
+    for (i in 0 until ENTRY_COUNT) {
+      val pid = 1000 + random.nextInt(20)
+      val message = when (random.nextInt(100)) {
+        0 -> "java.lang.IllegalStateException: entry $i\n" +
+             (0 until 20).joinToString("\n") { "\tat com.example.Class$it.method(Class$it.java:$i)" }
+        in 1..5 -> "Multi-line message $i\nsecond line\nthird line"
+        else -> "Message $i " + "x".repeat(random.nextInt(120))
+      }
+      entries.add(Entry(2 + random.nextInt(6), pid, pid + random.nextInt(5), 1_600_000_000L + i / 1000, (i % 1000) * 1_000_000,
+                        TAGS[random.nextInt(TAGS.size)], message))
+    }
+    return entries
+  }
+
+  /**
+   * Writes v4 logger entries, as 'logcat -B' does on recent devices.
+   */
+  private fun toBinary(entries: List<Entry>): ByteArray {
+    val stream = ByteArrayOutputStream()
+    for (entry in entries) {
+      val tag = entry.tag.toByteArray()
+      val message = entry.message.toByteArray()
+      val payloadSize = 1 + tag.size + 1 + message.size + 1
+      val buffer = ByteBuffer.allocate(28 + payloadSize).order(ByteOrder.LITTLE_ENDIAN)
+        .putShort(payloadSize.toShort())
+        .putShort(28.toShort())
+        .putInt(entry.pid)
+        .putInt(entry.tid)
+        .putInt(entry.seconds.toInt())
+        .putInt(entry.nanos)
+        .putInt(0)
+        .putInt(0)
+        .put(entry.priority.toByte())
+        .put(tag).put(0.toByte())
+        .put(message).put(0.toByte())
+      stream.write(buffer.array())
+    }
+    return stream.toByteArray()
+  }
+
+  private fun toText(entries: List<Entry>): ByteArray {
+    val builder = StringBuilder()
+    for (entry in entries) {
+      val letter = PRIORITY_LETTERS[entry.priority]
+      builder.append(String.format("[ %d.%03d %5d:%5d %c/%-8s ]\n", entry.seconds, entry.nanos / 1_000_000, entry.pid, entry.tid, letter,
+                                   entry.tag))
+      builder.append(entry.message).append("\n\n")
+    }
+    return builder.toString().toByteArray()
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.res
+
+import com.android.ide.common.rendering.api.ResourceNamespace.RES_AUTO
+import com.android.resources.ResourceType
+import com.android.tools.idea.benchmarks.measureTimeMs
+import com.android.tools.idea.testing.AndroidGradleProjectRule
+import com.android.tools.idea.testing.TestProjectPaths
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.intellij.openapi.command.WriteCommandAction
+import com.intellij.openapi.project.guessProjectDir
+import com.intellij.psi.PsiDocumentManager
+import com.intellij.psi.PsiManager
+import com.intellij.testFramework.EdtRule
+import com.intellij.testFramework.RunsInEdt
+import com.intellij.util.ui.UIUtil
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Times how long [READER_COUNT] threads take to look up resources in the app resource repository, the way rendering and code
+ * completion do, while the EDT keeps adding strings to values/strings.xml, and, for comparison, while nothing is edited.
+ */
+class ResourceRepositoryContentionBenchmark {
+  companion object {
+    private const val READER_COUNT = 8
+    private const val READS_PER_READER = 200_000
+    private val STRING_NAMES = listOf("app_name", "hello_world", "action_settings", "missing_string")
+  }
+
+  @get:Rule
+  val gradleRule = AndroidGradleProjectRule()
+
+  @get:Rule
+  val edtRule = EdtRule()
+
+  private val benchmark = Benchmark.Builder("Resource Repository Contention Timings (Millis)")
+    .setDescription("Time for $READER_COUNT threads to do $READS_PER_READER resource lookups each in the app resource repository.")
+    .setProject("Android Studio Resources")
+    .build()
+
+  @Test
+  @RunsInEdt
+  fun readsWithConcurrentEdits() {
+    gradleRule.load(TestProjectPaths.SIMPLE_APPLICATION)
+    val project = gradleRule.project
+    val stringsFile = project.guessProjectDir()!!.findFileByRelativePath("app/src/main/res/values/strings.xml")!!
+    val documentManager = PsiDocumentManager.getInstance(project)
+    val document = documentManager.getDocument(PsiManager.getInstance(project).findFile(stringsFile)!!)!!
+    val resources = ResourceRepositoryManager.getAppResources(gradleRule.androidFacet)
+    var editCount = 0
+
+    recordMetric("ReadsWithConcurrentEdits", resources) { readersDone ->
+      while (readersDone.count > 0) {
+        WriteCommandAction.runWriteCommandAction(project) {
+          val offset = document.text.lastIndexOf("</resources>")
+          document.insertString(offset, "    <string name=\"added_string_${editCount++}\">Added</string>\n")
+          documentManager.commitDocument(document)
+        }
+        UIUtil.dispatchAllInvocationEvents()
+      }
+    }
+    println("ReadsWithConcurrentEdits: $editCount edits in total")
+  }
+
+  @Test
+  @RunsInEdt
+  fun readsWithoutEdits() {
+    gradleRule.load(TestProjectPaths.SIMPLE_APPLICATION)
+    val resources = ResourceRepositoryManager.getAppResources(gradleRule.androidFacet)
+
+    recordMetric("ReadsWithoutEdits", resources) { readersDone ->
+      assertTrue(readersDone.await(2, TimeUnit.MINUTES))
+    }
+  }
+
+  /**
+   * Runs the readers in the background while [edtAction] runs on the EDT, until all the readers are done.
+   */
+  private fun recordMetric(name: String, resources: LocalResourceRepository, edtAction: (readersDone: CountDownLatch) -> Unit) {
+    val executor = Executors.newFixedThreadPool(READER_COUNT)
+    try {
+      val samples = measureTimeMs(
+        warmupIterations = 3,
+        mainIterations = 10,
+        action = {
+          val readersDone = CountDownLatch(READER_COUNT)
+          repeat(READER_COUNT) { reader ->
+            executor.execute {
+              try {
+                read(resources, reader)
+              }
+              finally {
+                readersDone.countDown()
+              }
+            }
+          }
+          edtAction(readersDone)
+          assertTrue(readersDone.await(2, TimeUnit.MINUTES))
+        }
+      )
+      println("$name: ${samples.joinToString(prefix = "[", postfix = "]") { it.sampleData.toString() }}")
+
+      val metric = Metric(name)
+      metric.addSamples(benchmark, *samples.toTypedArray())
+      metric.commit()
+    }
+    finally {
+      executor.shutdownNow()
+    }
+  }
+
+  private fun read(resources: LocalResourceRepository, reader: Int) {
+    for (i in 0 until READS_PER_READER) {
+      when ((i + reader) % 4) {
+        0 -> resources.getResources(RES_AUTO, ResourceType.STRING, STRING_NAMES[i % STRING_NAMES.size])
+        1 -> resources.hasResources(RES_AUTO, ResourceType.STRING, STRING_NAMES[i % STRING_NAMES.size])
+        2 -> resources.getResources(RES_AUTO, ResourceType.LAYOUT).size()
+        else -> resources.getResourceNames(RES_AUTO, ResourceType.DIMEN).size
+      }
+    }
+  }
+}
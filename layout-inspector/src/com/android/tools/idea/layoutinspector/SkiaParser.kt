@@ -27,6 +27,8 @@ import com.android.tools.idea.sdk.StudioSettingsController
 import com.android.tools.idea.sdk.progress.StudioLoggerProgressIndicator
 import com.android.tools.idea.sdk.wizard.SdkQuickfixUtils
 import com.google.common.annotations.VisibleForTesting
+import com.google.common.hash.HashCode
+import com.google.common.hash.Hashing
 import com.intellij.execution.configurations.GeneralCommandLine
 import com.intellij.execution.process.OSProcessHandler
 import com.intellij.execution.process.ProcessAdapter
@@ -36,6 +38,7 @@ import com.intellij.openapi.application.PathManager
 import com.intellij.openapi.diagnostic.Logger
 import com.intellij.openapi.util.Key
 import com.intellij.openapi.util.SystemInfo.isWindows
+import com.intellij.util.concurrency.AppExecutorUtil
 import com.intellij.util.net.NetUtils
 import io.grpc.ManagedChannel
 import io.grpc.Status
@@ -53,7 +56,10 @@ import java.awt.image.SinglePixelPackedSampleModel
 import java.io.File
 import java.io.FileReader
 import java.nio.ByteOrder
+import java.util.concurrent.Callable
 import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
 import java.util.concurrent.TimeUnit
 import javax.xml.bind.JAXBContext
 import javax.xml.bind.annotation.XmlAttribute
@@ -87,6 +93,16 @@ object SkiaParser : SkiaParserService {
   private val mapLock = Any()
   private const val VERSION_MAP_FILE_NAME = "version-map.xml"
   private val progressIndicator = StudioLoggerProgressIndicator(SkiaParser::class.java)
+  private val decodeExecutor =
+    AppExecutorUtil.createBoundedApplicationPoolExecutor("SkiaParser Image Decoding", Runtime.getRuntime().availableProcessors())
+
+  /**
+   * The images of the previous frame by view id.
+   */
+  private var previousFrameImages: Map<String, CachedImage> = mapOf()
+  private val imageCacheLock = Any()
+
+  private class CachedImage(val hash: HashCode, val width: Int, val height: Int, val image: Image)
 
   @Throws(InvalidPictureException::class)
   override fun getViewTree(data: ByteArray, isInterrupted: () -> Boolean): InspectorView? {
@@ -105,31 +121,87 @@ object SkiaParser : SkiaParserService {
   override fun shutdownAll() {
     supportedVersionMap?.values?.forEach { it.shutdown() }
     devbuildServerInfo.shutdown()
+    synchronized(imageCacheLock) {
+      previousFrameImages = mapOf()
+    }
+  }
+
+  /**
+   * Builds the tree of views, then decodes their images in parallel. The images of the views whose pixels are the same as in the
+   * previous frame are reused instead of being decoded again. Images returned by this method must not be modified.
+   */
+  @VisibleForTesting
+  fun buildTree(root: SkiaParser.InspectorView, isInterrupted: () -> Boolean): InspectorView? {
+    val imagesToDecode = mutableListOf<Pair<InspectorView, ByteString>>()
+    val tree = buildNode(root, isInterrupted, imagesToDecode)
+
+    val previousImages = synchronized(imageCacheLock) { previousFrameImages }
+    val currentImages = ConcurrentHashMap<String, CachedImage>()
+    val decodeTasks = imagesToDecode.map { (view, data) ->
+      Callable {
+        if (!isInterrupted()) {
+          val hash = Hashing.murmur3_128().hashBytes(data.asReadOnlyByteBuffer())
+          val previous = previousImages[view.id]
+          val image = if (previous != null && previous.hash == hash && previous.width == view.width && previous.height == view.height) {
+            previous.image
+          }
+          else {
+            decodeImage(data, view.width, view.height)
+          }
+          view.image = image
+          currentImages[view.id] = CachedImage(hash, view.width, view.height, image)
+        }
+      }
+    }
+    if (decodeTasks.size == 1) {
+      decodeTasks[0].call()
+    }
+    else {
+      decodeExecutor.invokeAll(decodeTasks).forEach {
+        try {
+          it.get()
+        }
+        catch (e: ExecutionException) {
+          throw e.cause ?: e
+        }
+      }
+    }
+    if (isInterrupted()) {
+      throw InterruptedException()
+    }
+
+    synchronized(imageCacheLock) {
+      previousFrameImages = currentImages
+    }
+    return tree
   }
 
-  private fun buildTree(node: SkiaParser.InspectorView, isInterrupted: () -> Boolean): InspectorView? {
+  private fun buildNode(node: SkiaParser.InspectorView,
+                        isInterrupted: () -> Boolean,
+                        imagesToDecode: MutableList<Pair<InspectorView, ByteString>>): InspectorView {
     if (isInterrupted()) {
       throw InterruptedException()
     }
-    val width = node.width
-    val height = node.height
-    var image: Image? = null
+    val res = InspectorView(node.id, node.type, node.x, node.y, node.width, node.height)
     if (!node.image.isEmpty) {
-      val intArray = IntArray(width * height)
-      node.image.asReadOnlyByteBuffer().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(intArray)
-      val buffer = DataBufferInt(intArray, width * height)
-      val model = SinglePixelPackedSampleModel(DataBuffer.TYPE_INT, width, height, intArrayOf(0xff0000, 0xff00, 0xff, 0xff000000.toInt()))
-      val raster = Raster.createWritableRaster(model, buffer, Point(0, 0))
-      val colorModel = DirectColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
-                                        32, 0xff0000, 0xff00, 0xff, 0xff000000.toInt(), false, DataBuffer.TYPE_INT)
-      @Suppress("UndesirableClassUsage")
-      image = BufferedImage(colorModel, raster, false, null)
+      imagesToDecode.add(Pair(res, node.image))
     }
-    val res = InspectorView(node.id, node.type, node.x, node.y, width, height, image)
-    node.childrenList.mapNotNull { buildTree(it, isInterrupted) }.forEach { res.addChild(it) }
+    node.childrenList.forEach { res.addChild(buildNode(it, isInterrupted, imagesToDecode)) }
     return res
   }
 
+  private fun decodeImage(data: ByteString, width: Int, height: Int): Image {
+    val intArray = IntArray(width * height)
+    data.asReadOnlyByteBuffer().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(intArray)
+    val buffer = DataBufferInt(intArray, width * height)
+    val model = SinglePixelPackedSampleModel(DataBuffer.TYPE_INT, width, height, intArrayOf(0xff0000, 0xff00, 0xff, 0xff000000.toInt()))
+    val raster = Raster.createWritableRaster(model, buffer, Point(0, 0))
+    val colorModel = DirectColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+                                      32, 0xff0000, 0xff00, 0xff, 0xff000000.toInt(), false, DataBuffer.TYPE_INT)
+    @Suppress("UndesirableClassUsage")
+    return BufferedImage(colorModel, raster, false, null)
+  }
+
   private fun runServer(data: ByteArray): ServerInfo? {
     val server = findServerInfoForSkpVersion(getSkpVersion(data)) ?: return null
     server.runServer()
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.layoutinspector
+
+import com.android.tools.idea.layoutinspector.model.InspectorView
+import com.android.tools.idea.protobuf.ByteString
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Test
+import java.awt.image.BufferedImage
+import com.android.tools.idea.layoutinspector.proto.SkiaParser as SkiaParserProto
+
+class SkiaParserTest {
+  @After
+  fun tearDown() {
+    SkiaParser.shutdownAll()
+  }
+
+  @Test
+  fun decodesImages() {
+    val tree = SkiaParser.buildTree(createTree(0x11223344, 0x55667788), { false })!!
+
+    val image = tree.image as BufferedImage
+    assertThat(image.width).isEqualTo(2)
+    assertThat(image.height).isEqualTo(1)
+    assertThat(image.getRGB(0, 0)).isEqualTo(0x11223344)
+    assertThat(image.getRGB(1, 0)).isEqualTo(0x11223344)
+    assertThat((child(tree).image as BufferedImage).getRGB(0, 0)).isEqualTo(0x55667788)
+  }
+
+  @Test
+  fun reusesImagesOfUnchangedViews() {
+    val first = SkiaParser.buildTree(createTree(0x11223344, 0x55667788), { false })!!
+    val second = SkiaParser.buildTree(createTree(0x11223344, 0x66778899), { false })!!
+
+    assertThat(second.image).isSameAs(first.image)
+    assertThat(child(second).image).isNotSameAs(child(first).image)
+    assertThat((child(second).image as BufferedImage).getRGB(0, 0)).isEqualTo(0x66778899)
+  }
+
+  @Test(expected = InterruptedException::class)
+  fun stopsWhenInterrupted() {
+    SkiaParser.buildTree(createTree(0x11223344, 0x55667788), { true })
+  }
+
+  private fun child(view: InspectorView) = view.children.values.single()
+
+  private fun createTree(rootColor: Int, childColor: Int): SkiaParserProto.InspectorView =
+    SkiaParserProto.InspectorView.newBuilder()
+      .setId("1")
+      .setType("com.example.Root")
+      .setWidth(2)
+      .setHeight(1)
+      .setImage(pixels(rootColor, rootColor))
+      .addChildren(SkiaParserProto.InspectorView.newBuilder()
+                     .setId("2")
+                     .setType("com.example.Child")
+                     .setWidth(1)
+                     .setHeight(1)
+                     .setImage(pixels(childColor)))
+      .build()
+
+  /** The images are sent as little endian ARGB ints. */
+  private fun pixels(vararg colors: Int): ByteString {
+    val bytes = ByteArray(colors.size * 4)
+    colors.forEachIndexed { i, color ->
+      for (b in 0..3) {
+        bytes[i * 4 + b] = (color shr (8 * b)).toByte()
+      }
+    }
+    return ByteString.copyFrom(bytes)
+  }
+}
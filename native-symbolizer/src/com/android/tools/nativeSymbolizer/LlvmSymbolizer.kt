@@ -85,6 +85,71 @@ class LlvmSymbolizer(private val symbolizerExe: String,
     return null
   }
 
+  /**
+   * Symbolizes offsets of symbol files. All the requests of a batch are written before their responses are read, which llvm-symbolizer
+   * sends back in order, so that it works on them back to back instead of waiting for a round trip per offset.
+   *
+   * @return the symbols, with an empty module, by index of their request, with a null value for offsets without symbol. Requests that
+   * failed, e.g. because llvm-symbolizer timed out, are missing from the map.
+   */
+  @Throws(IOException::class)
+  internal fun symbolizeBatch(requests: List<Pair<File, Long>>): Map<Int, Symbol?> {
+    val results = HashMap<Int, Symbol?>()
+    for (start in requests.indices step MAX_BATCH_SIZE) {
+      val batch = requests.subList(start, minOf(start + MAX_BATCH_SIZE, requests.size))
+      val holder = getProcHolder()
+      // Responses are read on the executor while the requests are written, so that neither pipe can fill up and block both sides.
+      val responses = LinkedBlockingQueue<List<String>>()
+      val reader = executor.submit(Runnable {
+        repeat(batch.size) { responses.put(readResponse(holder) ?: throw EOFException("llvm-symbolizer exited")) }
+      })
+      try {
+        for ((symFile, offset) in batch) {
+          holder.stdin.write(formatRequest(symFile, offset))
+        }
+        holder.stdin.flush()
+        for (i in batch.indices) {
+          val response = responses.poll(timeoutMsc, TimeUnit.MILLISECONDS)
+          if (response == null) {
+            getLogger().warn("llvm-symbolizer timed out or failed", if (reader.isDone) getFailure(reader) else null)
+            reader.cancel(true)
+            stop()
+            break
+          }
+          results[start + i] = parseResponse(response, "")
+        }
+      } catch (e: IOException) {
+        getLogger().warn("llvm-symbolizer communication failed", e)
+        reader.cancel(true)
+        stop()
+      }
+    }
+    return results
+  }
+
+  private fun getFailure(future: Future<*>): Throwable? {
+    return try {
+      future.get()
+      null
+    } catch (e: ExecutionException) {
+      e.cause
+    }
+  }
+
+  /**
+   * Reads the lines of one response, or returns null if the process exited.
+   */
+  private fun readResponse(holder: ProcessHolder): List<String>? {
+    val response: MutableList<String> = mutableListOf()
+    while (true) {
+      val responseLine = holder.stdout.readLine() ?: return null
+      if (responseLine.isEmpty()) {
+        return response
+      }
+      response.add(responseLine)
+    }
+  }
+
   private fun getProcHolder() : ProcessHolder {
     var holder = procHolder
     if (holder == null || !holder.process.isAlive) {
@@ -146,6 +211,10 @@ class LlvmSymbolizer(private val symbolizerExe: String,
     procHolder = null
   }
 
+  companion object {
+    private const val MAX_BATCH_SIZE = 256
+  }
+
   private class ProcessHolder(val process: Process,
                               val stdout: BufferedReader,
                               val stdin: OutputStreamWriter) : Disposable {
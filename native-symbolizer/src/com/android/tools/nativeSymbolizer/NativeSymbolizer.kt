@@ -25,6 +25,8 @@ import java.nio.file.Paths
 
 data class Symbol(val name: String, val module: String, val sourceFile: String = "", val lineNumber: Int = 0)
 
+data class SymbolRequest(val module: String, val offset: Long)
+
 /**
  * Components that can fetch information about native symbols by a module and an offset.
  */
@@ -39,6 +41,19 @@ interface NativeSymbolizer {
    */
   @Throws(IOException::class)
   fun symbolize(abiArch: String, module: String, offset: Long): Symbol?
+
+  /**
+   * Obtains information about several functions at once, which implementations can do much faster than one at a time
+   * @param abiArch - CPU architecture of the modules
+   * @param requests - modules and offsets to symbolize
+   * @return symbols info in the order of the requests, with null for the ones that cannot be found
+   */
+  @JvmDefault
+  @Throws(IOException::class)
+  fun symbolizeAll(abiArch: String, requests: List<SymbolRequest>): List<Symbol?> {
+    return requests.map { symbolize(abiArch, it.module, it.offset) }
+  }
+
   fun stop()
 }
 
@@ -51,7 +66,7 @@ fun createNativeSymbolizer(project: Project): NativeSymbolizer {
     log.debug("Native symbolizer paths for $arch is [$dirs]")
   }
   val symLocator = SymbolFilesLocator(symDirMap)
-  return LlvmSymbolizer(symbolizerPath, symLocator)
+  return PooledLlvmSymbolizer(symbolizerPath, symLocator, SymbolCache.getInstance())
 }
 
 /**
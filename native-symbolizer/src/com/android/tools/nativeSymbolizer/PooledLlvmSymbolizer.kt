@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.nativeSymbolizer
+
+import com.intellij.util.concurrency.AppExecutorUtil
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+
+/**
+ * Implementation of NativeSymbolizer that resolves symbols with a small pool of llvm-symbolizer processes, see [LlvmSymbolizer].
+ *
+ * The distinct module and offset pairs of the requests are looked up in a [SymbolCache] first, so that the frames of a build that was
+ * already symbolized, even in a previous session, resolve right away. The remaining offsets are split across the processes of the pool,
+ * each of them receiving its share as pipelined batches.
+ */
+class PooledLlvmSymbolizer(symbolizerExe: String,
+                           private val symLocator: SymbolFilesLocator,
+                           private val cache: SymbolCache,
+                           poolSize: Int = DEFAULT_POOL_SIZE,
+                           timeoutMsc: Long = 5000) : NativeSymbolizer {
+
+  private val symbolizers = List(poolSize) { LlvmSymbolizer(symbolizerExe, symLocator, timeoutMsc) }
+  private val executor: ExecutorService = AppExecutorUtil.createBoundedApplicationPoolExecutor("PooledLlvmSymbolizer", poolSize)
+
+  override fun symbolize(abiArch: String, module: String, offset: Long): Symbol? {
+    return symbolizeAll(abiArch, listOf(SymbolRequest(module, offset)))[0]
+  }
+
+  override fun symbolizeAll(abiArch: String, requests: List<SymbolRequest>): List<Symbol?> {
+    val symbols = HashMap<SymbolRequest, Symbol>()
+    val symFilesByModule = HashMap<String, List<File>>()
+    // Frames of the same call stacks share modules and offsets, each distinct pair is only resolved once.
+    var pending: Collection<SymbolRequest> = LinkedHashSet(requests)
+    // Like LlvmSymbolizer, the symbol files of a module are tried in turn until one of them has a symbol for the offset.
+    var symFileIndex = 0
+    while (pending.isNotEmpty()) {
+      val unresolved = mutableListOf<SymbolRequest>()
+      val work = mutableListOf<Work>()
+      for (request in pending) {
+        val symFiles = symFilesByModule.getOrPut(request.module) { symLocator.findSymbolFiles(abiArch, request.module) }
+        val symFile = symFiles.getOrNull(symFileIndex) ?: continue
+        val key = cache.getKey(symFile)
+        val cached = cache.get(key, request.offset)
+        val symbol = cached?.toSymbol(request.module)
+        when {
+          cached == null -> work.add(Work(request, symFile, key))
+          symbol == null -> unresolved.add(request)
+          else -> symbols[request] = symbol
+        }
+      }
+
+      val results = symbolizeInPool(work)
+      for (item in work) {
+        val symbol = results[item]
+        if (symbol == null) {
+          unresolved.add(item.request)
+        }
+        else {
+          symbols[item.request] = symbol.copy(module = item.request.module)
+        }
+      }
+      // Failed requests are missing from the results, they are not cached so that they get another chance next time.
+      results.entries
+        .groupBy({ it.key.key }, { (item, symbol) -> item.request.offset to toCachedSymbol(symbol) })
+        .forEach { (key, entries) -> cache.put(key, entries.toMap()) }
+
+      pending = unresolved
+      symFileIndex++
+    }
+    return requests.map { symbols[it] }
+  }
+
+  /**
+   * Symbolizes the given work with the processes of the pool, returning the symbols of the requests that did not fail.
+   */
+  @Throws(IOException::class)
+  private fun symbolizeInPool(work: List<Work>): Map<Work, Symbol?> {
+    if (work.isEmpty()) {
+      return emptyMap()
+    }
+    // Sorting keeps the offsets of a file together, so that each process loads as few symbol files as possible. Small batches are not
+    // split, since starting a process and loading the symbols costs more than symbolizing a few offsets.
+    val sorted = work.sortedWith(compareBy({ it.symFile.path }, { it.request.offset }))
+    val sliceCount = minOf(symbolizers.size, (sorted.size + MIN_SLICE_SIZE - 1) / MIN_SLICE_SIZE)
+    val slices = sorted.chunked((sorted.size + sliceCount - 1) / sliceCount)
+    val futures = slices.mapIndexed { i, slice ->
+      val symbolizer = symbolizers[i]
+      executor.submit(Callable {
+        val symbols = synchronized(symbolizer) { symbolizer.symbolizeBatch(slice.map { it.symFile to it.request.offset }) }
+        symbols.mapKeys { (index, _) -> slice[index] }
+      })
+    }
+
+    val results = HashMap<Work, Symbol?>()
+    for (future in futures) {
+      try {
+        results.putAll(future.get())
+      }
+      catch (e: ExecutionException) {
+        val cause = e.cause
+        throw if (cause is IOException) cause else RuntimeException(cause)
+      }
+    }
+    return results
+  }
+
+  private fun toCachedSymbol(symbol: Symbol?): CachedSymbol {
+    return if (symbol == null) CachedSymbol.NOT_FOUND else CachedSymbol(symbol.name, symbol.sourceFile, symbol.lineNumber)
+  }
+
+  override fun stop() {
+    for (symbolizer in symbolizers) {
+      synchronized(symbolizer) {
+        symbolizer.stop()
+      }
+    }
+  }
+
+  private data class Work(val request: SymbolRequest, val symFile: File, val key: String)
+
+  companion object {
+    private val DEFAULT_POOL_SIZE = (Runtime.getRuntime().availableProcessors() / 2).coerceIn(1, 4)
+    private const val MIN_SLICE_SIZE = 32
+  }
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.nativeSymbolizer
+
+import com.intellij.openapi.application.PathManager
+import com.intellij.util.concurrency.AppExecutorUtil
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.NoSuchFileException
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardOpenOption
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executor
+
+/**
+ * Result of symbolizing an offset of a symbol file, independent of the device module it was requested for. An empty name means that
+ * the offset has no symbol.
+ */
+data class CachedSymbol(val name: String, val sourceFile: String = "", val lineNumber: Int = 0) {
+  fun toSymbol(module: String): Symbol? = if (name.isEmpty()) null else Symbol(name, module, sourceFile, lineNumber)
+
+  companion object {
+    @JvmField val NOT_FOUND = CachedSymbol("")
+  }
+}
+
+/**
+ * Cache of symbolization results, kept in memory and in one file per symbol file under the IDE system directory, so that the frames of
+ * a build that was already symbolized, in this session or in a previous one, do not go through llvm-symbolizer again.
+ *
+ * The entries of a symbol file are keyed by its GNU build id, which changes whenever the binary does, and by which of the sections used
+ * for symbolization it has, since stripping a binary keeps its build id but leaves fewer symbols to find. Files without a build id are
+ * keyed by their path, size and modification time instead. Each cache file has one line per offset, `<hex offset>\t<name>\t<file>\t<line>`,
+ * and new lines are appended in the background as offsets get resolved. When the cache files exceed [MAX_DISK_BYTES], the oldest ones
+ * are deleted the next time the cache is created.
+ */
+class SymbolCache(private val directory: Path?, private val diskExecutor: Executor) {
+  private val keysByFile = ConcurrentHashMap<FileStamp, String>()
+  private val symbolsByKey = ConcurrentHashMap<String, MutableMap<Long, CachedSymbol>>()
+
+  init {
+    if (directory != null) {
+      diskExecutor.execute { trim(directory, MAX_DISK_BYTES) }
+    }
+  }
+
+  /**
+   * Returns the key under which the results for the given symbol file are stored.
+   */
+  fun getKey(symbolFile: File): String {
+    val stamp = FileStamp(symbolFile.absolutePath, symbolFile.length(), symbolFile.lastModified())
+    return keysByFile.computeIfAbsent(stamp) {
+      val buildId = readBuildId(symbolFile)
+      if (buildId == null) "file-${Integer.toHexString(it.path.hashCode())}-${it.length}-${it.lastModified}"
+      else buildId + readSymbolSections(symbolFile).joinToString("") { section -> "-" + section.trimStart('.') }
+    }
+  }
+
+  /**
+   * Returns the cached result for an offset of the symbol file with the given key, or null if that offset was never symbolized.
+   */
+  fun get(key: String, offset: Long): CachedSymbol? = getSymbols(key)[offset]
+
+  /**
+   * Stores the results for offsets of the symbol file with the given key. Results of failed symbolizations must not be stored, so that
+   * they are tried again.
+   */
+  fun put(key: String, symbols: Map<Long, CachedSymbol>) {
+    if (symbols.isEmpty()) {
+      return
+    }
+    getSymbols(key).putAll(symbols)
+    if (directory != null) {
+      diskExecutor.execute { appendEntries(directory.resolve(key + ENTRY_SUFFIX), symbols) }
+    }
+  }
+
+  private fun getSymbols(key: String): MutableMap<Long, CachedSymbol> {
+    return symbolsByKey.computeIfAbsent(key) {
+      val symbols = ConcurrentHashMap<Long, CachedSymbol>()
+      if (directory != null) {
+        readEntries(directory.resolve(key + ENTRY_SUFFIX), symbols)
+      }
+      symbols
+    }
+  }
+
+  private data class FileStamp(val path: String, val length: Long, val lastModified: Long)
+
+  companion object {
+    private const val CACHE_DIRECTORY = "native-symbols"
+    private const val ENTRY_SUFFIX = ".txt"
+    private const val MAX_DISK_BYTES = 64L * 1024 * 1024
+    private const val PT_NOTE = 4
+    private const val NT_GNU_BUILD_ID = 3
+    private const val MAX_NOTES_BYTES = 64 * 1024
+    private const val SHT_NOBITS = 8
+    private const val MAX_SECTION_NAMES_BYTES = 64 * 1024
+    /** The sections llvm-symbolizer reads symbols from, besides the dynamic symbol table that even stripped binaries keep. */
+    private val SYMBOL_SECTIONS = listOf(".symtab", ".debug_info", ".zdebug_info", ".gnu_debugdata")
+
+    private val instance: SymbolCache by lazy {
+      SymbolCache(Paths.get(PathManager.getSystemPath(), CACHE_DIRECTORY),
+                  AppExecutorUtil.createBoundedApplicationPoolExecutor("SymbolCache", 1))
+    }
+
+    @JvmStatic
+    fun getInstance(): SymbolCache = instance
+
+    /**
+     * Returns the GNU build id of an ELF file as a hex string, or null if the file is not an ELF file or has no build id. The id is read
+     * from the note segments of the file.
+     */
+    @JvmStatic
+    fun readBuildId(file: File): String? {
+      try {
+        RandomAccessFile(file, "r").use { raf ->
+          val (is64Bit, order, header) = readElfHeader(raf) ?: return null
+          val programHeaderOffset = if (is64Bit) header.getLong(0x20) else header.getInt(0x1c).toUnsignedLong()
+          val programHeaderSize = header.getShort(if (is64Bit) 0x36 else 0x2a).toInt() and 0xffff
+          val programHeaderCount = header.getShort(if (is64Bit) 0x38 else 0x2c).toInt() and 0xffff
+          for (i in 0 until programHeaderCount) {
+            val programHeader = read(raf, programHeaderOffset + i * programHeaderSize, programHeaderSize, order)
+            if (programHeader.getInt(0) != PT_NOTE) {
+              continue
+            }
+            val notesOffset = if (is64Bit) programHeader.getLong(0x08) else programHeader.getInt(0x04).toUnsignedLong()
+            val notesSize = if (is64Bit) programHeader.getLong(0x20) else programHeader.getInt(0x10).toUnsignedLong()
+            if (notesSize > MAX_NOTES_BYTES) {
+              continue
+            }
+            findBuildId(read(raf, notesOffset, notesSize.toInt(), order))?.let { return it }
+          }
+        }
+      }
+      catch (e: IOException) {
+        getLogger().debug("Failed to read the build id of $file", e)
+      }
+      catch (e: RuntimeException) {
+        // Malformed headers, e.g. offsets past the end of the file.
+        getLogger().debug("Failed to read the build id of $file", e)
+      }
+      return null
+    }
+
+    /**
+     * Returns the sections of [SYMBOL_SECTIONS] that an ELF file has with some content, or an empty list if it is not an ELF file. The
+     * names are read from the section headers of the file.
+     */
+    @JvmStatic
+    fun readSymbolSections(file: File): List<String> {
+      try {
+        RandomAccessFile(file, "r").use { raf ->
+          val (is64Bit, order, header) = readElfHeader(raf) ?: return emptyList()
+          val sectionHeaderOffset = if (is64Bit) header.getLong(0x28) else header.getInt(0x20).toUnsignedLong()
+          val sectionHeaderSize = header.getShort(if (is64Bit) 0x3a else 0x2e).toInt() and 0xffff
+          val sectionHeaderCount = header.getShort(if (is64Bit) 0x3c else 0x30).toInt() and 0xffff
+          val namesIndex = header.getShort(if (is64Bit) 0x3e else 0x32).toInt() and 0xffff
+          if (sectionHeaderOffset == 0L || namesIndex >= sectionHeaderCount) {
+            return emptyList()
+          }
+          val sectionHeaders = read(raf, sectionHeaderOffset, sectionHeaderSize * sectionHeaderCount, order)
+          val namesHeader = namesIndex * sectionHeaderSize
+          val namesOffset = if (is64Bit) sectionHeaders.getLong(namesHeader + 0x18)
+          else sectionHeaders.getInt(namesHeader + 0x10).toUnsignedLong()
+          val namesSize = if (is64Bit) sectionHeaders.getLong(namesHeader + 0x20)
+          else sectionHeaders.getInt(namesHeader + 0x14).toUnsignedLong()
+          if (namesSize > MAX_SECTION_NAMES_BYTES) {
+            return emptyList()
+          }
+          val names = read(raf, namesOffset, namesSize.toInt(), order)
+          val sections = HashSet<String>()
+          for (i in 0 until sectionHeaderCount) {
+            // Debug files made with --only-keep-debug keep the headers of the stripped sections, without their content.
+            if (sectionHeaders.getInt(i * sectionHeaderSize + 4) != SHT_NOBITS) {
+              sections.add(readString(names, sectionHeaders.getInt(i * sectionHeaderSize)))
+            }
+          }
+          return SYMBOL_SECTIONS.filter { it in sections }
+        }
+      }
+      catch (e: IOException) {
+        getLogger().debug("Failed to read the sections of $file", e)
+      }
+      catch (e: RuntimeException) {
+        // Malformed headers, e.g. offsets past the end of the file.
+        getLogger().debug("Failed to read the sections of $file", e)
+      }
+      return emptyList()
+    }
+
+    private data class ElfHeader(val is64Bit: Boolean, val order: ByteOrder, val bytes: ByteBuffer)
+
+    /**
+     * Returns the header of an ELF file, or null if the file is not an ELF file.
+     */
+    private fun readElfHeader(raf: RandomAccessFile): ElfHeader? {
+      val ident = ByteArray(16)
+      raf.readFully(ident)
+      if (ident[0] != 0x7f.toByte() || ident[1] != 'E'.toByte() || ident[2] != 'L'.toByte() || ident[3] != 'F'.toByte()) {
+        return null
+      }
+      val is64Bit = ident[4].toInt() == 2
+      val order = if (ident[5].toInt() == 2) ByteOrder.BIG_ENDIAN else ByteOrder.LITTLE_ENDIAN
+      return ElfHeader(is64Bit, order, read(raf, 0, if (is64Bit) 64 else 52, order))
+    }
+
+    private fun readString(strings: ByteBuffer, offset: Int): String {
+      var end = offset
+      while (end < strings.limit() && strings.get(end) != 0.toByte()) {
+        end++
+      }
+      return String(strings.array(), offset, end - offset, StandardCharsets.UTF_8)
+    }
+
+    private fun findBuildId(notes: ByteBuffer): String? {
+      // Each note is a name size, a descriptor size and a type, followed by the name and the descriptor, both aligned on 4 bytes.
+      while (notes.remaining() >= 12) {
+        val nameSize = notes.getInt()
+        val descriptorSize = notes.getInt()
+        val type = notes.getInt()
+        val nameStart = notes.position()
+        val descriptorStart = nameStart + align4(nameSize)
+        if (nameSize < 0 || descriptorSize < 0 || descriptorStart + descriptorSize > notes.limit()) {
+          return null
+        }
+        if (type == NT_GNU_BUILD_ID && nameSize == 4 &&
+            notes.get(nameStart) == 'G'.toByte() && notes.get(nameStart + 1) == 'N'.toByte() && notes.get(nameStart + 2) == 'U'.toByte()) {
+          val id = StringBuilder(descriptorSize * 2)
+          for (i in 0 until descriptorSize) {
+            id.append(String.format("%02x", notes.get(descriptorStart + i)))
+          }
+          return id.toString()
+        }
+        notes.position(minOf(notes.limit(), descriptorStart + align4(descriptorSize)))
+      }
+      return null
+    }
+
+    private fun align4(size: Int) = (size + 3) and 3.inv()
+
+    private fun Int.toUnsignedLong() = toLong() and 0xffffffffL
+
+    private fun read(raf: RandomAccessFile, offset: Long, size: Int, order: ByteOrder): ByteBuffer {
+      val bytes = ByteArray(size)
+      raf.seek(offset)
+      raf.readFully(bytes)
+      return ByteBuffer.wrap(bytes).order(order)
+    }
+
+    private fun readEntries(file: Path, symbols: MutableMap<Long, CachedSymbol>) {
+      try {
+        Files.newBufferedReader(file, StandardCharsets.UTF_8).useLines { lines ->
+          for (line in lines) {
+            // A line cut short by a crash while appending is skipped.
+            val parts = line.split('\t')
+            if (parts.size != 4) {
+              continue
+            }
+            val offset = parts[0].toLongOrNull(16) ?: continue
+            symbols[offset] = CachedSymbol(parts[1], parts[2], parts[3].toIntOrNull() ?: 0)
+          }
+        }
+      }
+      catch (ignored: NoSuchFileException) {
+      }
+      catch (e: IOException) {
+        getLogger().debug("Failed to read $file", e)
+      }
+    }
+
+    private fun appendEntries(file: Path, symbols: Map<Long, CachedSymbol>) {
+      val text = StringBuilder()
+      for ((offset, symbol) in symbols) {
+        text.append(java.lang.Long.toHexString(offset)).append('\t')
+          .append(escape(symbol.name)).append('\t')
+          .append(escape(symbol.sourceFile)).append('\t')
+          .append(symbol.lineNumber).append('\n')
+      }
+      try {
+        Files.createDirectories(file.parent)
+        Files.write(file, text.toString().toByteArray(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+      }
+      catch (e: IOException) {
+        getLogger().debug("Failed to write $file", e)
+      }
+    }
+
+    private fun escape(value: String) = value.replace('\t', ' ').replace('\n', ' ')
+
+    /**
+     * Deletes the least recently modified cache files until they take less than 3/4 of `maxBytes`, if they take more than `maxBytes`.
+     */
+    @JvmStatic
+    fun trim(directory: Path, maxBytes: Long) {
+      if (!Files.isDirectory(directory)) {
+        return
+      }
+      try {
+        val entries = Files.list(directory).use { files -> files.iterator().asSequence().toList() }
+          .map { it to Files.readAttributes(it, BasicFileAttributes::class.java) }
+          .filter { (_, attributes) -> attributes.isRegularFile }
+        var totalBytes = entries.map { (_, attributes) -> attributes.size() }.sum()
+        if (totalBytes <= maxBytes) {
+          return
+        }
+        for ((file, attributes) in entries.sortedBy { (_, attributes) -> attributes.lastModifiedTime() }) {
+          if (totalBytes <= maxBytes / 4 * 3) {
+            break
+          }
+          Files.deleteIfExists(file)
+          totalBytes -= attributes.size()
+        }
+      }
+      catch (e: IOException) {
+        getLogger().warn("Failed to trim $directory", e)
+      }
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.nativeSymbolizer
+
+import com.android.testutils.TestUtils
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.nio.file.Paths
+
+class PooledLlvmSymbolizerTest {
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  private val testDataDir = TestUtils.getWorkspaceFile("tools/adt/idea/native-symbolizer/testData/bin/").absolutePath
+  private val module = "/data/app/com.someapp.name-abcd09876abds==/lib/arm64/libnative-lib.so"
+  private val architectures = listOf("arm", "arm64", "x86", "x86_64")
+  private val symLocator = SymbolFilesLocator(architectures.associateWith { setOf(File(testDataDir, it)) })
+
+  @Test
+  fun symbolizeAllMatchesExpectedSymbols() {
+    val symbolizer = createSymbolizer(SymbolCache(null, Runnable::run))
+    for (arch in architectures) {
+      val expected = readExpectedSymbols(arch)
+      // Every frame is requested twice, like frames shared by several call stacks.
+      val requests = expected.map { SymbolRequest(module, it.first) }
+      val symbols = symbolizer.symbolizeAll(arch, requests + requests)
+
+      Assert.assertEquals(requests.size * 2, symbols.size)
+      for ((i, pair) in expected.withIndex()) {
+        val (_, expectedSymbol) = pair
+        for (symbol in listOf(symbols[i], symbols[i + requests.size])) {
+          Assert.assertNotNull(symbol)
+          Assert.assertEquals(expectedSymbol.name, symbol!!.name)
+          Assert.assertEquals(module, symbol.module)
+          Assert.assertEquals(expectedSymbol.sourceFile, symbol.sourceFile)
+          Assert.assertTrue(symbol.lineNumber >= expectedSymbol.lineNumber)
+        }
+      }
+    }
+    symbolizer.stop()
+  }
+
+  @Test
+  fun cachedSymbolsDoNotNeedSymbolizer() {
+    val cacheDirectory = temporaryFolder.newFolder("cache").toPath()
+    val expected = readExpectedSymbols("x86_64")
+    val requests = expected.map { SymbolRequest(module, it.first) } + SymbolRequest(module, 0xffffffffff)
+    val symbolizer = createSymbolizer(SymbolCache(cacheDirectory, Runnable::run))
+    val symbols = symbolizer.symbolizeAll("x86_64", requests)
+    symbolizer.stop()
+
+    // A symbolizer that cannot start a process resolves everything from the results stored by the previous one.
+    val missingExe = getLlvmSymbolizerPath().replace("llvm-symbolizer", "not-llvm-symbolizer")
+    val cachedSymbolizer = PooledLlvmSymbolizer(missingExe, symLocator, SymbolCache(cacheDirectory, Runnable::run))
+
+    Assert.assertEquals(symbols, cachedSymbolizer.symbolizeAll("x86_64", requests))
+    Assert.assertNull(symbols.last())
+  }
+
+  @Test
+  fun unknownModuleIsNotSymbolized() {
+    val symbolizer = createSymbolizer(SymbolCache(null, Runnable::run))
+    Assert.assertNull(symbolizer.symbolize("arm", "/p/libnotexists.so", 12345))
+  }
+
+  private fun createSymbolizer(cache: SymbolCache) = PooledLlvmSymbolizer(getLlvmSymbolizerPath(), symLocator, cache, 2)
+
+  /**
+   * Returns the offsets within the functions listed in the expected symbols file of an architecture, along with their symbols.
+   */
+  private fun readExpectedSymbols(arch: String): List<Pair<Long, CachedSymbol>> {
+    return Paths.get(testDataDir, arch, "symbols.txt").toFile().readLines().map { line ->
+      val symParts = line.split('|')
+      // +1 to get an address within the function, rather than function start address
+      symParts[0].toLong(16) + 1 to CachedSymbol(symParts[1], symParts[2], symParts[3].toInt())
+    }
+  }
+}
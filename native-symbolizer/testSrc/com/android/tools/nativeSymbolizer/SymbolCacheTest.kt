@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.nativeSymbolizer
+
+import com.android.testutils.TestUtils
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+
+class SymbolCacheTest {
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  private val testDataDir = TestUtils.getWorkspaceFile("tools/adt/idea/native-symbolizer/testData/bin/")
+
+  @Test
+  fun readBuildId() {
+    Assert.assertEquals("415446799bd7b2495e1056857fc6dfc724ffc002",
+                        SymbolCache.readBuildId(File(testDataDir, "x86_64/libnative-lib.so")))
+    Assert.assertEquals("463de9a467d1bc1453c0e1f494308df8a8616b48",
+                        SymbolCache.readBuildId(File(testDataDir, "arm/libnative-lib.so")))
+    Assert.assertNull(SymbolCache.readBuildId(File(testDataDir, "x86_64/symbols.txt")))
+  }
+
+  @Test
+  fun readSymbolSections() {
+    Assert.assertEquals(listOf(".symtab", ".debug_info"), SymbolCache.readSymbolSections(File(testDataDir, "x86_64/libnative-lib.so")))
+    Assert.assertEquals(listOf(".symtab", ".debug_info"), SymbolCache.readSymbolSections(File(testDataDir, "arm/libnative-lib.so")))
+    Assert.assertEquals(emptyList<String>(), SymbolCache.readSymbolSections(File(testDataDir, "x86_64/symbols.txt")))
+  }
+
+  @Test
+  fun keyTellsStrippedCopiesApart() {
+    val unstripped = File(testDataDir, "x86_64/libnative-lib.so")
+    // Renaming the section in the section name table is enough for it to be seen as stripped.
+    val stripped = temporaryFolder.newFile("libnative-lib.so")
+    val data = unstripped.readBytes()
+    val name = ".debug_info".toByteArray()
+    val index = (0..data.size - name.size).first { i -> name.indices.all { data[i + it] == name[it] } }
+    data[index + 1] = 'x'.toByte()
+    stripped.writeBytes(data)
+
+    val cache = SymbolCache(null, Runnable::run)
+
+    Assert.assertEquals("415446799bd7b2495e1056857fc6dfc724ffc002-symtab-debug_info", cache.getKey(unstripped))
+    Assert.assertEquals("415446799bd7b2495e1056857fc6dfc724ffc002-symtab", cache.getKey(stripped))
+  }
+
+  @Test
+  fun keyFallsBackToFileStampWithoutBuildId() {
+    val file = temporaryFolder.newFile("libnobuildid.so")
+    file.writeText("not an elf file")
+
+    val key = SymbolCache(null, Runnable::run).getKey(file)
+
+    Assert.assertTrue(key.startsWith("file-"))
+    Assert.assertTrue(key.endsWith("-${file.length()}-${file.lastModified()}"))
+  }
+
+  @Test
+  fun entriesSurviveNewCache() {
+    val directory = temporaryFolder.newFolder("cache").toPath()
+    val symbol = CachedSymbol("Java_com_example_stringFromJNI", "native-lib.cpp", 12)
+    SymbolCache(directory, Runnable::run).put("buildid", mapOf(0x10L to symbol, 0x20L to CachedSymbol.NOT_FOUND))
+
+    val cache = SymbolCache(directory, Runnable::run)
+
+    Assert.assertEquals(symbol, cache.get("buildid", 0x10L))
+    Assert.assertEquals(CachedSymbol.NOT_FOUND, cache.get("buildid", 0x20L))
+    Assert.assertNull(cache.get("buildid", 0x30L))
+    Assert.assertNull(cache.get("otherid", 0x10L))
+  }
+
+  @Test
+  fun trimDeletesOldestFiles() {
+    val directory = temporaryFolder.newFolder("cache").toPath()
+    val oldFile = writeFile(directory, "old.txt", 100, 1000)
+    val newFile = writeFile(directory, "new.txt", 100, 2000)
+
+    SymbolCache.trim(directory, 1000)
+    Assert.assertTrue(Files.exists(oldFile))
+    Assert.assertTrue(Files.exists(newFile))
+
+    SymbolCache.trim(directory, 150)
+    Assert.assertFalse(Files.exists(oldFile))
+    Assert.assertTrue(Files.exists(newFile))
+  }
+
+  private fun writeFile(directory: Path, name: String, size: Int, lastModifiedMs: Long): Path {
+    val file = directory.resolve(name)
+    Files.write(file, ByteArray(size))
+    Files.setLastModifiedTime(file, FileTime.fromMillis(lastModifiedMs))
+    return file
+  }
+}
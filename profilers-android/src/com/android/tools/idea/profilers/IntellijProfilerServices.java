@@ -26,9 +26,12 @@ import com.android.tools.idea.profilers.stacktrace.IntellijCodeNavigator;
 import com.android.tools.idea.project.AndroidNotification;
 import com.android.tools.idea.run.AndroidRunConfigurationBase;
 import com.android.tools.idea.run.profiler.CpuProfilerConfigsState;
+import com.android.tools.idea.transport.EventStreamServer;
+import com.android.tools.idea.transport.TransportService;
 import com.android.tools.nativeSymbolizer.NativeSymbolizer;
 import com.android.tools.nativeSymbolizer.NativeSymbolizerKt;
 import com.android.tools.nativeSymbolizer.SymbolFilesLocatorKt;
+import com.android.tools.profiler.proto.Common;
 import com.android.tools.profilers.FeatureConfig;
 import com.android.tools.profilers.IdeProfilerServices;
 import com.android.tools.profilers.Notification;
@@ -44,6 +47,7 @@ import com.intellij.execution.impl.EditConfigurationsDialog;
 import com.intellij.notification.NotificationType;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.module.Module;
@@ -360,6 +364,19 @@ public class IntellijProfilerServices implements IdeProfilerServices, Disposable
     return archToDirectories.get(arch).stream().map(file -> file.getAbsolutePath()).collect(Collectors.toList());
   }
 
+  @NotNull
+  @Override
+  public File getImportedSessionsIndexFile() {
+    // Shared by all projects, as imported sessions show up in the Sessions panel of every project.
+    return new File(PathManager.getSystemPath(), "profilers/imported-sessions.txt");
+  }
+
+  @NotNull
+  @Override
+  public Common.Stream registerStreamServer(@NotNull Common.Stream.Type streamType, @NotNull EventStreamServer streamServer) {
+    return TransportService.getInstance().registerStreamServer(streamType, streamServer);
+  }
+
   @Override
   public List<ProfilingConfiguration> getUserCpuProfilerConfigs() {
     CpuProfilerConfigsState configsState = CpuProfilerConfigsState.getInstance(myProject);
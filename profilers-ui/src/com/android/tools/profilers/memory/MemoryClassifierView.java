@@ -731,6 +731,12 @@ final class MemoryClassifierView extends AspectObserver {
       return getAdapter().getChildrenClassifierSets().size();
     }
 
+    @Override
+    public boolean isLeaf() {
+      // The tree asks every visible row whether it is a leaf, answer that without partitioning the row's instances until it is expanded.
+      return !getAdapter().hasChildrenClassifierSets();
+    }
+
     @Override
     public void expandNode() {
       if (myMemoizedChildrenCount == myChildren.size()) {
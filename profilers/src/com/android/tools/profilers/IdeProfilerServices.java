@@ -15,6 +15,8 @@
  */
 package com.android.tools.profilers;
 
+import com.android.tools.idea.transport.EventStreamServer;
+import com.android.tools.profiler.proto.Common;
 import com.android.tools.profilers.analytics.FeatureTracker;
 import com.android.tools.profilers.cpu.ProfilingConfiguration;
 import com.android.tools.profilers.cpu.TracePreProcessor;
@@ -170,4 +172,19 @@ public interface IdeProfilerServices {
    */
   @NotNull
   List<String> getNativeSymbolsDirectories();
+
+  /**
+   * Returns the file where the sessions imported from files are recorded so that they are restored in later runs, or null if imported
+   * sessions should not outlive the profilers.
+   */
+  @Nullable
+  File getImportedSessionsIndexFile();
+
+  /**
+   * Connects a server that streams the events and bytes of an imported session to the transport pipeline the profilers query.
+   *
+   * @return the stream the events and bytes of the server can be queried from.
+   */
+  @NotNull
+  Common.Stream registerStreamServer(@NotNull Common.Stream.Type streamType, @NotNull EventStreamServer streamServer);
 }
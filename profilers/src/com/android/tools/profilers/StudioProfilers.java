@@ -271,6 +271,9 @@ public class StudioProfilers extends AspectModel<ProfilerAspect> implements Upda
     // thread. Using the ScheduleExecutorService would violate that assumption and cause concurrency issues.
     myTransportPoller = new TransportEventPoller(myClient.getTransportClient(), Comparator.comparing(Common.Event::getTimestamp));
 
+    // The profilers above registered their import handlers, which also restore the sessions imported in previous runs.
+    mySessionsManager.restoreImportedSessions();
+
     myUpdater.register(this);
   }
 
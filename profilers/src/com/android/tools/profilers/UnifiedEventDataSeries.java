@@ -16,6 +16,7 @@
 package com.android.tools.profilers;
 
 import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.LongDataSeries;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.Common;
@@ -26,6 +27,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 
@@ -88,14 +90,27 @@ public class UnifiedEventDataSeries<T> implements DataSeries<T> {
 
   /**
    * Helper function that constructs list data extractor from a field extractor for the simple case of extracting one field out of every
-   * {@link Common.Event}.
+   * {@link Common.Event}. The data is returned as a columnar {@link LongDataSeries.View}, which charts scan without unboxing.
    *
-   * @param fieldExtractor a {@link Function} that extracts a Long field from an {@link Common.Event}.
+   * @param fieldExtractor a {@link ToLongFunction} that extracts a long field from an {@link Common.Event}.
    * @return a {@link Function} that converts a list of events into a list of {@link SeriesData}.
    */
-  public static Function<List<Common.Event>, List<SeriesData<Long>>> fromFieldToDataExtractor(Function<Common.Event, Long> fieldExtractor) {
-    return events -> events.stream()
-      .map(event -> new SeriesData<>(TimeUnit.NANOSECONDS.toMicros(event.getTimestamp()), fieldExtractor.apply(event)))
-      .collect(Collectors.toList());
+  public static Function<List<Common.Event>, List<SeriesData<Long>>> fromFieldToDataExtractor(ToLongFunction<Common.Event> fieldExtractor) {
+    return events -> {
+      LongDataSeries series = new LongDataSeries(events.size());
+      long lastTimestampUs = Long.MIN_VALUE;
+      for (Common.Event event : events) {
+        long timestampUs = TimeUnit.NANOSECONDS.toMicros(event.getTimestamp());
+        if (timestampUs < lastTimestampUs) {
+          // The columns only take data in time order, keep the events as they came otherwise.
+          return events.stream()
+            .map(e -> new SeriesData<>(TimeUnit.NANOSECONDS.toMicros(e.getTimestamp()), fieldExtractor.applyAsLong(e)))
+            .collect(Collectors.toList());
+        }
+        series.add(timestampUs, fieldExtractor.applyAsLong(event));
+        lastTimestampUs = timestampUs;
+      }
+      return series.getAllData();
+    };
   }
 }
@@ -21,6 +21,7 @@ import com.android.tools.adtui.model.filter.FilterResult;
 import com.android.tools.perflib.vmtrace.ClockType;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -47,8 +48,11 @@ public class CaptureNode implements HNode<CaptureNode> {
    */
   private long myEndThread;
 
+  /**
+   * Only allocated when the first child is added, as most of the nodes of a capture are leaves.
+   */
   @NotNull
-  protected final List<CaptureNode> myChildren;
+  private List<CaptureNode> myChildren;
 
   @NotNull
   private ClockType myClockType;
@@ -73,7 +77,7 @@ public class CaptureNode implements HNode<CaptureNode> {
   private final CaptureNodeModel myData;
 
   public CaptureNode(@NotNull CaptureNodeModel model) {
-    myChildren = new ArrayList<>();
+    myChildren = Collections.emptyList();
     myClockType = ClockType.GLOBAL;
     myFilterType = FilterType.MATCH;
     myDepth = 0;
@@ -81,10 +85,20 @@ public class CaptureNode implements HNode<CaptureNode> {
   }
 
   public void addChild(CaptureNode node) {
-    myChildren.add(node);
+    appendChild(node);
     node.myParent = this;
   }
 
+  /**
+   * Adds {@param node} to the children of this node without changing its parent.
+   */
+  protected void appendChild(@NotNull CaptureNode node) {
+    if (myChildren.isEmpty()) {
+      myChildren = new ArrayList<>();
+    }
+    myChildren.add(node);
+  }
+
   @NotNull
   public List<CaptureNode> getChildren() {
     return myChildren;
@@ -31,6 +31,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.text.StringUtil;
 import java.io.File;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -43,6 +44,7 @@ import java.nio.BufferUnderflowException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 /**
  * Manages the parsing of traces into {@link CpuCapture} objects and provide a way to retrieve them.
@@ -350,25 +352,46 @@ public class CpuCaptureParser {
                                              long traceId,
                                              @NotNull ByteString traceData,
                                              CpuTraceType profilerType) {
+    return parse(session, traceId, traceData.size(), () -> CpuCaptureStage.saveCapture(traceId, traceData), profilerType);
+  }
+
+  /**
+   * Same as {@link #parse(Common.Session, long, ByteString, CpuTraceType)} for a trace that was already written to disk, e.g. by
+   * {@link CpuCaptureStage#getAndSaveCapture}, so that it does not need to be held in memory.
+   */
+  @Nullable
+  public CompletableFuture<CpuCapture> parse(@NotNull Common.Session session,
+                                             long traceId,
+                                             @NotNull File traceFile,
+                                             CpuTraceType profilerType) {
+    return parse(session, traceId, (int)traceFile.length(), () -> traceFile, profilerType);
+  }
+
+  @Nullable
+  private CompletableFuture<CpuCapture> parse(@NotNull Common.Session session,
+                                              long traceId,
+                                              int traceSize,
+                                              @NotNull Supplier<File> traceFile,
+                                              CpuTraceType profilerType) {
     updateParsingStateWhenStarting();
 
     if (!myCaptures.containsKey(traceId)) {
       // Trace is not being parsed nor is already parsed. We need to start parsing it.
-      if (traceData.size() <= MAX_SUPPORTED_TRACE_SIZE) {
+      if (traceSize <= MAX_SUPPORTED_TRACE_SIZE) {
         // Trace size is supported. Start parsing normally and create the future object corresponding to the capture.
-        myCaptures.put(traceId, createCaptureFuture(session, traceId, traceData, profilerType));
+        myCaptures.put(traceId, createCaptureFuture(session, traceId, traceSize, traceFile, profilerType));
       }
       else {
         Runnable yesCallback = () -> {
-          getLogger().warn(String.format("Parsing long (%d bytes) trace file.", traceData.size()));
+          getLogger().warn(String.format("Parsing long (%d bytes) trace file.", traceSize));
           // User decided to proceed with capture. Start parsing and create the future object corresponding to the capture.
-          myCaptures.put(traceId, createCaptureFuture(session, traceId, traceData, profilerType));
+          myCaptures.put(traceId, createCaptureFuture(session, traceId, traceSize, traceFile, profilerType));
         };
 
         Runnable noCallback = () -> {
           // User aborted the parsing before it starts. Add an entry for the trace id to the map with a null value.
           // This way, next time our model requests this trace capture, we return early.
-          getLogger().warn(String.format("Parsing of a long (%d bytes) trace file was aborted by the user.", traceData.size()));
+          getLogger().warn(String.format("Parsing of a long (%d bytes) trace file was aborted by the user.", traceSize));
           myCaptures.put(traceId, null);
         };
         // Open the dialog warning the user the trace is too large and asking them if they want to proceed with parsing.
@@ -376,7 +399,7 @@ public class CpuCaptureParser {
       }
     }
 
-    CompletableFuture<CpuCapture> future = trackCaptureTrace(traceId, traceData.size());
+    CompletableFuture<CpuCapture> future = trackCaptureTrace(traceId, traceSize);
     updateParsingStateWhenDone(future);
     return future;
   }
@@ -445,21 +468,21 @@ public class CpuCaptureParser {
     return TimeUnit.MICROSECONDS.toMillis((long)maxDataRange.getLength());
   }
 
-  private CompletableFuture<CpuCapture> createCaptureFuture(@NotNull Common.Session session, long traceId, ByteString traceBytes,
-                                                            CpuTraceType profilerType) {
+  private CompletableFuture<CpuCapture> createCaptureFuture(@NotNull Common.Session session, long traceId, int traceSize,
+                                                            @NotNull Supplier<File> traceFile, CpuTraceType profilerType) {
     CpuCaptureMetadata metadata = myCaptureMetadataMap.containsKey(traceId) ?
                                   myCaptureMetadataMap.get(traceId) : new CpuCaptureMetadata(new ProfilingConfiguration());
 
     CompletableFuture<CpuCapture> future =
       CompletableFuture.supplyAsync(() -> {
-        ByteString processedBytes = traceBytes;
-        metadata.setTraceFileSizeBytes(processedBytes.size());
-        boolean failedToPreProcess = processedBytes.equals(TracePreProcessor.FAILURE);
+        metadata.setTraceFileSizeBytes(traceSize);
+        File trace = traceFile.get();
+        boolean failedToPreProcess = isPreProcessFailure(trace);
         if (failedToPreProcess) {
           metadata.setStatus(CpuCaptureMetadata.CaptureStatus.PREPROCESS_FAILURE);
           return null;
         }
-        return traceBytesToCapture(session, traceId, processedBytes, profilerType);
+        return traceFileToCapture(session, traceId, trace, profilerType);
       }, myServices.getPoolExecutor())
         .thenApplyAsync(capture -> {
           if (metadata.getStatus() == CpuCaptureMetadata.CaptureStatus.PREPROCESS_FAILURE) {
@@ -472,11 +495,23 @@ public class CpuCaptureParser {
     return future;
   }
 
-  private CpuCapture traceBytesToCapture(@NotNull Common.Session session, long traceId, @NotNull ByteString traceData,
-                                         CpuTraceType profilerType) {
-    // TODO: Remove layers, analyze whether we can keep the whole file in memory.
+  /**
+   * @return true if the trace is the {@link TracePreProcessor#FAILURE} marker left in place of a trace that could not be pre-processed.
+   */
+  private static boolean isPreProcessFailure(@NotNull File trace) {
+    if (trace.length() != TracePreProcessor.FAILURE.size()) {
+      return false;
+    }
+    try {
+      return TracePreProcessor.FAILURE.equals(ByteString.copyFrom(Files.readAllBytes(trace.toPath())));
+    }
+    catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private CpuCapture traceFileToCapture(@NotNull Common.Session session, long traceId, @NotNull File trace, CpuTraceType profilerType) {
     try {
-      File trace = CpuCaptureStage.saveCapture(traceId, traceData);
       TraceParser parser;
       if (profilerType == CpuTraceType.ART) {
         parser = new ArtTraceParser();
@@ -28,9 +28,11 @@ import com.android.tools.adtui.model.trackgroup.TrackGroupModel;
 import com.android.tools.adtui.model.trackgroup.TrackModel;
 import com.android.tools.idea.protobuf.ByteString;
 import com.android.tools.idea.transport.EventStreamServer;
+import com.android.tools.idea.transport.TransportBytesReader;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.Cpu;
 import com.android.tools.profiler.proto.Transport;
+import com.android.tools.profilers.ProfilerClient;
 import com.android.tools.profilers.ProfilerTrackRendererType;
 import com.android.tools.profilers.Stage;
 import com.android.tools.profilers.StudioProfilers;
@@ -95,9 +97,9 @@ public class CpuCaptureStage extends Stage<Timeline> {
   @NotNull
   public static File saveCapture(long traceId, ByteString data) {
     try {
-      File trace = FileUtil.createTempFile(String.format(Locale.US, "cpu_trace_%d", traceId), ".trace", true);
+      File trace = createCaptureFile(traceId);
       try (FileOutputStream out = new FileOutputStream(trace)) {
-        out.write(data.toByteArray());
+        data.writeTo(out);
       }
       return trace;
     }
@@ -106,17 +108,38 @@ public class CpuCaptureStage extends Stage<Timeline> {
     }
   }
 
+  /**
+   * Same as {@link #saveCapture(long, ByteString)} for a trace in the datastore. The trace is copied one chunk at a time, so that a large
+   * trace is never held in memory as a whole.
+   *
+   * @return the trace file, or null if there is no trace for the given id.
+   */
   @Nullable
-  private static File getAndSaveCapture(@NotNull StudioProfilers profilers, long traceId) {
+  static File getAndSaveCapture(@NotNull ProfilerClient client, long streamId, long traceId) {
     Transport.BytesRequest traceRequest = Transport.BytesRequest.newBuilder()
-      .setStreamId(profilers.getSession().getStreamId())
+      .setStreamId(streamId)
       .setId(String.valueOf(traceId))
       .build();
-    Transport.BytesResponse traceResponse = profilers.getClient().getTransportClient().getBytes(traceRequest);
-    if (!traceResponse.getContents().isEmpty()) {
-      return saveCapture(traceId, traceResponse.getContents());
+    try {
+      File trace = createCaptureFile(traceId);
+      long size;
+      try (FileOutputStream out = new FileOutputStream(trace)) {
+        size = TransportBytesReader.copyTo(client.getTransportClient(), traceRequest, out);
+      }
+      if (size > 0) {
+        return trace;
+      }
+      FileUtil.delete(trace);
+      return null;
     }
-    return null;
+    catch (IOException io) {
+      throw new IllegalStateException("Unable to save trace to disk");
+    }
+  }
+
+  @NotNull
+  private static File createCaptureFile(long traceId) throws IOException {
+    return FileUtil.createTempFile(String.format(Locale.US, "cpu_trace_%d", traceId), ".trace", true);
   }
 
   /**
@@ -150,7 +173,7 @@ public class CpuCaptureStage extends Stage<Timeline> {
    */
   @Nullable
   public static CpuCaptureStage create(@NotNull StudioProfilers profilers, @NotNull ProfilingConfiguration configuration, long traceId) {
-    File captureFile = getAndSaveCapture(profilers, traceId);
+    File captureFile = getAndSaveCapture(profilers.getClient(), profilers.getSession().getStreamId(), traceId);
     if (captureFile == null) {
       return null;
     }
@@ -18,6 +18,7 @@ package com.android.tools.profilers.cpu;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.StreamingTimeline;
 import com.android.tools.idea.transport.poller.TransportEventListener;
+import com.android.tools.idea.transport.TransportBytesReader;
 import com.android.tools.profiler.proto.Commands;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.Cpu;
@@ -40,7 +41,6 @@ import com.android.tools.profilers.sessions.SessionsManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -111,8 +111,7 @@ public class CpuProfiler extends StudioProfiler {
    */
   private void registerTraceImportHandler() {
     SessionsManager sessionsManager = myProfilers.getSessionsManager();
-    sessionsManager.registerImportHandler("trace", file -> {
-      long startTimestampEpochMs = System.currentTimeMillis();
+    sessionsManager.registerImportHandler("trace", (file, startTimestampEpochMs) -> {
       long startTimestampNs = StudioProfilers.getFileCreationTimestampNs(file, startTimestampEpochMs);
 
       // Select the session if it is already imported. Do not re-import.
@@ -150,8 +149,10 @@ public class CpuProfiler extends StudioProfiler {
         sessionsManager.setSession(importedSession);
       }
 
-      myProfilers.getIdeServices().getFeatureTracker().trackCreateSession(Common.SessionMetaData.SessionType.CPU_CAPTURE,
-                                                                          SessionsManager.SessionCreationSource.MANUAL);
+      if (!sessionsManager.isRestoringImportedSessions()) {
+        myProfilers.getIdeServices().getFeatureTracker().trackCreateSession(Common.SessionMetaData.SessionType.CPU_CAPTURE,
+                                                                            SessionsManager.SessionCreationSource.MANUAL);
+      }
     });
   }
 
@@ -197,7 +198,6 @@ public class CpuProfiler extends StudioProfiler {
         .setStreamId(profilers.getSession().getStreamId())
         .setId(String.valueOf(info.getTraceId()))
         .build();
-      Transport.BytesResponse traceResponse = profilers.getClient().getTransportClient().getBytes(traceRequest);
 
       // Atrace Format = [HEADER|ZlibData][HEADER|ZlibData]
       // Systrace Expected format = [HEADER|ZlipData]
@@ -209,12 +209,12 @@ public class CpuProfiler extends StudioProfiler {
       if (info.getConfiguration().getUserOptions().getTraceType() == CpuTraceType.ATRACE) {
         File trace = FileUtil.createTempFile(String.format("cpu_trace_%d", info.getTraceId()), ".trace", true);
         try (FileOutputStream out = new FileOutputStream(trace)) {
-          out.write(traceResponse.getContents().toByteArray());
+          TransportBytesReader.copyTo(profilers.getClient().getTransportClient(), traceRequest, out);
         }
         AtraceExporter.export(trace, outputStream);
       }
       else {
-        FileUtil.copy(new ByteArrayInputStream(traceResponse.getContents().toByteArray()), outputStream);
+        TransportBytesReader.copyTo(profilers.getClient().getTransportClient(), traceRequest, outputStream);
       }
     }
     catch (IOException exception) {
@@ -986,14 +986,9 @@ public class CpuProfilerStage extends StreamingStage implements CodeNavigator.Li
       setProfilerMode(ProfilerMode.EXPANDED);
 
       // TODO: investigate if this call can take too much time as it's blocking. Should/can this byte fetch happen async?
-      Transport.BytesRequest traceRequest = Transport.BytesRequest.newBuilder()
-        .setStreamId(mySession.getStreamId())
-        .setId(String.valueOf(traceId))
-        .build();
-      Transport.BytesResponse traceResponse = getStudioProfilers().getClient().getTransportClient().getBytes(traceRequest);
-      if (!traceResponse.getContents().isEmpty()) {
-        capture =
-          myCaptureParser.parse(mySession, traceId, traceResponse.getContents(), myCompletedTraceIdToInfoMap.get(traceId).getTraceType());
+      File traceFile = CpuCaptureStage.getAndSaveCapture(getStudioProfilers().getClient(), mySession.getStreamId(), traceId);
+      if (traceFile != null) {
+        capture = myCaptureParser.parse(mySession, traceId, traceFile, myCompletedTraceIdToInfoMap.get(traceId).getTraceType());
       }
     }
     return capture;
@@ -23,16 +23,31 @@ import com.android.tools.profilers.cpu.CpuThreadInfo;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import com.android.tools.profilers.cpu.nodemodel.JavaMethodModel;
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TLongIntHashMap;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public class ArtTraceHandler implements VmTraceHandler {
   private static final String MAIN_THREAD_NAME = "main";
   private static final String KEY_ELAPSED_TIME_US = "elapsed-time-usec";
+  /**
+   * Maximum number of threads whose call stacks are constructed at the same time. Each of them holds both its actions and its nodes.
+   */
+  private static final int MAX_PARALLELISM = 4;
   private long myStartTimeUs;
   private long myElapsedTimeUs;
 
@@ -42,14 +57,17 @@ public class ArtTraceHandler implements VmTraceHandler {
   private final Map<Integer, String> myThreads = new HashMap<>();
 
   /**
-   * Map from method id to method model.
+   * Map from method id to the index of its model in {@link #myMethodModels}, plus one, as the map returns 0 for missing keys.
    */
-  private final Map<Long, CaptureNodeModel> myMethods = new HashMap<>();
+  private final TLongIntHashMap myMethodIndices = new TLongIntHashMap();
+
+  private final List<CaptureNodeModel> myMethodModels = new ArrayList<>();
 
   /**
-   * Map from thread id to per thread stack call constructor.
+   * Map from thread id to the method actions recorded for that thread. Call stacks are only constructed once all the actions are known,
+   * so that each thread can be constructed independently.
    */
-  private final Map<Integer, CaptureNodeConstructor> myNodeConstructors = new HashMap<>();
+  private final TIntObjectHashMap<ThreadActions> myThreadActions = new TIntObjectHashMap<>();
 
   @Nullable
   private Map<CpuThreadInfo, CaptureNode> myThreadsGraph;
@@ -61,7 +79,18 @@ public class ArtTraceHandler implements VmTraceHandler {
 
   @Override
   public void addMethod(long id, MethodInfo info) {
-    myMethods.put(id, new JavaMethodModel(info.methodName, info.className, info.signature));
+    internMethod(id, new JavaMethodModel(info.methodName, info.className, info.signature));
+  }
+
+  private int internMethod(long id, @NotNull CaptureNodeModel model) {
+    int index = myMethodIndices.get(id) - 1;
+    if (index >= 0) {
+      myMethodModels.set(index, model);
+      return index;
+    }
+    myMethodModels.add(model);
+    myMethodIndices.put(id, myMethodModels.size());
+    return myMethodModels.size() - 1;
   }
 
   @Override
@@ -73,25 +102,25 @@ public class ArtTraceHandler implements VmTraceHandler {
     }
 
     // create method info if it doesn't exist
-    if (!myMethods.containsKey(methodId)) {
-      myMethods.put(methodId, new SingleNameModel("unknown"));
+    int methodIndex = myMethodIndices.get(methodId) - 1;
+    if (methodIndex < 0) {
+      methodIndex = internMethod(methodId, new SingleNameModel("unknown"));
     }
 
-    CaptureNodeConstructor constructor = myNodeConstructors.get(threadId);
-    if (constructor == null) {
-      CaptureNodeModel topLevelModel = createUniqueMethodForThread(threadId);
-      constructor = new CaptureNodeConstructor(topLevelModel);
-      myNodeConstructors.put(threadId, constructor);
+    ThreadActions actions = myThreadActions.get(threadId);
+    if (actions == null) {
+      actions = new ThreadActions(createUniqueMethodForThread(threadId));
+      myThreadActions.put(threadId, actions);
     }
-    constructor.addTraceAction(myMethods.get(methodId), methodAction, threadTime, globalTime);
+    actions.add(methodIndex, methodAction == TraceAction.METHOD_ENTER, threadTime, globalTime);
   }
 
   private CaptureNodeModel createUniqueMethodForThread(int threadId) {
     long id = Long.MAX_VALUE - threadId;
-    assert myMethods.get(id) == null :
+    assert !myMethodIndices.containsKey(id) :
       "Unexpected error while attempting to create a unique key - key already exists";
     CaptureNodeModel model = new SingleNameModel(myThreads.get(threadId));
-    myMethods.put(id, model);
+    internMethod(id, model);
     return model;
   }
 
@@ -104,28 +133,62 @@ public class ArtTraceHandler implements VmTraceHandler {
 
   @NotNull
   private Map<CpuThreadInfo, CaptureNode> createThreadsGraph() {
-    Map<CpuThreadInfo, CaptureNode> threadsGraph = new HashMap<>(myThreads.size());
-
+    List<CpuThreadInfo> threads = new ArrayList<>();
+    List<ThreadActions> threadActions = new ArrayList<>();
     for (Map.Entry<Integer, String> entry : myThreads.entrySet()) {
-      final int id = entry.getKey();
-      final String name = entry.getValue();
-
-      CaptureNodeConstructor constructor = myNodeConstructors.get(id);
-      if (constructor == null) {
-        continue;
+      ThreadActions actions = myThreadActions.remove(entry.getKey());
+      if (actions != null) {
+        threads.add(new CpuThreadInfo(entry.getKey(), entry.getValue(), entry.getValue().equals(MAIN_THREAD_NAME)));
+        threadActions.add(actions);
       }
+    }
 
-      CaptureNode topLevelCall = constructor.getTopLevel();
-      assert topLevelCall != null;
-      CpuThreadInfo info = new CpuThreadInfo(id, name, name.equals(MAIN_THREAD_NAME));
-
-      long topLevelGlobalStart = topLevelCall.getStartGlobal() + myStartTimeUs;
-      adjustNodesTimeAndDepth(topLevelCall, topLevelGlobalStart);
+    // The call stacks of different threads don't depend on each other, so they are constructed in parallel. Each task takes its actions
+    // out of the list, so that they can be collected as soon as the thread's nodes exist.
+    List<Callable<CaptureNode>> tasks = new ArrayList<>(threads.size());
+    for (int i = 0; i < threads.size(); i++) {
+      int index = i;
+      tasks.add(() -> createThreadGraph(threadActions.set(index, null)));
+    }
+    int parallelism = Math.max(1, Math.min(MAX_PARALLELISM, Math.min(tasks.size(), Runtime.getRuntime().availableProcessors())));
+    ExecutorService executor =
+      Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder().setNameFormat("profiler-art-trace-%d").build());
+    try {
+      List<Future<CaptureNode>> graphs = executor.invokeAll(tasks);
+      Map<CpuThreadInfo, CaptureNode> threadsGraph = new HashMap<>();
+      for (int i = 0; i < threads.size(); i++) {
+        threadsGraph.put(threads.get(i), graphs.get(i).get());
+      }
+      return threadsGraph;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while constructing the call stacks", e);
+    }
+    catch (ExecutionException e) {
+      throw new IllegalStateException("Failed to construct the call stacks", e.getCause());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
 
-      threadsGraph.put(info, topLevelCall);
+  @NotNull
+  private CaptureNode createThreadGraph(@NotNull ThreadActions actions) {
+    CaptureNodeConstructor constructor = new CaptureNodeConstructor(actions.myTopLevelModel);
+    for (int i = 0; i < actions.mySize; i++) {
+      int action = actions.myActions[i];
+      constructor.addTraceAction(myMethodModels.get(action >>> 1), (action & 1) != 0 ? TraceAction.METHOD_ENTER : TraceAction.METHOD_EXIT,
+                                 actions.myThreadTimes[i], actions.myGlobalTimes[i]);
     }
+    // The actions are not needed anymore once the thread's nodes exist.
+    actions.clear();
 
-    return threadsGraph;
+    CaptureNode topLevelCall = constructor.getTopLevel();
+    assert topLevelCall != null;
+    long topLevelGlobalStart = topLevelCall.getStartGlobal() + myStartTimeUs;
+    adjustNodesTimeAndDepth(topLevelCall, topLevelGlobalStart);
+    return topLevelCall;
   }
 
   /**
@@ -178,4 +241,40 @@ public class ArtTraceHandler implements VmTraceHandler {
   public void setVersion(int version) {
     // We don't need this information
   }
+
+  /**
+   * Method actions of a single thread, in the order they were traced. Each action is stored as the index of its method model, shifted
+   * left by one, with the lowest bit set for method entries.
+   */
+  private static final class ThreadActions {
+    private static final int INITIAL_CAPACITY = 64;
+
+    @NotNull private final CaptureNodeModel myTopLevelModel;
+    private int[] myActions = new int[INITIAL_CAPACITY];
+    private int[] myThreadTimes = new int[INITIAL_CAPACITY];
+    private int[] myGlobalTimes = new int[INITIAL_CAPACITY];
+    private int mySize;
+
+    private ThreadActions(@NotNull CaptureNodeModel topLevelModel) {
+      myTopLevelModel = topLevelModel;
+    }
+
+    private void add(int methodIndex, boolean isEnter, int threadTime, int globalTime) {
+      if (mySize == myActions.length) {
+        int capacity = mySize * 2;
+        myActions = Arrays.copyOf(myActions, capacity);
+        myThreadTimes = Arrays.copyOf(myThreadTimes, capacity);
+        myGlobalTimes = Arrays.copyOf(myGlobalTimes, capacity);
+      }
+      myActions[mySize] = methodIndex << 1 | (isEnter ? 1 : 0);
+      myThreadTimes[mySize] = threadTime;
+      myGlobalTimes[mySize] = globalTime;
+      mySize++;
+    }
+
+    private void clear() {
+      myActions = myThreadTimes = myGlobalTimes = new int[0];
+      mySize = 0;
+    }
+  }
 }
@@ -0,0 +1,394 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.atrace;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * This class takes atrace lines converted from {@link perfetto.protos.PerfettoTrace.FtraceEventBundle}s and returns them sorted by
+ * timestamp. This is needed because the bundles come in out of order, as well as the lines within a bundle.
+ * <p>
+ * Sorting is done with an external merge sort so that traces much larger than the IDE heap can be imported:
+ * <ul>
+ *   <li>Each line is appended to a temporary lines file and only its (timestamp, offset) pair is kept in memory, in primitive arrays.</li>
+ *   <li>When the in-memory run is full it is sorted and written out to its own memory-mapped run file.</li>
+ *   <li>{@link #resetForIterator()} sorts the last run and the iterator k-way merges all runs, reading each line back by offset.</li>
+ * </ul>
+ * Lines with equal timestamps are returned in the order they were added.
+ */
+public class PerfettoPacketSorter implements Iterator<String> {
+  /**
+   * Number of (timestamp, offset) pairs kept in memory before a run is spilled to disk: 16MB of pairs, plus the same again while sorting.
+   */
+  private static final int DEFAULT_RUN_CAPACITY = 1 << 20;
+  private static final int PAIR_SIZE_BYTES = 2 * Long.BYTES;
+
+  private final int myRunCapacity;
+  @NotNull private long[] myTimestamps;
+  @NotNull private long[] myOffsets;
+  private int myRunSize;
+
+  @Nullable private File myLinesFile;
+  @Nullable private DataOutputStream myLinesOutput;
+  private long myLinesFileSize;
+  @Nullable private FileChannel myLinesChannel;
+  @NotNull private ByteBuffer myLineBuffer = ByteBuffer.allocate(1024);
+
+  @NotNull private final List<File> myRunFiles = new ArrayList<>();
+  @Nullable private RunMerger myMerger;
+  @Nullable private String myNextLine;
+
+  private static Logger getLogger() {
+    return Logger.getInstance(PerfettoPacketSorter.class);
+  }
+
+  public PerfettoPacketSorter() {
+    this(DEFAULT_RUN_CAPACITY);
+  }
+
+  @VisibleForTesting
+  public PerfettoPacketSorter(int runCapacity) {
+    myRunCapacity = runCapacity;
+    myTimestamps = new long[Math.min(runCapacity, 1024)];
+    myOffsets = new long[myTimestamps.length];
+    try {
+      myLinesFile = FileUtil.createTempFile("perfetto", ".lines", true);
+      myLinesOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myLinesFile), 1 << 16));
+    }
+    catch (IOException e) {
+      getLogger().error(e);
+    }
+  }
+
+  /**
+   * As a trace file is loaded each formatted ftrace line should be added to the sorter along with its timestamp.
+   */
+  public void addLine(long timestamp, @NotNull String line) {
+    // If our output somehow closed in the middle of a capture return instead of spamming the output.
+    if (myLinesOutput == null) {
+      return;
+    }
+    try {
+      byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+      long offset = myLinesFileSize;
+      myLinesOutput.writeInt(bytes.length);
+      myLinesOutput.write(bytes);
+      myLinesFileSize += Integer.BYTES + bytes.length;
+
+      if (myRunSize == myTimestamps.length) {
+        if (myRunSize == myRunCapacity) {
+          spillRun();
+        }
+        else {
+          int newLength = (int)Math.min(myRunCapacity, (long)myTimestamps.length * 2);
+          myTimestamps = Arrays.copyOf(myTimestamps, newLength);
+          myOffsets = Arrays.copyOf(myOffsets, newLength);
+        }
+      }
+      myTimestamps[myRunSize] = timestamp;
+      myOffsets[myRunSize] = offset;
+      myRunSize++;
+    }
+    catch (IOException ex) {
+      getLogger().warn(ex);
+    }
+  }
+
+  /**
+   * This function should be called when we want to finalize this class for writing and enable it for reading.
+   */
+  public void resetForIterator() {
+    if (myLinesOutput == null || myLinesFile == null) {
+      return;
+    }
+    try {
+      myLinesOutput.close();
+      myLinesOutput = null;
+      myLinesChannel = new RandomAccessFile(myLinesFile, "r").getChannel();
+
+      List<LongBuffer> runs = new ArrayList<>(myRunFiles.size() + 1);
+      for (File runFile : myRunFiles) {
+        try (FileChannel channel = new RandomAccessFile(runFile, "r").getChannel()) {
+          // The mapping stays valid after the channel is closed.
+          runs.add(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asLongBuffer());
+        }
+      }
+      // The last run never needs to hit the disk.
+      sortRun(myTimestamps, myOffsets, myRunSize);
+      LongBuffer lastRun = LongBuffer.allocate(myRunSize * 2);
+      for (int i = 0; i < myRunSize; i++) {
+        lastRun.put(myTimestamps[i]).put(myOffsets[i]);
+      }
+      lastRun.flip();
+      runs.add(lastRun);
+      myTimestamps = new long[0];
+      myOffsets = new long[0];
+      myRunSize = 0;
+
+      myMerger = new RunMerger(runs);
+    }
+    catch (IOException ex) {
+      getLogger().error(ex);
+    }
+  }
+
+  /**
+   * Deletes the temporary files and frees resources.
+   */
+  public void close() {
+    try {
+      if (myLinesOutput != null) {
+        myLinesOutput.close();
+      }
+      if (myLinesChannel != null) {
+        myLinesChannel.close();
+      }
+    }
+    catch (IOException ignored) { }
+    finally {
+      myLinesOutput = null;
+      myLinesChannel = null;
+    }
+
+    myMerger = null;
+    myNextLine = null;
+    myTimestamps = new long[0];
+    myOffsets = new long[0];
+    myRunSize = 0;
+    // Files still mapped (e.g. on Windows) can't be deleted right away; they were created to be deleted on exit regardless.
+    for (File runFile : myRunFiles) {
+      FileUtil.delete(runFile);
+    }
+    myRunFiles.clear();
+    if (myLinesFile != null) {
+      FileUtil.delete(myLinesFile);
+      myLinesFile = null;
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (myNextLine == null && myMerger != null && myMerger.hasNext()) {
+      try {
+        myNextLine = readLine(myMerger.nextOffset());
+      }
+      catch (IOException ex) {
+        getLogger().error(ex);
+        myMerger = null;
+      }
+    }
+    return myNextLine != null;
+  }
+
+  @Override
+  @NotNull
+  public String next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    String line = myNextLine;
+    myNextLine = null;
+    return line;
+  }
+
+  @VisibleForTesting
+  public int getSpilledRunCount() {
+    return myRunFiles.size();
+  }
+
+  private void spillRun() throws IOException {
+    sortRun(myTimestamps, myOffsets, myRunSize);
+    File runFile = FileUtil.createTempFile("perfetto", ".run", true);
+    try (FileChannel channel = new RandomAccessFile(runFile, "rw").getChannel()) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long)myRunSize * PAIR_SIZE_BYTES);
+      LongBuffer pairs = buffer.asLongBuffer();
+      for (int i = 0; i < myRunSize; i++) {
+        pairs.put(myTimestamps[i]).put(myOffsets[i]);
+      }
+      buffer.force();
+    }
+    myRunFiles.add(runFile);
+    myRunSize = 0;
+  }
+
+  @NotNull
+  private String readLine(long offset) throws IOException {
+    assert myLinesChannel != null;
+    ByteBuffer lengthBuffer = readFully(offset, Integer.BYTES);
+    int length = lengthBuffer.getInt();
+    ByteBuffer lineBuffer = readFully(offset + Integer.BYTES, length);
+    return new String(lineBuffer.array(), 0, length, StandardCharsets.UTF_8);
+  }
+
+  @NotNull
+  private ByteBuffer readFully(long position, int length) throws IOException {
+    assert myLinesChannel != null;
+    if (myLineBuffer.capacity() < length) {
+      myLineBuffer = ByteBuffer.allocate(Integer.highestOneBit(length) << 1);
+    }
+    myLineBuffer.clear().limit(length);
+    while (myLineBuffer.hasRemaining()) {
+      if (myLinesChannel.read(myLineBuffer, position + myLineBuffer.position()) < 0) {
+        throw new IOException("Unexpected end of perfetto lines file");
+      }
+    }
+    myLineBuffer.flip();
+    return myLineBuffer;
+  }
+
+  /**
+   * Stable sort of the first {@code size} (timestamp, offset) pairs by timestamp. Offsets increase in insertion order, so sorting by
+   * (timestamp, offset) keeps lines with equal timestamps in the order they were added.
+   */
+  @VisibleForTesting
+  static void sortRun(@NotNull long[] timestamps, @NotNull long[] offsets, int size) {
+    if (size < 2) {
+      return;
+    }
+    long[] tmpTimestamps = new long[size];
+    long[] tmpOffsets = new long[size];
+    // Bottom-up merge sort, ping-ponging between the input and the scratch arrays.
+    long[] srcT = timestamps, srcO = offsets, dstT = tmpTimestamps, dstO = tmpOffsets;
+    for (int width = 1; width < size; width *= 2) {
+      for (int lo = 0; lo < size; lo += 2 * width) {
+        int mid = Math.min(lo + width, size);
+        int hi = Math.min(lo + 2 * width, size);
+        int i = lo, j = mid, k = lo;
+        while (i < mid && j < hi) {
+          if (srcT[j] < srcT[i]) {
+            dstT[k] = srcT[j];
+            dstO[k++] = srcO[j++];
+          }
+          else {
+            dstT[k] = srcT[i];
+            dstO[k++] = srcO[i++];
+          }
+        }
+        while (i < mid) {
+          dstT[k] = srcT[i];
+          dstO[k++] = srcO[i++];
+        }
+        while (j < hi) {
+          dstT[k] = srcT[j];
+          dstO[k++] = srcO[j++];
+        }
+      }
+      long[] swap = srcT;
+      srcT = dstT;
+      dstT = swap;
+      swap = srcO;
+      srcO = dstO;
+      dstO = swap;
+    }
+    if (srcT != timestamps) {
+      System.arraycopy(srcT, 0, timestamps, 0, size);
+      System.arraycopy(srcO, 0, offsets, 0, size);
+    }
+  }
+
+  /**
+   * K-way merges sorted runs of interleaved (timestamp, offset) longs using a binary min-heap of run indices. Ties are broken by run
+   * index, and runs are in insertion order, which keeps the merge stable.
+   */
+  private static final class RunMerger {
+    @NotNull private final LongBuffer[] myRuns;
+    @NotNull private final long[] myHeads;
+    @NotNull private final int[] myHeap;
+    private int myHeapSize;
+
+    RunMerger(@NotNull List<LongBuffer> runs) {
+      myRuns = runs.toArray(new LongBuffer[0]);
+      myHeads = new long[myRuns.length];
+      myHeap = new int[myRuns.length];
+      for (int run = 0; run < myRuns.length; run++) {
+        if (myRuns[run].hasRemaining()) {
+          myHeads[run] = myRuns[run].get(myRuns[run].position());
+          myHeap[myHeapSize++] = run;
+        }
+      }
+      for (int i = myHeapSize / 2 - 1; i >= 0; i--) {
+        siftDown(i);
+      }
+    }
+
+    boolean hasNext() {
+      return myHeapSize > 0;
+    }
+
+    /**
+     * @return the offset of the next line in timestamp order.
+     */
+    long nextOffset() {
+      int run = myHeap[0];
+      LongBuffer buffer = myRuns[run];
+      buffer.get(); // timestamp, already cached in myHeads.
+      long offset = buffer.get();
+      if (buffer.hasRemaining()) {
+        myHeads[run] = buffer.get(buffer.position());
+      }
+      else {
+        myHeap[0] = myHeap[--myHeapSize];
+      }
+      siftDown(0);
+      return offset;
+    }
+
+    private boolean less(int runA, int runB) {
+      return myHeads[runA] < myHeads[runB] || (myHeads[runA] == myHeads[runB] && runA < runB);
+    }
+
+    private void siftDown(int index) {
+      while (true) {
+        int smallest = index;
+        int left = 2 * index + 1;
+        int right = left + 1;
+        if (left < myHeapSize && less(myHeap[left], myHeap[smallest])) {
+          smallest = left;
+        }
+        if (right < myHeapSize && less(myHeap[right], myHeap[smallest])) {
+          smallest = right;
+        }
+        if (smallest == index) {
+          return;
+        }
+        int swap = myHeap[index];
+        myHeap[index] = myHeap[smallest];
+        myHeap[smallest] = swap;
+        index = smallest;
+      }
+    }
+  }
+}
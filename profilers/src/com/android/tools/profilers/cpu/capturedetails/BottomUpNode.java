@@ -20,16 +20,22 @@ import com.android.tools.perflib.vmtrace.ClockType;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
 import org.jetbrains.annotations.NotNull;
 
 public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
 
   private final List<CaptureNode> myPathNodes = new ArrayList<>();
+  /**
+   * The root of the tree that each of {@link #myNodes} belongs to, in the same order, so {@link #update(Range)} doesn't need to walk up to
+   * the root of every node.
+   */
+  private final List<CaptureNode> myRootNodes = new ArrayList<>();
   private final boolean myIsRoot;
   private boolean myChildrenBuilt;
 
@@ -45,20 +51,28 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
     myChildrenBuilt = true;
 
     List<CaptureNode> allNodes = new ArrayList<>();
+    List<CaptureNode> allRootNodes = new ArrayList<>();
     // Pre-order traversal with Stack.
     // The traversal will sort nodes by CaptureNode#getStart(), if they'll be equal then ancestor will come first.
-    Stack<CaptureNode> stack = new Stack<>();
-    stack.add(node);
+    Deque<CaptureNode> stack = new ArrayDeque<>();
+    Deque<CaptureNode> rootStack = new ArrayDeque<>();
+    stack.push(node);
+    rootStack.push(findRootNode(node));
     while (!stack.isEmpty()) {
       CaptureNode curNode = stack.pop();
+      CaptureNode curRoot = rootStack.pop();
       // If we don't have an Id then we exclude this node from being added as a child to the parent.
       // The only known occurrence of this is the empty root node used to aggregate multiple selected objects.
       if (!curNode.getData().getId().isEmpty()) {
         allNodes.add(curNode);
+        allRootNodes.add(curRoot);
       }
       // Adding in reverse order so that the first child is processed first
       for (int i = curNode.getChildren().size() - 1; i >= 0; --i) {
-        stack.add(curNode.getChildren().get(i));
+        CaptureNode child = curNode.getChildren().get(i);
+        stack.push(child);
+        // Children of a visual node don't have it as their parent, so their root has to be found.
+        rootStack.push(child.getParent() == curNode ? curRoot : findRootNode(child));
       }
     }
 
@@ -67,7 +81,8 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
     Map<String, BottomUpNode> children = new HashMap<>();
     Map<String, BottomUpNode> unmatchedChildren = new HashMap<>();
 
-    for (CaptureNode curNode : allNodes) {
+    for (int i = 0; i < allNodes.size(); ++i) {
+      CaptureNode curNode = allNodes.get(i);
       String curId = curNode.getData().getId();
 
       BottomUpNode child = curNode.isUnmatched() ? unmatchedChildren.get(curId) : children.get(curId);
@@ -82,20 +97,28 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
         addChild(child);
       }
       child.addPathNode(curNode);
-      child.addNode(curNode);
+      child.addNode(curNode, allRootNodes.get(i));
     }
 
-    addNode(node);
+    addNode(node, findRootNode(node));
 
-    for (BottomUpNode child : getChildren()) {
-      child.buildChildren();
-    }
+    // Children are built independently of each other, so they can be built in parallel.
+    getChildren().parallelStream().forEach(BottomUpNode::buildChildren);
+  }
+
+  private void addNode(@NotNull CaptureNode node, @NotNull CaptureNode root) {
+    addNode(node);
+    myRootNodes.add(root);
   }
 
   private void addPathNode(@NotNull CaptureNode node) {
     myPathNodes.add(node);
   }
 
+  public boolean isChildrenBuilt() {
+    return myChildrenBuilt;
+  }
+
   public boolean buildChildren() {
     if (myChildrenBuilt) {
       return false;
@@ -125,7 +148,7 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
         addChild(child);
       }
       child.addPathNode(parent);
-      child.addNode(getNodes().get(i));
+      child.addNode(getNodes().get(i), myRootNodes.get(i));
     }
 
     myChildrenBuilt = true;
@@ -149,10 +172,11 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
 
     // myNodes is sorted by CaptureNode#getStart() in increasing order,
     // if they are equal then ancestor comes first
-    for (CaptureNode node : myNodes) {
+    for (int i = 0; i < myNodes.size(); ++i) {
+      CaptureNode node = myNodes.get(i);
       // We use the root node to distinguish if two nodes share the same tree. In the event of multi-select we want to compute the bottom
       // up calculation independently for each tree then sum them after the fact.
-      CaptureNode root = findRootNode(node);
+      CaptureNode root = myRootNodes.get(i);
       CaptureNode outerSoFar = outerSoFarByParent.getOrDefault(root, null);
       if (outerSoFar == null || node.getEnd() > outerSoFar.getEnd()) {
         if (outerSoFar != null) {
@@ -177,8 +201,8 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
 
   @NotNull
   private static CaptureNode findRootNode(@NotNull CaptureNode node) {
-    if (node.getParent() != null) {
-      return findRootNode(node.getParent());
+    while (node.getParent() != null) {
+      node = node.getParent();
     }
     return node;
   }
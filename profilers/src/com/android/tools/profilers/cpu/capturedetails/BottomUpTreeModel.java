@@ -16,9 +16,10 @@
 package com.android.tools.profilers.cpu.capturedetails;
 
 import com.android.tools.adtui.model.Range;
-import org.jetbrains.annotations.NotNull;
-
+import java.util.Set;
+import java.util.stream.Collectors;
 import javax.swing.tree.DefaultMutableTreeNode;
+import org.jetbrains.annotations.NotNull;
 
 public class BottomUpTreeModel extends CpuTreeModel<BottomUpNode> {
   public BottomUpTreeModel(@NotNull Range range, @NotNull BottomUpNode node) {
@@ -29,21 +30,22 @@ public class BottomUpTreeModel extends CpuTreeModel<BottomUpNode> {
   public void expand(@NotNull DefaultMutableTreeNode node) {
     BottomUpNode bottomUpNode = (BottomUpNode)node.getUserObject();
 
+    // Some children of the |bottomUpNode| may be invisible in the current range, so build their children too.
+    // Children are built independently of each other, so they are built in parallel.
+    Set<BottomUpNode> newlyBuilt = bottomUpNode.getChildren().stream().filter(child -> !child.isChildrenBuilt()).collect(Collectors.toSet());
+    newlyBuilt.parallelStream().forEach(BottomUpNode::buildChildren);
+
     boolean treeChanged = false;
     for (int i = 0; i < node.getChildCount(); ++i) {
       DefaultMutableTreeNode child = (DefaultMutableTreeNode)node.getChildAt(i);
       BottomUpNode childBottomUp = (BottomUpNode)child.getUserObject();
 
-      if (childBottomUp.buildChildren()) {
+      if (newlyBuilt.contains(childBottomUp)) {
         treeChanged = true;
         loadChildren(child);
       }
     }
 
-    // Some children of the |bottomUpNode| may be invisible in the current range, so build their children too
-    for (BottomUpNode child: bottomUpNode.getChildren()) {
-      child.buildChildren();
-    }
     if (treeChanged) {
       getAspect().changed(Aspect.TREE_MODEL);
     }
@@ -17,10 +17,12 @@ package com.android.tools.profilers.cpu.capturedetails;
 
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
-import org.jetbrains.annotations.NotNull;
-
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import org.jetbrains.annotations.NotNull;
 
 /**
  * A top-down CPU usage tree. This is a node on that tree and represents all the calls that share the same callstack upto a point.
@@ -30,69 +32,63 @@ public class TopDownNode extends CpuTreeNode<TopDownNode> {
   private static final String INVALID_ID = "";
 
   public TopDownNode(@NotNull CaptureNode node) {
-    super(node.getData() == null ? INVALID_ID : node.getData().getId());
+    this(node.getData() == null ? INVALID_ID : node.getData().getId());
     addNode(node);
 
-    // We're adding unmatched children separately, because we don't want to merge unmatched with matched,
+    // The execution tree is merged in a single pre-order pass, so only one TopDownNode is created per distinct path instead of one per
+    // execution node, and deep trees don't overflow the stack. Each execution node is merged into the child of its parent's TopDownNode
+    // that has the same id. We use a separate map for unmatched children, because we can not merge unmatched with matched,
     // i.e all merged children should have the same {@link CaptureNode.FilterType}.
-    addChildren(node, false);
-    addChildren(node, true);
-  }
-
-  /**
-   * Adds children of {@param node} whose filter type matches to the flag {@param unmatched}.
-   */
-  private void addChildren(@NotNull CaptureNode node, boolean unmatched) {
-    Map<String, TopDownNode> children = new TreeMap<>();
-    for (CaptureNode child : node.getChildren()) {
-      assert child.getData() != null;
-
-      if (unmatched != child.isUnmatched()) {
+    Map<TopDownNode, Map<String, TopDownNode>> children = new HashMap<>();
+    Map<TopDownNode, Map<String, TopDownNode>> unmatchedChildren = new HashMap<>();
+    Deque<CaptureNode> nodeStack = new ArrayDeque<>();
+    Deque<TopDownNode> topDownStack = new ArrayDeque<>();
+    nodeStack.push(node);
+    topDownStack.push(this);
+    while (!nodeStack.isEmpty()) {
+      CaptureNode current = nodeStack.pop();
+      TopDownNode currentTopDown = topDownStack.pop();
+      List<CaptureNode> currentChildren = current.getChildren();
+      if (currentChildren.isEmpty()) {
         continue;
       }
 
-      TopDownNode prev = children.get(child.getData().getId());
-      TopDownNode other = new TopDownNode(child);
-      if (prev == null) {
-        children.put(child.getData().getId(), other);
-        addChild(other);
-      }
-      else {
-        prev.merge(other);
+      // We're adding unmatched children separately, so that matched children come first.
+      currentTopDown.mergeChildren(currentChildren, children.computeIfAbsent(currentTopDown, key -> new HashMap<>()), false);
+      currentTopDown.mergeChildren(currentChildren, unmatchedChildren.computeIfAbsent(currentTopDown, key -> new HashMap<>()), true);
+
+      // Adding in reverse order so that the first child is processed first.
+      for (int i = currentChildren.size() - 1; i >= 0; --i) {
+        CaptureNode child = currentChildren.get(i);
+        nodeStack.push(child);
+        topDownStack.push((child.isUnmatched() ? unmatchedChildren : children).get(currentTopDown).get(child.getData().getId()));
       }
     }
   }
 
-  private void merge(TopDownNode other) {
-    addNodes(other.getNodes());
+  private TopDownNode(@NotNull String id) {
+    super(id);
+  }
 
-    // We use a separate map for unmatched children, because we can not merge unmatched with matched,
-    // i.e all merged children should have the same {@link CaptureNode.FilterType};
-    Map<String, TopDownNode> children = new TreeMap<>();
-    Map<String, TopDownNode> unmatchedChildren = new TreeMap<>();
+  /**
+   * Adds each of {@param nodes} whose filter type matches to the flag {@param unmatched} to the child with the same id, creating the
+   * child if there is none yet.
+   */
+  private void mergeChildren(@NotNull List<CaptureNode> nodes, @NotNull Map<String, TopDownNode> childrenById, boolean unmatched) {
+    for (CaptureNode node : nodes) {
+      assert node.getData() != null;
 
-    for (TopDownNode child : getChildren()) {
-      if (child.isUnmatched()) {
-        unmatchedChildren.put(child.getId(), child);
-      } else {
-        children.put(child.getId(), child);
+      if (unmatched != node.isUnmatched()) {
+        continue;
       }
-    }
-
-    for (TopDownNode otherChild : other.getChildren()) {
-      TopDownNode existing;
 
-      if (otherChild.isUnmatched()) {
-        existing = unmatchedChildren.get(otherChild.getId());
-      } else {
-        existing = children.get(otherChild.getId());
-      }
-      if (existing != null) {
-        existing.merge(otherChild);
-      }
-      else {
-        addChild(otherChild);
+      TopDownNode child = childrenById.get(node.getData().getId());
+      if (child == null) {
+        child = new TopDownNode(node.getData().getId());
+        childrenById.put(child.getId(), child);
+        addChild(child);
       }
+      child.addNode(node);
     }
   }
 
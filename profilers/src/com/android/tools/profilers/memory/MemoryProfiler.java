@@ -20,6 +20,7 @@ import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.adtui.model.StreamingTimeline;
 import com.android.tools.idea.protobuf.ByteString;
+import com.android.tools.idea.transport.TransportBytesReader;
 import com.android.tools.idea.transport.poller.TransportEventListener;
 import com.android.tools.profiler.proto.Commands;
 import com.android.tools.profiler.proto.Common;
@@ -46,7 +47,6 @@ import com.android.tools.profilers.StudioProfiler;
 import com.android.tools.profilers.StudioProfilers;
 import com.android.tools.profilers.analytics.FeatureTracker;
 import com.android.tools.profilers.sessions.SessionsManager;
-import com.google.common.collect.ImmutableMap;
 import com.intellij.openapi.diagnostic.Logger;
 import io.grpc.StatusRuntimeException;
 import java.io.File;
@@ -60,6 +60,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -147,9 +148,8 @@ public class MemoryProfiler extends StudioProfiler {
     }
   }
 
-  private void importHprof(@NotNull File file) {
+  private void importHprof(@NotNull File file, long startTimestampEpochMs) {
     SessionsManager sessionsManager = myProfilers.getSessionsManager();
-    long startTimestampEpochMs = System.currentTimeMillis();
     long sessionStartTimeNs = StudioProfilers.getFileCreationTimestampNs(file, startTimestampEpochMs);
 
     // Select the session if the hprof has already been imported.
@@ -159,14 +159,6 @@ public class MemoryProfiler extends StudioProfiler {
 
     // We don't really care about the session having a duration - arbitrarily create a 1-ns session.
     long sessionEndTimeNs = sessionStartTimeNs + 1;
-    byte[] bytes;
-    try {
-      bytes = Files.readAllBytes(Paths.get(file.getPath()));
-    }
-    catch (IOException e) {
-      getLogger().error(String.format("Importing Session Failed: cannot read from %s.", file.getPath()));
-      return;
-    }
 
     // Bind the imported session with heap dump data through MemoryClient.
     HeapDumpInfo heapDumpInfo = HeapDumpInfo.newBuilder()
@@ -186,10 +178,18 @@ public class MemoryProfiler extends StudioProfiler {
                                             Common.SessionData.SessionStarted.SessionType.MEMORY_CAPTURE, sessionStartTimeNs,
                                             sessionEndTimeNs,
                                             startTimestampEpochMs,
-                                            ImmutableMap.of(Long.toString(sessionStartTimeNs), ByteString.copyFrom(bytes)),
+                                            importedByteFiles(file, sessionStartTimeNs),
                                             heapDumpEvent);
     }
     else {
+      byte[] bytes;
+      try {
+        bytes = Files.readAllBytes(Paths.get(file.getPath()));
+      }
+      catch (IOException e) {
+        getLogger().error(String.format("Importing Session Failed: cannot read from %s.", file.getPath()));
+        return;
+      }
       // Heap dump and session share a time range of [dumpTimeStamp, dumpTimeStamp + 1) which contains dumpTimestamp as its only integer point.
       Common.Session session = sessionsManager
         .createImportedSessionLegacy(file.getName(), Common.SessionMetaData.SessionType.MEMORY_CAPTURE, sessionStartTimeNs,
@@ -207,13 +207,14 @@ public class MemoryProfiler extends StudioProfiler {
       sessionsManager.setSession(session);
     }
 
-    myProfilers.getIdeServices().getFeatureTracker().trackCreateSession(Common.SessionMetaData.SessionType.MEMORY_CAPTURE,
-                                                                        SessionsManager.SessionCreationSource.MANUAL);
+    if (!sessionsManager.isRestoringImportedSessions()) {
+      myProfilers.getIdeServices().getFeatureTracker().trackCreateSession(Common.SessionMetaData.SessionType.MEMORY_CAPTURE,
+                                                                          SessionsManager.SessionCreationSource.MANUAL);
+    }
   }
 
-  private void importLegacyAllocations(@NotNull File file) {
+  private void importLegacyAllocations(@NotNull File file, long startTimestampEpochMs) {
     SessionsManager sessionsManager = myProfilers.getSessionsManager();
-    long startTimestampEpochMs = System.currentTimeMillis();
     long sessionStartTimeNs = StudioProfilers.getFileCreationTimestampNs(file, startTimestampEpochMs);
     // Select the session if the hprof has already been imported.
     if (sessionsManager.setSessionById(sessionStartTimeNs)) {
@@ -221,15 +222,6 @@ public class MemoryProfiler extends StudioProfiler {
     }
 
     long sessionEndTimeNs = sessionStartTimeNs + 1;
-    byte[] bytes;
-    try {
-      bytes = Files.readAllBytes(Paths.get(file.getPath()));
-    }
-    catch (IOException e) {
-      getLogger().error("Importing Session Failed: cannot read from file location...");
-      return;
-    }
-
     AllocationsInfo info = AllocationsInfo.newBuilder()
       .setStartTime(sessionStartTimeNs)
       .setEndTime(sessionEndTimeNs)
@@ -248,10 +240,18 @@ public class MemoryProfiler extends StudioProfiler {
                                             Common.SessionData.SessionStarted.SessionType.MEMORY_CAPTURE, sessionStartTimeNs,
                                             sessionEndTimeNs,
                                             startTimestampEpochMs,
-                                            ImmutableMap.of(Long.toString(sessionStartTimeNs), ByteString.copyFrom(bytes)),
+                                            importedByteFiles(file, sessionStartTimeNs),
                                             heapDumpEvent);
     }
     else {
+      byte[] bytes;
+      try {
+        bytes = Files.readAllBytes(Paths.get(file.getPath()));
+      }
+      catch (IOException e) {
+        getLogger().error("Importing Session Failed: cannot read from file location...");
+        return;
+      }
       Common.Session session = sessionsManager
         .createImportedSessionLegacy(file.getName(), Common.SessionMetaData.SessionType.MEMORY_CAPTURE, sessionStartTimeNs,
                                      sessionEndTimeNs,
@@ -267,8 +267,21 @@ public class MemoryProfiler extends StudioProfiler {
       sessionsManager.update();
       sessionsManager.setSession(session);
     }
-    myProfilers.getIdeServices().getFeatureTracker().trackCreateSession(Common.SessionMetaData.SessionType.MEMORY_CAPTURE,
-                                                                        SessionsManager.SessionCreationSource.MANUAL);
+    if (!sessionsManager.isRestoringImportedSessions()) {
+      myProfilers.getIdeServices().getFeatureTracker().trackCreateSession(Common.SessionMetaData.SessionType.MEMORY_CAPTURE,
+                                                                          SessionsManager.SessionCreationSource.MANUAL);
+    }
+  }
+
+  /**
+   * Returns the byte files of the stream of a session imported from the given file. The file is only read when its bytes are asked for,
+   * e.g. when the session gets selected or exported, and one chunk at a time, so that the sessions restored when the profilers start cost
+   * nothing until used and a large heap dump is never held in memory as a whole.
+   */
+  @NotNull
+  private static Function<String, File> importedByteFiles(@NotNull File file, long sessionId) {
+    String byteId = Long.toString(sessionId);
+    return id -> byteId.equals(id) ? file : null;
   }
 
   /**
@@ -302,16 +315,15 @@ public class MemoryProfiler extends StudioProfiler {
                                         @NotNull HeapDumpInfo info,
                                         @NotNull OutputStream outputStream,
                                         @NotNull FeatureTracker featureTracker) {
-    Transport.BytesResponse response = client.getTransportClient()
-      .getBytes(Transport.BytesRequest.newBuilder().setStreamId(session.getStreamId()).setId(Long.toString(info.getStartTime())).build());
-    if (response.getContents() != ByteString.EMPTY) {
-      try {
-        response.getContents().writeTo(outputStream);
+    Transport.BytesRequest request =
+      Transport.BytesRequest.newBuilder().setStreamId(session.getStreamId()).setId(Long.toString(info.getStartTime())).build();
+    try {
+      if (TransportBytesReader.copyTo(client.getTransportClient(), request, outputStream) > 0) {
         featureTracker.trackExportHeap();
       }
-      catch (IOException exception) {
-        getLogger().warn("Failed to export heap dump file:\n" + exception);
-      }
+    }
+    catch (IOException exception) {
+      getLogger().warn("Failed to export heap dump file:\n" + exception);
     }
   }
 
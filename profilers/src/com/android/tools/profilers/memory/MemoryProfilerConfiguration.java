@@ -51,8 +51,11 @@ public class MemoryProfilerConfiguration {
     if (myClassGrouping != classGrouping) {
       myClassGrouping = classGrouping;
       myStage.getStudioProfilers().getIdeServices().getFeatureTracker().trackChangeClassArrangment();
-      myStage.getAspect().changed(MemoryProfilerAspect.CLASS_GROUPING);
-      myStage.getFilterHandler().refreshFilterContent();
+      // Re-partitioning a large capture can take a while, so it is done off the main thread before the views pick up the new arrangement.
+      myStage.prepareClassGrouping(classGrouping, () -> {
+        myStage.getAspect().changed(MemoryProfilerAspect.CLASS_GROUPING);
+        myStage.getFilterHandler().refreshFilterContent();
+      });
     }
   }
 
@@ -82,6 +82,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
@@ -603,6 +604,36 @@ public class MemoryProfilerStage extends StreamingStage implements CodeNavigator
     myFilterHandler.refreshFilterContent();
   }
 
+  /**
+   * Partitions every heap of the selected capture by {@code classGrouping} on the pool executor, one heap per task, then runs
+   * {@code onReady} on the main executor. Each {@link HeapSet} keeps its partition, so applying the arrangement afterwards is immediate.
+   */
+  void prepareClassGrouping(@NotNull MemoryProfilerConfiguration.ClassGrouping classGrouping, @NotNull Runnable onReady) {
+    CaptureObject capture = getSelectedCapture();
+    if (capture == null || !capture.isDoneLoading()) {
+      onReady.run();
+      return;
+    }
+
+    Executor poolExecutor = getStudioProfilers().getIdeServices().getPoolExecutor();
+    Executor mainExecutor = getStudioProfilers().getIdeServices().getMainExecutor();
+    myAspect.changed(MemoryProfilerAspect.CURRENT_HEAP_UPDATING);
+    CompletableFuture<?>[] partitions = capture.getHeapSets().stream()
+      .map(heapSet -> heapSet.prepareClassGrouping(classGrouping, poolExecutor, mainExecutor))
+      .toArray(CompletableFuture<?>[]::new);
+    CompletableFuture.allOf(partitions).whenCompleteAsync((result, throwable) -> {
+      if (throwable != null) {
+        // The heaps that failed are partitioned lazily when the arrangement is applied instead.
+        getLogger().warn(throwable);
+      }
+      myAspect.changed(MemoryProfilerAspect.CURRENT_HEAP_UPDATED);
+      // A capture selected in the meantime picks up the current arrangement when it is loaded.
+      if (getSelectedCapture() == capture) {
+        onReady.run();
+      }
+    }, mainExecutor);
+  }
+
   public void selectHeapSet(@Nullable HeapSet heapSet) {
     mySelection.selectHeapSet(heapSet);
     myFilterHandler.refreshFilterContent();
@@ -56,6 +56,16 @@ public class ClassSet extends ClassifierSet {
     return Classifier.IDENTITY_CLASSIFIER;
   }
 
+  @Override
+  protected long computeTotalRetainedSize(@NotNull Map<ClassDb.ClassEntry, ClassTotal> classTotals) {
+    ClassTotal classTotal = classTotals.get(myClassEntry);
+    // When this set holds every instance of its class, the total is known without going through them.
+    if (classTotal != null && classTotal.getInstanceCount() == getTotalObjectCount()) {
+      return classTotal.getRetainedSize();
+    }
+    return super.computeTotalRetainedSize(classTotals);
+  }
+
   @Override
   protected void applyFilter(@NotNull Filter filter, boolean hasMatchedAncestor, boolean filterChanged) {
     if (!filterChanged && !myNeedsRefiltering) {
@@ -52,6 +52,8 @@ public abstract class ClassifierSet implements MemoryObject {
   private long myTotalShallowSize = 0L;
   private long myTotalRetainedSize = 0L;
   private int myInstancesWithStackInfoCount = 0;
+  // Bumped every time an instance is added to or removed from this set (or its descendants, through this set).
+  private int myModificationCount = 0;
 
   // Number of ClassifierSet that match the filter.
   protected int myFilterMatchCount = 0;
@@ -121,6 +123,13 @@ public abstract class ClassifierSet implements MemoryObject {
     return myFilterMatchCount;
   }
 
+  /**
+   * @return a counter that changes whenever the instances in this set change, so that results derived from them can be invalidated.
+   */
+  protected int getModificationCount() {
+    return myModificationCount;
+  }
+
   /**
    * Add an instance to the baseline snapshot and update the accounting of the "total" values.
    * Note that instances at the baseline must be an allocation event.
@@ -135,6 +144,7 @@ public abstract class ClassifierSet implements MemoryObject {
     }
 
     mySnapshotObjectCount++;
+    myModificationCount++;
     myTotalNativeSize += instanceObject.getNativeSize() == INVALID_VALUE ? 0 : instanceObject.getNativeSize();
     myTotalShallowSize += instanceObject.getShallowSize() == INVALID_VALUE ? 0 : instanceObject.getShallowSize();
     myTotalRetainedSize += instanceObject.getRetainedSize() == INVALID_VALUE ? 0 : instanceObject.getRetainedSize();
@@ -159,6 +169,7 @@ public abstract class ClassifierSet implements MemoryObject {
     }
 
     mySnapshotObjectCount--;
+    myModificationCount++;
     myTotalNativeSize -= instanceObject.getNativeSize() == INVALID_VALUE ? 0 : instanceObject.getNativeSize();
     myTotalShallowSize -= instanceObject.getShallowSize() == INVALID_VALUE ? 0 : instanceObject.getShallowSize();
     myTotalRetainedSize -= instanceObject.getRetainedSize() == INVALID_VALUE ? 0 : instanceObject.getRetainedSize();
@@ -215,6 +226,7 @@ public abstract class ClassifierSet implements MemoryObject {
     else {
       myDeltaDeallocations++;
     }
+    myModificationCount++;
 
     // TODO update deltas instead.
     myTotalNativeSize +=
@@ -254,6 +266,7 @@ public abstract class ClassifierSet implements MemoryObject {
     else {
       myDeltaDeallocations--;
     }
+    myModificationCount++;
 
     // TODO update deltas instead.
     myTotalNativeSize -=
@@ -284,6 +297,61 @@ public abstract class ClassifierSet implements MemoryObject {
     myObjectSetCount = 0;
     myFilteredObjectSetCount = 0;
     myFilterMatchCount = 0;
+    myModificationCount++;
+  }
+
+  /**
+   * Updates the retained size totals of this set and of its descendants in place, for captures that only learn the retained sizes of their
+   * instances after adding them. Every instance is expected to be an allocation, as in a heap dump.
+   *
+   * @param classTotals the retained size and number of the instances of each class that this set may hold.
+   * @return the new total retained size of this set.
+   */
+  public long refreshTotalRetainedSize(@NotNull Map<ClassDb.ClassEntry, ClassTotal> classTotals) {
+    myTotalRetainedSize = computeTotalRetainedSize(classTotals);
+    return myTotalRetainedSize;
+  }
+
+  protected long computeTotalRetainedSize(@NotNull Map<ClassDb.ClassEntry, ClassTotal> classTotals) {
+    long total = 0;
+    if (myClassifier != null) {
+      for (ClassifierSet classifierSet : myClassifier.getAllClassifierSets()) {
+        long childTotal = classifierSet.refreshTotalRetainedSize(classTotals);
+        // As in applyFilter, only the children that are not filtered out count towards this set.
+        if (!classifierSet.getIsFiltered()) {
+          total += childTotal;
+        }
+      }
+    }
+    // Instances that are not partitioned into children are held by this set directly.
+    for (InstanceObject instance : mySnapshotInstances) {
+      total += instance.getRetainedSize() == INVALID_VALUE ? 0 : instance.getRetainedSize();
+    }
+    for (InstanceObject instance : myDeltaInstances) {
+      total += instance.getRetainedSize() == INVALID_VALUE ? 0 : instance.getRetainedSize();
+    }
+    return total;
+  }
+
+  /**
+   * Total retained size and number of the instances of one class, as passed to {@link #refreshTotalRetainedSize(Map)}.
+   */
+  public static final class ClassTotal {
+    private long myRetainedSize;
+    private int myInstanceCount;
+
+    public void add(long retainedSize) {
+      myRetainedSize += retainedSize == INVALID_VALUE ? 0 : retainedSize;
+      myInstanceCount++;
+    }
+
+    public long getRetainedSize() {
+      return myRetainedSize;
+    }
+
+    public int getInstanceCount() {
+      return myInstanceCount;
+    }
   }
 
   public int getInstancesCount() {
@@ -346,6 +414,18 @@ public abstract class ClassifierSet implements MemoryObject {
     return myInstancesWithStackInfoCount > 0;
   }
 
+  /**
+   * Cheaper alternative to checking {@link #getChildrenClassifierSets()} for emptiness, as it doesn't partition the instances of this set
+   * if that hasn't been done yet. Sets that are not empty and not filtered out always have at least one child that isn't filtered out
+   * either, unless they are leaves.
+   */
+  public boolean hasChildrenClassifierSets() {
+    if (myClassifier != null) {
+      return !myClassifier.getFilteredClassifierSets().isEmpty();
+    }
+    return !isEmpty() && !createSubClassifier().isTerminalClassifier();
+  }
+
   @NotNull
   public List<ClassifierSet> getChildrenClassifierSets() {
     ensurePartition();
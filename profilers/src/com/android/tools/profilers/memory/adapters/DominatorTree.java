@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The dominator tree, retained sizes and depths of a graph whose nodes are numbered from 0 to n - 1 and whose edges are stored as
+ * compressed sparse rows: the successors of node {@code v} are {@code successors[successorOffsets[v]]} up to (excluding)
+ * {@code successors[successorOffsets[v + 1]]}. The given roots are treated as the children of a virtual root, so a node that can be
+ * reached from more than one root without going through a common node is not dominated by any node.
+ * <p>
+ * Dominators are computed with the semi-NCA algorithm, a simpler variant of Lengauer-Tarjan that runs in near-linear time on the graphs we
+ * see in practice. Everything is iterative, as paths in a heap graph can be far too long for recursion (e.g. a large linked list).
+ * Retained sizes are then accumulated bottom-up one level of the dominator tree at a time, and large levels are split across a
+ * {@link ForkJoinPool}.
+ */
+public final class DominatorTree {
+  /**
+   * The immediate dominator of nodes that are only dominated by the virtual root, i.e. roots and nodes shared by several roots, and of
+   * unreachable nodes.
+   */
+  public static final int NO_DOMINATOR = -1;
+
+  /**
+   * The depth of nodes that cannot be reached from any root. Matches what perflib reports for instances that are waiting to be collected.
+   */
+  public static final int UNREACHABLE_DEPTH = Integer.MAX_VALUE;
+
+  /**
+   * Levels of the dominator tree with fewer nodes than this are accumulated on the calling thread, as forking would cost more than it saves.
+   */
+  private static final int PARALLEL_THRESHOLD = 1 << 13;
+
+  @NotNull private final int[] myImmediateDominators;
+  @NotNull private final long[] myRetainedSizes;
+  @NotNull private final int[] myDepths;
+
+  private DominatorTree(@NotNull int[] immediateDominators, @NotNull long[] retainedSizes, @NotNull int[] depths) {
+    myImmediateDominators = immediateDominators;
+    myRetainedSizes = retainedSizes;
+    myDepths = depths;
+  }
+
+  public int getNodeCount() {
+    return myImmediateDominators.length;
+  }
+
+  /**
+   * @return the immediate dominator of {@code node}, or {@link #NO_DOMINATOR}.
+   */
+  public int getImmediateDominator(int node) {
+    return myImmediateDominators[node];
+  }
+
+  /**
+   * @return the shallow size of {@code node} plus the shallow sizes of all the nodes it dominates, or 0 if it is unreachable.
+   */
+  public long getRetainedSize(int node) {
+    return myRetainedSizes[node];
+  }
+
+  /**
+   * @return the length of the shortest path from any root to {@code node}, or {@link #UNREACHABLE_DEPTH}.
+   */
+  public int getDepth(int node) {
+    return myDepths[node];
+  }
+
+  @NotNull
+  public static DominatorTree compute(@NotNull int[] successorOffsets,
+                                      @NotNull int[] successors,
+                                      @NotNull int[] roots,
+                                      @NotNull long[] shallowSizes,
+                                      @NotNull ForkJoinPool pool) {
+    int nodeCount = shallowSizes.length;
+    if (successorOffsets.length != nodeCount + 1) {
+      throw new IllegalArgumentException("Expected " + (nodeCount + 1) + " successor offsets, got " + successorOffsets.length);
+    }
+
+    // Number the reachable nodes in depth-first preorder, the virtual root being number 0. From here on, until the results are copied
+    // back, nodes are identified by their number.
+    int[] number = new int[nodeCount];
+    Arrays.fill(number, -1);
+    int[] vertex = new int[nodeCount + 1];
+    int[] parent = new int[nodeCount + 1];
+    int[] cursor = new int[nodeCount + 1];
+    int[] stack = new int[nodeCount + 1];
+    int count = 1;
+    int stackSize = 1;
+    vertex[0] = -1;
+    while (stackSize > 0) {
+      int v = stack[stackSize - 1];
+      int next = -1;
+      if (v == 0) {
+        while (cursor[0] < roots.length && next < 0) {
+          int w = roots[cursor[0]++];
+          next = number[w] < 0 ? w : -1;
+        }
+      }
+      else {
+        int end = successorOffsets[vertex[v] + 1];
+        while (cursor[v] < end && next < 0) {
+          int w = successors[cursor[v]++];
+          next = number[w] < 0 ? w : -1;
+        }
+      }
+      if (next < 0) {
+        stackSize--;
+        continue;
+      }
+      number[next] = count;
+      vertex[count] = next;
+      parent[count] = v;
+      cursor[count] = successorOffsets[next];
+      stack[stackSize++] = count++;
+    }
+
+    // Predecessors of the reachable nodes, by number. The roots are the successors of the virtual root.
+    int[] predecessorOffsets = new int[count + 1];
+    for (int root : roots) {
+      predecessorOffsets[number[root] + 1]++;
+    }
+    for (int v = 1; v < count; v++) {
+      for (int e = successorOffsets[vertex[v]], end = successorOffsets[vertex[v] + 1]; e < end; e++) {
+        predecessorOffsets[number[successors[e]] + 1]++;
+      }
+    }
+    for (int v = 0; v < count; v++) {
+      predecessorOffsets[v + 1] += predecessorOffsets[v];
+    }
+    int[] predecessors = new int[predecessorOffsets[count]];
+    System.arraycopy(predecessorOffsets, 0, cursor, 0, count);
+    for (int root : roots) {
+      predecessors[cursor[number[root]]++] = 0;
+    }
+    for (int v = 1; v < count; v++) {
+      for (int e = successorOffsets[vertex[v]], end = successorOffsets[vertex[v] + 1]; e < end; e++) {
+        int w = number[successors[e]];
+        predecessors[cursor[w]++] = v;
+      }
+    }
+
+    // Semidominators, processing nodes in reverse preorder. A processed node is linked to its parent in the forest through ancestor, so
+    // eval only ever walks over processed nodes.
+    int[] semi = new int[count];
+    int[] label = new int[count];
+    int[] ancestor = new int[count];
+    for (int v = 0; v < count; v++) {
+      semi[v] = v;
+      label[v] = v;
+      ancestor[v] = -1;
+    }
+    for (int w = count - 1; w > 0; w--) {
+      int semiW = semi[w];
+      for (int e = predecessorOffsets[w], end = predecessorOffsets[w + 1]; e < end; e++) {
+        int u = eval(predecessors[e], ancestor, label, semi, stack);
+        if (semi[u] < semiW) {
+          semiW = semi[u];
+        }
+      }
+      semi[w] = semiW;
+      ancestor[w] = parent[w];
+    }
+
+    // The immediate dominator of a node is the nearest common ancestor of its parent and its semidominator in the dominator tree built so
+    // far, which only contains nodes with a smaller number. The forest is not needed anymore, reuse its storage.
+    int[] idom = ancestor;
+    idom[0] = 0;
+    for (int w = 1; w < count; w++) {
+      int d = parent[w];
+      while (d > semi[w]) {
+        d = idom[d];
+      }
+      idom[w] = d;
+    }
+
+    // Children of each node in the dominator tree, and nodes grouped by their level in it.
+    int[] level = label;
+    int maxLevel = 0;
+    level[0] = 0;
+    for (int w = 1; w < count; w++) {
+      level[w] = level[idom[w]] + 1;
+      maxLevel = Math.max(maxLevel, level[w]);
+    }
+    int[] childOffsets = new int[count + 1];
+    for (int w = 1; w < count; w++) {
+      childOffsets[idom[w] + 1]++;
+    }
+    for (int v = 0; v < count; v++) {
+      childOffsets[v + 1] += childOffsets[v];
+    }
+    int[] children = new int[Math.max(0, count - 1)];
+    System.arraycopy(childOffsets, 0, cursor, 0, count);
+    for (int w = 1; w < count; w++) {
+      children[cursor[idom[w]]++] = w;
+    }
+    int[] levelOffsets = new int[maxLevel + 2];
+    for (int w = 0; w < count; w++) {
+      levelOffsets[level[w] + 1]++;
+    }
+    for (int l = 0; l <= maxLevel; l++) {
+      levelOffsets[l + 1] += levelOffsets[l];
+    }
+    int[] nodesByLevel = parent;
+    System.arraycopy(levelOffsets, 0, cursor, 0, maxLevel + 1);
+    for (int w = 0; w < count; w++) {
+      nodesByLevel[cursor[level[w]]++] = w;
+    }
+
+    // Retained sizes, from the deepest level up. All the children of a level are in the level below, so every node of a level can sum its
+    // own children independently of the others.
+    long[] retained = new long[count];
+    for (int l = maxLevel; l >= 0; l--) {
+      RetainedSizeAccumulator accumulator =
+        new RetainedSizeAccumulator(nodesByLevel, levelOffsets[l], levelOffsets[l + 1], childOffsets, children, vertex, shallowSizes,
+                                    retained);
+      if (levelOffsets[l + 1] - levelOffsets[l] < PARALLEL_THRESHOLD) {
+        accumulator.compute();
+      }
+      else {
+        pool.invoke(accumulator);
+      }
+    }
+
+    int[] immediateDominators = new int[nodeCount];
+    long[] retainedSizes = new long[nodeCount];
+    Arrays.fill(immediateDominators, NO_DOMINATOR);
+    for (int w = 1; w < count; w++) {
+      retainedSizes[vertex[w]] = retained[w];
+      if (idom[w] != 0) {
+        immediateDominators[vertex[w]] = vertex[idom[w]];
+      }
+    }
+
+    // Depths are shortest distances from the roots rather than depths in the dominator tree, breadth-first over the original graph.
+    int[] depths = number;
+    Arrays.fill(depths, UNREACHABLE_DEPTH);
+    int[] queue = stack;
+    int head = 0;
+    int tail = 0;
+    for (int root : roots) {
+      if (depths[root] == UNREACHABLE_DEPTH) {
+        depths[root] = 0;
+        queue[tail++] = root;
+      }
+    }
+    while (head < tail) {
+      int v = queue[head++];
+      for (int e = successorOffsets[v], end = successorOffsets[v + 1]; e < end; e++) {
+        int w = successors[e];
+        if (depths[w] == UNREACHABLE_DEPTH) {
+          depths[w] = depths[v] + 1;
+          queue[tail++] = w;
+        }
+      }
+    }
+
+    return new DominatorTree(immediateDominators, retainedSizes, depths);
+  }
+
+  /**
+   * Returns the node with the smallest semidominator on the forest path from {@code v} up to, but excluding, the root of its tree,
+   * compressing the path on the way. {@code path} is scratch space large enough to hold any path.
+   */
+  private static int eval(int v, @NotNull int[] ancestor, @NotNull int[] label, @NotNull int[] semi, @NotNull int[] path) {
+    if (ancestor[v] < 0) {
+      return v;
+    }
+    int pathSize = 0;
+    int x = v;
+    while (ancestor[ancestor[x]] >= 0) {
+      path[pathSize++] = x;
+      x = ancestor[x];
+    }
+    while (pathSize > 0) {
+      int y = path[--pathSize];
+      int a = ancestor[y];
+      if (semi[label[a]] < semi[label[y]]) {
+        label[y] = label[a];
+      }
+      ancestor[y] = ancestor[a];
+    }
+    return label[v];
+  }
+
+  /**
+   * Sets the retained size of a range of nodes of the same dominator tree level to their shallow size plus the retained sizes of their
+   * children, splitting the range in halves until it is small enough.
+   */
+  private static final class RetainedSizeAccumulator extends RecursiveAction {
+    @NotNull private final int[] myNodes;
+    private final int myFrom;
+    private final int myTo;
+    @NotNull private final int[] myChildOffsets;
+    @NotNull private final int[] myChildren;
+    @NotNull private final int[] myVertex;
+    @NotNull private final long[] myShallowSizes;
+    @NotNull private final long[] myRetained;
+
+    RetainedSizeAccumulator(@NotNull int[] nodes,
+                            int from,
+                            int to,
+                            @NotNull int[] childOffsets,
+                            @NotNull int[] children,
+                            @NotNull int[] vertex,
+                            @NotNull long[] shallowSizes,
+                            @NotNull long[] retained) {
+      myNodes = nodes;
+      myFrom = from;
+      myTo = to;
+      myChildOffsets = childOffsets;
+      myChildren = children;
+      myVertex = vertex;
+      myShallowSizes = shallowSizes;
+      myRetained = retained;
+    }
+
+    @Override
+    protected void compute() {
+      if (myTo - myFrom > PARALLEL_THRESHOLD) {
+        int middle = (myFrom + myTo) >>> 1;
+        invokeAll(split(myFrom, middle), split(middle, myTo));
+        return;
+      }
+      for (int i = myFrom; i < myTo; i++) {
+        int w = myNodes[i];
+        long size = w == 0 ? 0 : myShallowSizes[myVertex[w]];
+        for (int e = myChildOffsets[w], end = myChildOffsets[w + 1]; e < end; e++) {
+          size += myRetained[myChildren[e]];
+        }
+        myRetained[w] = size;
+      }
+    }
+
+    @NotNull
+    private RetainedSizeAccumulator split(int from, int to) {
+      return new RetainedSizeAccumulator(myNodes, from, to, myChildOffsets, myChildren, myVertex, myShallowSizes, myRetained);
+    }
+  }
+}
@@ -23,13 +23,13 @@ import static com.android.tools.profilers.memory.adapters.CaptureObject.Classifi
 import static com.android.tools.profilers.memory.adapters.ClassDb.JAVA_LANG_CLASS;
 
 import com.android.tools.adtui.model.Range;
-import com.android.tools.idea.protobuf.ByteString;
+import com.android.tools.idea.transport.TransportBytesReader;
 import com.android.tools.perflib.heap.ClassObj;
 import com.android.tools.perflib.heap.Heap;
 import com.android.tools.perflib.heap.Instance;
 import com.android.tools.perflib.heap.Snapshot;
 import com.android.tools.perflib.heap.ext.NativeRegistryPostProcessor;
-import com.android.tools.perflib.heap.io.InMemoryBuffer;
+import com.android.tools.perflib.heap.io.MemoryMappedFileBuffer;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.Memory.HeapDumpInfo;
 import com.android.tools.profiler.proto.Transport;
@@ -45,7 +45,13 @@ import com.android.tools.proguard.ProguardMap;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
 import gnu.trove.TLongObjectHashMap;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.Collection;
@@ -58,6 +64,8 @@ import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -66,6 +74,10 @@ import org.jetbrains.annotations.Nullable;
 
 public class HeapDumpCaptureObject implements CaptureObject {
 
+  private static Logger getLogger() {
+    return Logger.getInstance(HeapDumpCaptureObject.class);
+  }
+
   @NotNull
   private final ProfilerClient myClient;
 
@@ -95,6 +107,25 @@ public class HeapDumpCaptureObject implements CaptureObject {
 
   private volatile boolean myIsLoadingError = false;
 
+  // Stays set once the capture has been loaded, as unload releases the snapshot but does not make the capture loading again.
+  private volatile boolean myIsLoaded = false;
+
+  /**
+   * True while the dominator tree is being computed in the background. Retained sizes and depths are reported as
+   * {@link MemoryObject#INVALID_VALUE} until it is done.
+   */
+  private volatile boolean myIsComputingDominators = false;
+
+  @Nullable
+  private volatile HeapDumpDominators myDominators;
+
+  /**
+   * The heap dump is spilled from the transport to this file and parsed through a memory-mapped buffer, so the dump itself doesn't live on
+   * the Java heap.
+   */
+  @Nullable
+  private File myHeapDumpFile;
+
   private boolean myHasNativeAllocations;
 
   @NotNull
@@ -199,17 +230,22 @@ public class HeapDumpCaptureObject implements CaptureObject {
 
   @Override
   public boolean load(@Nullable Range queryRange, @Nullable Executor queryJoiner) {
-    Transport.BytesResponse response = myClient.getTransportClient().getBytes(Transport.BytesRequest.newBuilder()
-                                                                                .setStreamId(mySession.getStreamId())
-                                                                                .setId(Long.toString(myHeapDumpInfo.getStartTime()))
-                                                                                .build());
+    File heapDumpFile = getOrSpillHeapDumpFile();
+    if (heapDumpFile == null) {
+      myIsLoadingError = true;
+      return false;
+    }
 
-    if (response.getContents() == ByteString.EMPTY) {
+    MemoryMappedFileBuffer buffer;
+    try {
+      buffer = new MemoryMappedFileBuffer(heapDumpFile);
+    }
+    catch (IOException e) {
+      getLogger().warn(e);
       myIsLoadingError = true;
       return false;
     }
 
-    InMemoryBuffer buffer = new InMemoryBuffer(response.getContents().asReadOnlyByteBuffer());
     Snapshot snapshot;
     NativeRegistryPostProcessor nativeRegistryPostProcessor = new NativeRegistryPostProcessor();
     if (myProguardMap != null) {
@@ -218,9 +254,17 @@ public class HeapDumpCaptureObject implements CaptureObject {
     else {
       snapshot = Snapshot.createSnapshot(buffer, new ProguardMap(), Collections.singletonList(nativeRegistryPostProcessor));
     }
-    snapshot.computeDominators();
     myHasNativeAllocations = nativeRegistryPostProcessor.getHasNativeAllocations();
+    // Without a joiner to report back on, keep the previous behavior and have everything ready by the time load returns.
+    // Otherwise, the dominators are computed in the background so the class list can be shown before retained sizes are available.
+    if (queryJoiner == null) {
+      myDominators = HeapDumpDominators.compute(snapshot, ForkJoinPool.commonPool());
+    }
+    else {
+      myIsComputingDominators = true;
+    }
     mySnapshot = snapshot;
+    myIsLoaded = true;
 
     Map<Heap, HeapSet> heapSets = new HashMap<>(snapshot.getHeaps().size());
     InstanceObject javaLangClassObject = null;
@@ -277,12 +321,133 @@ public class HeapDumpCaptureObject implements CaptureObject {
 
     myStage.refreshSelectedHeap();
 
+    if (queryJoiner != null) {
+      // Instance filters run on the same executor, so any filter added from now on sees the final depths and retained sizes.
+      myExecutorService.execute(() -> {
+        HeapDumpDominators dominators = HeapDumpDominators.compute(snapshot, ForkJoinPool.commonPool());
+        if (myExecutorService.isShutdown()) {
+          // Unloaded in the meantime.
+          return;
+        }
+        myDominators = dominators;
+        myIsComputingDominators = false;
+        Map<Integer, Map<ClassDb.ClassEntry, ClassifierSet.ClassTotal>> classTotals = computeClassTotals(snapshot);
+        queryJoiner.execute(() -> refreshRetainedSizes(classTotals));
+      });
+    }
+
     return true;
   }
 
+  /**
+   * @return true while retained sizes and depths are not available yet because the dominator tree is still being computed.
+   */
+  public boolean isComputingDominators() {
+    return myIsComputingDominators;
+  }
+
+  /**
+   * @return the retained size of {@code instance}, or {@link MemoryObject#INVALID_VALUE} while the dominators are being computed.
+   */
+  long getRetainedSize(@NotNull Instance instance) {
+    if (myIsComputingDominators) {
+      return MemoryObject.INVALID_VALUE;
+    }
+    HeapDumpDominators dominators = myDominators;
+    // Instances that were not loaded through this capture (e.g. test doubles) carry their own values.
+    return dominators != null ? dominators.getRetainedSize(instance) : instance.getTotalRetainedSize();
+  }
+
+  /**
+   * @return the distance of {@code instance} to the closest GC root, or {@link MemoryObject#INVALID_VALUE} while the dominators are being
+   * computed.
+   */
+  int getDepth(@NotNull Instance instance) {
+    if (myIsComputingDominators) {
+      return MemoryObject.INVALID_VALUE;
+    }
+    HeapDumpDominators dominators = myDominators;
+    return dominators != null ? dominators.getDepth(instance) : instance.getDistanceToGcRoot();
+  }
+
+  /**
+   * Sums the retained sizes of the instances of each class of each heap, by heap id. This goes through every instance, so it runs in the
+   * background once the dominators are known.
+   */
+  @NotNull
+  private Map<Integer, Map<ClassDb.ClassEntry, ClassifierSet.ClassTotal>> computeClassTotals(@NotNull Snapshot snapshot) {
+    Map<Integer, Map<ClassDb.ClassEntry, ClassifierSet.ClassTotal>> totalsByHeap = new HashMap<>();
+    for (Heap heap : snapshot.getHeaps()) {
+      Map<ClassDb.ClassEntry, ClassifierSet.ClassTotal> classTotals = new HashMap<>();
+      heap.getClasses().forEach(classObj -> addToClassTotals(classTotals, myInstanceIndex.get(classObj.getId())));
+      heap.forEachInstance(instance -> {
+        addToClassTotals(classTotals, myInstanceIndex.get(instance.getId()));
+        return true;
+      });
+      totalsByHeap.put(heap.getId(), classTotals);
+    }
+    return totalsByHeap;
+  }
+
+  private static void addToClassTotals(@NotNull Map<ClassDb.ClassEntry, ClassifierSet.ClassTotal> classTotals,
+                                       @Nullable InstanceObject instanceObject) {
+    if (instanceObject != null) {
+      classTotals.computeIfAbsent(instanceObject.getClassEntry(), entry -> new ClassifierSet.ClassTotal())
+        .add(instanceObject.getRetainedSize());
+    }
+  }
+
+  /**
+   * Updates the retained size totals of the heaps in place, from the totals of each class computed in the background.
+   */
+  private void refreshRetainedSizes(@NotNull Map<Integer, Map<ClassDb.ClassEntry, ClassifierSet.ClassTotal>> classTotals) {
+    if (myExecutorService.isShutdown()) {
+      return;
+    }
+    myStage.getAspect().changed(MemoryProfilerAspect.CURRENT_HEAP_UPDATING);
+    for (HeapSet heap : myHeapSets.values()) {
+      heap.refreshTotalRetainedSize(classTotals.getOrDefault(heap.getId(), Collections.emptyMap()));
+    }
+    myStage.getAspect().changed(MemoryProfilerAspect.CURRENT_HEAP_UPDATED);
+    myStage.refreshSelectedHeap();
+  }
+
+  /**
+   * Streams the heap dump from the transport into a temporary file, or returns the file if that was already done.
+   *
+   * @return the file, or null if the heap dump is not available.
+   */
+  @Nullable
+  private synchronized File getOrSpillHeapDumpFile() {
+    if (myHeapDumpFile != null) {
+      return myHeapDumpFile;
+    }
+
+    Transport.BytesRequest request = Transport.BytesRequest.newBuilder()
+      .setStreamId(mySession.getStreamId())
+      .setId(Long.toString(myHeapDumpInfo.getStartTime()))
+      .build();
+    try {
+      File file = FileUtil.createTempFile("heapdump", ".hprof", true);
+      long size;
+      try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file))) {
+        size = TransportBytesReader.copyTo(myClient.getTransportClient(), request, outputStream);
+      }
+      if (size == 0) {
+        FileUtil.delete(file);
+        return null;
+      }
+      myHeapDumpFile = file;
+    }
+    catch (IOException e) {
+      getLogger().warn(e);
+    }
+    return myHeapDumpFile;
+  }
+
   @Override
   public boolean isDoneLoading() {
-    return mySnapshot != null || myIsLoadingError;
+    return myIsLoaded || myIsLoadingError;
   }
 
   @Override
@@ -293,6 +458,30 @@ public class HeapDumpCaptureObject implements CaptureObject {
   @Override
   public void unload() {
     myExecutorService.shutdownNow();
+    Snapshot snapshot = mySnapshot;
+    mySnapshot = null;
+    myDominators = null;
+    File heapDumpFile;
+    synchronized (this) {
+      heapDumpFile = myHeapDumpFile;
+      myHeapDumpFile = null;
+    }
+    // The dominators may still be computed from the snapshot, so its buffer is only unmapped, and the file deleted, once that is done.
+    myStage.getStudioProfilers().getIdeServices().getPoolExecutor().execute(() -> {
+      try {
+        myExecutorService.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      if (snapshot != null) {
+        snapshot.dispose();
+      }
+      if (heapDumpFile != null) {
+        FileUtil.delete(heapDumpFile);
+      }
+    });
   }
 
   @NotNull
@@ -417,10 +606,8 @@ public class HeapDumpCaptureObject implements CaptureObject {
 
   @Override
   public boolean canSafelyLoad() {
-    Transport.BytesResponse response = myClient.getTransportClient().getBytes(Transport.BytesRequest.newBuilder()
-                                                                                .setStreamId(mySession.getStreamId())
-                                                                                .setId(Long.toString(myHeapDumpInfo.getStartTime()))
-                                                                                .build());
-    return MemoryProfilerStage.canSafelyLoadHprof(response.getSerializedSize());
+    // The dump is spilled to disk here already so load doesn't need to fetch it again.
+    File heapDumpFile = getOrSpillHeapDumpFile();
+    return MemoryProfilerStage.canSafelyLoadHprof(heapDumpFile == null ? 0 : heapDumpFile.length());
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.android.tools.perflib.heap.ClassObj;
+import com.android.tools.perflib.heap.Heap;
+import com.android.tools.perflib.heap.Instance;
+import com.android.tools.perflib.heap.RootObj;
+import com.android.tools.perflib.heap.Snapshot;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongIntHashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Retained sizes and depths of the instances of a heap dump, computed by a {@link DominatorTree} over the hard references of the
+ * {@link Snapshot} instead of perflib's {@link Snapshot#computeDominators()}. The results are kept here rather than written back to the
+ * perflib {@link Instance}s, so {@link Instance#getTotalRetainedSize()} and {@link Instance#getDistanceToGcRoot()} are not meaningful once
+ * this is used.
+ */
+public final class HeapDumpDominators {
+  /**
+   * Maps instance ids to their node in {@link #myTree}, plus one, as the map returns 0 for missing keys.
+   */
+  @NotNull private final TLongIntHashMap myNodes;
+  @NotNull private final DominatorTree myTree;
+
+  private HeapDumpDominators(@NotNull TLongIntHashMap nodes, @NotNull DominatorTree tree) {
+    myNodes = nodes;
+    myTree = tree;
+  }
+
+  /**
+   * @return the retained size of {@code instance}, or 0 if it is unreachable or not part of the snapshot.
+   */
+  public long getRetainedSize(@NotNull Instance instance) {
+    int node = getNode(myNodes, instance);
+    return node < 0 ? 0 : myTree.getRetainedSize(node);
+  }
+
+  /**
+   * @return the distance of {@code instance} to the closest GC root, or {@link Integer#MAX_VALUE} if it is unreachable or not part of
+   * the snapshot.
+   */
+  public int getDepth(@NotNull Instance instance) {
+    int node = getNode(myNodes, instance);
+    return node < 0 ? DominatorTree.UNREACHABLE_DEPTH : myTree.getDepth(node);
+  }
+
+  @NotNull
+  public static HeapDumpDominators compute(@NotNull Snapshot snapshot, @NotNull ForkJoinPool pool) {
+    List<Instance> instances = new ArrayList<>();
+    TLongIntHashMap nodes = new TLongIntHashMap();
+    for (Heap heap : snapshot.getHeaps()) {
+      for (ClassObj classObj : heap.getClasses()) {
+        instances.add(classObj);
+        nodes.put(classObj.getId(), instances.size());
+      }
+      heap.forEachInstance(instance -> {
+        instances.add(instance);
+        nodes.put(instance.getId(), instances.size());
+        return true;
+      });
+    }
+
+    // perflib only keeps the incoming hard references of each instance, so the outgoing ones are counted first, then filled in.
+    int nodeCount = instances.size();
+    long[] shallowSizes = new long[nodeCount];
+    int[] successorOffsets = new int[nodeCount + 1];
+    for (int node = 0; node < nodeCount; node++) {
+      Instance instance = instances.get(node);
+      shallowSizes[node] = instance.getSize();
+      for (Instance referrer : instance.getHardReverseReferences()) {
+        int referrerNode = getNode(nodes, referrer);
+        if (referrerNode >= 0) {
+          successorOffsets[referrerNode + 1]++;
+        }
+      }
+    }
+    for (int node = 0; node < nodeCount; node++) {
+      successorOffsets[node + 1] += successorOffsets[node];
+    }
+    int[] successors = new int[successorOffsets[nodeCount]];
+    int[] cursor = new int[nodeCount];
+    System.arraycopy(successorOffsets, 0, cursor, 0, nodeCount);
+    for (int node = 0; node < nodeCount; node++) {
+      for (Instance referrer : instances.get(node).getHardReverseReferences()) {
+        int referrerNode = getNode(nodes, referrer);
+        if (referrerNode >= 0) {
+          successors[cursor[referrerNode]++] = node;
+        }
+      }
+    }
+
+    TIntArrayList roots = new TIntArrayList();
+    for (RootObj root : snapshot.getGCRoots()) {
+      Instance referredInstance = root.getReferredInstance();
+      int node = referredInstance == null ? -1 : getNode(nodes, referredInstance);
+      if (node >= 0) {
+        roots.add(node);
+      }
+    }
+
+    return new HeapDumpDominators(nodes, DominatorTree.compute(successorOffsets, successors, roots.toNativeArray(), shallowSizes, pool));
+  }
+
+  private static int getNode(@NotNull TLongIntHashMap nodes, @NotNull Instance instance) {
+    return nodes.get(instance.getId()) - 1;
+  }
+}
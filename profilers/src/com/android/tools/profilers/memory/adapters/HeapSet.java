@@ -19,7 +19,13 @@ import com.android.tools.adtui.model.filter.Filter;
 import com.android.tools.profilers.memory.MemoryProfilerConfiguration.ClassGrouping;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 /**
@@ -30,6 +36,11 @@ public class HeapSet extends ClassifierSet {
   @NotNull private ClassGrouping myClassGrouping = ClassGrouping.ARRANGE_BY_CLASS;
   private final int myId;
   @NotNull private Filter myFilter;
+  /**
+   * Partitions of this heap by arrangements other than the current one, so that switching back to them doesn't re-partition every
+   * instance. Entries are only valid as long as the instances of the heap don't change.
+   */
+  @NotNull private final Map<ClassGrouping, CachedClassifier> myCachedClassifiers = new EnumMap<>(ClassGrouping.class);
 
   public HeapSet(@NotNull CaptureObject captureObject, @NotNull String heapName, int id) {
     super(heapName);
@@ -43,8 +54,28 @@ public class HeapSet extends ClassifierSet {
     if (myClassGrouping == classGrouping) {
       return;
     }
+    int modificationCount = getModificationCount();
+    myCachedClassifiers.values().removeIf(cached -> cached.myModificationCount != modificationCount);
+    if (myClassifier != null) {
+      myCachedClassifiers.put(myClassGrouping, new CachedClassifier(myClassifier, myFilter, modificationCount));
+    }
     myClassGrouping = classGrouping;
 
+    CachedClassifier cached = myCachedClassifiers.remove(classGrouping);
+    if (cached != null) {
+      // The cached partition holds all the instances of the heap, and the totals of the heap itself don't depend on the arrangement.
+      myDeltaInstances.clear();
+      mySnapshotInstances.clear();
+      myClassifier = cached.myClassifier;
+      if (cached.myFilter.equals(myFilter)) {
+        myNeedsRefiltering = true;
+      }
+      else {
+        applyFilter(true);
+      }
+      return;
+    }
+
     // Gather all the instances from the descendants and add them to the heap node.
     // Subsequent calls to getChildrenClassifierSets will re-partition them to the correct child ClassifierSet.
     List<InstanceObject> snapshotStream = getSnapshotInstanceStream().collect(Collectors.toList());
@@ -57,10 +88,56 @@ public class HeapSet extends ClassifierSet {
     myNeedsRefiltering = true;
   }
 
+  /**
+   * Partitions the instances of this heap by {@code classGrouping} on {@code executor}, so that a later call to
+   * {@link #setClassGrouping(ClassGrouping)} with the same arrangement doesn't block the calling thread. This must be called from the
+   * thread that modifies the heap, and {@code joiner} must run on that thread too. The result is dropped if the heap changes in the
+   * meantime, in which case {@link #setClassGrouping(ClassGrouping)} falls back to partitioning lazily.
+   */
+  @NotNull
+  public CompletableFuture<Void> prepareClassGrouping(@NotNull ClassGrouping classGrouping,
+                                                      @NotNull Executor executor,
+                                                      @NotNull Executor joiner) {
+    int modificationCount = getModificationCount();
+    CachedClassifier cached = myCachedClassifiers.get(classGrouping);
+    if (classGrouping == myClassGrouping || (cached != null && cached.myModificationCount == modificationCount)) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    // Partitioning consumes its input, and the heap may keep changing while it runs, so hand it copies.
+    Set<InstanceObject> snapshotInstances = getSnapshotInstanceStream().collect(Collectors.toCollection(LinkedHashSet::new));
+    Set<InstanceObject> deltaInstances = getDeltaInstanceStream().collect(Collectors.toCollection(LinkedHashSet::new));
+    return CompletableFuture.supplyAsync(() -> {
+      Classifier classifier = createClassifier(classGrouping);
+      classifier.partition(snapshotInstances, deltaInstances);
+      return classifier;
+    }, executor).thenAcceptAsync(classifier -> {
+      if (modificationCount == getModificationCount() && classGrouping != myClassGrouping) {
+        // A new partition has not been filtered yet, which is the same as having been filtered with the empty filter.
+        myCachedClassifiers.put(classGrouping, new CachedClassifier(classifier, Filter.EMPTY_FILTER, modificationCount));
+      }
+    }, joiner);
+  }
+
   public int getId() {
     return myId;
   }
 
+  @Override
+  protected long computeTotalRetainedSize(@NotNull Map<ClassDb.ClassEntry, ClassTotal> classTotals) {
+    // Partitions cached for other arrangements hold the same instances, keep their totals up to date too.
+    for (CachedClassifier cached : myCachedClassifiers.values()) {
+      for (ClassifierSet classifierSet : cached.myClassifier.getAllClassifierSets()) {
+        classifierSet.refreshTotalRetainedSize(classTotals);
+      }
+    }
+    if (myClassifier == null && classTotals.values().stream().mapToInt(ClassTotal::getInstanceCount).sum() == getTotalObjectCount()) {
+      // Not partitioned, and with every instance the totals were computed from.
+      return classTotals.values().stream().mapToLong(ClassTotal::getRetainedSize).sum();
+    }
+    return super.computeTotalRetainedSize(classTotals);
+  }
+
   // Select and apply a filter.
   // When there are content changes in HeapSet, we need to re-select the same filter.
   public void selectFilter(@NotNull Filter filter) {
@@ -89,7 +166,12 @@ public class HeapSet extends ClassifierSet {
   @NotNull
   @Override
   public Classifier createSubClassifier() {
-    switch (myClassGrouping) {
+    return createClassifier(myClassGrouping);
+  }
+
+  @NotNull
+  private Classifier createClassifier(@NotNull ClassGrouping classGrouping) {
+    switch (classGrouping) {
       case ARRANGE_BY_CLASS:
         return ClassSet.createDefaultClassifier();
       case ARRANGE_BY_PACKAGE:
@@ -97,7 +179,20 @@ public class HeapSet extends ClassifierSet {
       case ARRANGE_BY_CALLSTACK:
         return ThreadSet.createDefaultClassifier(myCaptureObject);
       default:
-        throw new RuntimeException("Classifier type not implemented: " + myClassGrouping);
+        throw new RuntimeException("Classifier type not implemented: " + classGrouping);
+    }
+  }
+
+  private static final class CachedClassifier {
+    @NotNull private final Classifier myClassifier;
+    // The filter the classifier's sets were last filtered with.
+    @NotNull private final Filter myFilter;
+    private final int myModificationCount;
+
+    private CachedClassifier(@NotNull Classifier classifier, @NotNull Filter filter, int modificationCount) {
+      myClassifier = classifier;
+      myFilter = filter;
+      myModificationCount = modificationCount;
     }
   }
 }
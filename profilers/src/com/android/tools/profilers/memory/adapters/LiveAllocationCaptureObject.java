@@ -59,10 +59,12 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
@@ -99,6 +101,8 @@ public class LiveAllocationCaptureObject implements CaptureObject {
   private final TLongObjectHashMap<AllocationStack.StackFrame> myMethodIdMap;
   private final TIntObjectHashMap<ThreadId> myThreadIdMap;
   private final TreeMap<Long, Memory.MemoryMap.MemoryRegion> myJniMemoryRegionMap;
+  // Allocation events that have been read from the datastore so far, so that moving the query range doesn't need to read them again.
+  private final LiveAllocationIndex myAllocationIndex;
 
   private final ProfilerClient myClient;
   private final Common.Session mySession;
@@ -108,6 +112,8 @@ public class LiveAllocationCaptureObject implements CaptureObject {
   private final boolean myEnableJniRefsTracking;
 
   private long myContextEndTimeNs = Long.MIN_VALUE;
+  // All allocation events before this timestamp are in myAllocationIndex.
+  private long myIndexEndTimeNs = Long.MIN_VALUE;
   private long myPreviousQueryStartTimeNs = Long.MIN_VALUE;
   private long myPreviousQueryEndTimeNs = Long.MIN_VALUE;
   // Keeps track of the latest sample's timestamp we have queried thus far.
@@ -137,6 +143,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     myMethodIdMap = new TLongObjectHashMap<>();
     myThreadIdMap = new TIntObjectHashMap<>();
     myJniMemoryRegionMap = new TreeMap<>();
+    myAllocationIndex = new LiveAllocationIndex();
 
     myClient = client;
     mySession = session;
@@ -489,44 +496,70 @@ public class LiveAllocationCaptureObject implements CaptureObject {
   }
 
   /**
-   * Populates the input list with all instance objects that are alive at |snapshotTimeNs|.
+   * Adds the allocation events before |endTimeNs| that are not in myAllocationIndex yet. Events are only indexed up to the last sample
+   * that has arrived, as samples that are still in flight can contain earlier events.
    */
-  private void queryJavaInstanceSnapshot(long snapshotTimeNs, @NotNull List<InstanceObject> snapshotList) {
-    // Retrieve all the event samples from the start of the session until the snapshot time.
-    long sessionStartNs = mySession.getStartTimestamp();
-    List<Memory.BatchAllocationEvents> eventsList = getAllocationEvents(sessionStartNs, snapshotTimeNs);
-    Map<Integer, LiveAllocationInstanceObject> liveInstanceMap = new LinkedHashMap<>();
+  private void updateAllocationIndex(long endTimeNs) {
+    if (myIndexEndTimeNs >= endTimeNs) {
+      return;
+    }
+
+    long startTimeNs = myIndexEndTimeNs == Long.MIN_VALUE ? mySession.getStartTimestamp() : myIndexEndTimeNs;
+    List<Memory.BatchAllocationEvents> eventsList = getAllocationEvents(startTimeNs, endTimeNs);
+    long lastSampleTimeNs = Long.MIN_VALUE;
     for (Memory.BatchAllocationEvents events : eventsList) {
-      // Only consider events up to but excluding the snapshot time.
-      Iterator<AllocationEvent> itr = events.getEventsList().stream().filter(evt -> evt.getTimestamp() < snapshotTimeNs)
-        .sorted(Comparator.comparingLong(AllocationEvent::getTimestamp)).iterator();
-      while (itr.hasNext()) {
-        AllocationEvent event = itr.next();
-        LiveAllocationInstanceObject instance;
-        switch (event.getEventCase()) {
-          case ALLOC_DATA:
-            // Allocation - create an InstanceObject. This might be removed later if there is a corresponding FREE_DATA event.
-            AllocationEvent.Allocation allocation = event.getAllocData();
-            instance = getOrCreateInstanceObject(allocation.getTag(), allocation.getClassTag(), allocation.getStackId(),
-                                                 allocation.getThreadId(), allocation.getSize(), allocation.getHeapId());
-            instance.setAllocationTime(event.getTimestamp());
-            liveInstanceMap.put(allocation.getTag(), instance);
-            break;
-          case FREE_DATA:
-            // Deallocation - there should be a matching InstanceObject.
-            AllocationEvent.Deallocation deallocation = event.getFreeData();
-            liveInstanceMap.remove(deallocation.getTag());
-            // Don't keep deallocated objects around in the cache to avoid bloating memory.
-            myInstanceMap.remove(deallocation.getTag());
-            break;
-          case CLASS_DATA:
-            // ignore CLASS_DATA as they are handled via context updates.
-            break;
-        }
+      lastSampleTimeNs = Math.max(lastSampleTimeNs, events.getTimestamp());
+    }
+    if (lastSampleTimeNs == Long.MIN_VALUE) {
+      return;
+    }
+    long newIndexEndTimeNs = Math.min(endTimeNs, lastSampleTimeNs + 1);
+    if (newIndexEndTimeNs <= myIndexEndTimeNs) {
+      return;
+    }
+
+    long indexStartTimeNs = myIndexEndTimeNs;
+    Iterator<AllocationEvent> itr = eventsList.stream()
+      .flatMap(events -> events.getEventsList().stream())
+      .filter(evt -> evt.getTimestamp() >= indexStartTimeNs && evt.getTimestamp() < newIndexEndTimeNs)
+      .sorted(Comparator.comparingLong(AllocationEvent::getTimestamp))
+      .iterator();
+    while (itr.hasNext()) {
+      AllocationEvent event = itr.next();
+      switch (event.getEventCase()) {
+        case ALLOC_DATA:
+          AllocationEvent.Allocation allocation = event.getAllocData();
+          myAllocationIndex.addAllocation(event.getTimestamp(), allocation.getTag(), allocation.getClassTag(), allocation.getStackId(),
+                                          allocation.getThreadId(), allocation.getSize(), allocation.getHeapId());
+          break;
+        case FREE_DATA:
+          myAllocationIndex.addFree(event.getTimestamp(), event.getFreeData().getTag());
+          break;
+        case CLASS_DATA:
+          // ignore CLASS_DATA as they are handled via context updates.
+          break;
       }
     }
+    myIndexEndTimeNs = newIndexEndTimeNs;
+  }
 
-    snapshotList.addAll(liveInstanceMap.values());
+  @NotNull
+  private LiveAllocationInstanceObject getOrCreateInstanceObject(int allocation) {
+    return getOrCreateInstanceObject(myAllocationIndex.getTag(allocation), myAllocationIndex.getClassTag(allocation),
+                                     myAllocationIndex.getStackId(allocation), myAllocationIndex.getThreadId(allocation),
+                                     myAllocationIndex.getSize(allocation), myAllocationIndex.getHeapId(allocation));
+  }
+
+  /**
+   * Populates the input list with all instance objects that are alive at |snapshotTimeNs|.
+   */
+  private void queryJavaInstanceSnapshot(long snapshotTimeNs, @NotNull List<InstanceObject> snapshotList) {
+    updateAllocationIndex(snapshotTimeNs);
+    for (int allocation : myAllocationIndex.getLiveAllocations(snapshotTimeNs)) {
+      LiveAllocationInstanceObject instance = getOrCreateInstanceObject(allocation);
+      instance.setAllocationTime(myAllocationIndex.getAllocationTimestamp(allocation));
+      snapshotList.add(instance);
+    }
   }
 
   private void queryJniReferencesSnapshot(long snapshotTimeNs, @NotNull List<InstanceObject> snapshotList) {
@@ -537,6 +570,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     long sessionStartNs = mySession.getStartTimestamp();
     List<Memory.BatchJNIGlobalRefEvent> eventsList = getJniRefEvents(sessionStartNs, snapshotTimeNs);
     Map<Long, JniReferenceInstanceObject> instanceMap = new LinkedHashMap<>();
+    List<NativeBacktrace> backtraces = new ArrayList<>();
     for (Memory.BatchJNIGlobalRefEvent events : eventsList) {
       // Only consider events up to but excluding the snapshot time.
       Iterator<JNIGlobalReferenceEvent> itr = events.getEventsList().stream().filter(evt -> evt.getTimestamp() < snapshotTimeNs)
@@ -556,6 +590,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
             }
             if (event.hasBacktrace()) {
               refObject.setAllocationBacktrace(event.getBacktrace());
+              backtraces.add(event.getBacktrace());
             }
             int threadId = event.getThreadId();
             ThreadId thread = ThreadId.INVALID_THREAD_ID;
@@ -579,6 +614,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     }
 
     snapshotList.addAll(instanceMap.values());
+    symbolizeNativeBacktraces(backtraces);
   }
 
   /**
@@ -601,39 +637,17 @@ public class LiveAllocationCaptureObject implements CaptureObject {
       return;
     }
 
-
-    List<Memory.BatchAllocationEvents> eventsList = getAllocationEvents(startTimeNs, endTimeNs);
-    for (Memory.BatchAllocationEvents events : eventsList) {
-      // Only consider events between the delta range [start time, end time)
-      Iterator<AllocationEvent> itr =
-        events.getEventsList().stream()
-          .filter(evt -> evt.getTimestamp() >= startTimeNs && evt.getTimestamp() < endTimeNs)
-          .sorted(Comparator.comparingLong(AllocationEvent::getTimestamp))
-          .iterator();
-      while (itr.hasNext()) {
-        AllocationEvent event = itr.next();
-        LiveAllocationInstanceObject instance;
-        switch (event.getEventCase()) {
-          case ALLOC_DATA:
-            // New allocation - create an InstanceObject.
-            AllocationEvent.Allocation allocation = event.getAllocData();
-            instance = getOrCreateInstanceObject(allocation.getTag(), allocation.getClassTag(), allocation.getStackId(),
-                                                 allocation.getThreadId(), allocation.getSize(), allocation.getHeapId());
-            instance.setAllocationTime(resetInstance ? Long.MIN_VALUE : event.getTimestamp());
-            allocationList.add(instance);
-            break;
-          case FREE_DATA:
-            // New deallocation - there should be a matching InstanceObject.
-            AllocationEvent.Deallocation deallocation = event.getFreeData();
-            assert myInstanceMap.containsKey(deallocation.getTag());
-            instance = myInstanceMap.get(deallocation.getTag());
-            instance.setDeallocTime(resetInstance ? Long.MAX_VALUE : event.getTimestamp());
-            deallocationList.add(instance);
-            break;
-          case CLASS_DATA:
-            // ignore CLASS_DATA as they are handled via context updates.
-            break;
-        }
+    updateAllocationIndex(endTimeNs);
+    int endIndex = myAllocationIndex.getEventIndex(endTimeNs);
+    for (int i = myAllocationIndex.getEventIndex(startTimeNs); i < endIndex; i++) {
+      LiveAllocationInstanceObject instance = getOrCreateInstanceObject(myAllocationIndex.getEventAllocation(i));
+      if (myAllocationIndex.isFreeEvent(i)) {
+        instance.setDeallocTime(resetInstance ? Long.MAX_VALUE : myAllocationIndex.getEventTimestamp(i));
+        deallocationList.add(instance);
+      }
+      else {
+        instance.setAllocationTime(resetInstance ? Long.MIN_VALUE : myAllocationIndex.getEventTimestamp(i));
+        allocationList.add(instance);
       }
     }
   }
@@ -648,6 +662,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     }
 
     List<Memory.BatchJNIGlobalRefEvent> eventsList = getJniRefEvents(startTimeNs, endTimeNs);
+    List<NativeBacktrace> backtraces = new ArrayList<>();
     for (BatchJNIGlobalRefEvent events : eventsList) {
       // Only consider events between the delta range [start time, end time)
       Iterator<JNIGlobalReferenceEvent> itr =
@@ -678,6 +693,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
               refObject.setAllocationTime(event.getTimestamp());
               if (event.hasBacktrace()) {
                 refObject.setAllocationBacktrace(event.getBacktrace());
+                backtraces.add(event.getBacktrace());
               }
               refObject.setAllocThreadId(thread);
             }
@@ -691,6 +707,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
               refObject.setDeallocTime(event.getTimestamp());
               if (event.hasBacktrace()) {
                 refObject.setDeallocationBacktrace(event.getBacktrace());
+                backtraces.add(event.getBacktrace());
               }
               refObject.setDeallocThreadId(thread);
             }
@@ -701,6 +718,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
         }
       }
     }
+    symbolizeNativeBacktraces(backtraces);
   }
 
   @NotNull
@@ -709,29 +727,53 @@ public class LiveAllocationCaptureObject implements CaptureObject {
       return NativeCallStack.getDefaultInstance();
     }
 
+    synchronized (myNativeFrameMap) {
+      // The frames are normally resolved already, by the query that loaded the backtrace.
+      symbolizeNativeBacktraces(Collections.singletonList(backtrace));
+      NativeCallStack.Builder builder = NativeCallStack.newBuilder();
+      for (long address : backtrace.getAddressesList()) {
+        builder.addFrames(myNativeFrameMap.get(address));
+      }
+      return builder.build();
+    }
+  }
 
-    NativeCallStack.Builder builder = NativeCallStack.newBuilder();
-    for (long address : backtrace.getAddressesList()) {
-      if (!myNativeFrameMap.containsKey(address)) {
-        String module = "";
-        long offset = 0;
-        Memory.MemoryMap.MemoryRegion region = getRegionByAddress(address);
-        if (region != null) {
-          module = region.getName();
-          // Adjust address to represent module offset.
-          offset = region.getFileOffset() + (address - region.getStartAddress());
-        }
+  /**
+   * Symbolizes the frames of the given backtraces that were not resolved yet. They are sent to the symbolizer in a single batch, so that
+   * loading the JNI references of a range costs one call to the symbolizer rather than one per backtrace.
+   */
+  private void symbolizeNativeBacktraces(@NotNull Collection<NativeBacktrace> backtraces) {
+    synchronized (myNativeFrameMap) {
+      List<NativeCallStack.NativeFrame> unsymbolizedFrames = new ArrayList<>();
+      Set<Long> pendingAddresses = new HashSet<>();
+      for (NativeBacktrace backtrace : backtraces) {
+        for (long address : backtrace.getAddressesList()) {
+          if (myNativeFrameMap.containsKey(address) || !pendingAddresses.add(address)) {
+            continue;
+          }
+          String module = "";
+          long offset = 0;
+          Memory.MemoryMap.MemoryRegion region = getRegionByAddress(address);
+          if (region != null) {
+            module = region.getName();
+            // Adjust address to represent module offset.
+            offset = region.getFileOffset() + (address - region.getStartAddress());
+          }
 
-        NativeCallStack.NativeFrame unsymbolizedFrame = NativeCallStack.NativeFrame.newBuilder()
-          .setAddress(address).setModuleName(module).setModuleOffset(offset).build();
-        NativeCallStack.NativeFrame symbolizedFrame = myStage.getStudioProfilers().getIdeServices().getNativeFrameSymbolizer()
-          .symbolize(myStage.getStudioProfilers().getSessionsManager().getSelectedSessionMetaData().getProcessAbi(), unsymbolizedFrame);
-        myNativeFrameMap.put(address, symbolizedFrame);
+          unsymbolizedFrames.add(NativeCallStack.NativeFrame.newBuilder()
+                                   .setAddress(address).setModuleName(module).setModuleOffset(offset).build());
+        }
+      }
+      if (unsymbolizedFrames.isEmpty()) {
+        return;
       }
 
-      builder.addFrames(myNativeFrameMap.get(address));
+      List<NativeCallStack.NativeFrame> symbolizedFrames = myStage.getStudioProfilers().getIdeServices().getNativeFrameSymbolizer()
+        .symbolizeAll(myStage.getStudioProfilers().getSessionsManager().getSelectedSessionMetaData().getProcessAbi(), unsymbolizedFrames);
+      for (int i = 0; i < unsymbolizedFrames.size(); i++) {
+        myNativeFrameMap.put(unsymbolizedFrames.get(i).getAddress(), symbolizedFrames.get(i));
+      }
     }
-    return builder.build();
   }
 
   @Nullable
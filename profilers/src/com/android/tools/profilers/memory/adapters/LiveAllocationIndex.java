@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.google.common.annotations.VisibleForTesting;
+import gnu.trove.TIntIntHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An append-only, time-ordered index of the allocation and free events of a live allocation session.
+ *
+ * Events are kept in fixed-size segments of primitive arrays, so ranges of events can be found with a binary search and iterated
+ * without going back to the datastore. Every allocation gets an id, in the order the allocations were added, which is used to look up
+ * the rest of its data. Free events refer to the id of the allocation they free, and frees of unknown allocations are dropped.
+ *
+ * The set of live allocations is checkpointed every time at least as many events as there are live allocations (and no less than
+ * {@link #MIN_CHECKPOINT_INTERVAL}) have been added since the previous checkpoint. The checkpoints then take no more memory than the
+ * events themselves, and the allocations alive at any point in time can be found by replaying the events since the closest checkpoint,
+ * which are never more than the allocations returned.
+ */
+public final class LiveAllocationIndex {
+  private static final int SEGMENT_SHIFT = 14;
+  private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+  private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+  // tag, class tag, stack id, thread id and heap id of each allocation.
+  private static final int ALLOCATION_INT_FIELDS = 5;
+
+  @VisibleForTesting static final int MIN_CHECKPOINT_INTERVAL = 1 << 12;
+
+  // Events, in timestamp order. An event is either the id of an allocation, or the bitwise complement of the id of the allocation it frees.
+  @NotNull private final List<long[]> myEventTimestamps = new ArrayList<>();
+  @NotNull private final List<int[]> myEvents = new ArrayList<>();
+  private int myEventCount;
+
+  @NotNull private final List<int[]> myAllocationFields = new ArrayList<>();
+  @NotNull private final List<long[]> myAllocationSizes = new ArrayList<>();
+  @NotNull private final List<long[]> myAllocationTimestamps = new ArrayList<>();
+  private int myAllocationCount;
+
+  // Maps the tags of the allocations that are alive after the last event to their ids.
+  @NotNull private final TIntIntHashMap myLiveAllocations = new TIntIntHashMap();
+  @NotNull private final List<Checkpoint> myCheckpoints = new ArrayList<>();
+
+  public LiveAllocationIndex() {
+    myCheckpoints.add(new Checkpoint(0, new int[0]));
+  }
+
+  public void addAllocation(long timestampNs, int tag, int classTag, int stackId, int threadId, long size, int heapId) {
+    int allocation = myAllocationCount;
+    int segment = allocation >> SEGMENT_SHIFT;
+    int offset = allocation & SEGMENT_MASK;
+    if (offset == 0) {
+      myAllocationFields.add(new int[SEGMENT_SIZE * ALLOCATION_INT_FIELDS]);
+      myAllocationSizes.add(new long[SEGMENT_SIZE]);
+      myAllocationTimestamps.add(new long[SEGMENT_SIZE]);
+    }
+    int[] fields = myAllocationFields.get(segment);
+    int base = offset * ALLOCATION_INT_FIELDS;
+    fields[base] = tag;
+    fields[base + 1] = classTag;
+    fields[base + 2] = stackId;
+    fields[base + 3] = threadId;
+    fields[base + 4] = heapId;
+    myAllocationSizes.get(segment)[offset] = size;
+    myAllocationTimestamps.get(segment)[offset] = timestampNs;
+    myAllocationCount++;
+
+    myLiveAllocations.put(tag, allocation);
+    addEvent(timestampNs, allocation);
+  }
+
+  public void addFree(long timestampNs, int tag) {
+    if (!myLiveAllocations.containsKey(tag)) {
+      return;
+    }
+    addEvent(timestampNs, ~myLiveAllocations.remove(tag));
+  }
+
+  private void addEvent(long timestampNs, int event) {
+    assert myEventCount == 0 || getEventTimestamp(myEventCount - 1) <= timestampNs;
+    int segment = myEventCount >> SEGMENT_SHIFT;
+    int offset = myEventCount & SEGMENT_MASK;
+    if (offset == 0) {
+      myEventTimestamps.add(new long[SEGMENT_SIZE]);
+      myEvents.add(new int[SEGMENT_SIZE]);
+    }
+    myEventTimestamps.get(segment)[offset] = timestampNs;
+    myEvents.get(segment)[offset] = event;
+    myEventCount++;
+
+    Checkpoint lastCheckpoint = myCheckpoints.get(myCheckpoints.size() - 1);
+    if (myEventCount - lastCheckpoint.myEventIndex >= Math.max(MIN_CHECKPOINT_INTERVAL, myLiveAllocations.size())) {
+      myCheckpoints.add(new Checkpoint(myEventCount, myLiveAllocations.getValues()));
+    }
+  }
+
+  public int getEventCount() {
+    return myEventCount;
+  }
+
+  /**
+   * @return the number of events that happened strictly before {@code timestampNs}, which is also the index of the first event at or
+   * after it.
+   */
+  public int getEventIndex(long timestampNs) {
+    // Find the last segment starting before the timestamp, then search within it.
+    int low = 0;
+    int high = myEventTimestamps.size() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (myEventTimestamps.get(mid)[0] < timestampNs) {
+        low = mid + 1;
+      }
+      else {
+        high = mid - 1;
+      }
+    }
+    if (high < 0) {
+      return 0;
+    }
+    int segmentStart = high << SEGMENT_SHIFT;
+    long[] timestamps = myEventTimestamps.get(high);
+    low = 0;
+    high = Math.min(SEGMENT_SIZE, myEventCount - segmentStart) - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (timestamps[mid] < timestampNs) {
+        low = mid + 1;
+      }
+      else {
+        high = mid - 1;
+      }
+    }
+    return segmentStart + low;
+  }
+
+  public long getEventTimestamp(int eventIndex) {
+    return myEventTimestamps.get(eventIndex >> SEGMENT_SHIFT)[eventIndex & SEGMENT_MASK];
+  }
+
+  public boolean isFreeEvent(int eventIndex) {
+    return getEvent(eventIndex) < 0;
+  }
+
+  /**
+   * @return the id of the allocation created or freed by the event.
+   */
+  public int getEventAllocation(int eventIndex) {
+    int event = getEvent(eventIndex);
+    return event < 0 ? ~event : event;
+  }
+
+  private int getEvent(int eventIndex) {
+    return myEvents.get(eventIndex >> SEGMENT_SHIFT)[eventIndex & SEGMENT_MASK];
+  }
+
+  /**
+   * @return the ids of the allocations that happened strictly before {@code timestampNs} and were not freed before it, in allocation
+   * order.
+   */
+  @NotNull
+  public int[] getLiveAllocations(long timestampNs) {
+    int eventIndex = getEventIndex(timestampNs);
+    int low = 0;
+    int high = myCheckpoints.size() - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (myCheckpoints.get(mid).myEventIndex <= eventIndex) {
+        low = mid;
+      }
+      else {
+        high = mid - 1;
+      }
+    }
+    Checkpoint checkpoint = myCheckpoints.get(low);
+
+    TIntIntHashMap live = new TIntIntHashMap(checkpoint.myLiveAllocations.length);
+    for (int allocation : checkpoint.myLiveAllocations) {
+      live.put(getTag(allocation), allocation);
+    }
+    for (int i = checkpoint.myEventIndex; i < eventIndex; i++) {
+      int event = getEvent(i);
+      if (event < 0) {
+        live.remove(getTag(~event));
+      }
+      else {
+        live.put(getTag(event), event);
+      }
+    }
+    int[] allocations = live.getValues();
+    Arrays.sort(allocations);
+    return allocations;
+  }
+
+  public int getTag(int allocation) {
+    return getAllocationField(allocation, 0);
+  }
+
+  public int getClassTag(int allocation) {
+    return getAllocationField(allocation, 1);
+  }
+
+  public int getStackId(int allocation) {
+    return getAllocationField(allocation, 2);
+  }
+
+  public int getThreadId(int allocation) {
+    return getAllocationField(allocation, 3);
+  }
+
+  public int getHeapId(int allocation) {
+    return getAllocationField(allocation, 4);
+  }
+
+  public long getSize(int allocation) {
+    return myAllocationSizes.get(allocation >> SEGMENT_SHIFT)[allocation & SEGMENT_MASK];
+  }
+
+  public long getAllocationTimestamp(int allocation) {
+    return myAllocationTimestamps.get(allocation >> SEGMENT_SHIFT)[allocation & SEGMENT_MASK];
+  }
+
+  private int getAllocationField(int allocation, int field) {
+    return myAllocationFields.get(allocation >> SEGMENT_SHIFT)[(allocation & SEGMENT_MASK) * ALLOCATION_INT_FIELDS + field];
+  }
+
+  @VisibleForTesting
+  int getCheckpointCount() {
+    return myCheckpoints.size();
+  }
+
+  private static final class Checkpoint {
+    // Number of events applied to the live allocations.
+    private final int myEventIndex;
+    @NotNull private final int[] myLiveAllocations;
+
+    private Checkpoint(int eventIndex, @NotNull int[] liveAllocations) {
+      myEventIndex = eventIndex;
+      myLiveAllocations = liveAllocations;
+    }
+  }
+}
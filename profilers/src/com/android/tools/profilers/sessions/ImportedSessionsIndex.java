@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.sessions;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * On-disk list of the files imported as sessions, used to restore those sessions in later runs. Only the metadata needed to show a
+ * session in the Sessions panel is stored, the files themselves are read by their import handlers when the sessions get selected.
+ * <p>
+ * The index is a text file whose first line is {@link #VERSION}, followed by one line per change:
+ * {@code +<tab><import epoch ms><tab><file length><tab><file last modified><tab><path>} when a file is imported and
+ * {@code -<tab><path>} when its session is deleted. Lines are only ever appended, the last one of a path wins. An index with another
+ * version is discarded, and the file is rewritten with the live entries only once the removed ones make up most of it.
+ * <p>
+ * The index is kept in the IDE system directory, so the profilers of all the open projects share it. They must all use the instance
+ * returned by {@link #getInstance(Path)}, otherwise a rewrite by one of them would drop the records appended by the others.
+ */
+final class ImportedSessionsIndex {
+  @VisibleForTesting static final String VERSION = "imported-sessions-v1";
+  private static final String ADDED = "+";
+  private static final String REMOVED = "-";
+  private static final int MIN_RECORDS_TO_COMPACT = 32;
+
+  private static final Map<Path, ImportedSessionsIndex> ourInstances = new ConcurrentHashMap<>();
+
+  @NotNull private final Path myIndexPath;
+  @NotNull private final Map<String, Entry> myEntries = new LinkedHashMap<>();
+  private int myRecordCount;
+  private boolean myNeedsRewrite;
+  /**
+   * Whether the index does not end with a line break, i.e. its last line was cut short by a crash while appending. The next record then
+   * starts with a line break, so it is not merged into that line.
+   */
+  private boolean myNeedsLineBreak;
+
+  /**
+   * @return the index stored in the given file, shared by all the profilers of the application.
+   */
+  @NotNull
+  static ImportedSessionsIndex getInstance(@NotNull Path indexPath) {
+    return ourInstances.computeIfAbsent(indexPath.toAbsolutePath(), ImportedSessionsIndex::new);
+  }
+
+  /**
+   * Reads the index from the given file. Outside of tests, which use it to simulate a later run, use {@link #getInstance(Path)} instead.
+   */
+  @VisibleForTesting
+  ImportedSessionsIndex(@NotNull Path indexPath) {
+    myIndexPath = indexPath;
+    load();
+  }
+
+  /**
+   * @return the files imported and not deleted since, in the order they were first imported.
+   */
+  @NotNull
+  synchronized List<Entry> getEntries() {
+    return new ArrayList<>(myEntries.values());
+  }
+
+  /**
+   * Records the import of a file. Importing a file that is already in the index does nothing, unless the file changed since.
+   */
+  synchronized void add(@NotNull File file, long startTimestampEpochMs) {
+    Entry entry = new Entry(file.getAbsoluteFile(), startTimestampEpochMs, file.length(), file.lastModified());
+    Entry previous = myEntries.get(entry.getFile().getPath());
+    if (previous != null && previous.isUnchanged()) {
+      return;
+    }
+    myEntries.put(entry.getFile().getPath(), entry);
+    append(ADDED + '\t' + entry.getStartTimestampEpochMs() + '\t' + entry.myLength + '\t' + entry.myLastModified + '\t' +
+           entry.getFile().getPath());
+  }
+
+  /**
+   * Records the deletion of the session of a file.
+   */
+  synchronized void remove(@NotNull File file) {
+    String path = file.getAbsoluteFile().getPath();
+    if (myEntries.remove(path) != null) {
+      append(REMOVED + '\t' + path);
+    }
+  }
+
+  private void load() {
+    String text;
+    try {
+      text = new String(Files.readAllBytes(myIndexPath), StandardCharsets.UTF_8);
+    }
+    catch (NoSuchFileException ignored) {
+      myNeedsRewrite = true;
+      return;
+    }
+    catch (IOException e) {
+      getLogger().warn("Failed to read " + myIndexPath, e);
+      myNeedsRewrite = true;
+      return;
+    }
+    String[] lines = text.split("\n");
+    if (!VERSION.equals(lines[0])) {
+      // Written by a different version, or cut short before its header: start over.
+      myNeedsRewrite = true;
+      return;
+    }
+    // A last line without a line break was cut short by a crash while appending, it is skipped.
+    myNeedsLineBreak = !text.endsWith("\n");
+    int lineCount = myNeedsLineBreak ? lines.length - 1 : lines.length;
+    for (int i = 1; i < lineCount; i++) {
+      myRecordCount++;
+      String[] parts = lines[i].split("\t", 5);
+      try {
+        if (parts.length == 5 && ADDED.equals(parts[0])) {
+          File file = new File(parts[4]);
+          myEntries.put(file.getPath(), new Entry(file, Long.parseLong(parts[1]), Long.parseLong(parts[2]), Long.parseLong(parts[3])));
+        }
+        else if (parts.length == 2 && REMOVED.equals(parts[0])) {
+          myEntries.remove(parts[1]);
+        }
+      }
+      catch (NumberFormatException ignored) {
+        // Not a record written by this version, skip it.
+      }
+    }
+  }
+
+  private void append(@NotNull String record) {
+    myRecordCount++;
+    if (myNeedsRewrite || (myRecordCount >= MIN_RECORDS_TO_COMPACT && myRecordCount > 2 * myEntries.size())) {
+      rewrite();
+      return;
+    }
+    try {
+      String line = (myNeedsLineBreak ? "\n" : "") + record + '\n';
+      Files.write(myIndexPath, line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+      myNeedsLineBreak = false;
+    }
+    catch (IOException e) {
+      getLogger().warn("Failed to write " + myIndexPath, e);
+      myNeedsRewrite = true;
+    }
+  }
+
+  /**
+   * Writes the live entries to a new file that replaces the index, so that a crash leaves either the old or the new index behind.
+   */
+  private void rewrite() {
+    StringBuilder text = new StringBuilder(VERSION).append('\n');
+    for (Entry entry : myEntries.values()) {
+      text.append(ADDED).append('\t').append(entry.getStartTimestampEpochMs()).append('\t').append(entry.myLength).append('\t')
+        .append(entry.myLastModified).append('\t').append(entry.getFile().getPath()).append('\n');
+    }
+    try {
+      Files.createDirectories(myIndexPath.getParent());
+      Path tempPath = myIndexPath.resolveSibling(myIndexPath.getFileName() + ".tmp");
+      Files.write(tempPath, text.toString().getBytes(StandardCharsets.UTF_8));
+      try {
+        Files.move(tempPath, myIndexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      }
+      catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempPath, myIndexPath, StandardCopyOption.REPLACE_EXISTING);
+      }
+      myRecordCount = myEntries.size();
+      myNeedsRewrite = false;
+      myNeedsLineBreak = false;
+    }
+    catch (IOException e) {
+      getLogger().warn("Failed to write " + myIndexPath, e);
+      myNeedsRewrite = true;
+    }
+  }
+
+  private static Logger getLogger() {
+    return Logger.getInstance(ImportedSessionsIndex.class);
+  }
+
+  /**
+   * A file imported as a session, along with the time of its import and the size and modification time it had then.
+   */
+  static final class Entry {
+    @NotNull private final File myFile;
+    private final long myStartTimestampEpochMs;
+    private final long myLength;
+    private final long myLastModified;
+
+    private Entry(@NotNull File file, long startTimestampEpochMs, long length, long lastModified) {
+      myFile = file;
+      myStartTimestampEpochMs = startTimestampEpochMs;
+      myLength = length;
+      myLastModified = lastModified;
+    }
+
+    @NotNull
+    File getFile() {
+      return myFile;
+    }
+
+    long getStartTimestampEpochMs() {
+      return myStartTimestampEpochMs;
+    }
+
+    /**
+     * @return whether the file is still where it was imported from, and was not overwritten since.
+     */
+    boolean isUnchanged() {
+      return myFile.isFile() && myFile.length() == myLength && myFile.lastModified() == myLastModified;
+    }
+  }
+}
@@ -22,7 +22,6 @@ import com.android.tools.adtui.model.AspectModel;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.idea.protobuf.ByteString;
 import com.android.tools.idea.transport.EventStreamServer;
-import com.android.tools.idea.transport.TransportService;
 import com.android.tools.profiler.proto.Commands.BeginSession;
 import com.android.tools.profiler.proto.Commands.Command;
 import com.android.tools.profiler.proto.Commands.EndSession;
@@ -56,11 +55,13 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -80,6 +81,19 @@ public class SessionsManager extends AspectModel<SessionAspect> {
     // TODO add enums for sessions created via the toolbar's profile button, or via opening the profiler UI manually
   }
 
+  /**
+   * Handles the files of a type imported as sessions.
+   */
+  public interface ImportHandler {
+    /**
+     * Creates the session of a file. Handlers should defer reading the file until the session is selected, as the sessions of the files
+     * imported in previous runs are restored all at once when the profilers start.
+     *
+     * @param startTimestampEpochMs the time the file was first imported, which orders its session in the sessions panel.
+     */
+    void importFile(@NotNull File file, long startTimestampEpochMs);
+  }
+
   /**
    * An interface for querying artifacts that belong to a session (e.g. heap dump, cpu capture, bookmarks).
    */
@@ -127,7 +141,25 @@ public class SessionsManager extends AspectModel<SessionAspect> {
   /**
    * A list of handlers that import sessions based on their file types.
    */
-  private final Map<String, Consumer<File>> myImportHandlers = new HashMap<>();
+  private final Map<String, ImportHandler> myImportHandlers = new HashMap<>();
+
+  /**
+   * Record of the imported files whose sessions are restored when the profilers start, or null if imported sessions are not kept.
+   */
+  @Nullable private final ImportedSessionsIndex myImportedSessionsIndex;
+
+  /**
+   * A map of Session's Id -> file it was imported from, for the sessions recorded in {@link #myImportedSessionsIndex}.
+   */
+  private final Map<Long, File> myImportedSessionFiles = new HashMap<>();
+
+  /**
+   * Ids of the sessions restored from {@link #myImportedSessionsIndex} that have not been queried yet. Unlike new imports, they are not
+   * selected when they show up.
+   */
+  private final Set<Long> myRestoredSessionIds = new HashSet<>();
+
+  private boolean myIsRestoringImportedSessions;
 
   private int importedSessionCount = 0;
 
@@ -156,6 +188,9 @@ public class SessionsManager extends AspectModel<SessionAspect> {
     myArtifactsFetchers.add(HprofSessionArtifact::getSessionArtifacts);
     myArtifactsFetchers.add(LegacyAllocationsSessionArtifact::getSessionArtifacts);
     myArtifactsFetchers.add(CpuCaptureSessionArtifact::getSessionArtifacts);
+
+    File indexFile = profilers.getIdeServices().getImportedSessionsIndexFile();
+    myImportedSessionsIndex = indexFile == null ? null : ImportedSessionsIndex.getInstance(indexFile.toPath());
   }
 
   @NotNull
@@ -259,7 +294,8 @@ public class SessionsManager extends AspectModel<SessionAspect> {
       // We found a new session we process it and update our internal state.
       if (sessionItem == null) {
         sessionItem = processSessionStarted(startEvent);
-        sessionStateChanged = true;
+        // Sessions restored from a previous run show up in the panel without replacing the selected session.
+        sessionStateChanged = !myRestoredSessionIds.remove(group.getGroupId());
       }
       // If we ended a session we process that end here.
       if (group.getEventsCount() == 2 && sessionItem.isOngoing()) {
@@ -515,6 +551,11 @@ public class SessionsManager extends AspectModel<SessionAspect> {
     // force an update so any artifacts (e.g. heap dump, cpu captures) are also removed from being displayed.
     mySessionItems.remove(session.getSessionId());
     updateSessionItems(Collections.emptyList());
+
+    File importedFile = myImportedSessionFiles.remove(session.getSessionId());
+    if (importedFile != null) {
+      myImportedSessionsIndex.remove(importedFile);
+    }
   }
 
   /**
@@ -540,6 +581,35 @@ public class SessionsManager extends AspectModel<SessionAspect> {
                                     long startTimestampEpochMs,
                                     Map<String, ByteString> byteCacheMap,
                                     Common.Event... events) {
+    createImportedSession(sessionName, sessionType, startTimestampNs, endTimestampNs, startTimestampEpochMs, byteCacheMap, null, events);
+  }
+
+  /**
+   * Same as {@link #createImportedSession(String, SessionData.SessionStarted.SessionType, long, long, long, Map, Common.Event...)}, except
+   * that the bytes of the session are read from files when they are queried instead of being held in memory. The files are known to the
+   * session's stream, so the bytes can be queried from any project the session shows up in, e.g. to export it before it is ever selected.
+   *
+   * @param byteFiles returns the file holding the bytes of the given id, or null if the session has none with that id.
+   */
+  public void createImportedSession(@NotNull String sessionName,
+                                    @NotNull SessionData.SessionStarted.SessionType sessionType,
+                                    long startTimestampNs,
+                                    long endTimestampNs,
+                                    long startTimestampEpochMs,
+                                    @NotNull Function<String, File> byteFiles,
+                                    Common.Event... events) {
+    createImportedSession(sessionName, sessionType, startTimestampNs, endTimestampNs, startTimestampEpochMs, Collections.emptyMap(),
+                          byteFiles, events);
+  }
+
+  private void createImportedSession(@NotNull String sessionName,
+                                     @NotNull SessionData.SessionStarted.SessionType sessionType,
+                                     long startTimestampNs,
+                                     long endTimestampNs,
+                                     long startTimestampEpochMs,
+                                     @NotNull Map<String, ByteString> byteCacheMap,
+                                     @Nullable Function<String, File> byteFiles,
+                                     Common.Event... events) {
     assert myProfilers.getIdeServices().getFeatureConfig().isUnifiedPipelineEnabled();
 
     EventStreamServer streamServer = new EventStreamServer(Long.toString(startTimestampEpochMs));
@@ -550,9 +620,10 @@ public class SessionsManager extends AspectModel<SessionAspect> {
       getLogger().error(String.format("Failed to create a event server. Aborting import for session %s", sessionName));
       return;
     }
-    Common.Stream stream = TransportService.getInstance().registerStreamServer(Common.Stream.Type.FILE, streamServer);
+    Common.Stream stream = myProfilers.getIdeServices().registerStreamServer(Common.Stream.Type.FILE, streamServer);
     myStreamIdToStreamServerMap.put(stream.getStreamId(), streamServer);
     streamServer.getByteCacheMap().putAll(byteCacheMap);
+    streamServer.setByteFiles(byteFiles);
     BlockingDeque<Event> deque = streamServer.getEventDeque();
     for (int i = 0; i < events.length; i++) {
       deque.offer(events[i]);
@@ -618,7 +689,7 @@ public class SessionsManager extends AspectModel<SessionAspect> {
    * @param extension extension of the file
    * @param handler   handles the file imported
    */
-  public void registerImportHandler(@NotNull String extension, @NotNull Consumer<File> handler) {
+  public void registerImportHandler(@NotNull String extension, @NotNull ImportHandler handler) {
     myImportHandlers.put(extension, handler);
   }
 
@@ -629,18 +700,71 @@ public class SessionsManager extends AspectModel<SessionAspect> {
    * @return true if import was successful, or false otherwise.
    */
   public boolean importSessionFromFile(@NotNull File file) {
-    int indexOfDot = file.getName().lastIndexOf('.');
-    if (indexOfDot == -1) {
+    ImportHandler handler = getImportHandler(file);
+    if (handler == null) {
       return false;
     }
-    String extension = StringUtil.toLowerCase(file.getName().substring(indexOfDot + 1));
-    if (myImportHandlers.get(extension) == null) {
-      return false;
+    long startTimestampEpochMs = System.currentTimeMillis();
+    handler.importFile(file, startTimestampEpochMs);
+    if (myImportedSessionsIndex != null && myProfilers.getIdeServices().getFeatureConfig().isUnifiedPipelineEnabled()) {
+      long sessionId = StudioProfilers.getFileCreationTimestampNs(file, startTimestampEpochMs);
+      // A file imported again keeps the session, and the import time, it was given the first time.
+      myImportedSessionFiles.putIfAbsent(sessionId, file);
+      myImportedSessionsIndex.add(file, startTimestampEpochMs);
     }
-    myImportHandlers.get(extension).accept(file);
     return true;
   }
 
+  /**
+   * Creates the sessions of the files imported in previous runs, without selecting them. Their import handlers defer reading the files
+   * until the sessions are selected, so this only takes the time to read the index.
+   */
+  public void restoreImportedSessions() {
+    if (myImportedSessionsIndex == null || !myProfilers.getIdeServices().getFeatureConfig().isUnifiedPipelineEnabled()) {
+      return;
+    }
+    // The sessions may already be in the datastore, e.g. restored by the profilers of another project.
+    update();
+    myIsRestoringImportedSessions = true;
+    try {
+      for (ImportedSessionsIndex.Entry entry : myImportedSessionsIndex.getEntries()) {
+        File file = entry.getFile();
+        ImportHandler handler = getImportHandler(file);
+        if (handler == null || !entry.isUnchanged()) {
+          // The file was moved, deleted or overwritten since it was imported, its session cannot be restored.
+          myImportedSessionsIndex.remove(file);
+          continue;
+        }
+        long sessionId = StudioProfilers.getFileCreationTimestampNs(file, entry.getStartTimestampEpochMs());
+        myImportedSessionFiles.put(sessionId, file);
+        if (!mySessionItems.containsKey(sessionId)) {
+          myRestoredSessionIds.add(sessionId);
+          handler.importFile(file, entry.getStartTimestampEpochMs());
+        }
+      }
+    }
+    finally {
+      myIsRestoringImportedSessions = false;
+    }
+  }
+
+  /**
+   * @return whether the import handlers are being called to restore the sessions of a previous run, rather than for a file the user picked.
+   */
+  public boolean isRestoringImportedSessions() {
+    return myIsRestoringImportedSessions;
+  }
+
+  @Nullable
+  private ImportHandler getImportHandler(@NotNull File file) {
+    int indexOfDot = file.getName().lastIndexOf('.');
+    if (indexOfDot == -1) {
+      return null;
+    }
+    String extension = StringUtil.toLowerCase(file.getName().substring(indexOfDot + 1));
+    return myImportHandlers.get(extension);
+  }
+
   /**
    * Return a unique Session ID
    */
@@ -15,6 +15,8 @@
  */
 package com.android.tools.profilers;
 
+import com.android.tools.idea.transport.EventStreamServer;
+import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.Cpu;
 import com.android.tools.profilers.analytics.FeatureTracker;
 import com.android.tools.profilers.cpu.FakeTracePreProcessor;
@@ -32,6 +34,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import kotlin.NotImplementedError;
@@ -165,6 +168,10 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
 
   @NotNull private final Set<String> myProjectClasses = new HashSet<>();
 
+  @Nullable private File myImportedSessionsIndexFile;
+
+  @Nullable private BiFunction<Common.Stream.Type, EventStreamServer, Common.Stream> myStreamServerRegistrar;
+
   public FakeIdeProfilerServices() {
     myPersistentPreferences = new FakeProfilerPreferences();
     myTemporaryPreferences = new FakeProfilerPreferences();
@@ -378,6 +385,29 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
     return Collections.singletonList(FAKE_SYMBOL_DIR);
   }
 
+  @Nullable
+  @Override
+  public File getImportedSessionsIndexFile() {
+    return myImportedSessionsIndexFile;
+  }
+
+  public void setImportedSessionsIndexFile(@Nullable File file) {
+    myImportedSessionsIndexFile = file;
+  }
+
+  @NotNull
+  @Override
+  public Common.Stream registerStreamServer(@NotNull Common.Stream.Type streamType, @NotNull EventStreamServer streamServer) {
+    if (myStreamServerRegistrar == null) {
+      throw new UnsupportedOperationException("Call setStreamServerRegistrar first, e.g. with FakeTransportService::registerStreamServer");
+    }
+    return myStreamServerRegistrar.apply(streamType, streamServer);
+  }
+
+  public void setStreamServerRegistrar(@Nullable BiFunction<Common.Stream.Type, EventStreamServer, Common.Stream> registrar) {
+    myStreamServerRegistrar = registrar;
+  }
+
   @Nullable
   public Notification getNotification() {
     return myNotification;
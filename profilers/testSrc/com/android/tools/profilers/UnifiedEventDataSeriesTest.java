@@ -19,6 +19,7 @@ import static com.android.tools.profiler.proto.Common.Event.EventGroupIds.NETWOR
 import static com.android.tools.profiler.proto.Common.Event.EventGroupIds.NETWORK_TX_VALUE;
 
 import com.android.tools.adtui.model.FakeTimer;
+import com.android.tools.adtui.model.LongDataSeries;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.idea.transport.faketransport.FakeGrpcChannel;
@@ -54,6 +55,7 @@ public class UnifiedEventDataSeriesTest {
                                                                         UnifiedEventDataSeries.fromFieldToDataExtractor(
                                                                           event -> event.getNetworkSpeed().getThroughput()));
     List<SeriesData<Long>> data1 = series1.getDataForRange(new Range(Integer.MIN_VALUE, Integer.MAX_VALUE));
+    Truth.assertThat(data1).isInstanceOf(LongDataSeries.View.class);
     Truth.assertThat(data1.stream().map(data -> data.x).collect(Collectors.toList())).containsExactly(1L, 3L, 5L);
     Truth.assertThat(data1.stream().map(data -> data.value).collect(Collectors.toList())).containsExactly(10L, 30L, 50L);
 
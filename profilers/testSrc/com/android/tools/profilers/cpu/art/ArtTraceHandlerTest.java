@@ -15,6 +15,8 @@
  */
 package com.android.tools.profilers.cpu.art;
 
+import com.android.tools.perflib.vmtrace.MethodInfo;
+import com.android.tools.perflib.vmtrace.TraceAction;
 import com.android.tools.perflib.vmtrace.VmTraceParser;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.CpuProfilerTestUtils;
@@ -97,6 +99,38 @@ public class ArtTraceHandlerTest {
     }
   }
 
+  @Test
+  public void testThreadsAreConstructedIndependently() {
+    ArtTraceHandler handler = new ArtTraceHandler();
+    handler.addThread(1, "main");
+    handler.addThread(2, "worker");
+    handler.addMethod(10, new MethodInfo(10, "com/foo/A", "a", "()V", "A.java", 1));
+    handler.addMethod(20, new MethodInfo(20, "com/foo/B", "b", "()V", "B.java", 1));
+    // Interleave the actions of both threads, plus a method that was never declared.
+    handler.addMethodAction(1, 10, TraceAction.METHOD_ENTER, 0, 0);
+    handler.addMethodAction(2, 20, TraceAction.METHOD_ENTER, 0, 1);
+    handler.addMethodAction(1, 30, TraceAction.METHOD_ENTER, 1, 2);
+    handler.addMethodAction(2, 20, TraceAction.METHOD_EXIT, 2, 3);
+    handler.addMethodAction(1, 30, TraceAction.METHOD_EXIT, 3, 4);
+    handler.addMethodAction(1, 10, TraceAction.METHOD_EXIT, 4, 5);
+
+    Map<CpuThreadInfo, CaptureNode> trees = handler.getThreadsGraph();
+    assertEquals(2, trees.size());
+    for (Map.Entry<CpuThreadInfo, CaptureNode> entry : trees.entrySet()) {
+      CaptureNode node = entry.getValue();
+      assertEquals(entry.getKey().getName(), node.getData().getId());
+      if (entry.getKey().getId() == 1) {
+        assertTrue(entry.getKey().isMainThread());
+        expectedChildrenIds(node, "com/foo/A.a()V");
+        expectedChildrenIds(node.getChildren().get(0), "unknown");
+        assertEquals(2, node.getChildren().get(0).getChildren().get(0).getDepth());
+      }
+      else {
+        expectedChildrenIds(node, "com/foo/B.b()V");
+      }
+    }
+  }
+
   private static CaptureNode parseCaptureNode() throws IOException {
     ArtTraceHandler handler = new ArtTraceHandler();
     VmTraceParser parser = new VmTraceParser(CpuProfilerTestUtils.getTraceFile("basic.trace"), handler);
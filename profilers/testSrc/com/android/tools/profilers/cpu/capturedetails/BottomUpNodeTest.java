@@ -336,6 +336,32 @@ public class BottomUpNodeTest {
     traverseAndCheck(root, expectedNodes);
   }
 
+  /**
+   * The structure of the tree is a single chain of alternating A and B calls under main, each one starting 1 after and ending 1 before
+   * its caller:
+   * main [0..20000] -> A [1..19999] -> B [2..19998] -> A [3..19997] -> ...
+   */
+  @Test
+  public void testDeepChain() {
+    int depth = 10_000;
+    CaptureNode root = newNode("main", 0, depth * 2);
+    CaptureNode last = root;
+    for (int i = 1; i < depth; i++) {
+      CaptureNode node = newNode(i % 2 == 1 ? "A" : "B", i, depth * 2 - i);
+      last.addChild(node);
+      last = node;
+    }
+
+    BottomUpNode bottomUp = new BottomUpNode(root);
+    BottomUpNode a = bottomUp.getChildren().stream().filter(child -> child.getId().equals("A")).findFirst().get();
+    assertTrue(a.isChildrenBuilt());
+    a.update(new Range(root.getStart(), root.getEnd()));
+    // Only the outermost A counts towards the total, as all the other ones are nested in it.
+    assertEquals(depth * 2 - 2, a.getGlobalTotal(), EPS);
+    // Each of the depth / 2 calls to A spends 2 in itself.
+    assertEquals(depth, a.getSelf(), EPS);
+  }
+
   private static void traverseAndCheck(CaptureNode root, List<ExpectedNode> expectedNodes) {
     List<BottomUpNode> traverseOrder = new ArrayList<>();
     traverse(new BottomUpNode(root), traverseOrder);
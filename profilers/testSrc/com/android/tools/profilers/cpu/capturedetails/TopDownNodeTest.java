@@ -91,6 +91,39 @@ public class TopDownNodeTest {
     checkChildrenUnmatchStatus(topDown.getChildren().get(2), true, true);
   }
 
+  @Test
+  public void testMergedNodesKeepExecutionOrder() {
+    CaptureNode root = createTree();
+    TopDownNode topDown = new TopDownNode(root);
+
+    // A -> B is merged from the first and the last child of A, in that order.
+    TopDownNode b = topDown.getChildren().get(0);
+    assertEquals(2, b.getNodes().size());
+    assertEquals(root.getChildren().get(0), b.getNodes().get(0));
+    assertEquals(root.getChildren().get(2), b.getNodes().get(1));
+  }
+
+  @Test
+  public void testDeepTreeDoesNotOverflowTheStack() {
+    int depth = 100_000;
+    CaptureNode root = newNode("A", 0, depth * 2);
+    CaptureNode current = root;
+    for (int i = 1; i < depth; i++) {
+      CaptureNode child = newNode(i % 2 == 0 ? "A" : "B", i, depth * 2 - i);
+      current.addChild(child);
+      current = child;
+    }
+
+    TopDownNode topDown = new TopDownNode(root);
+    int topDownDepth = 1;
+    while (!topDown.getChildren().isEmpty()) {
+      assertEquals(1, topDown.getChildren().size());
+      topDown = topDown.getChildren().get(0);
+      topDownDepth++;
+    }
+    assertEquals(depth, topDownDepth);
+  }
+
   @Test
   public void testTreeTime() {
     CaptureNode root = newNode("A", 0, 10);
@@ -16,7 +16,7 @@
 package com.android.tools.profilers.cpu.perfetto
 
 import com.android.tools.profilers.cpu.CpuProfilerTestUtils
-import com.android.tools.profilers.cpu.atrace.PerfettoPacketDBSorter
+import com.android.tools.profilers.cpu.atrace.PerfettoPacketSorter
 import com.google.common.truth.Truth.assertThat
 import org.junit.Test
 import perfetto.protos.PerfettoTrace
@@ -26,7 +26,7 @@ class PerfettoSorterTest {
 
   @Test
   fun formattedLinesAreReturnedOnNext() {
-    val sorter = PerfettoPacketDBSorter()
+    val sorter = PerfettoPacketSorter()
     sorter.addLine(0, "Some line")
     assertThat(sorter.hasNext()).isFalse()
     sorter.resetForIterator()
@@ -36,7 +36,7 @@ class PerfettoSorterTest {
 
   @Test
   fun hasNextCanBeCalledMultipleTimes() {
-    val sorter = PerfettoPacketDBSorter()
+    val sorter = PerfettoPacketSorter()
     sorter.addLine(0, "Some Line")
     assertThat(sorter.hasNext()).isFalse()
     sorter.resetForIterator()
@@ -45,4 +45,27 @@ class PerfettoSorterTest {
     assertThat(sorter.hasNext()).isTrue()
     assertThat(sorter.next()).isEqualTo("Some Line")
   }
+
+  @Test
+  fun linesAreSortedByTimestampAcrossSpilledRuns() {
+    val sorter = PerfettoPacketSorter(4)
+    val timestamps = listOf(9L, 3L, 7L, 1L, 8L, 2L, 6L, 0L, 5L, 4L, 3L)
+    timestamps.forEachIndexed { index, timestamp -> sorter.addLine(timestamp, "$timestamp-$index") }
+    sorter.resetForIterator()
+    assertThat(sorter.spilledRunCount).isEqualTo(2)
+
+    val lines = mutableListOf<String>()
+    sorter.forEachRemaining { lines.add(it) }
+    // Lines with the same timestamp keep the order they were added in.
+    assertThat(lines).containsExactly("0-7", "1-3", "2-5", "3-1", "3-10", "4-9", "5-8", "6-6", "7-2", "8-4", "9-0").inOrder()
+    sorter.close()
+  }
+
+  @Test
+  fun emptySorterHasNoLines() {
+    val sorter = PerfettoPacketSorter()
+    sorter.resetForIterator()
+    assertThat(sorter.hasNext()).isFalse()
+    sorter.close()
+  }
 }
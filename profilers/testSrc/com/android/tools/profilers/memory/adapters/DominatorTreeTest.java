@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Test;
+
+public class DominatorTreeTest {
+  private final ForkJoinPool myPool = new ForkJoinPool(4);
+
+  @After
+  public void tearDown() {
+    myPool.shutdownNow();
+  }
+
+  @Test
+  public void diamondIsDominatedByItsTop() {
+    // 0 -> 1 -> 3 -> 4
+    // 0 -> 2 -> 3
+    DominatorTree tree = compute(5, new int[][]{{0, 1}, {0, 2}, {1, 3}, {2, 3}, {3, 4}}, new int[]{0}, 1, 2, 4, 8, 16);
+
+    assertThat(tree.getImmediateDominator(0)).isEqualTo(DominatorTree.NO_DOMINATOR);
+    assertThat(tree.getImmediateDominator(1)).isEqualTo(0);
+    assertThat(tree.getImmediateDominator(2)).isEqualTo(0);
+    assertThat(tree.getImmediateDominator(3)).isEqualTo(0);
+    assertThat(tree.getImmediateDominator(4)).isEqualTo(3);
+
+    assertThat(tree.getRetainedSize(0)).isEqualTo(31);
+    assertThat(tree.getRetainedSize(1)).isEqualTo(2);
+    assertThat(tree.getRetainedSize(2)).isEqualTo(4);
+    assertThat(tree.getRetainedSize(3)).isEqualTo(24);
+    assertThat(tree.getRetainedSize(4)).isEqualTo(16);
+
+    assertThat(tree.getDepth(0)).isEqualTo(0);
+    assertThat(tree.getDepth(3)).isEqualTo(2);
+    assertThat(tree.getDepth(4)).isEqualTo(3);
+  }
+
+  @Test
+  public void nodesSharedByRootsHaveNoDominator() {
+    // 0 -> 2 <- 1, 2 -> 3
+    DominatorTree tree = compute(4, new int[][]{{0, 2}, {1, 2}, {2, 3}}, new int[]{0, 1}, 1, 1, 1, 1);
+
+    assertThat(tree.getImmediateDominator(2)).isEqualTo(DominatorTree.NO_DOMINATOR);
+    assertThat(tree.getImmediateDominator(3)).isEqualTo(2);
+    assertThat(tree.getRetainedSize(0)).isEqualTo(1);
+    assertThat(tree.getRetainedSize(1)).isEqualTo(1);
+    assertThat(tree.getRetainedSize(2)).isEqualTo(2);
+    assertThat(tree.getDepth(2)).isEqualTo(1);
+  }
+
+  @Test
+  public void cyclesAndBackEdges() {
+    // 0 -> 1 -> 2 -> 3 -> 1, 0 -> 3
+    DominatorTree tree = compute(4, new int[][]{{0, 1}, {1, 2}, {2, 3}, {3, 1}, {0, 3}}, new int[]{0}, 1, 1, 1, 1);
+
+    assertThat(tree.getImmediateDominator(1)).isEqualTo(0);
+    assertThat(tree.getImmediateDominator(2)).isEqualTo(1);
+    assertThat(tree.getImmediateDominator(3)).isEqualTo(0);
+    assertThat(tree.getRetainedSize(1)).isEqualTo(2);
+    assertThat(tree.getDepth(2)).isEqualTo(2);
+    assertThat(tree.getDepth(3)).isEqualTo(1);
+  }
+
+  @Test
+  public void unreachableNodesRetainNothing() {
+    // 1 -> 2 is not reachable from the root 0.
+    DominatorTree tree = compute(3, new int[][]{{1, 2}}, new int[]{0}, 5, 5, 5);
+
+    assertThat(tree.getRetainedSize(0)).isEqualTo(5);
+    assertThat(tree.getRetainedSize(1)).isEqualTo(0);
+    assertThat(tree.getRetainedSize(2)).isEqualTo(0);
+    assertThat(tree.getImmediateDominator(2)).isEqualTo(DominatorTree.NO_DOMINATOR);
+    assertThat(tree.getDepth(1)).isEqualTo(DominatorTree.UNREACHABLE_DEPTH);
+    assertThat(tree.getDepth(2)).isEqualTo(DominatorTree.UNREACHABLE_DEPTH);
+  }
+
+  @Test
+  public void longChainDoesNotOverflowTheStack() {
+    int nodeCount = 1_000_000;
+    int[][] edges = new int[nodeCount - 1][];
+    for (int i = 0; i < nodeCount - 1; i++) {
+      edges[i] = new int[]{i, i + 1};
+    }
+    long[] shallowSizes = new long[nodeCount];
+    Arrays.fill(shallowSizes, 1);
+    DominatorTree tree = compute(edges, new int[]{0}, shallowSizes);
+
+    assertThat(tree.getRetainedSize(0)).isEqualTo(nodeCount);
+    assertThat(tree.getRetainedSize(nodeCount / 2)).isEqualTo(nodeCount - nodeCount / 2);
+    assertThat(tree.getImmediateDominator(nodeCount - 1)).isEqualTo(nodeCount - 2);
+    assertThat(tree.getDepth(nodeCount - 1)).isEqualTo(nodeCount - 1);
+  }
+
+  @Test
+  public void wideLevelsAreAccumulatedInParallel() {
+    // A root with many children, each of them with two children of its own, so the last two levels are large enough to be split.
+    int childCount = 100_000;
+    int nodeCount = 1 + childCount * 3;
+    int[][] edges = new int[childCount * 3][];
+    for (int i = 0; i < childCount; i++) {
+      int child = 1 + i;
+      edges[i * 3] = new int[]{0, child};
+      edges[i * 3 + 1] = new int[]{child, 1 + childCount + i * 2};
+      edges[i * 3 + 2] = new int[]{child, 2 + childCount + i * 2};
+    }
+    long[] shallowSizes = new long[nodeCount];
+    Arrays.fill(shallowSizes, 3);
+    DominatorTree tree = compute(edges, new int[]{0}, shallowSizes);
+
+    assertThat(tree.getRetainedSize(0)).isEqualTo(3L * nodeCount);
+    for (int i = 0; i < childCount; i++) {
+      assertThat(tree.getRetainedSize(1 + i)).isEqualTo(9);
+    }
+  }
+
+  @NotNull
+  private DominatorTree compute(int nodeCount, @NotNull int[][] edges, @NotNull int[] roots, long... shallowSizes) {
+    assertThat(shallowSizes.length).isEqualTo(nodeCount);
+    return compute(edges, roots, shallowSizes);
+  }
+
+  @NotNull
+  private DominatorTree compute(@NotNull int[][] edges, @NotNull int[] roots, @NotNull long[] shallowSizes) {
+    int nodeCount = shallowSizes.length;
+    int[] successorOffsets = new int[nodeCount + 1];
+    for (int[] edge : edges) {
+      successorOffsets[edge[0] + 1]++;
+    }
+    for (int i = 0; i < nodeCount; i++) {
+      successorOffsets[i + 1] += successorOffsets[i];
+    }
+    int[] successors = new int[edges.length];
+    int[] cursor = Arrays.copyOf(successorOffsets, nodeCount);
+    for (int[] edge : edges) {
+      successors[cursor[edge[0]]++] = edge[1];
+    }
+    return DominatorTree.compute(successorOffsets, successors, roots, shallowSizes, myPool);
+  }
+}
@@ -43,6 +43,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -134,6 +136,9 @@ public class HeapDumpCaptureObjectTest {
     InstanceObject instance1 = findChildClassSetWithName(classClassifier, "Class1").getInstancesStream().findFirst().orElse(null);
     verifyInstance(instance0, "Class0@1 (0x1)", 0, 1, 0);
     verifyInstance(instance1, "Class1@2 (0x2)", 1, 0, 1);
+    // 1 is the only path to 2, so it retains it.
+    assertEquals(instance1.getShallowSize(), instance1.getRetainedSize());
+    assertEquals(instance0.getShallowSize() + instance1.getRetainedSize(), instance0.getRetainedSize());
 
     FieldObject field0 = instance0.getFields().get(0);
     assertEquals(field0.getAsInstance(), instance1);
@@ -195,6 +200,23 @@ public class HeapDumpCaptureObjectTest {
     assertEquals(0, capture.getHeapSets().size());
   }
 
+  @Test
+  public void testStaysDoneLoadingAfterUnload() throws Exception {
+    HeapDumpInfo dumpInfo = HeapDumpInfo.newBuilder().setStartTime(0).setEndTime(1).build();
+    HeapDumpCaptureObject capture =
+      new HeapDumpCaptureObject(new ProfilerClient(myGrpcChannel.getName()), ProfilersTestData.SESSION_DATA,
+                                dumpInfo, null, myIdeProfilerServices.getFeatureTracker(), myStage);
+
+    File hprof = TestUtils.getWorkspaceFile("tools/adt/idea/profilers/testData/hprofs/displayingbitmaps_leakedActivity.hprof");
+    myTransportService.addFile(Long.toString(0), ByteString.copyFrom(Files.readAllBytes(hprof.toPath())));
+    capture.load(null, null);
+    assertTrue(capture.isDoneLoading());
+
+    capture.unload();
+    assertTrue(capture.isDoneLoading());
+    assertFalse(capture.isError());
+  }
+
   @Test
   public void testHeapDumpActivityLeak() throws Exception {
     HeapDumpInfo dumpInfo = HeapDumpInfo.newBuilder().setStartTime(0).setEndTime(1).build();
@@ -241,6 +263,54 @@ public class HeapDumpCaptureObjectTest {
     Truth.assertThat(capture.getInstances().count()).isEqualTo(allInstanceCount);
   }
 
+  @Test
+  public void testDominatorsAreComputedAfterClassesWhenJoinerIsGiven() throws Exception {
+    long startTimeNs = 3;
+    HeapDumpInfo dumpInfo = HeapDumpInfo.newBuilder().setStartTime(startTimeNs).setEndTime(8).build();
+    HeapDumpCaptureObject capture =
+      new HeapDumpCaptureObject(new ProfilerClient(myGrpcChannel.getName()), ProfilersTestData.SESSION_DATA,
+                                dumpInfo, null, myIdeProfilerServices.getFeatureTracker(), myStage);
+
+    SnapshotBuilder snapshotBuilder = new SnapshotBuilder(2, 0, 0)
+      .addReferences(1, 2)
+      .addRoot(1);
+    myTransportService.addFile(Long.toString(startTimeNs), ByteString.copyFrom(snapshotBuilder.getByteBuffer()));
+
+    // Hold on to the dominator computation so we can observe the capture before it finishes.
+    CountDownLatch dominatorsLatch = new CountDownLatch(1);
+    capture.getInstanceFilterExecutor().execute(() -> {
+      try {
+        dominatorsLatch.await();
+      }
+      catch (InterruptedException ignored) {
+      }
+    });
+    List<Runnable> joinedTasks = new ArrayList<>();
+    capture.load(null, joinedTasks::add);
+    assertTrue(capture.isDoneLoading());
+    assertTrue(capture.isComputingDominators());
+
+    // Classes and instances are available right away, retained sizes and depths are not.
+    HeapSet testHeap = capture.getHeapSets().stream().filter(heap -> "testHeap".equals(heap.getName())).findFirst().orElse(null);
+    assertNotNull(testHeap);
+    assertEquals(6, testHeap.getInstancesCount());
+    assertTrue(testHeap.getInstancesStream().allMatch(instance -> instance.getDepth() == MemoryObject.INVALID_VALUE));
+    assertEquals(0, testHeap.getTotalRetainedSize());
+
+    dominatorsLatch.countDown();
+    CountDownLatch doneLatch = new CountDownLatch(1);
+    capture.getInstanceFilterExecutor().execute(doneLatch::countDown);
+    doneLatch.await();
+    assertFalse(capture.isComputingDominators());
+    joinedTasks.forEach(Runnable::run);
+
+    InstanceObject instance1 = testHeap.getInstancesStream()
+      .filter(instance -> "Class1".equals(instance.getClassEntry().getClassName())).findFirst().orElse(null);
+    assertNotNull(instance1);
+    assertEquals(1, instance1.getDepth());
+    Truth.assertThat(instance1.getRetainedSize()).isAtLeast(0L);
+  }
+
   private static void verifyInstance(@NotNull InstanceObject instance,
                                      @NotNull String valueText,
                                      int depth,
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import static com.android.tools.profilers.memory.MemoryProfilerConfiguration.ClassGrouping.ARRANGE_BY_CLASS;
+import static com.android.tools.profilers.memory.MemoryProfilerConfiguration.ClassGrouping.ARRANGE_BY_PACKAGE;
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HeapSetTest {
+  private FakeCaptureObject myCaptureObject;
+  private HeapSet myHeapSet;
+
+  @Before
+  public void setUp() {
+    myCaptureObject = new FakeCaptureObject.Builder().build();
+    myCaptureObject.addInstanceObjects(ImmutableSet.of(
+      new FakeInstanceObject.Builder(myCaptureObject, 1, "com.foo.A").setShallowSize(1).build(),
+      new FakeInstanceObject.Builder(myCaptureObject, 1, "com.foo.A").setShallowSize(2).build(),
+      new FakeInstanceObject.Builder(myCaptureObject, 2, "com.bar.B").setShallowSize(4).build()));
+    myHeapSet = myCaptureObject.getHeapSet(FakeCaptureObject.DEFAULT_HEAP_ID);
+  }
+
+  @Test
+  public void switchingBackReusesThePreviousPartition() {
+    List<ClassifierSet> byClass = myHeapSet.getChildrenClassifierSets();
+    assertThat(getNames(byClass)).containsExactly("A", "B");
+
+    myHeapSet.setClassGrouping(ARRANGE_BY_PACKAGE);
+    assertThat(getNames(myHeapSet.getChildrenClassifierSets())).containsExactly("com");
+
+    myHeapSet.setClassGrouping(ARRANGE_BY_CLASS);
+    List<ClassifierSet> byClassAgain = myHeapSet.getChildrenClassifierSets();
+    assertThat(byClassAgain).hasSize(byClass.size());
+    for (int i = 0; i < byClass.size(); i++) {
+      assertThat(byClassAgain.get(i)).isSameAs(byClass.get(i));
+    }
+    assertThat(myHeapSet.getInstancesCount()).isEqualTo(3);
+    assertThat(myHeapSet.getTotalShallowSize()).isEqualTo(7);
+  }
+
+  @Test
+  public void modifiedHeapIsPartitionedAgain() {
+    List<ClassifierSet> byClass = myHeapSet.getChildrenClassifierSets();
+    myHeapSet.setClassGrouping(ARRANGE_BY_PACKAGE);
+    myHeapSet.addDeltaInstanceObject(new FakeInstanceObject.Builder(myCaptureObject, 3, "com.baz.C").setShallowSize(8).build());
+
+    myHeapSet.setClassGrouping(ARRANGE_BY_CLASS);
+    List<ClassifierSet> byClassAgain = myHeapSet.getChildrenClassifierSets();
+    assertThat(getNames(byClassAgain)).containsExactly("A", "B", "C");
+    assertThat(byClassAgain.get(0)).isNotSameAs(byClass.get(0));
+    assertThat(myHeapSet.getTotalShallowSize()).isEqualTo(15);
+  }
+
+  @Test
+  public void preparedPartitionIsUsedBySetClassGrouping() {
+    List<Runnable> poolTasks = new ArrayList<>();
+    CompletableFuture<Void> prepared = myHeapSet.prepareClassGrouping(ARRANGE_BY_PACKAGE, poolTasks::add, Runnable::run);
+    assertThat(prepared.isDone()).isFalse();
+    assertThat(poolTasks).hasSize(1);
+    poolTasks.forEach(Runnable::run);
+    assertThat(prepared.isDone()).isTrue();
+
+    // Nothing is left to partition once the arrangement is applied.
+    myHeapSet.setClassGrouping(ARRANGE_BY_PACKAGE);
+    assertThat(myHeapSet.mySnapshotInstances).isEmpty();
+    assertThat(myHeapSet.myDeltaInstances).isEmpty();
+    assertThat(getNames(myHeapSet.getChildrenClassifierSets())).containsExactly("com");
+    assertThat(myHeapSet.getInstancesCount()).isEqualTo(3);
+
+    // The current arrangement doesn't need to be prepared.
+    assertThat(myHeapSet.prepareClassGrouping(ARRANGE_BY_PACKAGE, poolTasks::add, Runnable::run).isDone()).isTrue();
+  }
+
+  @Test
+  public void preparedPartitionIsDroppedIfHeapChanges() {
+    List<Runnable> poolTasks = new ArrayList<>();
+    CompletableFuture<Void> prepared = myHeapSet.prepareClassGrouping(ARRANGE_BY_PACKAGE, poolTasks::add, Runnable::run);
+    myHeapSet.addDeltaInstanceObject(new FakeInstanceObject.Builder(myCaptureObject, 3, "org.baz.C").build());
+    poolTasks.forEach(Runnable::run);
+    assertThat(prepared.isDone()).isTrue();
+
+    myHeapSet.setClassGrouping(ARRANGE_BY_PACKAGE);
+    assertThat(getNames(myHeapSet.getChildrenClassifierSets())).containsExactly("com", "org");
+    assertThat(myHeapSet.getInstancesCount()).isEqualTo(4);
+  }
+
+  @Test
+  public void childrenCanBeCheckedWithoutPartitioning() {
+    myHeapSet.setClassGrouping(ARRANGE_BY_PACKAGE);
+    assertThat(myHeapSet.hasChildrenClassifierSets()).isTrue();
+    assertThat(myHeapSet.myClassifier).isNull();
+
+    ClassifierSet classSet = myHeapSet.getChildrenClassifierSets().get(0).getChildrenClassifierSets().get(0).getChildrenClassifierSets().get(0);
+    assertThat(classSet).isInstanceOf(ClassSet.class);
+    assertThat(classSet.hasChildrenClassifierSets()).isFalse();
+  }
+
+  @NotNull
+  private static List<String> getNames(@NotNull List<ClassifierSet> classifierSets) {
+    return classifierSets.stream().map(ClassifierSet::getName).collect(Collectors.toList());
+  }
+}
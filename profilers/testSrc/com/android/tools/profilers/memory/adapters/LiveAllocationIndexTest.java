@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+public class LiveAllocationIndexTest {
+  @Test
+  public void allocationDataIsKept() {
+    LiveAllocationIndex index = new LiveAllocationIndex();
+    index.addAllocation(10, 1, 2, 3, 4, 5, 6);
+
+    assertThat(index.getEventCount()).isEqualTo(1);
+    assertThat(index.isFreeEvent(0)).isFalse();
+    int allocation = index.getEventAllocation(0);
+    assertThat(index.getTag(allocation)).isEqualTo(1);
+    assertThat(index.getClassTag(allocation)).isEqualTo(2);
+    assertThat(index.getStackId(allocation)).isEqualTo(3);
+    assertThat(index.getThreadId(allocation)).isEqualTo(4);
+    assertThat(index.getSize(allocation)).isEqualTo(5);
+    assertThat(index.getHeapId(allocation)).isEqualTo(6);
+    assertThat(index.getAllocationTimestamp(allocation)).isEqualTo(10);
+  }
+
+  @Test
+  public void freesReferToTheirAllocation() {
+    LiveAllocationIndex index = new LiveAllocationIndex();
+    index.addAllocation(10, 1, 0, 0, 0, 8, 0);
+    index.addAllocation(20, 2, 0, 0, 0, 8, 0);
+    index.addFree(30, 1);
+    // Frees of allocations that aren't known are dropped.
+    index.addFree(40, 3);
+
+    assertThat(index.getEventCount()).isEqualTo(3);
+    assertThat(index.isFreeEvent(2)).isTrue();
+    assertThat(index.getEventAllocation(2)).isEqualTo(index.getEventAllocation(0));
+    assertThat(index.getEventTimestamp(2)).isEqualTo(30);
+  }
+
+  @Test
+  public void eventIndexIsTheFirstEventAtOrAfterTheTimestamp() {
+    LiveAllocationIndex index = new LiveAllocationIndex();
+    assertThat(index.getEventIndex(10)).isEqualTo(0);
+
+    index.addAllocation(10, 1, 0, 0, 0, 8, 0);
+    index.addAllocation(20, 2, 0, 0, 0, 8, 0);
+    index.addAllocation(20, 3, 0, 0, 0, 8, 0);
+    index.addAllocation(30, 4, 0, 0, 0, 8, 0);
+
+    assertThat(index.getEventIndex(0)).isEqualTo(0);
+    assertThat(index.getEventIndex(10)).isEqualTo(0);
+    assertThat(index.getEventIndex(11)).isEqualTo(1);
+    assertThat(index.getEventIndex(20)).isEqualTo(1);
+    assertThat(index.getEventIndex(21)).isEqualTo(3);
+    assertThat(index.getEventIndex(31)).isEqualTo(4);
+  }
+
+  @Test
+  public void liveAllocationsExcludeEventsAtTheTimestamp() {
+    LiveAllocationIndex index = new LiveAllocationIndex();
+    index.addAllocation(10, 1, 0, 0, 0, 8, 0);
+    index.addAllocation(20, 2, 0, 0, 0, 8, 0);
+    index.addFree(30, 1);
+
+    assertThat(getTags(index, 10)).isEmpty();
+    assertThat(getTags(index, 20)).containsExactly(1);
+    assertThat(getTags(index, 30)).containsExactly(1, 2).inOrder();
+    assertThat(getTags(index, 31)).containsExactly(2);
+  }
+
+  @Test
+  public void liveAllocationsMatchAFullReplay() {
+    Random random = new Random(0);
+    LiveAllocationIndex index = new LiveAllocationIndex();
+    List<long[]> events = new ArrayList<>();
+    List<Integer> live = new ArrayList<>();
+    int nextTag = 1;
+    for (long timestamp = 0; timestamp < 100_000; timestamp++) {
+      // Let the live set grow for a while, then shrink, so checkpoints are taken at different intervals.
+      boolean allocate = live.isEmpty() || random.nextInt(100) < (timestamp < 60_000 ? 70 : 30);
+      if (allocate) {
+        index.addAllocation(timestamp, nextTag, 0, 0, 0, 8, 0);
+        events.add(new long[]{timestamp, nextTag});
+        live.add(nextTag++);
+      }
+      else {
+        int tag = live.remove(random.nextInt(live.size()));
+        index.addFree(timestamp, tag);
+        events.add(new long[]{timestamp, -tag});
+      }
+    }
+    assertThat(index.getCheckpointCount()).isGreaterThan(1);
+
+    for (int i = 0; i < 50; i++) {
+      long timestamp = random.nextInt(100_001);
+      Map<Integer, Boolean> expected = new LinkedHashMap<>();
+      for (long[] event : events) {
+        if (event[0] >= timestamp) {
+          break;
+        }
+        if (event[1] > 0) {
+          expected.put((int)event[1], true);
+        }
+        else {
+          expected.remove((int)-event[1]);
+        }
+      }
+      assertThat(getTags(index, timestamp)).containsExactlyElementsIn(expected.keySet()).inOrder();
+    }
+  }
+
+  private static List<Integer> getTags(LiveAllocationIndex index, long timestamp) {
+    List<Integer> tags = new ArrayList<>();
+    for (int allocation : index.getLiveAllocations(timestamp)) {
+      tags.add(index.getTag(allocation));
+    }
+    return tags;
+  }
+}
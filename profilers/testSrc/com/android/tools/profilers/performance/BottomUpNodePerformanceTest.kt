@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.performance
+
+import com.android.testutils.TestUtils
+import com.android.tools.adtui.model.Range
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.WindowDeviationAnalyzer
+import com.android.tools.profilers.cpu.CaptureNode
+import com.android.tools.profilers.cpu.capturedetails.BottomUpNode
+import com.android.tools.profilers.cpu.nodemodel.SingleNameModel
+import com.android.tools.profilers.cpu.simpleperf.SimpleperfTraceParser
+import org.junit.Test
+import java.time.Instant
+import java.util.Random
+import java.util.concurrent.TimeUnit
+
+/**
+ * Times building and updating bottom-up trees, for the threads of a recorded simpleperf trace and for a synthetic thread with deep native
+ * call stacks, where walking up every call stack used to make updates quadratic.
+ */
+class BottomUpNodePerformanceTest {
+  companion object {
+    private const val TRACE_PATH = "tools/adt/idea/profilers/testData/cputraces/simpleperf_callchain.trace"
+    private const val DEEP_STACK_SAMPLES = 2_000
+    private const val DEEP_STACK_DEPTH = 500
+    private const val DEEP_STACK_METHODS = 200
+    private const val EXPANDED_LEVELS = 3
+  }
+
+  private val benchmark = Benchmark.Builder("Bottom Up Node Timings (Millis)").setProject("Android Studio Profilers").build()
+
+  @Test
+  fun runPerformanceTest() {
+    val capture = SimpleperfTraceParser().parse(TestUtils.getWorkspaceFile(TRACE_PATH), 0)
+    recordMetric("Simpleperf-BuildAndUpdate", measureMillis {
+      capture.captureNodes.forEach { buildAndUpdate(it) }
+    })
+
+    recordMetric("DeepStacks-BuildAndUpdate", measureMillis { buildAndUpdate(createDeepStackTree()) })
+  }
+
+  private fun buildAndUpdate(root: CaptureNode) {
+    val range = Range(root.start.toDouble(), root.end.toDouble())
+    var level = listOf(BottomUpNode(root))
+    for (i in 0 until EXPANDED_LEVELS) {
+      level.forEach {
+        it.buildChildren()
+        it.update(range)
+      }
+      level = level.flatMap { it.children }
+    }
+  }
+
+  /**
+   * Every sample is a call stack of [DEEP_STACK_DEPTH] frames picked from a small set of methods, the way sampled native stacks look.
+   */
+  private fun createDeepStackTree(): CaptureNode {
+    val random = Random(0)
+    val models = List(DEEP_STACK_METHODS) { SingleNameModel("native_method_$it") }
+    val root = newNode(SingleNameModel("main"), 0, DEEP_STACK_SAMPLES * 10L)
+    for (sample in 0 until DEEP_STACK_SAMPLES) {
+      var parent = root
+      for (depth in 0 until DEEP_STACK_DEPTH) {
+        val node = newNode(models[random.nextInt(DEEP_STACK_METHODS)], sample * 10L, sample * 10L + 9)
+        parent.addChild(node)
+        parent = node
+      }
+    }
+    return root
+  }
+
+  private fun newNode(model: SingleNameModel, start: Long, end: Long) = CaptureNode(model).apply {
+    startGlobal = start
+    endGlobal = end
+    startThread = start
+    endThread = end
+  }
+
+  private fun measureMillis(block: () -> Unit): Long {
+    val startTime = System.nanoTime()
+    block()
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)
+  }
+
+  private fun recordMetric(name: String, value: Long) {
+    val metric = Metric(name)
+    metric.addSamples(benchmark, Metric.MetricSample(Instant.now().toEpochMilli(), value))
+    metric.setAnalyzers(benchmark, setOf(WindowDeviationAnalyzer.Builder()
+                                           .addMeanTolerance(WindowDeviationAnalyzer.MeanToleranceParams.Builder().build())
+                                           .build()))
+    metric.commit()
+  }
+}
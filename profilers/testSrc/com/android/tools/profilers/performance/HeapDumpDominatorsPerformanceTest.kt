@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.performance
+
+import com.android.testutils.TestUtils
+import com.android.tools.perflib.heap.Snapshot
+import com.android.tools.perflib.heap.io.MemoryMappedFileBuffer
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.WindowDeviationAnalyzer
+import com.android.tools.profilers.memory.adapters.DominatorTree
+import com.android.tools.profilers.memory.adapters.HeapDumpDominators
+import com.android.tools.proguard.ProguardMap
+import org.junit.Test
+import java.time.Instant
+import java.util.Random
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares perflib's dominator computation with [HeapDumpDominators] on a real heap dump, and times [DominatorTree] on its own on a
+ * synthetic heap-shaped graph that is much larger than any dump we can check in.
+ */
+class HeapDumpDominatorsPerformanceTest {
+  companion object {
+    private const val HPROF_PATH = "tools/adt/idea/profilers/testData/hprofs/displayingbitmaps_leakedActivity.hprof"
+    private const val SYNTHETIC_NODE_COUNT = 10_000_000
+    private const val SYNTHETIC_ROOT_COUNT = 5_000
+  }
+
+  private val benchmark = Benchmark.Builder("Heap Dump Dominators Timings (Millis)").setProject("Android Studio Profilers").build()
+
+  @Test
+  fun runPerformanceTest() {
+    val hprof = TestUtils.getWorkspaceFile(HPROF_PATH)
+    // Both computations cache their results in the snapshot one way or another, so each one gets a fresh snapshot.
+    val perflibSnapshot = Snapshot.createSnapshot(MemoryMappedFileBuffer(hprof), ProguardMap(), emptyList())
+    recordMetric("Dominators-Perflib", measureMillis { perflibSnapshot.computeDominators() })
+    val snapshot = Snapshot.createSnapshot(MemoryMappedFileBuffer(hprof), ProguardMap(), emptyList())
+    recordMetric("Dominators-HeapDumpDominators", measureMillis { HeapDumpDominators.compute(snapshot, ForkJoinPool.commonPool()) })
+
+    // Objects mostly reference a handful of recently allocated objects, with some long-range references mixed in, which gives the deep
+    // and narrow dominator trees typical of a heap.
+    val random = Random(0)
+    val successorOffsets = IntArray(SYNTHETIC_NODE_COUNT + 1)
+    val successors = IntArray(SYNTHETIC_NODE_COUNT * 3)
+    var edgeCount = 0
+    for (node in 0 until SYNTHETIC_NODE_COUNT) {
+      for (i in 0 until 3) {
+        val target = if (random.nextInt(10) == 0) random.nextInt(SYNTHETIC_NODE_COUNT) else node + 1 + random.nextInt(16)
+        if (target < SYNTHETIC_NODE_COUNT) {
+          successors[edgeCount++] = target
+        }
+      }
+      successorOffsets[node + 1] = edgeCount
+    }
+    val roots = IntArray(SYNTHETIC_ROOT_COUNT) { random.nextInt(SYNTHETIC_NODE_COUNT) }
+    val shallowSizes = LongArray(SYNTHETIC_NODE_COUNT) { 16L + random.nextInt(64) }
+
+    val singleThreadPool = ForkJoinPool(1)
+    recordMetric("DominatorTree-10M-SingleThread", measureMillis {
+      DominatorTree.compute(successorOffsets, successors, roots, shallowSizes, singleThreadPool)
+    })
+    singleThreadPool.shutdown()
+    recordMetric("DominatorTree-10M-CommonPool", measureMillis {
+      DominatorTree.compute(successorOffsets, successors, roots, shallowSizes, ForkJoinPool.commonPool())
+    })
+  }
+
+  private fun measureMillis(block: () -> Unit): Long {
+    val startTime = System.nanoTime()
+    block()
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)
+  }
+
+  private fun recordMetric(name: String, value: Long) {
+    val metric = Metric(name)
+    metric.addSamples(benchmark, Metric.MetricSample(Instant.now().toEpochMilli(), value))
+    metric.setAnalyzers(benchmark, setOf(WindowDeviationAnalyzer.Builder()
+                                           .addMeanTolerance(WindowDeviationAnalyzer.MeanToleranceParams.Builder().build())
+                                           .build()))
+    metric.commit()
+  }
+}
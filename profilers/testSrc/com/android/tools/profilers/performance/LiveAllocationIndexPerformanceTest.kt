@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.performance
+
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.WindowDeviationAnalyzer
+import com.android.tools.profilers.memory.adapters.LiveAllocationIndex
+import org.junit.Test
+import java.time.Instant
+import java.util.ArrayDeque
+import java.util.Random
+import java.util.concurrent.TimeUnit
+
+/**
+ * Times the queries made by a live allocation capture when scrubbing the selection across a 30 minute session, with a steady state
+ * of a few hundred thousand live objects.
+ */
+class LiveAllocationIndexPerformanceTest {
+  companion object {
+    private val SESSION_LENGTH_NS = TimeUnit.MINUTES.toNanos(30)
+    private const val EVENTS_PER_SECOND = 5_000
+    private const val LIVE_OBJECT_COUNT = 200_000
+    private const val SCRUB_STEPS = 20
+  }
+
+  private val benchmark = Benchmark.Builder("Live Allocation Index Timings (Millis)").setProject("Android Studio Profilers").build()
+
+  @Test
+  fun runPerformanceTest() {
+    val random = Random(0)
+    val index = LiveAllocationIndex()
+    val live = ArrayDeque<Int>()
+    val eventIntervalNs = TimeUnit.SECONDS.toNanos(1) / EVENTS_PER_SECOND
+    var nextTag = 1
+    val buildTimeMs = measureMillis {
+      var timestamp = 0L
+      while (timestamp < SESSION_LENGTH_NS) {
+        if (live.size < LIVE_OBJECT_COUNT || random.nextBoolean()) {
+          index.addAllocation(timestamp, nextTag, random.nextInt(1000), random.nextInt(10000), 1, 16L + random.nextInt(64), 0)
+          live.add(nextTag++)
+        }
+        else {
+          index.addFree(timestamp, live.poll())
+        }
+        timestamp += eventIntervalNs
+      }
+    }
+    recordMetric("Build-30min", buildTimeMs)
+
+    // Each step re-establishes the snapshot at the start of a new, non-overlapping, one minute selection and replays its deltas.
+    val selectionNs = TimeUnit.MINUTES.toNanos(1)
+    var maxStepMs = 0L
+    val scrubTimeMs = measureMillis {
+      for (step in 0 until SCRUB_STEPS) {
+        val startNs = (SESSION_LENGTH_NS - selectionNs) * step / (SCRUB_STEPS - 1)
+        val stepMs = measureMillis {
+          index.getLiveAllocations(startNs)
+          val endIndex = index.getEventIndex(startNs + selectionNs)
+          for (i in index.getEventIndex(startNs) until endIndex) {
+            index.getEventAllocation(i)
+          }
+        }
+        maxStepMs = maxOf(maxStepMs, stepMs)
+      }
+    }
+    recordMetric("Scrub-Average", scrubTimeMs / SCRUB_STEPS)
+    recordMetric("Scrub-Max", maxStepMs)
+  }
+
+  private fun measureMillis(block: () -> Unit): Long {
+    val startTime = System.nanoTime()
+    block()
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)
+  }
+
+  private fun recordMetric(name: String, value: Long) {
+    val metric = Metric(name)
+    metric.addSamples(benchmark, Metric.MetricSample(Instant.now().toEpochMilli(), value))
+    metric.setAnalyzers(benchmark, setOf(WindowDeviationAnalyzer.Builder()
+                                           .addMeanTolerance(WindowDeviationAnalyzer.MeanToleranceParams.Builder().build())
+                                           .build()))
+    metric.commit()
+  }
+}
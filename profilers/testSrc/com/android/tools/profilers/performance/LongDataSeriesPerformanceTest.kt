@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.performance
+
+import com.android.tools.adtui.model.DataSeries
+import com.android.tools.adtui.model.DefaultDataSeries
+import com.android.tools.adtui.model.LongDataSeries
+import com.android.tools.adtui.model.Range
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.WindowDeviationAnalyzer
+import org.junit.Test
+import java.time.Instant
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares append and range-query cost of the boxed [DefaultDataSeries] against the columnar [LongDataSeries] for an hour of data
+ * sampled at the same rate the profiler timeline streams at.
+ */
+class LongDataSeriesPerformanceTest {
+  companion object {
+    private val SESSION_LENGTH = TimeUnit.HOURS.toNanos(1)
+    private val SAMPLE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(50)
+    private val VIEW_LENGTH = TimeUnit.SECONDS.toNanos(30)
+    private const val QUERY_COUNT = 1000
+  }
+
+  private val benchmark = Benchmark.Builder("DataSeries Storage Timings (Nanos)").setProject("Android Studio Profilers").build()
+
+  @Test
+  fun runPerformanceTest() {
+    val defaultSeries = DefaultDataSeries<Long>()
+    val longSeries = LongDataSeries()
+
+    recordMetric("Default-Append") {
+      for (x in 0..SESSION_LENGTH step SAMPLE_INTERVAL) {
+        defaultSeries.add(x, x % 1024)
+      }
+    }
+    recordMetric("Columnar-Append") {
+      for (x in 0..SESSION_LENGTH step SAMPLE_INTERVAL) {
+        longSeries.add(x, x % 1024)
+      }
+    }
+
+    recordMetric("Default-Range-Query") { queryAndScan(defaultSeries) }
+    recordMetric("Columnar-Range-Query") { queryAndScan(longSeries) }
+  }
+
+  /**
+   * Slides a streaming-sized view across the whole session and reads every value back, the way LineChartModel does on each frame.
+   */
+  private fun queryAndScan(series: DataSeries<Long>) {
+    val step = (SESSION_LENGTH - VIEW_LENGTH) / QUERY_COUNT
+    var sum = 0L
+    for (i in 0 until QUERY_COUNT) {
+      val min = i * step
+      val data = series.getDataForRange(Range(min.toDouble(), (min + VIEW_LENGTH).toDouble()))
+      if (data is LongDataSeries.View) {
+        // Read the columns directly, as LineChartModel does, rather than through a boxed SeriesData per element.
+        for (j in 0 until data.size) {
+          sum += data.getY(j)
+        }
+      }
+      else {
+        for (point in data) {
+          sum += point.value
+        }
+      }
+    }
+    check(sum > 0)
+  }
+
+  private fun recordMetric(name: String, block: () -> Unit) {
+    val metric = Metric(name)
+    val startTime = System.nanoTime()
+    block()
+    metric.addSamples(benchmark, Metric.MetricSample(Instant.now().toEpochMilli(), System.nanoTime() - startTime))
+    metric.setAnalyzers(benchmark, setOf(WindowDeviationAnalyzer.Builder()
+                                           .addMeanTolerance(WindowDeviationAnalyzer.MeanToleranceParams.Builder().build())
+                                           .build()))
+    metric.commit()
+  }
+}
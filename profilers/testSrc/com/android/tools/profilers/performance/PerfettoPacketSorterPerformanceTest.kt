@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.performance
+
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.WindowDeviationAnalyzer
+import com.android.tools.profilers.cpu.atrace.PerfettoPacketSorter
+import org.junit.Test
+import java.time.Instant
+import java.util.Random
+import java.util.concurrent.TimeUnit
+
+/**
+ * Sorts a synthetic ~1GB perfetto trace worth of ftrace lines. Lines are added in per-cpu bundles whose timestamps overlap, which is the
+ * out-of-order pattern PerfettoProducer sees when converting real traces.
+ */
+class PerfettoPacketSorterPerformanceTest {
+  companion object {
+    private const val TARGET_TRACE_BYTES = 1L shl 30
+    private const val CPU_COUNT = 8
+    private const val LINES_PER_BUNDLE = 512
+    private val BUNDLE_DURATION = TimeUnit.MILLISECONDS.toNanos(5)
+  }
+
+  private val benchmark = Benchmark.Builder("Perfetto Sorter Timings (Millis)").setProject("Android Studio Profilers").build()
+
+  @Test
+  fun runPerformanceTest() {
+    val random = Random(0)
+    val sorter = PerfettoPacketSorter()
+    var bytesAdded = 0L
+    var lineCount = 0L
+
+    val addTime = measureMillis {
+      var bundleStart = 0L
+      while (bytesAdded < TARGET_TRACE_BYTES) {
+        for (cpu in 0 until CPU_COUNT) {
+          for (i in 0 until LINES_PER_BUNDLE) {
+            val timestamp = bundleStart + (random.nextDouble() * BUNDLE_DURATION).toLong()
+            val line = "          <...>-${1000 + random.nextInt(200)} (-----) [00$cpu] d..3 ${timestamp / 1000}.${timestamp % 1000}: " +
+                       "sched_switch: prev_comm=RenderThread prev_pid=1234 prev_prio=120 prev_state=S ==> next_comm=swapper next_pid=0"
+            sorter.addLine(timestamp, line)
+            bytesAdded += line.length
+            lineCount++
+          }
+        }
+        // Bundles overlap in time so lines from consecutive bundles interleave.
+        bundleStart += BUNDLE_DURATION / 2
+      }
+      sorter.resetForIterator()
+    }
+
+    var linesRead = 0L
+    val iterateTime = measureMillis {
+      while (sorter.hasNext()) {
+        sorter.next()
+        linesRead++
+      }
+    }
+    sorter.close()
+    check(linesRead == lineCount)
+
+    recordMetric("Sorter-Add-1GB", addTime)
+    recordMetric("Sorter-Iterate-1GB", iterateTime)
+  }
+
+  private fun measureMillis(block: () -> Unit): Long {
+    val startTime = System.nanoTime()
+    block()
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)
+  }
+
+  private fun recordMetric(name: String, value: Long) {
+    val metric = Metric(name)
+    metric.addSamples(benchmark, Metric.MetricSample(Instant.now().toEpochMilli(), value))
+    metric.setAnalyzers(benchmark, setOf(WindowDeviationAnalyzer.Builder()
+                                           .addMeanTolerance(WindowDeviationAnalyzer.MeanToleranceParams.Builder().build())
+                                           .build()))
+    metric.commit()
+  }
+}
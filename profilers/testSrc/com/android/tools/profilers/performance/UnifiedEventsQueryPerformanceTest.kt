@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.performance
+
+import com.android.testutils.TestUtils
+import com.android.tools.datastore.DataStoreDatabase
+import com.android.tools.datastore.FakeLogService
+import com.android.tools.datastore.database.UnifiedEventsTable
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.WindowDeviationAnalyzer
+import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.time.Instant
+import java.util.concurrent.TimeUnit
+
+/**
+ * Times the event group queries made by the profiler stages when scrolling the timeline of a 30 minute session of one million events:
+ * half of them CPU usage samples in a single group, half of them thread states spread over a hundred threads.
+ */
+class UnifiedEventsQueryPerformanceTest {
+  companion object {
+    private const val STREAM_ID = 1L
+    private const val PID = 1
+    private const val EVENT_COUNT = 1_000_000
+    private const val THREAD_COUNT = 100
+    private val SESSION_LENGTH_NS = TimeUnit.MINUTES.toNanos(30)
+    private val VIEW_RANGE_NS = TimeUnit.SECONDS.toNanos(10)
+    private const val SCROLL_STEPS = 200
+  }
+
+  private val benchmark = Benchmark.Builder("Unified Events Query Timings (Micros)").setProject("Android Studio Profilers").build()
+  private lateinit var database: DataStoreDatabase
+  private lateinit var table: UnifiedEventsTable
+
+  @Before
+  fun setUp() {
+    val dbFile = File(TestUtils.createTempDirDeletedOnExit(), "UnifiedEventsQueryPerformanceTest.sql")
+    database = DataStoreDatabase(dbFile.absolutePath, DataStoreDatabase.Characteristic.PERFORMANT, FakeLogService())
+    table = UnifiedEventsTable()
+    table.initialize(database.connection)
+    val intervalNs = SESSION_LENGTH_NS / (EVENT_COUNT / 2)
+    for (i in 0 until EVENT_COUNT / 2) {
+      val timestamp = i * intervalNs
+      table.insertUnifiedEvent(STREAM_ID, Common.Event.newBuilder()
+        .setKind(Common.Event.Kind.CPU_USAGE)
+        .setPid(PID)
+        .setTimestamp(timestamp)
+        .build())
+      table.insertUnifiedEvent(STREAM_ID, Common.Event.newBuilder()
+        .setKind(Common.Event.Kind.CPU_THREAD)
+        .setPid(PID)
+        .setGroupId((i % THREAD_COUNT).toLong())
+        .setTimestamp(timestamp)
+        .build())
+    }
+    database.connection.commit()
+  }
+
+  @After
+  fun tearDown() {
+    database.disconnect()
+  }
+
+  @Test
+  fun runPerformanceTest() {
+    for (kind in listOf(Common.Event.Kind.CPU_USAGE, Common.Event.Kind.CPU_THREAD)) {
+      val name = kind.name.toLowerCase().split('_').joinToString("-") { it.capitalize() }
+      recordMetric("$name-First-Query", measureMicros { query(kind, 0) })
+
+      var maxStepUs = 0L
+      val scrollTimeUs = measureMicros {
+        for (step in 0 until SCROLL_STEPS) {
+          val startNs = (SESSION_LENGTH_NS - VIEW_RANGE_NS) * step / (SCROLL_STEPS - 1)
+          maxStepUs = maxOf(maxStepUs, measureMicros { query(kind, startNs) })
+        }
+      }
+      recordMetric("$name-Scroll-Average", scrollTimeUs / SCROLL_STEPS)
+      recordMetric("$name-Scroll-Max", maxStepUs)
+    }
+  }
+
+  private fun query(kind: Common.Event.Kind, startNs: Long) {
+    table.queryUnifiedEventGroups(GetEventGroupsRequest.newBuilder()
+                                    .setKind(kind)
+                                    .setStreamId(STREAM_ID)
+                                    .setPid(PID)
+                                    .setFromTimestamp(startNs)
+                                    .setToTimestamp(startNs + VIEW_RANGE_NS)
+                                    .build())
+  }
+
+  private fun measureMicros(block: () -> Unit): Long {
+    val startTime = System.nanoTime()
+    block()
+    return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime)
+  }
+
+  private fun recordMetric(name: String, value: Long) {
+    val metric = Metric(name)
+    metric.addSamples(benchmark, Metric.MetricSample(Instant.now().toEpochMilli(), value))
+    metric.setAnalyzers(benchmark, setOf(WindowDeviationAnalyzer.Builder()
+                                           .addMeanTolerance(WindowDeviationAnalyzer.MeanToleranceParams.Builder().build())
+                                           .build()))
+    metric.commit()
+  }
+}
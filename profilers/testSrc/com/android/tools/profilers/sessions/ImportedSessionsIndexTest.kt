@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.sessions
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class ImportedSessionsIndexTest {
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  private val indexFile by lazy { File(temporaryFolder.root, "index/imported-sessions.txt") }
+
+  @Test
+  fun entriesSurviveNewIndex() {
+    val trace = temporaryFolder.newFile("capture.trace")
+    val hprof = temporaryFolder.newFile("memory.hprof")
+    val index = ImportedSessionsIndex(indexFile.toPath())
+    index.add(trace, 1000)
+    index.add(hprof, 2000)
+    // Importing a file again keeps its first import time.
+    index.add(trace, 3000)
+
+    val entries = ImportedSessionsIndex(indexFile.toPath()).entries
+
+    assertThat(entries.map { it.file }).containsExactly(trace.absoluteFile, hprof.absoluteFile).inOrder()
+    assertThat(entries.map { it.startTimestampEpochMs }).containsExactly(1000L, 2000L).inOrder()
+    assertThat(entries.all { it.isUnchanged }).isTrue()
+  }
+
+  @Test
+  fun removedEntriesAreNotRestored() {
+    val trace = temporaryFolder.newFile("capture.trace")
+    val hprof = temporaryFolder.newFile("memory.hprof")
+    val index = ImportedSessionsIndex(indexFile.toPath())
+    index.add(trace, 1000)
+    index.add(hprof, 2000)
+    index.remove(trace)
+
+    assertThat(index.entries.map { it.file }).containsExactly(hprof.absoluteFile)
+    assertThat(ImportedSessionsIndex(indexFile.toPath()).entries.map { it.file }).containsExactly(hprof.absoluteFile)
+  }
+
+  @Test
+  fun changedFileIsReported() {
+    val trace = temporaryFolder.newFile("capture.trace")
+    ImportedSessionsIndex(indexFile.toPath()).add(trace, 1000)
+    trace.writeText("overwritten")
+
+    val entry = ImportedSessionsIndex(indexFile.toPath()).entries.single()
+    assertThat(entry.isUnchanged).isFalse()
+
+    trace.delete()
+    assertThat(entry.isUnchanged).isFalse()
+  }
+
+  @Test
+  fun indexOfAnotherVersionIsDiscarded() {
+    val trace = temporaryFolder.newFile("capture.trace")
+    indexFile.parentFile.mkdirs()
+    indexFile.writeText("imported-sessions-v0\n+\t1000\t0\t0\t${trace.absolutePath}\n")
+
+    val index = ImportedSessionsIndex(indexFile.toPath())
+    assertThat(index.entries).isEmpty()
+
+    index.add(trace, 2000)
+    assertThat(indexFile.readLines().first()).isEqualTo(ImportedSessionsIndex.VERSION)
+    assertThat(ImportedSessionsIndex(indexFile.toPath()).entries.map { it.startTimestampEpochMs }).containsExactly(2000L)
+  }
+
+  @Test
+  fun truncatedRecordIsSkipped() {
+    val trace = temporaryFolder.newFile("capture.trace")
+    ImportedSessionsIndex(indexFile.toPath()).add(trace, 1000)
+    indexFile.appendText("+\t20")
+
+    assertThat(ImportedSessionsIndex(indexFile.toPath()).entries.map { it.file }).containsExactly(trace.absoluteFile)
+  }
+
+  @Test
+  fun recordAfterTruncatedRecordStartsOnNewLine() {
+    val trace = temporaryFolder.newFile("capture.trace")
+    val hprof = temporaryFolder.newFile("memory.hprof")
+    ImportedSessionsIndex(indexFile.toPath()).add(trace, 1000)
+    indexFile.appendText("-\t${trace.absolutePath.dropLast(1)}")
+
+    ImportedSessionsIndex(indexFile.toPath()).add(hprof, 2000)
+
+    assertThat(ImportedSessionsIndex(indexFile.toPath()).entries.map { it.file })
+      .containsExactly(trace.absoluteFile, hprof.absoluteFile).inOrder()
+  }
+
+  @Test
+  fun instanceIsSharedByIndexFile() {
+    val trace = temporaryFolder.newFile("capture.trace")
+    val hprof = temporaryFolder.newFile("memory.hprof")
+    val index = ImportedSessionsIndex.getInstance(indexFile.toPath())
+    assertThat(ImportedSessionsIndex.getInstance(indexFile.absoluteFile.toPath())).isSameAs(index)
+
+    // The index is written from scratch on the first add, and keeps the records of every caller.
+    ImportedSessionsIndex.getInstance(indexFile.toPath()).add(trace, 1000)
+    index.add(hprof, 2000)
+    index.remove(hprof)
+    assertThat(ImportedSessionsIndex(indexFile.toPath()).entries.map { it.file }).containsExactly(trace.absoluteFile)
+  }
+
+  @Test
+  fun indexIsCompactedOnceMostRecordsAreRemoved() {
+    val traces = (0 until 40).map { temporaryFolder.newFile("capture$it.trace") }
+    val index = ImportedSessionsIndex(indexFile.toPath())
+    for (trace in traces) {
+      index.add(trace, 1000)
+      index.remove(trace)
+    }
+    index.add(traces[0], 2000)
+
+    // Without compaction the index would have a header and 81 records.
+    assertThat(indexFile.readLines().size).isLessThan(40)
+    assertThat(ImportedSessionsIndex(indexFile.toPath()).entries.map { it.file }).containsExactly(traces[0].absoluteFile)
+  }
+}
@@ -36,6 +36,7 @@ import com.android.tools.profilers.cpu.FakeCpuService
 import com.android.tools.profilers.event.FakeEventService
 import com.android.tools.profilers.memory.FakeMemoryService
 import com.android.tools.profilers.memory.HprofSessionArtifact
+import com.android.tools.profilers.memory.MemoryProfilerStage
 import com.android.tools.profilers.memory.LegacyAllocationsSessionArtifact
 import com.android.tools.profilers.network.FakeNetworkService
 import com.google.common.truth.Truth
@@ -45,8 +46,11 @@ import org.junit.Before
 import org.junit.Rule
 import org.junit.Test
 import org.junit.rules.ExpectedException
+import org.junit.rules.TemporaryFolder
 import org.junit.runner.RunWith
 import org.junit.runners.Parameterized
+import java.io.ByteArrayOutputStream
+import java.io.File
 import java.util.Arrays
 
 @RunWith(Parameterized::class)
@@ -68,6 +72,8 @@ class SessionsManagerTest(private val useUnifiedEvents: Boolean) {
   @get:Rule
   val myThrown = ExpectedException.none()
   @get:Rule
+  val myTemporaryFolder = TemporaryFolder()
+  @get:Rule
   var myGrpcChannel = FakeGrpcChannel(
     "SessionsManagerTestChannel",
     myTransportService,
@@ -654,6 +660,45 @@ class SessionsManagerTest(private val useUnifiedEvents: Boolean) {
 
   }
 
+  @Test
+  fun testRestoredImportedSessionCanBeExportedAndSelected() {
+    Assume.assumeTrue(ideProfilerServices.featureConfig.isUnifiedPipelineEnabled)
+    val heapDumpBytes = "heap dump".toByteArray()
+    val hprof = myTemporaryFolder.newFile("memory.hprof").apply { writeBytes(heapDumpBytes) }
+    val indexFile = File(myTemporaryFolder.root, "imported-sessions.txt")
+    // Recorded when the file was imported in a previous run.
+    ImportedSessionsIndex(indexFile.toPath()).add(hprof, 1000)
+
+    ideProfilerServices.setImportedSessionsIndexFile(indexFile)
+    ideProfilerServices.setStreamServerRegistrar(myTransportService::registerStreamServer)
+    val profilers = StudioProfilers(ProfilerClient(myGrpcChannel.name), ideProfilerServices, myTimer)
+    val manager = profilers.sessionsManager
+    manager.update()
+
+    // The restored session shows up without being selected.
+    val sessionId = StudioProfilers.getFileCreationTimestampNs(hprof, 1000)
+    val session = manager.sessionArtifacts.filterIsInstance<SessionItem>().single().session
+    assertThat(session.sessionId).isEqualTo(sessionId)
+    assertThat(manager.selectedSession).isEqualTo(Common.Session.getDefaultInstance())
+
+    // The heap dump is read from the file when exported, even though the session was never selected.
+    val heapDumpInfo = HeapDumpInfo.newBuilder().setStartTime(sessionId).setEndTime(sessionId + 1).build()
+    val output = ByteArrayOutputStream()
+    com.android.tools.profilers.memory.MemoryProfiler.saveHeapDumpToFile(profilers.client, session, heapDumpInfo, output,
+                                                                         ideProfilerServices.featureTracker)
+    assertThat(output.toByteArray()).isEqualTo(heapDumpBytes)
+
+    manager.setSession(session)
+    assertThat(manager.selectedSession).isEqualTo(session)
+    assertThat(profilers.stage).isInstanceOf(MemoryProfilerStage::class.java)
+
+    // Importing the file again selects its restored session instead of creating another one.
+    assertThat(manager.importSessionFromFile(hprof)).isTrue()
+    manager.update()
+    assertThat(manager.sessionArtifacts.filterIsInstance<SessionItem>()).hasSize(1)
+    assertThat(manager.selectedSession).isEqualTo(session)
+  }
+
   @Test
   fun testDeleteUnselectedSession() {
     val device = Common.Device.newBuilder().setDeviceId(1).setState(Common.Device.State.ONLINE).build()
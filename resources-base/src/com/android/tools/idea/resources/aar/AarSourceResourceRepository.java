@@ -34,6 +34,7 @@ import com.android.tools.idea.resources.base.Base128InputStream;
 import com.android.tools.idea.resources.base.Base128OutputStream;
 import com.android.tools.idea.resources.base.BasicFileResourceItem;
 import com.android.tools.idea.resources.base.BasicResourceItem;
+import com.android.tools.idea.resources.base.LazyResourceMap;
 import com.android.tools.idea.resources.base.NamespaceResolver;
 import com.android.tools.idea.resources.base.RepositoryConfiguration;
 import com.android.tools.idea.resources.base.RepositoryLoader;
@@ -75,7 +76,7 @@ public class AarSourceResourceRepository extends AbstractAarResourceRepository {
    * Increment when making changes that may affect content of repository cache files.
    * Used together with CachingData.codeVersion. Important for developer builds.
    */
-  static final String CACHE_FILE_FORMAT_VERSION = "3";
+  static final String CACHE_FILE_FORMAT_VERSION = "5";
   private static final byte[] CACHE_FILE_HEADER = "Resource cache".getBytes(UTF_8);
   private static final Logger LOG = Logger.getInstance(AarSourceResourceRepository.class);
 
@@ -244,7 +245,8 @@ public class AarSourceResourceRepository extends AbstractAarResourceRepository {
    */
   private void createPersistentCache(@NotNull CachingData cachingData) {
     byte[] header = ResourceSerializationUtil.getCacheFileHeader(stream -> writeCacheHeaderContent(cachingData, stream));
-    ResourceSerializationUtil.createPersistentCache(cachingData.getCacheFile(), header, stream -> writeToStream(stream, config -> true));
+    ResourceSerializationUtil.createPersistentCache(cachingData.getCacheFile(), header,
+                                                    stream -> ResourceSerializationUtil.writeResourcesToStreamByType(myResources, stream));
   }
 
   protected void writeCacheHeaderContent(@NotNull CachingData cachingData, @NotNull Base128OutputStream stream) throws IOException {
@@ -256,7 +258,8 @@ public class AarSourceResourceRepository extends AbstractAarResourceRepository {
   }
 
   /**
-   * Loads contents the repository from a cache file on disk.
+   * Loads contents the repository from a cache file on disk. Resource items are decoded one resource name at a time, when the resources
+   * of that name are first requested, see {@link LazyResourceMap}.
    * @see ResourceSerializationUtil#createPersistentCache
    */
   private boolean loadFromPersistentCache(@NotNull Path cacheFile, @NotNull byte[] fileHeader) {
@@ -264,10 +267,10 @@ public class AarSourceResourceRepository extends AbstractAarResourceRepository {
       if (!stream.validateContents(fileHeader)) {
         return false; // Cache file header doesn't match.
       }
-      loadFromStream(stream, Maps.newHashMapWithExpectedSize(1000), null);
+      myResources.putAll(
+          ResourceSerializationUtil.readResourcesFromStreamByType(stream, Maps.newHashMapWithExpectedSize(1000), null, this));
 
-      populatePublicResourcesMap();
-      freezeResources();
+      // The maps are immutable and compute their public resources on demand.
       myLoadedFromCache = true;
       return true;
     }
@@ -22,6 +22,7 @@ import com.android.ide.common.resources.ResourceItemWithVisibility;
 import com.android.ide.common.resources.ResourceVisitor;
 import com.android.resources.ResourceType;
 import com.android.resources.ResourceVisibility;
+import com.android.tools.idea.resources.base.LazyResourceMap;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
@@ -133,6 +134,10 @@ public abstract class AbstractAarResourceRepository extends AbstractResourceRepo
     if (!namespace.equals(myNamespace)) {
       return Collections.emptySet();
     }
+    ListMultimap<String, ResourceItem> resources = myResources.get(type);
+    if (resources instanceof LazyResourceMap) {
+      return ((LazyResourceMap)resources).getPublicResources();
+    }
     Set<ResourceItem> resourceItems = myPublicResources.get(type);
     return resourceItems == null ? Collections.emptySet() : resourceItems;
   }
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.resources.base;
+
+import com.android.ide.common.rendering.api.ResourceNamespace;
+import com.android.ide.common.resources.ResourceItem;
+import com.android.ide.common.resources.ResourceItemWithVisibility;
+import com.android.resources.ResourceType;
+import com.android.resources.ResourceVisibility;
+import com.google.common.collect.ForwardingListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
+
+/**
+ * Immutable resources of one type read from a cache file by {@link ResourceSerializationUtil#readResourcesFromStreamByType}. The items
+ * are kept in their serialized form, which is several times smaller than the items themselves, and the items of a resource name are
+ * decoded the first time they are requested. The names, the number of items and the names that have public items are known without
+ * decoding anything. Operations that go through all the items, like {@link #values()}, decode the whole map.
+ */
+public final class LazyResourceMap extends ForwardingListMultimap<String, ResourceItem> {
+  private static final Logger LOG = Logger.getInstance(LazyResourceMap.class);
+
+  @NotNull private final ResourceType myType;
+  private final int mySize;
+  /** The resource names, sorted. */
+  @NotNull private final String[] myNames;
+  /** The offsets in {@link #myData} of the items of each name, followed by the length of the data. */
+  @NotNull private final int[] myOffsets;
+  /** The names that have at least one public item. */
+  @NotNull private final BitSet myPublicNames;
+  @NotNull private final List<RepositoryConfiguration> myConfigurations;
+  @NotNull private final List<ResourceSourceFile> mySourceFiles;
+  @NotNull private final List<ResourceNamespace.Resolver> myNamespaceResolvers;
+  /** The serialized items, or null after all of them have been decoded. */
+  @Nullable private byte[] myData;
+  /** Shares string instances between the decoded items, or null after all of them have been decoded. */
+  @Nullable private Map<String, String> myStringCache = new HashMap<>();
+  @NotNull private final AtomicReferenceArray<ImmutableList<ResourceItem>> myItemsByName;
+  @Nullable private volatile ImmutableListMultimap<String, ResourceItem> myResources;
+  @Nullable private volatile Set<ResourceItem> myPublicResources;
+
+  LazyResourceMap(@NotNull ResourceType type,
+                  int size,
+                  @NotNull String[] names,
+                  @NotNull int[] offsets,
+                  @NotNull BitSet publicNames,
+                  @NotNull byte[] data,
+                  @NotNull List<RepositoryConfiguration> configurations,
+                  @NotNull List<ResourceSourceFile> sourceFiles,
+                  @NotNull List<ResourceNamespace.Resolver> namespaceResolvers) {
+    myType = type;
+    mySize = size;
+    myNames = names;
+    myOffsets = offsets;
+    myPublicNames = publicNames;
+    myData = data;
+    myConfigurations = configurations;
+    mySourceFiles = sourceFiles;
+    myNamespaceResolvers = namespaceResolvers;
+    myItemsByName = new AtomicReferenceArray<>(names.length);
+  }
+
+  @Override
+  @NotNull
+  protected ListMultimap<String, ResourceItem> delegate() {
+    ImmutableListMultimap<String, ResourceItem> resources = myResources;
+    if (resources == null) {
+      synchronized (this) {
+        resources = myResources;
+        if (resources == null) {
+          ImmutableListMultimap.Builder<String, ResourceItem> builder = ImmutableListMultimap.builder();
+          for (int i = 0; i < myNames.length; i++) {
+            builder.putAll(myNames[i], getItems(i));
+          }
+          resources = builder.build();
+          myResources = resources;
+          myData = null;
+          myStringCache = null;
+        }
+      }
+    }
+    return resources;
+  }
+
+  @Override
+  public int size() {
+    return mySize;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return mySize == 0;
+  }
+
+  @Override
+  public boolean containsKey(@Nullable Object key) {
+    return key instanceof String && indexOf((String)key) >= 0;
+  }
+
+  @Override
+  @NotNull
+  public List<ResourceItem> get(@Nullable String key) {
+    int index = key == null ? -1 : indexOf(key);
+    return index < 0 ? ImmutableList.of() : getItems(index);
+  }
+
+  @Override
+  @NotNull
+  public Set<String> keySet() {
+    ImmutableListMultimap<String, ResourceItem> resources = myResources;
+    return resources == null ? ImmutableSet.copyOf(myNames) : resources.keySet();
+  }
+
+  /**
+   * Returns the items of the map that are public. Only the names that have public items are decoded.
+   */
+  @NotNull
+  public Set<ResourceItem> getPublicResources() {
+    Set<ResourceItem> publicResources = myPublicResources;
+    if (publicResources == null) {
+      ImmutableSet.Builder<ResourceItem> builder = ImmutableSet.builder();
+      for (int i = myPublicNames.nextSetBit(0); i >= 0; i = myPublicNames.nextSetBit(i + 1)) {
+        for (ResourceItem item : getItems(i)) {
+          if (((ResourceItemWithVisibility)item).getVisibility() == ResourceVisibility.PUBLIC) {
+            builder.add(item);
+          }
+        }
+      }
+      publicResources = builder.build();
+      myPublicResources = publicResources;
+    }
+    return publicResources;
+  }
+
+  /**
+   * Returns the number of resource names whose items have been decoded.
+   */
+  @TestOnly
+  public int getDecodedNameCount() {
+    int count = 0;
+    for (int i = 0; i < myItemsByName.length(); i++) {
+      if (myItemsByName.get(i) != null) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private int indexOf(@NotNull String name) {
+    return Arrays.binarySearch(myNames, name);
+  }
+
+  @NotNull
+  private ImmutableList<ResourceItem> getItems(int index) {
+    ImmutableList<ResourceItem> items = myItemsByName.get(index);
+    if (items == null) {
+      synchronized (this) {
+        items = myItemsByName.get(index);
+        if (items == null) {
+          items = decode(index);
+          myItemsByName.set(index, items);
+        }
+      }
+    }
+    return items;
+  }
+
+  @NotNull
+  private ImmutableList<ResourceItem> decode(int index) {
+    byte[] data = myData;
+    assert data != null;
+
+    ImmutableList.Builder<ResourceItem> builder = ImmutableList.builder();
+    int offset = myOffsets[index];
+    try (Base128InputStream stream = new Base128InputStream(new ByteArrayInputStream(data, offset, myOffsets[index + 1] - offset))) {
+      stream.setStringCache(myStringCache); // Enable string instance sharing to minimize memory consumption.
+      while (stream.available() > 0) {
+        builder.add(BasicResourceItemBase.deserialize(stream, myConfigurations, mySourceFiles, myNamespaceResolvers));
+      }
+    }
+    catch (IOException e) {
+      // The cache file was validated when it was read, so this is not expected to happen.
+      LOG.error("Failed to decode " + myType.getName() + " resource " + myNames[index] + " of " +
+                myConfigurations.get(0).getRepository().getDisplayName(), e);
+      return ImmutableList.of();
+    }
+    return builder.build();
+  }
+}
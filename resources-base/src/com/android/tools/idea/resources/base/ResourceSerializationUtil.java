@@ -20,8 +20,10 @@ import com.android.ide.common.rendering.api.ResourceNamespace;
 import com.android.ide.common.rendering.api.ResourceValue;
 import com.android.ide.common.rendering.api.StyleItemResourceValue;
 import com.android.ide.common.resources.ResourceItem;
+import com.android.ide.common.resources.ResourceItemWithVisibility;
 import com.android.ide.common.resources.configuration.FolderConfiguration;
 import com.android.resources.ResourceType;
+import com.android.resources.ResourceVisibility;
 import com.google.common.collect.ListMultimap;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.io.FileUtilRt;
@@ -38,7 +40,9 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
@@ -117,16 +121,78 @@ public class ResourceSerializationUtil {
   public static void writeResourcesToStream(@NotNull Map<ResourceType, ListMultimap<String, ResourceItem>> resources,
                                             @NotNull Base128OutputStream stream,
                                             @NotNull Predicate<FolderConfiguration> configFilter) throws IOException {
-    Object2IntMap<String> qualifierStringIndexes = new Object2IntOpenHashMap<>();
-    qualifierStringIndexes.defaultReturnValue(-1);
-    Object2IntMap<ResourceSourceFile> sourceFileIndexes = new Object2IntOpenHashMap<>();
-    sourceFileIndexes.defaultReturnValue(-1);
-    Object2IntMap<ResourceNamespace.Resolver> namespaceResolverIndexes = new Object2IntOpenHashMap<>();
-    namespaceResolverIndexes.defaultReturnValue(-1);
-    int itemCount = 0;
-    Collection<ListMultimap<String, ResourceItem>> resourceMaps = resources.values();
-
-    for (ListMultimap<String, ResourceItem> resourceMap : resourceMaps) {
+    SerializationIndexes indexes = writeIndexes(resources, stream, configFilter);
+
+    stream.writeInt(indexes.itemCount);
+
+    for (ListMultimap<String, ResourceItem> resourceMap : resources.values()) {
+      for (ResourceItem item : resourceMap.values()) {
+        FolderConfiguration configuration = item.getConfiguration();
+        if (configFilter.test(configuration)) {
+          indexes.serialize(item, stream);
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes resources to the given output stream grouped by resource type, so that the resources of each type can be decoded separately
+   * after reading them with {@link #readResourcesFromStreamByType}.
+   *
+   * The data is stored like by {@link #writeResourcesToStream}, except for the resource items, which are stored as follows:
+   * <ol>
+   *   <li>Number of resource types (int)</li>
+   *   <li>For each resource type: the ordinal of the type (int), the number of resource items (int), the number of resource names
+   *       (int), for each resource name in sorted order the name (String), whether it has public items (boolean) and the number of bytes
+   *       of its items (int), followed by the serialized items of all names (see {@link BasicResourceItemBase#serialize})</li>
+   * </ol>
+   */
+  public static void writeResourcesToStreamByType(@NotNull Map<ResourceType, ListMultimap<String, ResourceItem>> resources,
+                                                  @NotNull Base128OutputStream stream) throws IOException {
+    SerializationIndexes indexes = writeIndexes(resources, stream, config -> true);
+
+    stream.writeInt(resources.size());
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    for (Map.Entry<ResourceType, ListMultimap<String, ResourceItem>> entry : resources.entrySet()) {
+      ListMultimap<String, ResourceItem> resourceMap = entry.getValue();
+      String[] names = resourceMap.keySet().toArray(new String[0]);
+      Arrays.sort(names);
+
+      stream.writeInt(entry.getKey().ordinal());
+      stream.writeInt(resourceMap.size());
+      stream.writeInt(names.length);
+      bytes.reset();
+      for (String name : names) {
+        int start = bytes.size();
+        boolean hasPublicItems = false;
+        try (Base128OutputStream nameStream = new Base128OutputStream(bytes)) {
+          for (ResourceItem item : resourceMap.get(name)) {
+            indexes.serialize(item, nameStream);
+            hasPublicItems |= ((ResourceItemWithVisibility)item).getVisibility() == ResourceVisibility.PUBLIC;
+          }
+        }
+        stream.writeString(name);
+        stream.writeBoolean(hasPublicItems);
+        stream.writeInt(bytes.size() - start);
+      }
+      bytes.writeTo(stream);
+    }
+  }
+
+  /**
+   * Computes and writes the folder configurations, the value resource files and the namespace resolvers of the resources.
+   */
+  @NotNull
+  private static SerializationIndexes writeIndexes(@NotNull Map<ResourceType, ListMultimap<String, ResourceItem>> resources,
+                                                   @NotNull Base128OutputStream stream,
+                                                   @NotNull Predicate<FolderConfiguration> configFilter) throws IOException {
+    SerializationIndexes indexes = new SerializationIndexes();
+    Object2IntMap<String> qualifierStringIndexes = indexes.qualifierStringIndexes;
+    Object2IntMap<ResourceSourceFile> sourceFileIndexes = indexes.sourceFileIndexes;
+    Object2IntMap<ResourceNamespace.Resolver> namespaceResolverIndexes = indexes.namespaceResolverIndexes;
+
+    for (ListMultimap<String, ResourceItem> resourceMap : resources.values()) {
       for (ResourceItem item : resourceMap.values()) {
         FolderConfiguration configuration = item.getConfiguration();
         if (configFilter.test(configuration)) {
@@ -153,7 +219,7 @@ public class ResourceSerializationUtil {
               addToNamespaceResolverIndexes(attr.getNamespaceResolver(), namespaceResolverIndexes);
             }
           }
-          itemCount++;
+          indexes.itemCount++;
         }
       }
     }
@@ -161,17 +227,7 @@ public class ResourceSerializationUtil {
     writeStrings(qualifierStringIndexes, stream);
     writeSourceFiles(sourceFileIndexes, stream, qualifierStringIndexes);
     writeNamespaceResolvers(namespaceResolverIndexes, stream);
-
-    stream.writeInt(itemCount);
-
-    for (ListMultimap<String, ResourceItem> resourceMap : resourceMaps) {
-      for (ResourceItem item : resourceMap.values()) {
-        FolderConfiguration configuration = item.getConfiguration();
-        if (configFilter.test(configuration)) {
-          ((BasicResourceItemBase)item).serialize(stream, qualifierStringIndexes, sourceFileIndexes, namespaceResolverIndexes);
-        }
-      }
-    }
+    return indexes;
   }
 
   private static void addToNamespaceResolverIndexes(@NotNull ResourceNamespace.Resolver resolver,
@@ -190,11 +246,90 @@ public class ResourceSerializationUtil {
                                              @Nullable Map<NamespaceResolver, NamespaceResolver> namespaceResolverCache,
                                              @NotNull LoadableResourceRepository repository,
                                              @NotNull Consumer<BasicResourceItem> resourceConsumer) throws IOException {
+    DeserializationTables tables = readTables(stream, stringCache, namespaceResolverCache, repository);
+    if (tables == null) {
+      return; // Nothing to load.
+    }
+
+    int n = stream.readInt();
+    for (int i = 0; i < n; i++) {
+      BasicResourceItemBase item =
+          BasicResourceItemBase.deserialize(stream, tables.configurations, tables.sourceFiles, tables.namespaceResolvers);
+      resourceConsumer.accept(item);
+    }
+  }
+
+  /**
+   * Loads resources written by {@link #writeResourcesToStreamByType} from the given input stream. The resource items are not decoded
+   * until they are requested from the returned maps, which are instances of {@link LazyResourceMap}.
+   *
+   * @return the resources keyed by type
+   */
+  @NotNull
+  public static Map<ResourceType, ListMultimap<String, ResourceItem>> readResourcesFromStreamByType(
+      @NotNull Base128InputStream stream,
+      @NotNull Map<String, String> stringCache,
+      @Nullable Map<NamespaceResolver, NamespaceResolver> namespaceResolverCache,
+      @NotNull LoadableResourceRepository repository) throws IOException {
+    Map<ResourceType, ListMultimap<String, ResourceItem>> resources = new EnumMap<>(ResourceType.class);
+    DeserializationTables tables = readTables(stream, stringCache, namespaceResolverCache, repository);
+    if (tables == null) {
+      return resources; // Nothing to load.
+    }
+
+    ResourceType[] types = ResourceType.values();
+    int n = stream.readInt();
+    for (int i = 0; i < n; i++) {
+      int ordinal = stream.readInt();
+      if (ordinal < 0 || ordinal >= types.length) {
+        throw Base128InputStream.StreamFormatException.invalidFormat();
+      }
+      int itemCount = stream.readInt();
+      int nameCount = stream.readInt();
+      if (nameCount < 0) {
+        throw Base128InputStream.StreamFormatException.invalidFormat();
+      }
+      String[] names = new String[nameCount];
+      int[] offsets = new int[nameCount + 1];
+      BitSet publicNames = new BitSet(nameCount);
+      for (int j = 0; j < nameCount; j++) {
+        names[j] = stream.readString();
+        if (names[j] == null || (j > 0 && names[j - 1].compareTo(names[j]) >= 0)) {
+          throw Base128InputStream.StreamFormatException.invalidFormat();
+        }
+        publicNames.set(j, stream.readBoolean());
+        int length = stream.readInt();
+        if (length < 0) {
+          throw Base128InputStream.StreamFormatException.invalidFormat();
+        }
+        offsets[j + 1] = offsets[j] + length;
+      }
+      byte[] data = new byte[offsets[nameCount]];
+      if (stream.readNBytes(data, 0, data.length) < data.length) {
+        throw Base128InputStream.StreamFormatException.prematureEndOfFile();
+      }
+      resources.put(types[ordinal],
+                    new LazyResourceMap(types[ordinal], itemCount, names, offsets, publicNames, data, tables.configurations,
+                                        tables.sourceFiles, tables.namespaceResolvers));
+    }
+    return resources;
+  }
+
+  /**
+   * Reads the folder configurations, the value resource files and the namespace resolvers that precede the resource items.
+   *
+   * @return the tables, or null if the stream contains no resources
+   */
+  @Nullable
+  private static DeserializationTables readTables(@NotNull Base128InputStream stream,
+                                                  @NotNull Map<String, String> stringCache,
+                                                  @Nullable Map<NamespaceResolver, NamespaceResolver> namespaceResolverCache,
+                                                  @NotNull LoadableResourceRepository repository) throws IOException {
     stream.setStringCache(stringCache); // Enable string instance sharing to minimize memory consumption.
 
     int n = stream.readInt();
     if (n == 0) {
-      return; // Nothing to load.
+      return null;
     }
     List<RepositoryConfiguration> configurations = new ArrayList<>(n);
     for (int i = 0; i < n; i++) {
@@ -226,11 +361,7 @@ public class ResourceSerializationUtil {
       newNamespaceResolvers.add(namespaceResolver);
     }
 
-    n = stream.readInt();
-    for (int i = 0; i < n; i++) {
-      BasicResourceItemBase item = BasicResourceItemBase.deserialize(stream, configurations, newSourceFiles, newNamespaceResolvers);
-      resourceConsumer.accept(item);
-    }
+    return new DeserializationTables(configurations, newSourceFiles, newNamespaceResolvers);
   }
 
   /**
@@ -299,4 +430,35 @@ public class ResourceSerializationUtil {
   public interface Base128StreamWriter {
     void write(@NotNull Base128OutputStream stream) throws IOException;
   }
+
+  private static class SerializationIndexes {
+    final Object2IntMap<String> qualifierStringIndexes = new Object2IntOpenHashMap<>();
+    final Object2IntMap<ResourceSourceFile> sourceFileIndexes = new Object2IntOpenHashMap<>();
+    final Object2IntMap<ResourceNamespace.Resolver> namespaceResolverIndexes = new Object2IntOpenHashMap<>();
+    int itemCount;
+
+    SerializationIndexes() {
+      qualifierStringIndexes.defaultReturnValue(-1);
+      sourceFileIndexes.defaultReturnValue(-1);
+      namespaceResolverIndexes.defaultReturnValue(-1);
+    }
+
+    void serialize(@NotNull ResourceItem item, @NotNull Base128OutputStream stream) throws IOException {
+      ((BasicResourceItemBase)item).serialize(stream, qualifierStringIndexes, sourceFileIndexes, namespaceResolverIndexes);
+    }
+  }
+
+  private static class DeserializationTables {
+    @NotNull final List<RepositoryConfiguration> configurations;
+    @NotNull final List<ResourceSourceFile> sourceFiles;
+    @NotNull final List<ResourceNamespace.Resolver> namespaceResolvers;
+
+    DeserializationTables(@NotNull List<RepositoryConfiguration> configurations,
+                          @NotNull List<ResourceSourceFile> sourceFiles,
+                          @NotNull List<ResourceNamespace.Resolver> namespaceResolvers) {
+      this.configurations = configurations;
+      this.sourceFiles = sourceFiles;
+      this.namespaceResolvers = namespaceResolvers;
+    }
+  }
 }
@@ -29,7 +29,9 @@ import com.android.ide.common.rendering.api.StyleableResourceValue;
 import com.android.ide.common.resources.ResourceItem;
 import com.android.resources.ResourceType;
 import com.android.tools.idea.res.ResourcesTestsUtil;
+import com.android.tools.idea.resources.base.LazyResourceMap;
 import com.android.utils.PathUtils;
+import com.google.common.collect.ListMultimap;
 import com.intellij.util.containers.ContainerUtil;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -132,6 +134,46 @@ public class AarSourceResourceRepositoryTest {
     checkRepositoryContents(repository);
   }
 
+  @Test
+  public void testResourcesFromCacheAreDecodedByName() {
+    Path aarFile = ResourcesTestsUtil.createAar(myTempDir);
+    String cacheFilename = aarFile.getFileName().toString();
+    AarSourceResourceRepository original = AarSourceResourceRepository.create(aarFile, ResourcesTestsUtil.AAR_LIBRARY_NAME,
+                                                                              createCachingData(cacheFilename, directExecutor()));
+    AarSourceResourceRepository repository = AarSourceResourceRepository.create(aarFile, ResourcesTestsUtil.AAR_LIBRARY_NAME,
+                                                                                createCachingData(cacheFilename, null));
+    assertThat(repository.isLoadedFromCache()).isTrue();
+
+    ListMultimap<String, ResourceItem> strings = repository.getResources(ResourceNamespace.RES_AUTO, ResourceType.STRING);
+    assertThat(strings).isInstanceOf(LazyResourceMap.class);
+    assertThat(strings.size()).isEqualTo(original.getResources(ResourceNamespace.RES_AUTO, ResourceType.STRING).size());
+    String name = strings.keySet().iterator().next();
+    assertThat(strings.containsKey(name)).isTrue();
+    assertThat(((LazyResourceMap)strings).getDecodedNameCount()).isEqualTo(0);
+    assertThat(repository.getResources(ResourceNamespace.RES_AUTO, ResourceType.STRING, name)).hasSize(strings.get(name).size());
+    assertThat(((LazyResourceMap)strings).getDecodedNameCount()).isEqualTo(1);
+
+    for (ResourceType type : ResourceType.values()) {
+      ListMultimap<String, ResourceItem> expected = original.getResources(ResourceNamespace.RES_AUTO, type);
+      ListMultimap<String, ResourceItem> actual = repository.getResources(ResourceNamespace.RES_AUTO, type);
+      assertThat(actual.keySet()).containsExactlyElementsIn(expected.keySet());
+      for (String name : expected.keySet()) {
+        assertThat(ContainerUtil.map(actual.get(name), AarSourceResourceRepositoryTest::describe))
+            .containsExactlyElementsIn(ContainerUtil.map(expected.get(name), AarSourceResourceRepositoryTest::describe));
+      }
+      Collection<ResourceItem> publicResources = repository.getPublicResources(ResourceNamespace.RES_AUTO, type);
+      assertThat(ContainerUtil.map(publicResources, AarSourceResourceRepositoryTest::describe))
+          .containsExactlyElementsIn(ContainerUtil.map(original.getPublicResources(ResourceNamespace.RES_AUTO, type),
+                                                       AarSourceResourceRepositoryTest::describe));
+    }
+  }
+
+  @NotNull
+  private static String describe(@NotNull ResourceItem item) {
+    ResourceValue value = item.getResourceValue();
+    return item.getName() + " " + item.getConfiguration().getQualifierString() + " " + (value == null ? null : value.getValue());
+  }
+
   private static void checkRepositoryContents(@NotNull AarSourceResourceRepository repository) {
     List<ResourceItem> items = repository.getResources(ResourceNamespace.RES_AUTO, ResourceType.STRING, "hello");
     assertThat(items).isNotNull();
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore;
+
+import com.android.tools.idea.protobuf.ByteString;
+import com.android.tools.profiler.proto.Transport.BytesRequest;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Reads of a byte payload one chunk at a time through the GetBytes RPC, so that a large payload such as a heap dump or a trace is never
+ * held in memory as a whole. {@link BytesRequest} has no field for the chunk, so its index is appended to the id of the payload.
+ * <p/>
+ * A chunk is {@link #CHUNK_SIZE} bytes long, except for the last one which is shorter. It is empty if the payload size is a multiple of
+ * the chunk size, or if there is no payload.
+ */
+public final class BytesChunks {
+  public static final int CHUNK_SIZE = 1024 * 1024;
+
+  private static final String CHUNK_ID_SEPARATOR = "#chunk-";
+
+  private BytesChunks() {
+  }
+
+  /**
+   * @return the request for the given chunk of the payload of the given request.
+   */
+  @NotNull
+  public static BytesRequest chunkRequest(@NotNull BytesRequest request, int chunkIndex) {
+    return request.toBuilder().setId(request.getId() + CHUNK_ID_SEPARATOR + chunkIndex).build();
+  }
+
+  /**
+   * @return the index of the chunk the given request is for, or -1 if it is for the whole payload.
+   */
+  public static int getChunkIndex(@NotNull BytesRequest request) {
+    String id = request.getId();
+    int separatorIndex = id.lastIndexOf(CHUNK_ID_SEPARATOR);
+    if (separatorIndex < 0) {
+      return -1;
+    }
+    try {
+      return Integer.parseInt(id.substring(separatorIndex + CHUNK_ID_SEPARATOR.length()));
+    }
+    catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * @return the request for the whole payload of the given chunk request.
+   */
+  @NotNull
+  public static BytesRequest payloadRequest(@NotNull BytesRequest chunkRequest) {
+    String id = chunkRequest.getId();
+    return chunkRequest.toBuilder().setId(id.substring(0, id.lastIndexOf(CHUNK_ID_SEPARATOR))).build();
+  }
+
+  /**
+   * @return the given chunk of a payload, sharing the bytes of the payload.
+   */
+  @NotNull
+  public static ByteString getChunk(@NotNull ByteString contents, int chunkIndex) {
+    long start = (long)chunkIndex * CHUNK_SIZE;
+    if (start >= contents.size()) {
+      return ByteString.EMPTY;
+    }
+    return contents.substring((int)start, (int)Math.min(contents.size(), start + CHUNK_SIZE));
+  }
+
+  /**
+   * @return true if no chunk follows the given one.
+   */
+  public static boolean isLastChunk(@NotNull ByteString chunk) {
+    return chunk.size() < CHUNK_SIZE;
+  }
+}
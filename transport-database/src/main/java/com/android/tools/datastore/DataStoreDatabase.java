@@ -15,12 +15,24 @@
  */
 package com.android.tools.datastore;
 
+import com.android.tools.datastore.database.DataStoreSchema;
+import com.android.tools.datastore.database.DataStoreTable;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 public class DataStoreDatabase {
@@ -35,10 +47,22 @@ public class DataStoreDatabase {
     return myLogService.getLogger(DataStoreDatabase.class);
   }
 
+  /**
+   * How often pending table writes are flushed and the open transaction is committed.
+   */
+  private static final long COMMIT_INTERVAL_MS = 500;
+
   @NotNull private final LogService myLogService;
 
   private final Connection myConnection;
 
+  @Nullable private final ScheduledExecutorService myCommitExecutor;
+
+  /**
+   * The tables initialized on this database, whose deferred writes are flushed before each commit.
+   */
+  @NotNull private final Set<DataStoreTable<?>> myTables = ConcurrentHashMap.newKeySet();
+
   /**
    * @param dbPath the path to the backing DB file, if {@link Characteristic#DURABLE}.
    */
@@ -65,27 +89,19 @@ public class DataStoreDatabase {
           break;
         case DURABLE:
           File dbFile = new File(dbPath);
-          // Due to an incompatible update in SQLite we do not support loading SQL files from previous versions of studio.
-          // As a intermediate measure we delete the file until we support loading existing databases.
-          // TODO: Investigate removing this when we add a feature to restore sessions from prior Studio runs.
-          if (dbFile.exists()) {
-            dbFile.delete();
-          }
-
           File parent = dbFile.getParentFile();
           if (parent != null) {
             if (!parent.mkdirs() && !parent.exists()) {
               getLogger().error("Unable to create parent directory");
             }
           }
-          connection = DriverManager.getConnection(String.format("jdbc:sqlite:%s", dbFile.getPath()));
+          connection = openDurableDatabase(dbFile);
           break;
         default:
           throw new RuntimeException("Characteristic not handled!");
       }
 
-      // Performance optimization.
-      // TODO: Create a timer and commit the database transaction every X seconds.
+      // Performance optimization: writes are grouped into one transaction that is committed periodically, see commit().
       connection.setAutoCommit(false);
     }
     catch (ClassNotFoundException e) {
@@ -98,16 +114,123 @@ public class DataStoreDatabase {
       noPiiExceptionHandler.accept(e);
     }
     myConnection = connection;
+
+    if (myConnection != null) {
+      myCommitExecutor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("DataStoreCommitThread-%d").setDaemon(true).build());
+      myCommitExecutor.scheduleWithFixedDelay(this::commit, COMMIT_INTERVAL_MS, COMMIT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+    else {
+      myCommitExecutor = null;
+    }
+  }
+
+  /**
+   * Opens the database file, keeping what previous runs recorded in it. A file written by a previous version is migrated to
+   * {@link DataStoreSchema#VERSION}. A file that cannot be migrated, e.g. one written by a newer version or one that is not a database, is
+   * replaced by an empty one.
+   */
+  @NotNull
+  private Connection openDurableDatabase(@NotNull File dbFile) throws SQLException {
+    String url = String.format("jdbc:sqlite:%s", dbFile.getPath());
+    Connection connection = DriverManager.getConnection(url);
+    try {
+      if (upgradeSchema(connection)) {
+        return connection;
+      }
+      getLogger().warn("Replacing a database written by a newer version");
+    }
+    catch (SQLException e) {
+      getLogger().warn(e);
+    }
+    connection.close();
+    if (dbFile.exists() && !dbFile.delete()) {
+      throw new SQLException("Unable to replace the database file");
+    }
+
+    connection = DriverManager.getConnection(url);
+    upgradeSchema(connection);
+    return connection;
+  }
+
+  /**
+   * Migrates the tables of the given database to {@link DataStoreSchema#VERSION}, in a single transaction. A new file has no tables, so
+   * it only gets the version recorded.
+   *
+   * @return false if the database was written by a newer version, whose tables are left untouched.
+   */
+  private static boolean upgradeSchema(@NotNull Connection connection) throws SQLException {
+    int version;
+    try (Statement statement = connection.createStatement(); ResultSet results = statement.executeQuery("PRAGMA user_version")) {
+      version = results.next() ? results.getInt(1) : 0;
+    }
+    if (version > DataStoreSchema.VERSION) {
+      return false;
+    }
+    if (version < DataStoreSchema.VERSION) {
+      connection.setAutoCommit(false);
+      try (Statement statement = connection.createStatement()) {
+        DataStoreSchema.migrate(connection, version);
+        statement.execute("PRAGMA user_version = " + DataStoreSchema.VERSION);
+        connection.commit();
+      }
+      catch (SQLException e) {
+        connection.rollback();
+        throw e;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Adds a table whose deferred writes are flushed before this database commits, see {@link DataStoreTable#initialize(DataStoreDatabase)}.
+   */
+  public void addTable(@NotNull DataStoreTable<?> table) {
+    myTables.add(table);
+  }
+
+  @VisibleForTesting
+  public boolean hasTables() {
+    return !myTables.isEmpty();
+  }
+
+  /**
+   * Flushes the writes the tables on this database have deferred, then commits the current transaction.
+   */
+  public void commit() {
+    try {
+      if (myConnection.isClosed()) {
+        return;
+      }
+      flushPendingWrites();
+      myConnection.commit();
+    }
+    catch (SQLException e) {
+      // Not fatal, the same transaction will be committed on the next attempt.
+      getLogger().warn(e);
+    }
   }
 
   public void disconnect() {
+    if (myCommitExecutor != null) {
+      myCommitExecutor.shutdownNow();
+      // A commit that is already running must be done before the final one, as they would share the connection.
+      try {
+        myCommitExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
     try {
+      flushPendingWrites();
       myConnection.commit();
     }
     catch (SQLException e) {
       getLogger().error(e);
     }
     finally {
+      myTables.clear();
       try {
         if (!myConnection.isClosed()) {
           myConnection.close();
@@ -119,6 +242,12 @@ public class DataStoreDatabase {
     }
   }
 
+  private void flushPendingWrites() {
+    for (DataStoreTable<?> table : myTables) {
+      table.flushPendingWrites();
+    }
+  }
+
   public Connection getConnection() {
     return myConnection;
   }
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.tools.datastore.BytesChunks;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Version of the layout of the tables that a {@link com.android.tools.datastore.DataStoreDatabase.Characteristic#DURABLE} database keeps
+ * from one run to the next, see {@link DataStoreTable#createTableIfNotExists(String, String...)}, and the steps that bring a database
+ * file written by a previous version up to date.
+ * <p>
+ * Version 0 is the layout of the files written before the version was recorded.
+ */
+public final class DataStoreSchema {
+  /**
+   * The current version. When the layout of a kept table changes, increment it and add the step from the previous version to
+   * {@link #migrate(Connection, int)}.
+   */
+  public static final int VERSION = 1;
+
+  private DataStoreSchema() {
+  }
+
+  /**
+   * Brings the tables of the given database from the given version to {@link #VERSION}, one version at a time. The caller is responsible
+   * for the transaction and for recording the new version.
+   */
+  public static void migrate(@NotNull Connection connection, int fromVersion) throws SQLException {
+    assert fromVersion <= VERSION;
+    for (int version = fromVersion; version < VERSION; version++) {
+      switch (version) {
+        case 0:
+          splitBytesIntoChunks(connection);
+          break;
+        default:
+          throw new SQLException(String.format("No migration from version %d", version));
+      }
+    }
+  }
+
+  /**
+   * Version 1 stores the byte payloads of {@link UnifiedEventsTable} in chunks, where version 0 stored each payload in a single row.
+   */
+  private static void splitBytesIntoChunks(@NotNull Connection connection) throws SQLException {
+    if (!hasTable(connection, "BytesTable") || hasColumn(connection, "BytesTable", "ChunkIndex")) {
+      return;
+    }
+    try (Statement statement = connection.createStatement()) {
+      // The former payloads are the first chunks, and the unique index is created again with the new column when the table is initialized.
+      statement.execute("ALTER TABLE BytesTable ADD COLUMN ChunkIndex INTEGER NOT NULL DEFAULT 0");
+      statement.execute("DROP INDEX IF EXISTS idx_BytesTable_pk");
+    }
+
+    // Only the ids are gathered first, so that a single payload is held in memory at a time while the table is being changed.
+    List<Long> rowIds = new ArrayList<>();
+    try (PreparedStatement query = connection.prepareStatement("SELECT ROWID FROM BytesTable WHERE length(Data) > ?")) {
+      query.setLong(1, BytesChunks.CHUNK_SIZE);
+      try (ResultSet results = query.executeQuery()) {
+        while (results.next()) {
+          rowIds.add(results.getLong(1));
+        }
+      }
+    }
+
+    try (PreparedStatement select = connection.prepareStatement("SELECT StreamId, Id, Data FROM BytesTable WHERE ROWID = ?");
+         PreparedStatement insert =
+           connection.prepareStatement("INSERT INTO BytesTable (StreamId, Id, ChunkIndex, Data) VALUES (?, ?, ?, ?)");
+         PreparedStatement update = connection.prepareStatement("UPDATE BytesTable SET Data = ? WHERE ROWID = ?")) {
+      for (long rowId : rowIds) {
+        long streamId;
+        String id;
+        byte[] payload;
+        select.setLong(1, rowId);
+        try (ResultSet results = select.executeQuery()) {
+          if (!results.next()) {
+            continue;
+          }
+          streamId = results.getLong(1);
+          id = results.getString(2);
+          payload = results.getBytes(3);
+        }
+
+        for (int chunkIndex = 1; (long)chunkIndex * BytesChunks.CHUNK_SIZE < payload.length; chunkIndex++) {
+          int start = chunkIndex * BytesChunks.CHUNK_SIZE;
+          insert.setLong(1, streamId);
+          insert.setString(2, id);
+          insert.setLong(3, chunkIndex);
+          insert.setBytes(4, Arrays.copyOfRange(payload, start, Math.min(payload.length, start + BytesChunks.CHUNK_SIZE)));
+          insert.execute();
+        }
+        update.setBytes(1, Arrays.copyOf(payload, BytesChunks.CHUNK_SIZE));
+        update.setLong(2, rowId);
+        update.execute();
+      }
+    }
+  }
+
+  private static boolean hasTable(@NotNull Connection connection, @NotNull String table) throws SQLException {
+    try (PreparedStatement query = connection.prepareStatement("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?")) {
+      query.setString(1, table);
+      try (ResultSet results = query.executeQuery()) {
+        return results.next();
+      }
+    }
+  }
+
+  private static boolean hasColumn(@NotNull Connection connection, @NotNull String table, @NotNull String column) throws SQLException {
+    try (Statement statement = connection.createStatement();
+         ResultSet results = statement.executeQuery(String.format("PRAGMA table_info(%s)", table))) {
+      while (results.next()) {
+        if (column.equals(results.getString("name"))) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -15,6 +15,8 @@
  */
 package com.android.tools.datastore.database;
 
+import com.android.tools.datastore.DataStoreDatabase;
+import com.google.common.annotations.VisibleForTesting;
 import org.jetbrains.annotations.NotNull;
 
 import java.sql.*;
@@ -29,7 +31,19 @@ import java.util.function.Function;
 public abstract class DataStoreTable<T extends Enum> {
   private static final Set<DataStoreTableErrorCallback> ERROR_CALLBACKS = ConcurrentHashMap.newKeySet();
 
+  /**
+   * Number of deferred writes a table queues up before flushing them to the database as JDBC batches.
+   */
+  private static final int DEFAULT_WRITE_BATCH_SIZE = 256;
+
   private Connection myConnection;
+
+  /**
+   * Writes queued by {@link #executeDeferred(Enum, Object...)}, in submission order. Guarded by itself; the lock is also held while the
+   * queue is being written out so concurrent flushes can't reorder writes.
+   */
+  private final List<PendingWrite<T>> myPendingWrites = new ArrayList<>();
+  private int myWriteBatchSize = DEFAULT_WRITE_BATCH_SIZE;
   private final ThreadLocal<Map<T, PreparedStatement>> myStatementMap = new ThreadLocal<>();
 
   // Cache custom queries we have a limited number and we call the same query multiple times.
@@ -48,6 +62,14 @@ public abstract class DataStoreTable<T extends Enum> {
     myConnection = connection;
   }
 
+  /**
+   * Initializes the table on the connection of the given database, which then flushes the writes this table deferred before it commits.
+   */
+  public void initialize(@NotNull DataStoreDatabase database) {
+    initialize(database.getConnection());
+    database.addTable(this);
+  }
+
   /**
    * Helper function called after initialize to create {@link PreparedStatement} the implementor should cache
    * the statements for later use.
@@ -62,6 +84,27 @@ public abstract class DataStoreTable<T extends Enum> {
     ERROR_CALLBACKS.remove(callback);
   }
 
+  /**
+   * Sets how many deferred writes are queued before they are flushed to the database. A size of 1 effectively disables batching.
+   */
+  @VisibleForTesting
+  public void setWriteBatchSize(int writeBatchSize) {
+    assert writeBatchSize > 0;
+    synchronized (myPendingWrites) {
+      myWriteBatchSize = writeBatchSize;
+    }
+    if (getPendingWriteCount() >= writeBatchSize) {
+      flushPendingWrites();
+    }
+  }
+
+  @VisibleForTesting
+  public int getPendingWriteCount() {
+    synchronized (myPendingWrites) {
+      return myPendingWrites.size();
+    }
+  }
+
   /**
    * A connection represents a link between code and the database layer. This link is accessed via multiple threads
    * as such means the only guarantee this function offers is the state of the connection at the time of the call.
@@ -99,6 +142,9 @@ public abstract class DataStoreTable<T extends Enum> {
     return myStatementMap.get();
   }
 
+  /**
+   * Creates the table, dropping the one of a previous run so that it only holds the data of this run.
+   */
   protected void createTable(@NotNull String table, String... columns) throws SQLException {
     myConnection.createStatement().execute(String.format("DROP TABLE IF EXISTS %s ", table));
     StringBuilder statement = new StringBuilder();
@@ -106,6 +152,16 @@ public abstract class DataStoreTable<T extends Enum> {
     executeUniqueStatement(statement, columns);
   }
 
+  /**
+   * Creates the table unless a previous run did, in which case its data is kept. The layout of a table kept this way can only change
+   * along with {@link DataStoreSchema#VERSION}.
+   */
+  protected void createTableIfNotExists(@NotNull String table, String... columns) throws SQLException {
+    StringBuilder statement = new StringBuilder();
+    statement.append(String.format("CREATE TABLE IF NOT EXISTS %s", table));
+    executeUniqueStatement(statement, columns);
+  }
+
   protected void createUniqueIndex(@NotNull String table, String... indexList) throws SQLException {
     StringBuilder statement = new StringBuilder();
     statement.append(String.format("CREATE UNIQUE INDEX IF NOT EXISTS idx_%s_pk ON %s", table, table));
@@ -142,6 +198,11 @@ public abstract class DataStoreTable<T extends Enum> {
     if (isClosed()) {
       return;
     }
+    flushPendingWrites();
+    executeBatchNow(statement, batchParams, paramConverter);
+  }
+
+  private <K> void executeBatchNow(@NotNull T statement, @NotNull List<K> batchParams, @NotNull Function<K, Object[]> paramConverter) {
     try {
       PreparedStatement stmt = getStatementMap().get(statement);
       batchParams.forEach((object) -> {
@@ -153,6 +214,8 @@ public abstract class DataStoreTable<T extends Enum> {
         }
       });
       int[] results = stmt.executeBatch();
+      // Same as execute, don't let the cached statement hold on to the last (potentially large) set of parameters.
+      stmt.clearParameters();
       for(int i = 0; i < results.length; i++) {
         if (results[i] == Statement.EXECUTE_FAILED) {
           throw new SQLException(String.format("Failed to insert batch element %d with result %d", i, results[i]));
@@ -168,6 +231,8 @@ public abstract class DataStoreTable<T extends Enum> {
     if (isClosed()) {
       return;
     }
+    // Writes must reach the database in the order they were issued, so anything deferred goes first.
+    flushPendingWrites();
     try {
       PreparedStatement stmt = getStatementMap().get(statement);
       applyParams(stmt, params);
@@ -181,10 +246,60 @@ public abstract class DataStoreTable<T extends Enum> {
     }
   }
 
+  /**
+   * Queues a write to be executed later as part of a JDBC batch, which is much cheaper than executing single-row statements for
+   * high-volume inserts. Pending writes are flushed when the queue reaches the table's batch size, before any other statement or query
+   * runs on this table (so callers always read their own writes), and before the owning {@link com.android.tools.datastore.DataStoreDatabase}
+   * commits.
+   * <p>
+   * Only use this for statements whose outcome the caller doesn't need right away (e.g. INSERT OR IGNORE / INSERT OR REPLACE).
+   */
+  protected void executeDeferred(@NotNull T statement, Object... params) {
+    if (isClosed()) {
+      return;
+    }
+    boolean shouldFlush;
+    synchronized (myPendingWrites) {
+      myPendingWrites.add(new PendingWrite<>(statement, params));
+      shouldFlush = myPendingWrites.size() >= myWriteBatchSize;
+    }
+    if (shouldFlush) {
+      flushPendingWrites();
+    }
+  }
+
+  /**
+   * Writes out all the writes queued by {@link #executeDeferred(Enum, Object...)}. Consecutive writes using the same statement are
+   * grouped into a single JDBC batch.
+   */
+  public void flushPendingWrites() {
+    synchronized (myPendingWrites) {
+      if (myPendingWrites.isEmpty()) {
+        return;
+      }
+      if (isClosed()) {
+        myPendingWrites.clear();
+        return;
+      }
+      int start = 0;
+      while (start < myPendingWrites.size()) {
+        T statement = myPendingWrites.get(start).myStatement;
+        int end = start + 1;
+        while (end < myPendingWrites.size() && myPendingWrites.get(end).myStatement == statement) {
+          end++;
+        }
+        executeBatchNow(statement, myPendingWrites.subList(start, end), write -> write.myParams);
+        start = end;
+      }
+      myPendingWrites.clear();
+    }
+  }
+
   protected ResultSet executeQuery(@NotNull T statement, Object... params) throws SQLException {
     if (isClosed()) {
       return new EmptyResultSet();
     }
+    flushPendingWrites();
     PreparedStatement stmt = getStatementMap().get(statement);
     applyParams(stmt, params);
     return stmt.executeQuery();
@@ -194,6 +309,7 @@ public abstract class DataStoreTable<T extends Enum> {
     if (isClosed()) {
       return new EmptyResultSet();
     }
+    flushPendingWrites();
     if (myCustomQueryCache.get() == null) {
       myCustomQueryCache.set(new HashMap<>());
     }
@@ -234,4 +350,14 @@ public abstract class DataStoreTable<T extends Enum> {
       }
     }
   }
+
+  private static final class PendingWrite<T> {
+    @NotNull private final T myStatement;
+    @NotNull private final Object[] myParams;
+
+    private PendingWrite(@NotNull T statement, @NotNull Object[] params) {
+      myStatement = statement;
+      myParams = params;
+    }
+  }
 }
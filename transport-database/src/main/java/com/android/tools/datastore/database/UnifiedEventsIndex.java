@@ -0,0 +1,406 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.tools.profiler.proto.Common.Event;
+import com.android.tools.profiler.proto.Transport.EventGroup;
+import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * In-memory index of the decoded events of {@link UnifiedEventsTable}, which answers {@link GetEventGroupsRequest}s without going
+ * through SQLite and parsing the events again on every query.
+ * <p>
+ * The events are kept per stream and kind, and within those per group, sorted by timestamp. Each group also keeps its time span, so that
+ * the groups that cannot be part of a result are skipped without looking at their events. A kind is loaded from the table the first time
+ * it is queried; from then on, the events inserted in or deleted from the table are applied to the index as well.
+ * <p>
+ * The index holds at most {@link #DEFAULT_MAX_BYTES} of serialized events. Beyond that, the kinds that were queried the least recently
+ * are dropped, and loaded again from the table if they are queried later. The kind being queried or inserted into is never dropped, even
+ * if it is larger than the limit on its own, since it is needed to answer the queries.
+ * <p>
+ * This class is thread-safe.
+ */
+final class UnifiedEventsIndex {
+  /**
+   * Loads the events of a kind from the durable storage, in insertion order.
+   */
+  interface Loader {
+    /**
+     * Returns the events of the given kind along with their stream ids, or null if they could not be loaded.
+     */
+    @Nullable
+    List<StreamEvent> load(@NotNull Event.Kind kind);
+  }
+
+  static final class StreamEvent {
+    final long myStreamId;
+    @NotNull final Event myEvent;
+
+    StreamEvent(long streamId, @NotNull Event event) {
+      myStreamId = streamId;
+      myEvent = event;
+    }
+  }
+
+  static final long DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+
+  private final long myMaxBytes;
+  /** The loaded kinds, from the least to the most recently queried. */
+  private final Set<Event.Kind> myLoadedKinds = new LinkedHashSet<>();
+  private final Map<Event.Kind, Long> myBytesByKind = new EnumMap<>(Event.Kind.class);
+  private final Map<Event.Kind, Map<Long, Map<Long, Group>>> myGroupsByKindAndStream = new HashMap<>();
+  private long myTotalBytes;
+
+  UnifiedEventsIndex() {
+    this(DEFAULT_MAX_BYTES);
+  }
+
+  /**
+   * @param maxBytes the serialized size of the events above which the least recently queried kinds are dropped.
+   */
+  UnifiedEventsIndex(long maxBytes) {
+    myMaxBytes = maxBytes;
+  }
+
+  synchronized void clear() {
+    myLoadedKinds.clear();
+    myBytesByKind.clear();
+    myGroupsByKindAndStream.clear();
+    myTotalBytes = 0;
+  }
+
+  /**
+   * Adds an event, unless its kind is not loaded yet, in which case it will be read from the table with the rest of its kind. Like the
+   * table, the index ignores an event if it already has one with the same stream, pid, group, timestamp and ended state.
+   */
+  synchronized void insert(long streamId, @NotNull Event event) {
+    if (myLoadedKinds.contains(event.getKind())) {
+      add(streamId, event);
+      evict(event.getKind());
+    }
+  }
+
+  synchronized void delete(long streamId, int pid, long groupId, @NotNull Event.Kind kind, long fromTimestamp, long toTimestamp) {
+    Map<Long, Group> groups = myGroupsByKindAndStream.getOrDefault(kind, Collections.emptyMap()).get(streamId);
+    Group group = groups == null ? null : groups.get(groupId);
+    if (group != null) {
+      addBytes(kind, -group.removeIf(event -> event.getPid() == pid, fromTimestamp, toTimestamp));
+      if (group.mySize == 0) {
+        groups.remove(groupId);
+      }
+    }
+  }
+
+  /**
+   * Returns the same groups as {@link UnifiedEventsTable#queryUnifiedEventGroups(GetEventGroupsRequest)} used to return when querying
+   * SQLite, loading the kind of the request first if needed. If the kind cannot be loaded, no groups are returned.
+   */
+  @NotNull
+  synchronized List<EventGroup> query(@NotNull GetEventGroupsRequest request, @NotNull Loader loader) {
+    if (!myLoadedKinds.remove(request.getKind())) {
+      List<StreamEvent> events = loader.load(request.getKind());
+      if (events == null) {
+        return Collections.emptyList();
+      }
+      myBytesByKind.put(request.getKind(), 0L);
+      for (StreamEvent event : events) {
+        add(event.myStreamId, event.myEvent);
+      }
+    }
+    // Re-added last, as the most recently queried kind.
+    myLoadedKinds.add(request.getKind());
+    evict(request.getKind());
+
+    Map<Long, Map<Long, Group>> groupsByStream = myGroupsByKindAndStream.get(request.getKind());
+    if (groupsByStream == null) {
+      return Collections.emptyList();
+    }
+    Collection<Map<Long, Group>> streams = request.getStreamId() != 0
+                                           ? Collections.singletonList(groupsByStream.getOrDefault(request.getStreamId(),
+                                                                                                   Collections.emptyMap()))
+                                           : groupsByStream.values();
+    long from = request.getFromTimestamp() > 0 ? request.getFromTimestamp() : Long.MIN_VALUE;
+    long to = request.getToTimestamp() > 0 && request.getToTimestamp() != Long.MAX_VALUE ? request.getToTimestamp() : Long.MAX_VALUE;
+    EventFilter filter = event -> (request.getPid() == 0 || event.getPid() == request.getPid()) &&
+                                  (request.getCommandId() == 0 || event.getCommandId() == request.getCommandId());
+    boolean filtered = request.getPid() != 0 || request.getCommandId() != 0;
+
+    // The events of a group can come from several streams when the stream is not specified.
+    Map<Long, GroupResult> results = new HashMap<>();
+    for (Map<Long, Group> groups : streams) {
+      Collection<Group> candidates;
+      if (request.getGroupId() != 0) {
+        Group group = groups.get(request.getGroupId());
+        candidates = group == null ? Collections.emptyList() : Collections.singletonList(group);
+      }
+      else {
+        candidates = groups.values();
+      }
+      for (Group group : candidates) {
+        if (!group.mayMatch(from, to, filtered)) {
+          continue;
+        }
+        GroupResult result = results.computeIfAbsent(group.myGroupId, id -> new GroupResult());
+        if (from != Long.MIN_VALUE) {
+          result.offerBefore(group.findBefore(from, filter));
+        }
+        group.collect(from, to, filter, result.myInRange);
+        if (to != Long.MAX_VALUE) {
+          result.offerAfter(group.findAfter(to, filter));
+        }
+      }
+    }
+
+    List<EventGroup> eventGroups = new ArrayList<>(results.size());
+    for (Map.Entry<Long, GroupResult> entry : results.entrySet()) {
+      EventGroup group = entry.getValue().build(entry.getKey());
+      if (group != null) {
+        eventGroups.add(group);
+      }
+    }
+    return eventGroups;
+  }
+
+  private void add(long streamId, @NotNull Event event) {
+    boolean added = myGroupsByKindAndStream.computeIfAbsent(event.getKind(), kind -> new HashMap<>())
+      .computeIfAbsent(streamId, id -> new HashMap<>())
+      .computeIfAbsent(event.getGroupId(), Group::new)
+      .add(event);
+    if (added) {
+      // The size is cached by the event, which the table serialized when inserting it.
+      addBytes(event.getKind(), event.getSerializedSize());
+    }
+  }
+
+  private void addBytes(@NotNull Event.Kind kind, long bytes) {
+    myBytesByKind.merge(kind, bytes, Long::sum);
+    myTotalBytes += bytes;
+  }
+
+  /**
+   * Drops the least recently queried kinds, other than the given one, until the index fits in its limit.
+   */
+  private void evict(@NotNull Event.Kind kindInUse) {
+    Iterator<Event.Kind> kinds = myLoadedKinds.iterator();
+    while (myTotalBytes > myMaxBytes && kinds.hasNext()) {
+      Event.Kind kind = kinds.next();
+      if (kind == kindInUse) {
+        continue;
+      }
+      kinds.remove();
+      myGroupsByKindAndStream.remove(kind);
+      myTotalBytes -= myBytesByKind.remove(kind);
+    }
+  }
+
+  private interface EventFilter {
+    boolean test(@NotNull Event event);
+  }
+
+  /**
+   * The events of one group of one stream, sorted by timestamp, then by insertion order.
+   */
+  private static final class Group {
+    private final long myGroupId;
+    private long[] myTimestamps = new long[4];
+    private Event[] myEvents = new Event[4];
+    private int mySize;
+
+    private Group(long groupId) {
+      myGroupId = groupId;
+    }
+
+    /**
+     * Adds the given event and returns true, unless the group already has an equivalent one.
+     */
+    private boolean add(@NotNull Event event) {
+      long timestamp = event.getTimestamp();
+      int index = upperBound(timestamp);
+      for (int i = lowerBound(timestamp); i < index; i++) {
+        if (myEvents[i].getPid() == event.getPid() && myEvents[i].getIsEnded() == event.getIsEnded()) {
+          return false;
+        }
+      }
+      if (mySize == myEvents.length) {
+        myTimestamps = Arrays.copyOf(myTimestamps, mySize * 2);
+        myEvents = Arrays.copyOf(myEvents, mySize * 2);
+      }
+      // Events mostly arrive in timestamp order, in which case this is an append.
+      System.arraycopy(myTimestamps, index, myTimestamps, index + 1, mySize - index);
+      System.arraycopy(myEvents, index, myEvents, index + 1, mySize - index);
+      myTimestamps[index] = timestamp;
+      myEvents[index] = event;
+      mySize++;
+      return true;
+    }
+
+    /**
+     * Removes the events between the given timestamps that match the given filter and returns their serialized size.
+     */
+    private long removeIf(@NotNull EventFilter filter, long from, long to) {
+      long removedBytes = 0;
+      int write = lowerBound(from);
+      int end = upperBound(to);
+      for (int read = write; read < end; read++) {
+        if (!filter.test(myEvents[read])) {
+          myTimestamps[write] = myTimestamps[read];
+          myEvents[write++] = myEvents[read];
+        }
+        else {
+          removedBytes += myEvents[read].getSerializedSize();
+        }
+      }
+      System.arraycopy(myTimestamps, end, myTimestamps, write, mySize - end);
+      System.arraycopy(myEvents, end, myEvents, write, mySize - end);
+      Arrays.fill(myEvents, write + mySize - end, mySize, null);
+      mySize = write + mySize - end;
+      return removedBytes;
+    }
+
+    /**
+     * Returns false if no event of the group can be part of a query between the given timestamps. A group ending before the range is
+     * only skipped without a filter, since the last event matching the filter may not be an end event.
+     */
+    private boolean mayMatch(long from, long to, boolean filtered) {
+      if (mySize == 0 || myTimestamps[0] > to) {
+        return false;
+      }
+      return myTimestamps[mySize - 1] >= from || filtered || !myEvents[mySize - 1].getIsEnded();
+    }
+
+    @Nullable
+    private Event findBefore(long from, @NotNull EventFilter filter) {
+      for (int i = lowerBound(from) - 1; i >= 0; i--) {
+        if (filter.test(myEvents[i])) {
+          return myEvents[i];
+        }
+      }
+      return null;
+    }
+
+    private void collect(long from, long to, @NotNull EventFilter filter, @NotNull List<Event> events) {
+      for (int i = lowerBound(from), end = upperBound(to); i < end; i++) {
+        if (filter.test(myEvents[i])) {
+          events.add(myEvents[i]);
+        }
+      }
+    }
+
+    @Nullable
+    private Event findAfter(long to, @NotNull EventFilter filter) {
+      for (int i = upperBound(to); i < mySize; i++) {
+        if (filter.test(myEvents[i])) {
+          return myEvents[i];
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Returns the index of the first event at or after the given timestamp.
+     */
+    private int lowerBound(long timestamp) {
+      int low = 0;
+      int high = mySize;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myTimestamps[mid] < timestamp) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * Returns the index of the first event after the given timestamp.
+     */
+    private int upperBound(long timestamp) {
+      int low = 0;
+      int high = mySize;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myTimestamps[mid] <= timestamp) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+
+  /**
+   * The events of a group gathered from all the streams matching a query.
+   */
+  private static final class GroupResult {
+    @Nullable private Event myBefore;
+    private final List<Event> myInRange = new ArrayList<>();
+    @Nullable private Event myAfter;
+
+    private void offerBefore(@Nullable Event event) {
+      if (event != null && (myBefore == null || event.getTimestamp() > myBefore.getTimestamp())) {
+        myBefore = event;
+      }
+    }
+
+    private void offerAfter(@Nullable Event event) {
+      if (event != null && (myAfter == null || event.getTimestamp() < myAfter.getTimestamp())) {
+        myAfter = event;
+      }
+    }
+
+    /**
+     * Returns the group, or null if it has no event in the range and was ended before it. The event after the range is only returned
+     * along with other events.
+     */
+    @Nullable
+    private EventGroup build(long groupId) {
+      boolean includeBefore = myBefore != null && !myBefore.getIsEnded();
+      if (!includeBefore && myInRange.isEmpty()) {
+        return null;
+      }
+      EventGroup.Builder group = EventGroup.newBuilder().setGroupId(groupId);
+      if (includeBefore) {
+        group.addEvents(myBefore);
+      }
+      // The list is already sorted, unless the events come from several streams.
+      myInRange.sort(Comparator.comparingLong(Event::getTimestamp));
+      group.addAllEvents(myInRange);
+      if (myAfter != null) {
+        group.addEvents(myAfter);
+      }
+      return group.build();
+    }
+  }
+}
@@ -15,26 +15,41 @@
  */
 package com.android.tools.datastore.database;
 
+import com.android.tools.datastore.BytesChunks;
+import com.android.tools.datastore.DataStoreService;
+import com.android.tools.idea.protobuf.ByteString;
 import com.android.tools.idea.protobuf.InvalidProtocolBufferException;
+import com.android.tools.idea.protobuf.UnsafeByteOperations;
 import com.android.tools.profiler.proto.Common.Event;
+import com.android.tools.profiler.proto.Common.Stream;
 import com.android.tools.profiler.proto.Transport.BytesRequest;
 import com.android.tools.profiler.proto.Transport.BytesResponse;
 import com.android.tools.profiler.proto.Transport.EventGroup;
 import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.Predicates;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statements> {
+  /**
+   * Size of the chunks that byte payloads are split into, so that neither writing nor reading a large payload such as a heap dump or a
+   * trace needs it as a single array. A stored chunk is also a chunk of {@link BytesChunks}, so it is read with a single query.
+   */
+  @VisibleForTesting static final int BYTES_CHUNK_SIZE = BytesChunks.CHUNK_SIZE;
+
+  /**
+   * Listener notified of every event inserted in the table. It is called on the inserting thread, once the event is visible to the
+   * queries, so it should return quickly.
+   */
+  public interface InsertListener {
+    void onEventInserted(long streamId, @NotNull Event event);
+  }
+
   public enum Statements {
     // Since no data should be updated after it has been inserted we drop any duplicated request from the poller.
     INSERT_EVENT(
@@ -43,10 +58,22 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
     DELETE_EVENTS(
       "DELETE FROM [UnifiedEventsTable] " +
       "WHERE StreamId = ? AND ProcessId = ? And GroupId = ? And Kind = ? AND Timestamp >= ? AND Timestamp <= ?"),
+    QUERY_EVENTS_BY_KIND("SELECT StreamId, Data FROM [UnifiedEventsTable] WHERE Kind = ? ORDER BY ROWID"),
+    // The groups of the given kind that have no ended event, with their process and the last timestamp of their stream.
+    QUERY_ONGOING_GROUPS(
+      "SELECT Ongoing.StreamId, Ongoing.ProcessId, Ongoing.GroupId, MAX(Events.Timestamp) " +
+      "FROM (SELECT StreamId, MIN(ProcessId) AS ProcessId, GroupId FROM [UnifiedEventsTable] WHERE Kind = ? " +
+      "GROUP BY StreamId, GroupId HAVING MAX(IsEnded) = 0) AS Ongoing " +
+      "JOIN [UnifiedEventsTable] AS Events ON Events.StreamId = Ongoing.StreamId " +
+      "GROUP BY Ongoing.StreamId, Ongoing.GroupId"),
+    DELETE_STREAM_EVENTS("DELETE FROM [UnifiedEventsTable] WHERE StreamId = ?"),
+    DELETE_STREAM_BYTES("DELETE FROM [BytesTable] WHERE StreamId = ?"),
     // Only used for test.
     QUERY_EVENTS("SELECT Data FROM [UnifiedEventsTable]"),
-    INSERT_BYTES("INSERT OR IGNORE INTO [BytesTable] (StreamId, Id, Data) VALUES (?, ?, ?)"),
-    GET_BYTES("SELECT Data FROM [BytesTable] WHERE StreamId = ? AND Id = ?");
+    INSERT_BYTES("INSERT OR IGNORE INTO [BytesTable] (StreamId, Id, ChunkIndex, Data) VALUES (?, ?, ?, ?)"),
+    GET_BYTES("SELECT Data FROM [BytesTable] WHERE StreamId = ? AND Id = ? ORDER BY ChunkIndex"),
+    GET_BYTES_CHUNK("SELECT Data FROM [BytesTable] WHERE StreamId = ? AND Id = ? AND ChunkIndex = ?"),
+    HAS_BYTES("SELECT 1 FROM [BytesTable] WHERE StreamId = ? AND Id = ? AND ChunkIndex = 0");
 
     @NotNull private final String mySqlStatement;
 
@@ -60,6 +87,20 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
     }
   }
 
+  @NotNull private final InsertListener myInsertListener;
+  @NotNull private final UnifiedEventsIndex myIndex = new UnifiedEventsIndex();
+
+  public UnifiedEventsTable() {
+    this((streamId, event) -> {});
+  }
+
+  /**
+   * @param insertListener notified of every event inserted in the table.
+   */
+  public UnifiedEventsTable(@NotNull InsertListener insertListener) {
+    myInsertListener = insertListener;
+  }
+
   @Override
   public void prepareStatements() {
     try {
@@ -75,39 +116,98 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
   @Override
   public void initialize(@NotNull Connection connection) {
     super.initialize(connection);
+    myIndex.clear();
     try {
-      createTable("UnifiedEventsTable",
-                  "StreamId INTEGER NOT NULL", // Optional filter, required for all data.
-                  "ProcessId INTEGER NOT NULL", // Optional filter, not required for data (eg device/process).
-                  "GroupId INTEGER NOT NULL", // Optional filter, not required for data.
-                  "Kind INTEGER NOT NULL", // Required filter, required for all data.
-                  "CommandId INTEGER NOT NULL", // Optional filter, not required for data.
-                  "Timestamp INTEGER NOT NULL", // Optional filter, required for all data.
-                  "IsEnded INTEGER NOT NULL", // Optional filter, required for all data.
-                  "Data BLOB");
-      createTable("BytesTable", "StreamId INTEGER NOT NULL", "Id STRING NOT NULL", "Data BLOB");
+      createTableIfNotExists("UnifiedEventsTable",
+                             "StreamId INTEGER NOT NULL", // Optional filter, required for all data.
+                             "ProcessId INTEGER NOT NULL", // Optional filter, not required for data (eg device/process).
+                             "GroupId INTEGER NOT NULL", // Optional filter, not required for data.
+                             "Kind INTEGER NOT NULL", // Required filter, required for all data.
+                             "CommandId INTEGER NOT NULL", // Optional filter, not required for data.
+                             "Timestamp INTEGER NOT NULL", // Optional filter, required for all data.
+                             "IsEnded INTEGER NOT NULL", // Optional filter, required for all data.
+                             "Data BLOB");
+      createTableIfNotExists("BytesTable", "StreamId INTEGER NOT NULL", "Id STRING NOT NULL", "ChunkIndex INTEGER NOT NULL",
+                             "Data BLOB");
       createUniqueIndex("UnifiedEventsTable", "Kind", "StreamId", "ProcessId", "GroupId", "Timestamp", "IsEnded");
-      createUniqueIndex("BytesTable", "StreamId", "Id");
+      createUniqueIndex("BytesTable", "StreamId", "Id", "ChunkIndex");
     }
     catch (SQLException ex) {
       onError(ex);
+      return;
+    }
+    endPreviousRuns();
+  }
+
+  /**
+   * Keeps the sessions recorded by previous runs, but not the state of those runs:
+   * <ul>
+   * <li>The streams they connected to are gone, so are their {@link Event.Kind#STREAM} events. A stream that connects again gets new ones.
+   * <li>The streams of imported files are dropped with all their data. Their ids are only unique within a run, and the files are imported
+   * again by the profilers if need be.
+   * <li>A session that was still ongoing is ended at the last event of its stream.
+   * </ul>
+   */
+  private void endPreviousRuns() {
+    try {
+      ResultSet streams = executeQuery(Statements.QUERY_EVENTS_BY_KIND, Event.Kind.STREAM.getNumber());
+      List<Long> fileStreamIds = new ArrayList<>();
+      while (streams.next()) {
+        if (streams.getLong(1) != DataStoreService.DATASTORE_RESERVED_STREAM_ID) {
+          continue;
+        }
+        Event event = Event.parser().parseFrom(streams.getBytes(2));
+        if (event.getStream().getStreamConnected().getStream().getType() == Stream.Type.FILE) {
+          fileStreamIds.add(event.getGroupId());
+        }
+      }
+      for (long streamId : fileStreamIds) {
+        execute(Statements.DELETE_STREAM_EVENTS, streamId);
+        execute(Statements.DELETE_STREAM_BYTES, streamId);
+      }
+      execute(Statements.DELETE_STREAM_EVENTS, DataStoreService.DATASTORE_RESERVED_STREAM_ID);
+
+      // The ends are gathered before they are inserted, as the query reads the table they go to.
+      ResultSet sessions = executeQuery(Statements.QUERY_ONGOING_GROUPS, Event.Kind.SESSION.getNumber());
+      List<Object[]> sessionEnds = new ArrayList<>();
+      while (sessions.next()) {
+        Event end = Event.newBuilder()
+          .setKind(Event.Kind.SESSION)
+          .setPid(sessions.getInt(2))
+          .setGroupId(sessions.getLong(3))
+          .setTimestamp(sessions.getLong(4))
+          .setIsEnded(true)
+          .build();
+        sessionEnds.add(new Object[]{sessions.getLong(1), end.getPid(), end.getGroupId(), end.getKind().getNumber(), end.getCommandId(),
+          end.getTimestamp(), 1, end.toByteArray()});
+      }
+      for (Object[] params : sessionEnds) {
+        execute(Statements.INSERT_EVENT, params);
+      }
+    }
+    catch (SQLException | InvalidProtocolBufferException ex) {
+      onError(ex);
     }
   }
 
   public void insertUnifiedEvent(long streamId, @NotNull Event event) {
-    execute(Statements.INSERT_EVENT,
-            streamId,
-            event.getPid(),
-            event.getGroupId(),
-            event.getKind().getNumber(),
-            event.getCommandId(),
-            event.getTimestamp(),
-            event.getIsEnded() ? 1 : 0,
-            event.toByteArray());
+    executeDeferred(Statements.INSERT_EVENT,
+                    streamId,
+                    event.getPid(),
+                    event.getGroupId(),
+                    event.getKind().getNumber(),
+                    event.getCommandId(),
+                    event.getTimestamp(),
+                    event.getIsEnded() ? 1 : 0,
+                    event.toByteArray());
+    // The write is queued first, so that the event is either in the index or read with the rest of its kind when it gets loaded.
+    myIndex.insert(streamId, event);
+    myInsertListener.onEventInserted(streamId, event);
   }
 
   public void deleteEvents(long streamId, int pid, long groupId, Event.Kind kind, long fromTimestamp, long toTimestamp) {
     execute(Statements.DELETE_EVENTS, streamId, pid, groupId, kind.getNumber(), fromTimestamp, toTimestamp);
+    myIndex.delete(streamId, pid, groupId, kind, fromTimestamp, toTimestamp);
   }
 
   @VisibleForTesting
@@ -118,6 +218,9 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
   /**
    * Queries for set of events then groups them by {@link Event#getGroupId()}
    * <p>
+   * The queries are answered by an in-memory index of the events, which reads the events of a kind from the database the first time
+   * that kind is queried.
+   * <p>
    * The query filters data on {@link Event#getKind()}, {@link Event#getPid()}, {@link Event#getGroupId()} and {@link Event#getTimestamp()}.
    * <p>
    * The timestamp is filtered by the optional parameters of {@link GetEventGroupsRequest#getFromTimestamp()} and
@@ -154,105 +257,73 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
    * @param request
    */
   public List<EventGroup> queryUnifiedEventGroups(@NotNull GetEventGroupsRequest request) {
-    ArrayList<Object> baseParams = new ArrayList<>();
-    List<Object> beforeRangeParams = null;
-    List<Object> afterRangeParams = null;
-
-    HashMap<Long, EventGroup.Builder> builderGroups = new HashMap<>();
-    // The string format allows for altering the group by results for +1 and -1 queries.
-    String sql = "SELECT Data, GroupId%s From [UnifiedEventsTable] WHERE Kind = ? %s";
-    StringBuilder filter = new StringBuilder();
-    baseParams.add(request.getKind().getNumber());
-
-    if (request.getStreamId() != 0) {
-      filter.append(" AND StreamId = ?");
-      baseParams.add(request.getStreamId());
-    }
-
-    if (request.getPid() != 0) {
-      filter.append(" AND ProcessId = ?");
-      baseParams.add(request.getPid());
-    }
-
-    if (request.getGroupId() != 0) {
-      filter.append(" AND GroupId = ?");
-      baseParams.add(request.getGroupId());
-    }
+    return myIndex.query(request, this::loadEvents);
+  }
 
-    if (request.getCommandId() != 0) {
-      filter.append(" AND CommandId = ?");
-      baseParams.add(request.getCommandId());
+  /**
+   * Reads the events of a kind for {@link UnifiedEventsIndex}, which answers the queries from memory once a kind is loaded. Returns null
+   * if the events could not be read.
+   */
+  @Nullable
+  private List<UnifiedEventsIndex.StreamEvent> loadEvents(@NotNull Event.Kind kind) {
+    List<UnifiedEventsIndex.StreamEvent> events = new ArrayList<>();
+    try {
+      ResultSet results = executeQuery(Statements.QUERY_EVENTS_BY_KIND, kind.getNumber());
+      while (results.next()) {
+        events.add(new UnifiedEventsIndex.StreamEvent(results.getLong(1), Event.parser().parseFrom(results.getBytes(2))));
+      }
     }
-
-    String sqlBefore = String.format(sql, ", IsEnded, MAX(Timestamp), MAX(ROWID)", filter + " AND Timestamp < ? GROUP BY GroupId");
-    String sqlAfter = String.format(sql, ", MIN(Timestamp), MIN(ROWID)", filter + " AND Timestamp > ? GROUP BY GroupId");
-    ArrayList<Object> inRangeQueryParams = new ArrayList<>(baseParams);
-    if (request.getFromTimestamp() > 0) {
-      beforeRangeParams = new ArrayList<>(baseParams);
-      beforeRangeParams.add(request.getFromTimestamp());
-      filter.append(" AND Timestamp >= ?");
-      inRangeQueryParams.add(request.getFromTimestamp());
+    catch (SQLException | InvalidProtocolBufferException ex) {
+      onError(ex);
+      return null;
     }
+    return events;
+  }
 
-    if (request.getToTimestamp() > 0 && request.getToTimestamp() != Long.MAX_VALUE) {
-      afterRangeParams = new ArrayList<>(baseParams);
-      afterRangeParams.add(request.getToTimestamp());
-      filter.append(" AND Timestamp <= ?");
-      inRangeQueryParams.add(request.getToTimestamp());
+  /**
+   * Stores the contents of a byte payload in chunks of {@link #BYTES_CHUNK_SIZE}. An empty payload is stored as a single empty chunk.
+   * Like for the events, a payload that is already stored is kept as is.
+   */
+  public void insertBytes(long streamId, @NotNull String id, @NotNull BytesResponse response) {
+    try {
+      // Checked first so that the chunks of a payload that is already stored are not copied again, only to be ignored by the insert.
+      if (executeQuery(Statements.HAS_BYTES, streamId, id).next()) {
+        return;
+      }
     }
-
-    // Gather before range events if needed.
-    // Query before example:
-    // SELECT [Data], [GroupId], [IsEnded], MAX(Timestamp), MAX(ROWID) From [UnifiedEventsTable] WHERE Kind = ? AND Timestamp < ?
-    // GROUP BY GroupId;
-    if (beforeRangeParams != null) {
-      gatherEvents(sqlBefore, beforeRangeParams, builderGroups, resultSet -> {
-        try {
-          return !resultSet.getBoolean("IsEnded");
-        }
-        catch (SQLException e) {
-          onError(e);
-        }
-        return false;
-      });
+    catch (SQLException ex) {
+      onError(ex);
+      return;
     }
 
-    // Query example:
-    // SELECT [Data], [GroupId] From [UnifiedEventsTable] WHERE Kind = ? AND Timestamp >= ? AND Timestamp <= ?;
-    String query = String.format(sql, "", filter);
-    gatherEvents(query, inRangeQueryParams, builderGroups, Predicates.alwaysTrue());
-
-    // Gather after range events if needed.
-    // Query after example:
-    // SELECT [Data], [GroupId], MIN(Timestamp), MIN(ROWID) From [UnifiedEventsTable] WHERE Kind = ? AND Timestamp > ? GROUP BY GroupId;
-    if (afterRangeParams != null) {
-      gatherEvents(sqlAfter, afterRangeParams, builderGroups, resultSet -> {
-        try {
-          return builderGroups.containsKey(resultSet.getLong("GroupId"));
-        }
-        catch (SQLException e) {
-          onError(e);
-        }
-        return false;
-      });
+    // Each chunk is written on its own, so that only one chunk is copied out of the payload at a time.
+    ByteString contents = response.getContents();
+    int chunkIndex = 0;
+    do {
+      execute(Statements.INSERT_BYTES, streamId, id, chunkIndex, BytesChunks.getChunk(contents, chunkIndex).toByteArray());
+      chunkIndex++;
     }
-
-    return builderGroups.values().stream().map(EventGroup.Builder::build).collect(Collectors.toList());
-  }
-
-  public void insertBytes(long streamId, @NotNull String id, @NotNull BytesResponse response) {
-    execute(Statements.INSERT_BYTES, streamId, id, response.toByteArray());
+    while ((long)chunkIndex * BYTES_CHUNK_SIZE < contents.size());
   }
 
+  /**
+   * Returns the whole payload, or null if there is none for the request. The contents are made of the stored chunks without copying them
+   * into a single array; use {@link #getBytesChunk(BytesRequest, int)} to process a large payload without holding all of it in memory.
+   */
   @Nullable
   public BytesResponse getBytes(@NotNull BytesRequest request) {
     try {
       ResultSet results = executeQuery(Statements.GET_BYTES, request.getStreamId(), request.getId());
-      if (results.next()) {
-        return BytesResponse.parseFrom(results.getBytes(1));
+      List<ByteString> chunks = new ArrayList<>();
+      while (results.next()) {
+        // The driver returns a new array for each row and nothing else holds it, so it can be wrapped without a copy.
+        chunks.add(UnsafeByteOperations.unsafeWrap(results.getBytes(1)));
+      }
+      if (!chunks.isEmpty()) {
+        return BytesResponse.newBuilder().setContents(ByteString.copyFrom(chunks)).build();
       }
     }
-    catch (InvalidProtocolBufferException | SQLException ex) {
+    catch (SQLException ex) {
       onError(ex);
     }
 
@@ -260,32 +331,25 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
   }
 
   /**
-   * Executes the sql statement and passes each event through the filter. If the filter returns true, the event is added
-   * to the hashmap. Otherwise it is ignored.
-   *
-   * @param sql           Statement to execute and gather a list of events
-   * @param params        List of params to pass to the sql statement.
-   * @param builderGroups map of event group ids to event groups used to collect events into respective groups.
-   * @param filter        predicate to determine which events are included in the event group.
+   * Returns the given chunk of the payload, see {@link BytesChunks}. It is empty past the end of the payload, and null if there is no
+   * payload for the request.
    */
-  private void gatherEvents(String sql,
-                            List<Object> params,
-                            HashMap<Long, EventGroup.Builder> builderGroups,
-                            Predicate<ResultSet> filter) {
+  @Nullable
+  public BytesResponse getBytesChunk(@NotNull BytesRequest request, int chunkIndex) {
     try {
-      ResultSet results = executeOneTimeQuery(sql, params.toArray());
-      while (results.next()) {
-        Long groupId = results.getLong("GroupId");
-        if (filter.test(results)) {
-          EventGroup.Builder group =
-            builderGroups.computeIfAbsent(groupId, EventGroup.newBuilder()::setGroupId);
-          group.addEvents(Event.parser().parseFrom(results.getBytes("Data")));
-        }
+      ResultSet results = executeQuery(Statements.GET_BYTES_CHUNK, request.getStreamId(), request.getId(), chunkIndex);
+      if (results.next()) {
+        return BytesResponse.newBuilder().setContents(UnsafeByteOperations.unsafeWrap(results.getBytes(1))).build();
+      }
+      if (chunkIndex > 0 && executeQuery(Statements.HAS_BYTES, request.getStreamId(), request.getId()).next()) {
+        return BytesResponse.getDefaultInstance();
       }
     }
-    catch (SQLException | InvalidProtocolBufferException ex) {
+    catch (SQLException ex) {
       onError(ex);
     }
+
+    return null;
   }
 
   private List<Event> queryUnifiedEvents(Statements stmt, Object... args) {
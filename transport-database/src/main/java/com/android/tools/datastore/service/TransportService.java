@@ -15,6 +15,8 @@
  */
 package com.android.tools.datastore.service;
 
+import com.android.tools.datastore.BytesChunks;
+import com.android.tools.datastore.DataStoreDatabase;
 import com.android.tools.datastore.DataStoreService;
 import com.android.tools.datastore.ServicePassThrough;
 import com.android.tools.datastore.database.DataStoreTable;
@@ -39,6 +41,7 @@ import com.android.tools.profiler.proto.Transport.GetDevicesRequest;
 import com.android.tools.profiler.proto.Transport.GetDevicesResponse;
 import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest;
 import com.android.tools.profiler.proto.Transport.GetEventGroupsResponse;
+import com.android.tools.profiler.proto.Transport.GetEventsRequest;
 import com.android.tools.profiler.proto.Transport.GetProcessesRequest;
 import com.android.tools.profiler.proto.Transport.GetProcessesResponse;
 import com.android.tools.profiler.proto.Transport.TimeRequest;
@@ -49,12 +52,15 @@ import com.android.tools.profiler.proto.TransportServiceGrpc;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Maps;
 import io.grpc.Channel;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
-import java.sql.Connection;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import org.jetbrains.annotations.NotNull;
@@ -68,6 +74,7 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
   private final Map<Channel, DeviceProcessPoller> myLegacyPollers = Maps.newHashMap();
   private final Consumer<Runnable> myFetchExecutor;
   @NotNull private final UnifiedEventsTable myTable;
+  @NotNull private final EventSubscribers mySubscribers;
   @NotNull private final DeviceProcessTable myLegacyTable;
   @NotNull private final DataStoreService myService;
   private final boolean myLegacyPipelineForProfilers;
@@ -80,15 +87,26 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
    * A map of active channels to unified event streams. This map helps us clean up streams when a channel is closed.
    */
   private final Map<Channel, Stream> myChannelToStream = Maps.newHashMap();
+  /**
+   * The connected streams of imported files, which serve the chunks of their bytes from the files, see
+   * {@link #getBytesChunk(BytesRequest, int)}.
+   */
+  private final Set<Long> myFileStreamIds = ConcurrentHashMap.newKeySet();
   @VisibleForTesting final AtomicInteger myNextCommandId = new AtomicInteger();
 
+  /**
+   * @param subscribers the subscribers of {@link #getEvents(GetEventsRequest, StreamObserver)}, which must be the insert listener of
+   *                    {@code unifiedTable}.
+   */
   public TransportService(@NotNull DataStoreService service,
                           @NotNull UnifiedEventsTable unifiedTable,
+                          @NotNull EventSubscribers subscribers,
                           Consumer<Runnable> fetchExecutor,
                           boolean legacyPipelineForProfilers) {
     myService = service;
     myFetchExecutor = fetchExecutor;
     myTable = unifiedTable;
+    mySubscribers = subscribers;
     myLegacyTable = new DeviceProcessTable();
     myLegacyPipelineForProfilers = legacyPipelineForProfilers;
   }
@@ -100,12 +118,12 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
   }
 
   @Override
-  public void setBackingStore(@NotNull DataStoreService.BackingNamespace namespace, @NotNull Connection connection) {
+  public void setBackingStore(@NotNull DataStoreService.BackingNamespace namespace, @NotNull DataStoreDatabase database) {
     assert namespace == DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE;
-    myTable.initialize(connection);
+    myTable.initialize(database);
 
     if (myLegacyPipelineForProfilers) {
-      myLegacyTable.initialize(connection);
+      myLegacyTable.initialize(database);
     }
   }
 
@@ -122,6 +140,9 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
     UnifiedEventsDataPoller unifiedPoller = new UnifiedEventsDataPoller(stream.getStreamId(), myTable, stub, myService);
     myUnifiedEventsPollers.put(channel, unifiedPoller);
     myChannelToStream.put(channel, stream);
+    if (stream.getType() == Stream.Type.FILE) {
+      myFileStreamIds.add(streamId);
+    }
     DataStoreTable.addDataStoreErrorCallback(unifiedPoller);
     myFetchExecutor.accept(unifiedPoller);
 
@@ -141,7 +162,9 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
       UnifiedEventsDataPoller poller = myUnifiedEventsPollers.remove(channel);
       poller.stop();
       DataStoreTable.removeDataStoreErrorCallback(poller);
-      streamDisconnected(myChannelToStream.remove(channel));
+      Stream stream = myChannelToStream.remove(channel);
+      myFileStreamIds.remove(stream.getStreamId());
+      streamDisconnected(stream);
     }
   }
 
@@ -211,6 +234,13 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
 
   @Override
   public void getBytes(BytesRequest request, StreamObserver<BytesResponse> responseObserver) {
+    int chunkIndex = BytesChunks.getChunkIndex(request);
+    if (chunkIndex >= 0) {
+      responseObserver.onNext(getBytesChunk(BytesChunks.payloadRequest(request), chunkIndex));
+      responseObserver.onCompleted();
+      return;
+    }
+
     // TODO: Currently the cache is on demand, we want to look into caching all available files.
     BytesResponse response = myTable.getBytes(request);
     long streamId = request.getStreamId();
@@ -230,6 +260,33 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
     responseObserver.onCompleted();
   }
 
+  /**
+   * Returns the given chunk of a payload, see {@link BytesChunks}. A payload that is not stored yet is fetched from its stream as a whole,
+   * since device streams only serve whole payloads, and stored so that the next chunks are read from the database. The streams of
+   * imported files serve the chunks from the files instead, which are then not copied into the database.
+   */
+  @NotNull
+  private BytesResponse getBytesChunk(@NotNull BytesRequest payloadRequest, int chunkIndex) {
+    BytesResponse chunk = myTable.getBytesChunk(payloadRequest, chunkIndex);
+    if (chunk != null) {
+      return chunk;
+    }
+
+    TransportServiceGrpc.TransportServiceBlockingStub client = myService.getTransportClient(payloadRequest.getStreamId());
+    if (client == null) {
+      return BytesResponse.getDefaultInstance();
+    }
+    if (myFileStreamIds.contains(payloadRequest.getStreamId())) {
+      return client.getBytes(BytesChunks.chunkRequest(payloadRequest, chunkIndex));
+    }
+    BytesResponse response = client.getBytes(payloadRequest);
+    if (response.getContents().isEmpty()) {
+      return BytesResponse.getDefaultInstance();
+    }
+    myTable.insertBytes(payloadRequest.getStreamId(), payloadRequest.getId(), response);
+    return BytesResponse.newBuilder().setContents(BytesChunks.getChunk(response.getContents(), chunkIndex)).build();
+  }
+
   @Override
   public void execute(ExecuteRequest request, StreamObserver<ExecuteResponse> responseObserver) {
     // TODO (b/114751407): Send stream id 0 to all streams.
@@ -256,6 +313,24 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
     responseObserver.onCompleted();
   }
 
+  /**
+   * Subscribes to the events inserted in the database from now on, so that clients get notified of new data instead of polling
+   * {@link #getEventGroups(GetEventGroupsRequest, StreamObserver)}. The stream starts with an empty event confirming the subscription,
+   * which lets clients tell this server apart from the ones that do not support it, and lasts until the client cancels the call.
+   * <p>
+   * {@link GetEventsRequest} has no fields to filter on, so every event is sent and the subscribers match the kind, pid and group of the
+   * events on their side. Only those fields are sent: the subscribers query the full events once they know there are new ones.
+   */
+  @Override
+  public void getEvents(GetEventsRequest request, StreamObserver<Event> responseObserver) {
+    EventSubscriber subscriber = new EventSubscriber(responseObserver);
+    mySubscribers.add(subscriber);
+    if (responseObserver instanceof ServerCallStreamObserver) {
+      ((ServerCallStreamObserver<Event>)responseObserver).setOnCancelHandler(() -> mySubscribers.remove(subscriber));
+    }
+    subscriber.onEventInserted(DataStoreService.DATASTORE_RESERVED_STREAM_ID, Event.getDefaultInstance());
+  }
+
   @Override
   public void deleteEvents(Transport.DeleteEventsRequest request, StreamObserver<Transport.DeleteEventsResponse> responseObserver) {
     myTable.deleteEvents(request.getStreamId(),
@@ -267,4 +342,55 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
     responseObserver.onNext(Transport.DeleteEventsResponse.getDefaultInstance());
     responseObserver.onCompleted();
   }
+
+  private class EventSubscriber implements UnifiedEventsTable.InsertListener {
+    @NotNull private final StreamObserver<Event> myObserver;
+
+    private EventSubscriber(@NotNull StreamObserver<Event> observer) {
+      myObserver = observer;
+    }
+
+    @Override
+    public void onEventInserted(long streamId, @NotNull Event event) {
+      // Events can be inserted from several threads, while a StreamObserver is not thread-safe.
+      synchronized (this) {
+        try {
+          myObserver.onNext(event);
+        }
+        catch (RuntimeException e) {
+          // The call was cancelled or closed before the cancellation handler ran.
+          mySubscribers.remove(this);
+        }
+      }
+    }
+  }
+
+  /**
+   * The clients subscribed through {@link #getEvents(GetEventsRequest, StreamObserver)}, notified of the events inserted in the
+   * {@link UnifiedEventsTable} they listen to.
+   */
+  public static final class EventSubscribers implements UnifiedEventsTable.InsertListener {
+    private final List<UnifiedEventsTable.InsertListener> mySubscribers = new CopyOnWriteArrayList<>();
+
+    private void add(@NotNull UnifiedEventsTable.InsertListener subscriber) {
+      mySubscribers.add(subscriber);
+    }
+
+    private void remove(@NotNull UnifiedEventsTable.InsertListener subscriber) {
+      mySubscribers.remove(subscriber);
+    }
+
+    @Override
+    public void onEventInserted(long streamId, @NotNull Event event) {
+      if (mySubscribers.isEmpty()) {
+        return;
+      }
+      // The payload of an event, e.g. a whole trace, is not needed to know which listeners to poll, and serializing it for every
+      // subscriber would slow down the inserting thread.
+      Event summary = Event.newBuilder().setKind(event.getKind()).setPid(event.getPid()).setGroupId(event.getGroupId()).build();
+      for (UnifiedEventsTable.InsertListener subscriber : mySubscribers) {
+        subscriber.onEventInserted(streamId, summary);
+      }
+    }
+  }
 }
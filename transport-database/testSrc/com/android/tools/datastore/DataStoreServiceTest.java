@@ -304,12 +304,13 @@ public class DataStoreServiceTest extends DataStorePollerTest {
     }
 
     @Override
-    public void setBackingStore(@NotNull BackingNamespace namespace, @NotNull Connection connection) {
+    public void setBackingStore(@NotNull BackingNamespace namespace, @NotNull DataStoreDatabase database) {
+      Connection connection = database.getConnection();
       assert myNamespaces.contains(namespace) && !myReceivedBackingStores.containsKey(namespace) && !myReceivedBackingStores
         .containsValue(connection);
       myReceivedBackingStores.put(namespace, connection);
-      myTable.initialize(connection);
-      myLegacyTable.initialize(connection);
+      myTable.initialize(database);
+      myLegacyTable.initialize(database);
       myConnection = connection;
     }
 
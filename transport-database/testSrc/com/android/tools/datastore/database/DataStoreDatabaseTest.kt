@@ -13,13 +13,17 @@
 // limitations under the License.
 package com.android.tools.datastore.database
 
+import com.android.tools.datastore.BytesChunks
 import com.android.tools.datastore.DataStoreDatabase
 import com.android.tools.datastore.FakeLogService
+import com.android.tools.profiler.proto.Transport.BytesRequest
 import com.google.common.truth.Truth.assertThat
 import org.junit.Test
 import java.io.BufferedOutputStream
 import java.io.File
 import java.io.FileOutputStream
+import java.sql.Connection
+import java.sql.DriverManager
 
 class DataStoreDatabaseTest {
 
@@ -34,17 +38,76 @@ class DataStoreDatabaseTest {
   }
 
   @Test
-  fun testDatabaseDeletesExisitingFileOnLoad() {
+  fun testDatabaseReplacesFileThatIsNotADatabase() {
     val outputStream = BufferedOutputStream(FileOutputStream(myDatabaseFile))
-    outputStream.write(ByteArray(1024))
+    outputStream.write(ByteArray(1024) { 1 })
     outputStream.close()
     assertThat(myDatabaseFile.length()).isEqualTo(1024)
     val db = DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
-    assertThat(myDatabaseFile.length()).isEqualTo(0)
+    assertThat(getSchemaVersion(db.connection)).isEqualTo(DataStoreSchema.VERSION)
     db.disconnect()
     assertThat(myDatabaseFile.exists()).isTrue()
   }
 
+  @Test
+  fun testDatabaseKeepsDataOfPreviousRun() {
+    var db = DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    db.connection.createStatement().use { it.execute("CREATE TABLE Kept (Value INTEGER)") }
+    db.connection.createStatement().use { it.execute("INSERT INTO Kept (Value) VALUES (42)") }
+    db.disconnect()
+
+    db = DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    db.connection.createStatement().use { statement ->
+      statement.executeQuery("SELECT Value FROM Kept").use { results ->
+        assertThat(results.next()).isTrue()
+        assertThat(results.getInt(1)).isEqualTo(42)
+      }
+    }
+    db.disconnect()
+  }
+
+  @Test
+  fun testDatabaseWrittenByNewerVersionIsReplaced() {
+    openFileConnection().use { connection ->
+      connection.createStatement().use {
+        it.execute("CREATE TABLE Newer (Value INTEGER)")
+        it.execute("PRAGMA user_version = ${DataStoreSchema.VERSION + 1}")
+      }
+    }
+
+    val db = DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    assertThat(getSchemaVersion(db.connection)).isEqualTo(DataStoreSchema.VERSION)
+    db.connection.createStatement().use { statement ->
+      statement.executeQuery("SELECT 1 FROM sqlite_master WHERE name = 'Newer'").use { assertThat(it.next()).isFalse() }
+    }
+    db.disconnect()
+  }
+
+  @Test
+  fun testUnversionedBytesAreSplitIntoChunks() {
+    val payload = ByteArray(BytesChunks.CHUNK_SIZE * 5 / 2) { it.toByte() }
+    openFileConnection().use { connection ->
+      connection.createStatement().use {
+        it.execute("CREATE TABLE BytesTable (StreamId INTEGER NOT NULL, Id STRING NOT NULL, Data BLOB)")
+        it.execute("CREATE UNIQUE INDEX idx_BytesTable_pk ON BytesTable (StreamId, Id)")
+      }
+      connection.prepareStatement("INSERT INTO BytesTable (StreamId, Id, Data) VALUES (1, 'id', ?)").use {
+        it.setBytes(1, payload)
+        it.execute()
+      }
+    }
+
+    val db = DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    assertThat(getSchemaVersion(db.connection)).isEqualTo(DataStoreSchema.VERSION)
+    val table = UnifiedEventsTable()
+    table.initialize(db)
+    val request = BytesRequest.newBuilder().setStreamId(1).setId("id").build()
+    assertThat(table.getBytes(request)!!.contents.toByteArray()).isEqualTo(payload)
+    assertThat(table.getBytesChunk(request, 0)!!.contents.size()).isEqualTo(BytesChunks.CHUNK_SIZE)
+    assertThat(table.getBytesChunk(request, 2)!!.contents.size()).isEqualTo(BytesChunks.CHUNK_SIZE / 2)
+    db.disconnect()
+  }
+
   @Test
   fun testConnectionIsOpen() {
     // Verify persistent database
@@ -63,4 +126,19 @@ class DataStoreDatabaseTest {
     db.disconnect()
     assertThat(db.connection.isClosed).isTrue()
   }
+
+  private fun openFileConnection(): Connection {
+    // Loaded for the driver to be registered, as DataStoreDatabase does.
+    Class.forName("org.sqlite.JDBC")
+    return DriverManager.getConnection("jdbc:sqlite:${myDatabaseFile.absolutePath}")
+  }
+
+  private fun getSchemaVersion(connection: Connection): Int {
+    connection.createStatement().use { statement ->
+      statement.executeQuery("PRAGMA user_version").use { results ->
+        results.next()
+        return results.getInt(1)
+      }
+    }
+  }
 }
@@ -24,8 +24,10 @@ import org.junit.Test;
 
 import java.io.File;
 import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.concurrent.CountDownLatch;
 
 import static com.google.common.truth.Truth.assertThat;
@@ -49,7 +51,7 @@ public class DatabaseTableTest {
     myDbFile = File.createTempFile("DatabaseTableTest", "sql");
     myDatabase = new DataStoreDatabase(myDbFile.getAbsolutePath(), DataStoreDatabase.Characteristic.DURABLE, new FakeLogService());
     myTable = new ThreadTestTable();
-    myTable.initialize(myDatabase.getConnection());
+    myTable.initialize(myDatabase);
   }
 
   @After
@@ -106,6 +108,58 @@ public class DatabaseTableTest {
     }
   }
 
+  @Test
+  public void testDeferredWritesAreVisibleToQueries() throws Exception {
+    myTable.insertDataDeferred(1, 2, 3);
+
+    // Queries flush pending writes first so a table always reads its own writes.
+    assertThat(myTable.countData()).isEqualTo(3);
+    assertThat(myTable.getPendingWriteCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testDeferredWritesFlushWhenBatchIsFull() throws Exception {
+    myTable.setWriteBatchSize(4);
+    myTable.insertDataDeferred(1, 2, 3);
+    myTable.insertDataDeferred(4);
+    assertThat(myTable.getPendingWriteCount()).isEqualTo(0);
+    assertThat(countDataFromConnection(myDatabase.getConnection())).isEqualTo(4);
+  }
+
+  @Test
+  public void testDeferredWritesFlushBeforeImmediateWrites() throws Exception {
+    myTable.insertDataDeferred(1, 2);
+    myTable.insertData(3);
+    assertThat(myTable.getPendingWriteCount()).isEqualTo(0);
+    assertThat(countDataFromConnection(myDatabase.getConnection())).isEqualTo(3);
+  }
+
+  @Test
+  public void testDeferredWritesArePersistedOnCommit() throws Exception {
+    myTable.insertDataDeferred(1, 2, 3);
+    myDatabase.commit();
+    assertThat(myTable.getPendingWriteCount()).isEqualTo(0);
+    myDatabase.disconnect();
+
+    try (Connection connection = DriverManager.getConnection(String.format("jdbc:sqlite:%s", myDbFile.getPath()))) {
+      assertThat(countDataFromConnection(connection)).isEqualTo(3);
+    }
+  }
+
+  @Test
+  public void testDisconnectReleasesTables() {
+    assertThat(myDatabase.hasTables()).isTrue();
+    myDatabase.disconnect();
+    assertThat(myDatabase.hasTables()).isFalse();
+  }
+
+  private static int countDataFromConnection(@NotNull Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement();
+         ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM Thread_Table")) {
+      return resultSet.next() ? resultSet.getInt(1) : 0;
+    }
+  }
+
   /**
    * Runnable class that handles querying the database as fast as possible.
    */
@@ -184,8 +238,23 @@ public class DatabaseTableTest {
       }
     }
 
+    public void insertDataDeferred(int... someData) {
+      for (int i = 0; i < someData.length; i++) {
+        executeDeferred(ThreadTableStatement.INSERT_DATA, someData[i]);
+      }
+    }
+
     public ResultSet readDataRaw() throws SQLException {
       return executeQuery(ThreadTableStatement.READ_DATA);
     }
+
+    public int countData() throws SQLException {
+      ResultSet resultSet = readDataRaw();
+      int count = 0;
+      while (resultSet.next()) {
+        count++;
+      }
+      return count;
+    }
   }
 }
@@ -39,7 +39,7 @@ import java.util.function.Consumer
 abstract class DatabaseTest<T : DataStoreTable<*>> {
   protected lateinit var table: T
   private lateinit var dbFile: File
-  private lateinit var database: DataStoreDatabase
+  protected lateinit var database: DataStoreDatabase
 
   @Before
   @Throws(Exception::class)
@@ -93,6 +93,8 @@ abstract class DatabaseTest<T : DataStoreTable<*>> {
 
     val table = createTable()
     table.initialize(DatabaseTestConnection(database.connection))
+    // Write deferred statements out right away so the error surfaces on the call that caused it.
+    table.setWriteBatchSize(1)
     // Should return with error because the statement is throwing an error.
     val methodCalls = getTableQueryMethodsForVerification()
     for (i in methodCalls.indices) {
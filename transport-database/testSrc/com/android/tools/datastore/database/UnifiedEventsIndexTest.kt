@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database
+
+import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+
+class UnifiedEventsIndexTest {
+  private val events = listOf(
+    newEvent(Common.Event.Kind.SESSION, 1),
+    newEvent(Common.Event.Kind.PROCESS, 2),
+    newEvent(Common.Event.Kind.CPU_TRACE, 3))
+  private val loadedKinds = mutableListOf<Common.Event.Kind>()
+  private val loader = UnifiedEventsIndex.Loader { kind ->
+    loadedKinds.add(kind)
+    events.filter { it.kind == kind }.map { UnifiedEventsIndex.StreamEvent(1, it) }
+  }
+
+  @Test
+  fun keepsLoadedKindsWithinLimit() {
+    // Room for any two of the kinds, but not for all three.
+    val index = UnifiedEventsIndex(2L * events.map { it.serializedSize }.max()!!)
+
+    assertThat(query(index, Common.Event.Kind.SESSION)).containsExactly(events[0])
+    assertThat(query(index, Common.Event.Kind.PROCESS)).containsExactly(events[1])
+    assertThat(query(index, Common.Event.Kind.SESSION)).containsExactly(events[0])
+    assertThat(loadedKinds).containsExactly(Common.Event.Kind.SESSION, Common.Event.Kind.PROCESS).inOrder()
+
+    // Loading a third kind drops PROCESS, the least recently queried one, which is loaded again when queried.
+    assertThat(query(index, Common.Event.Kind.CPU_TRACE)).containsExactly(events[2])
+    assertThat(query(index, Common.Event.Kind.SESSION)).containsExactly(events[0])
+    assertThat(query(index, Common.Event.Kind.PROCESS)).containsExactly(events[1])
+    assertThat(loadedKinds).containsExactly(Common.Event.Kind.SESSION, Common.Event.Kind.PROCESS, Common.Event.Kind.CPU_TRACE,
+                                            Common.Event.Kind.PROCESS).inOrder()
+  }
+
+  @Test
+  fun keepsKindInUseAboveLimit() {
+    val index = UnifiedEventsIndex(0)
+
+    assertThat(query(index, Common.Event.Kind.SESSION)).containsExactly(events[0])
+    val inserted = newEvent(Common.Event.Kind.SESSION, 4)
+    index.insert(1, inserted)
+
+    assertThat(query(index, Common.Event.Kind.SESSION)).containsExactly(events[0], inserted).inOrder()
+    assertThat(loadedKinds).containsExactly(Common.Event.Kind.SESSION)
+  }
+
+  private fun query(index: UnifiedEventsIndex, kind: Common.Event.Kind) =
+    index.query(GetEventGroupsRequest.newBuilder().setKind(kind).build(), loader).flatMap { it.eventsList }
+
+  private fun newEvent(kind: Common.Event.Kind, timestamp: Long) =
+    Common.Event.newBuilder().setKind(kind).setGroupId(1).setPid(1).setTimestamp(timestamp).build()
+}
@@ -15,6 +15,9 @@
  */
 package com.android.tools.datastore.database
 
+import com.android.tools.datastore.BytesChunks
+import com.android.tools.datastore.DataStoreService
+import com.android.tools.idea.protobuf.ByteString
 import com.android.tools.profiler.proto.Common
 import com.android.tools.profiler.proto.Transport.BytesRequest
 import com.android.tools.profiler.proto.Transport.BytesResponse
@@ -69,7 +72,8 @@ class UnifiedEventsTableTest : DatabaseTest<UnifiedEventsTable>() {
       }),
       (Consumer { it.queryUnifiedEvents() }),
       (Consumer { assertThat(it.getBytes(BytesRequest.getDefaultInstance())).isEqualTo(null) }),
-      (Consumer { it.insertBytes(0, "id", BytesResponse.getDefaultInstance()) }))
+      (Consumer { it.insertBytes(0, "id", BytesResponse.getDefaultInstance()) }),
+      (Consumer { assertThat(it.getBytesChunk(BytesRequest.getDefaultInstance(), 0)).isNull() }))
   }
 
   private fun insertData(count: Int, incrementGroupId: Boolean): List<Common.Event> {
@@ -123,6 +127,20 @@ class UnifiedEventsTableTest : DatabaseTest<UnifiedEventsTable>() {
     }
   }
 
+  @Test
+  fun queryReturnsEventsChangedAfterKindIsLoaded() {
+    val request = GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).setStreamId(1).build()
+    val events = insertData(2, true)
+    assertThat(table.queryUnifiedEventGroups(request).flatMap { it.eventsList }).containsExactlyElementsIn(events)
+
+    // The kind is now answered from memory, which must see the inserts and deletes made afterwards.
+    val inserted = eventBuilder(Common.Event.Kind.SESSION, false, 1, 1, 1, 3)
+    table.insertUnifiedEvent(1, inserted)
+    table.insertUnifiedEvent(1, inserted.toBuilder().setCommandId(2).build())
+    table.deleteEvents(1, 1, 2, Common.Event.Kind.SESSION, 2, 2)
+    assertThat(table.queryUnifiedEventGroups(request).flatMap { it.eventsList }).containsExactly(events[0], inserted).inOrder()
+  }
+
   @Test
   fun queryEvents() {
     val events = insertData(2, true)
@@ -289,6 +307,70 @@ class UnifiedEventsTableTest : DatabaseTest<UnifiedEventsTable>() {
     assertThat(results.statement).isSameAs(repeatedResults.statement)
   }
 
+  @Test
+  fun bytesAreStoredInChunks() {
+    val sizes = listOf(0, 10, UnifiedEventsTable.BYTES_CHUNK_SIZE, UnifiedEventsTable.BYTES_CHUNK_SIZE * 5 / 2)
+    for (size in sizes) {
+      val contents = ByteString.copyFrom(ByteArray(size) { it.toByte() })
+      table.insertBytes(1, "id$size", BytesResponse.newBuilder().setContents(contents).build())
+    }
+
+    for (size in sizes) {
+      val request = BytesRequest.newBuilder().setStreamId(1).setId("id$size").build()
+      val expected = ByteArray(size) { it.toByte() }
+      assertThat(table.getBytes(request)!!.contents.toByteArray()).isEqualTo(expected)
+      val chunks = mutableListOf(table.getBytesChunk(request, 0)!!.contents)
+      while (!BytesChunks.isLastChunk(chunks.last())) {
+        chunks.add(table.getBytesChunk(request, chunks.size)!!.contents)
+      }
+      assertThat(ByteString.copyFrom(chunks).toByteArray()).isEqualTo(expected)
+    }
+    assertThat(table.getBytes(BytesRequest.newBuilder().setStreamId(2).setId("id10").build())).isNull()
+    assertThat(table.getBytesChunk(BytesRequest.newBuilder().setStreamId(2).setId("id10").build(), 0)).isNull()
+  }
+
+  @Test
+  fun insertBytesKeepsStoredPayload() {
+    val request = BytesRequest.newBuilder().setStreamId(1).setId("id").build()
+    val first = ByteString.copyFrom(ByteArray(UnifiedEventsTable.BYTES_CHUNK_SIZE * 2) { 1 })
+    table.insertBytes(1, "id", BytesResponse.newBuilder().setContents(first).build())
+    table.insertBytes(1, "id", BytesResponse.newBuilder().setContents(ByteString.copyFrom(ByteArray(10) { 2 })).build())
+
+    assertThat(table.getBytes(request)!!.contents).isEqualTo(first)
+  }
+
+  @Test
+  fun initializeEndsPreviousRun() {
+    val deviceStreamId = 10L
+    val fileStreamId = 11L
+    for ((streamId, type) in listOf(deviceStreamId to Common.Stream.Type.DEVICE, fileStreamId to Common.Stream.Type.FILE)) {
+      table.insertUnifiedEvent(DataStoreService.DATASTORE_RESERVED_STREAM_ID, Common.Event.newBuilder()
+        .setKind(Common.Event.Kind.STREAM)
+        .setGroupId(streamId)
+        .setStream(Common.StreamData.newBuilder().setStreamConnected(
+          Common.StreamData.StreamConnected.newBuilder().setStream(Common.Stream.newBuilder().setStreamId(streamId).setType(type))))
+        .build())
+    }
+    table.insertUnifiedEvent(deviceStreamId, eventBuilder(Common.Event.Kind.SESSION, false, 1, 100, 0, 10))
+    table.insertUnifiedEvent(deviceStreamId, eventBuilder(Common.Event.Kind.SESSION, true, 1, 100, 0, 20))
+    table.insertUnifiedEvent(deviceStreamId, eventBuilder(Common.Event.Kind.SESSION, false, 1, 200, 0, 30))
+    table.insertUnifiedEvent(deviceStreamId, eventBuilder(Common.Event.Kind.PROCESS, false, 1, 1, 0, 40))
+    table.insertUnifiedEvent(fileStreamId, eventBuilder(Common.Event.Kind.SESSION, false, 1, 300, 0, 10))
+    table.insertBytes(fileStreamId, "id", BytesResponse.newBuilder().setContents(ByteString.copyFromUtf8("contents")).build())
+    table.flushPendingWrites()
+
+    val nextRunTable = UnifiedEventsTable()
+    nextRunTable.initialize(database.connection)
+    val streams = nextRunTable.queryUnifiedEventGroups(GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.STREAM).build())
+    assertThat(streams).isEmpty()
+    val sessions = nextRunTable.queryUnifiedEventGroups(GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).build())
+    assertThat(sessions.map { it.groupId }).containsExactly(100L, 200L)
+    val ongoingSession = sessions.first { it.groupId == 200L }
+    assertThat(ongoingSession.eventsList.map { it.timestamp }).containsExactly(30L, 40L).inOrder()
+    assertThat(ongoingSession.eventsList.last().isEnded).isTrue()
+    assertThat(nextRunTable.getBytes(BytesRequest.newBuilder().setStreamId(fileStreamId).setId("id").build())).isNull()
+  }
+
   private fun validateFilter(request: GetEventGroupsRequest, vararg expectedIndices: Int) {
     val expectedResults = mutableListOf<Common.Event>()
     // Insert elements from our fixed list into the database.
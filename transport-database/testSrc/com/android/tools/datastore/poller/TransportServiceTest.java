@@ -19,6 +19,7 @@ import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import com.android.tools.datastore.BytesChunks;
 import com.android.tools.datastore.DataStorePollerTest;
 import com.android.tools.datastore.DataStoreService;
 import com.android.tools.datastore.TestGrpcService;
@@ -57,7 +58,9 @@ public class TransportServiceTest extends DataStorePollerTest {
 
   private DataStoreService myDataStore = mock(DataStoreService.class);
 
-  private TransportService myTransportService = new TransportService(myDataStore, new UnifiedEventsTable(), getPollTicker()::run, true);
+  private TransportService.EventSubscribers mySubscribers = new TransportService.EventSubscribers();
+  private TransportService myTransportService =
+    new TransportService(myDataStore, new UnifiedEventsTable(mySubscribers), mySubscribers, getPollTicker()::run, true);
 
   private static final String BYTES_ID_1 = "0123456789";
   private static final String BYTES_ID_2 = "9876543210";
@@ -209,6 +212,28 @@ public class TransportServiceTest extends DataStorePollerTest {
     validateResponse(observerNoMatch, responseNoMatch);
   }
 
+  @Test
+  public void testGetFileInChunks() {
+    BytesRequest request = BytesRequest.newBuilder().setId(BYTES_ID_1).build();
+    StreamObserver<BytesResponse> observer = mock(StreamObserver.class);
+    myTransportService.getBytes(BytesChunks.chunkRequest(request, 0), observer);
+    validateResponse(observer, BytesResponse.newBuilder().setContents(BYTES_1).build());
+
+    // The payload was stored by the first chunk, the next ones come from the database.
+    when(myDataStore.getTransportClient(anyLong())).thenReturn(null);
+    observer = mock(StreamObserver.class);
+    myTransportService.getBytes(BytesChunks.chunkRequest(request, 0), observer);
+    validateResponse(observer, BytesResponse.newBuilder().setContents(BYTES_1).build());
+
+    observer = mock(StreamObserver.class);
+    myTransportService.getBytes(BytesChunks.chunkRequest(request, 1), observer);
+    validateResponse(observer, BytesResponse.getDefaultInstance());
+
+    observer = mock(StreamObserver.class);
+    myTransportService.getBytes(BytesChunks.chunkRequest(BytesRequest.newBuilder().setId(BAD_ID).build(), 0), observer);
+    validateResponse(observer, BytesResponse.getDefaultInstance());
+  }
+
   @Test
   public void agentStatus() {
     getPollTicker().run();
@@ -59,7 +59,9 @@ import org.mockito.Mockito;
 public class UnifiedPipelineTransportServiceTest extends DataStorePollerTest {
   private DataStoreService myDataStore = mock(DataStoreService.class);
 
-  private TransportService myTransportService = new TransportService(myDataStore, new UnifiedEventsTable(), getPollTicker()::run, false);
+  private TransportService.EventSubscribers mySubscribers = new TransportService.EventSubscribers();
+  private TransportService myTransportService =
+    new TransportService(myDataStore, new UnifiedEventsTable(mySubscribers), mySubscribers, getPollTicker()::run, false);
 
   private FakeTransportService myFakeService = new FakeTransportService();
   private Channel myChannel;
@@ -152,6 +154,20 @@ public class UnifiedPipelineTransportServiceTest extends DataStorePollerTest {
     validateEventNoTimestamp(expectedGroup.getEvents(1), actualGroup.getEvents(1));
   }
 
+  @Test
+  public void getEventsPushesInsertedEvents() {
+    StreamObserver<Event> observer = mock(StreamObserver.class);
+    myTransportService.getEvents(GetEventsRequest.getDefaultInstance(), observer);
+    // The subscription is confirmed with an empty event.
+    verify(observer, times(1)).onNext(Event.getDefaultInstance());
+
+    myTransportService.disconnectFromChannel(myChannel);
+    ArgumentCaptor<Event> event = ArgumentCaptor.forClass(Event.class);
+    verify(observer, times(2)).onNext(event.capture());
+    // Only the fields needed to match the listeners are pushed.
+    assertThat(event.getValue()).isEqualTo(Event.newBuilder().setGroupId(TEST_DEVICE_ID).setKind(Event.Kind.STREAM).build());
+  }
+
   @Test
   public void executeRedirectsProperly() {
     StreamObserver<ExecuteResponse> observer = mock(StreamObserver.class);